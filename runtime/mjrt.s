@@ -0,0 +1,1136 @@
+# The run-time system for MiniJava programs compiled to x86-64 assembly
+# (GNU as syntax, for Linux).  The compiler appends it to the program's
+# code when it is given with '-a':
+#   java main.Main4 -S -a runtime/mjrt.s -o prog.s prog.java
+#   gcc prog.s -o prog
+# It provides 'main', which runs the program ('mj.main') on a stack of its
+# own, the predefined methods of Object, String and Lib, storage
+# allocation with a copying garbage collector, and the run-time error
+# messages.  See visitor/CG1Visitor.java and visitor/CG3Visitor.java for
+# the conventions that it shares with the compiled code.
+#
+# Every object has a descriptor, a pointer to its class's v-table, whose
+# first word is at p; the words before the v-table give the class's name,
+# its pre- and post-order numbers, its kind (an ordinary object, an array
+# of references, an array of ints or booleans, or a string) and its numbers
+# of data and object instance variables.  At p+8 is the length of an array
+# or a string, and at p+12 the object's identity hash code (0 until it is
+# asked for).  An object's data instance variables are below p, and the
+# word below those gives their number; its object instance variables (or
+# the elements of an array, or the characters of a string) start at p+16.
+#
+# The collector finds the program's pointers on the stack by their
+# values: any word that points into the heap is taken to be an object
+# pointer, and an int or a boolean on the stack is always preceded (at the
+# lower address) by the tag DATA_TAG, which makes the collector skip it.
+# Runtime routines that allocate therefore keep the stack in that form,
+# and fetch any pointer they need afterwards from the stack.
+
+	.equ DATA_TAG, 5
+
+	.equ KIND_OBJECT, 0
+	.equ KIND_REFARRAY, 1
+	.equ KIND_DATAARRAY, 2
+	.equ KIND_STRING, 3
+
+	.equ NAME, -32
+	.equ PRE, -24
+	.equ POST, -20
+	.equ KIND, -16
+	.equ NDATA, -8
+	.equ NOBJ, -4
+
+	.equ LENGTH, 8
+	.equ HASH, 12
+	.equ BODY, 16
+
+	.equ STACK_SIZE, 1<<30
+	.equ STACK_MARGIN, 1<<18
+	.equ INITIAL_HEAP, 1<<24
+	.equ OUT_BUF_SIZE, 1<<16
+	.equ IN_BUF_SIZE, 1<<16
+
+	.data
+	.balign 8
+rt.free:	.quad 0
+rt.limit:	.quad 0
+rt.heapStart:	.quad 0
+rt.heapSize:	.quad INITIAL_HEAP
+rt.stackBase:	.quad 0
+rt.stackLimit:	.quad 0
+rt.cStack:	.quad 0
+rt.lineBuf:	.quad 0
+rt.lineCap:	.quad 0
+rt.hashSeed:	.long 0x2545F491
+rt.outLen:	.long 0
+rt.inPos:	.long 0
+rt.inLen:	.long 0
+
+# the empty string, which "" and empty substrings denote
+	.quad 0
+rt.emptyString:
+	.quad vt.String
+	.long 0, 0
+
+	.bss
+rt.outBuf:	.skip OUT_BUF_SIZE
+rt.inBuf:	.skip IN_BUF_SIZE
+rt.numBuf:	.skip 16
+
+	.section .rodata
+rt.hexDigits:	.ascii "0123456789abcdef"
+rt.true:	.asciz "true"
+rt.false:	.asciz "false"
+rt.null:	.asciz "null"
+rt.noPos:	.asciz "0.0"
+rt.msgPrefix:	.asciz "%s::%s: Runtime error: "
+rt.msgNullPointer:	.asciz "null pointer\n"
+rt.msgDivideByZero:	.asciz "division by zero\n"
+rt.msgArrayIndex:	.asciz "array index %d out of bounds for length %d\n"
+rt.msgNegativeSize:	.asciz "negative array size %d\n"
+rt.msgCast:	.asciz "cannot cast %s to %s\n"
+rt.msgStringIndex:	.asciz "string index %d out of bounds for length %d\n"
+rt.msgSubstring:	.asciz "substring(%d, %d) out of bounds for length %d\n"
+rt.msgNoInteger:	.asciz "no integer in the input\n"
+rt.msgStackOverflow:	.asciz "stack overflow\n"
+rt.msgOutOfMemory:	.asciz "out of memory\n"
+
+	.text
+
+#################### starting and stopping ####################
+
+	.globl main
+main:
+	pushq %rbp
+	movq %rsp, %rbp
+	pushq %rbx
+	pushq %r12
+	pushq %r13
+	pushq %r14
+	pushq %r15
+	subq $8, %rsp
+	# the program's stack, with room below its limit for the runtime's
+	# own calls
+	xorl %edi, %edi
+	movq $STACK_SIZE, %rsi
+	movl $3, %edx			# PROT_READ | PROT_WRITE
+	movl $0x4022, %ecx		# MAP_PRIVATE | MAP_ANONYMOUS | MAP_NORESERVE
+	movl $-1, %r8d
+	xorl %r9d, %r9d
+	call mmap@PLT
+	cmpq $-1, %rax
+	je rt.outOfMemory
+	leaq STACK_MARGIN(%rax), %rdx
+	movq %rdx, rt.stackLimit(%rip)
+	addq $STACK_SIZE, %rax
+	movq %rax, rt.stackBase(%rip)
+	# the heap
+	movl $1, %edi
+	movq rt.heapSize(%rip), %rsi
+	call calloc@PLT
+	testq %rax, %rax
+	jz rt.outOfMemory
+	movq %rax, rt.heapStart(%rip)
+	movq %rax, rt.free(%rip)
+	addq rt.heapSize(%rip), %rax
+	movq %rax, rt.limit(%rip)
+	# run the program
+	movq %rsp, rt.cStack(%rip)
+	movq rt.stackBase(%rip), %rsp
+	call mj.main
+	movq rt.cStack(%rip), %rsp
+	call rt.flush
+	xorl %eax, %eax
+	movq -40(%rbp), %r15
+	movq -32(%rbp), %r14
+	movq -24(%rbp), %r13
+	movq -16(%rbp), %r12
+	movq -8(%rbp), %rbx
+	leave
+	ret
+
+#################### run-time errors ####################
+
+# Each of these reports an error and stops the program.  %rdi is the
+# position of the error (a string such as "12.5"), and %esi, %edx and
+# %ecx are the values in the message, in order.
+
+rt.nullPointer:
+	leaq rt.msgNullPointer(%rip), %rsi
+	jmp rt.error
+
+rt.divideByZero:
+	leaq rt.msgDivideByZero(%rip), %rsi
+	jmp rt.error
+
+rt.arrayIndexError:
+	movl %edx, %ecx
+	movl %esi, %edx
+	leaq rt.msgArrayIndex(%rip), %rsi
+	jmp rt.error
+
+rt.negativeSizeError:
+	movl %esi, %edx
+	leaq rt.msgNegativeSize(%rip), %rsi
+	jmp rt.error
+
+# %rsi is the object, and %rdx the name of the type
+rt.castError:
+	movq %rdx, %rcx
+	movq (%rsi), %rax
+	movq NAME(%rax), %rdx
+	leaq rt.msgCast(%rip), %rsi
+	jmp rt.error
+
+rt.stringIndexError:
+	movl %edx, %ecx
+	movl %esi, %edx
+	leaq rt.msgStringIndex(%rip), %rsi
+	jmp rt.error
+
+rt.substringError:
+	movl %ecx, %r8d
+	movl %edx, %ecx
+	movl %esi, %edx
+	leaq rt.msgSubstring(%rip), %rsi
+	jmp rt.error
+
+rt.noIntegerError:
+	leaq rt.msgNoInteger(%rip), %rsi
+	jmp rt.error
+
+rt.stackOverflow:
+	leaq rt.msgStackOverflow(%rip), %rsi
+	jmp rt.error
+
+rt.outOfMemory:
+	leaq rt.noPos(%rip), %rdi
+	leaq rt.msgOutOfMemory(%rip), %rsi
+	jmp rt.error
+
+# %rdi is the position, %rsi the message (a format), and %rdx, %rcx and
+# %r8 its arguments; the program's output so far is written first
+rt.error:
+	movq %rdi, %rbx
+	movq %rsi, %r12
+	movq %rdx, %r13
+	movq %rcx, %r14
+	movq %r8, %r15
+	andq $-16, %rsp
+	call rt.flush
+	movl $2, %edi
+	leaq rt.msgPrefix(%rip), %rsi
+	leaq mj.fileName(%rip), %rdx
+	movq %rbx, %rcx
+	xorl %eax, %eax
+	call dprintf@PLT
+	movl $2, %edi
+	movq %r12, %rsi
+	movq %r13, %rdx
+	movq %r14, %rcx
+	movq %r15, %r8
+	xorl %eax, %eax
+	call dprintf@PLT
+	movl $1, %edi
+	call exit@PLT
+
+#################### storage ####################
+
+# %rdi is a class's descriptor; returns (in %rax) a new object of the
+# class
+rt.newObject:
+	pushq %rdi
+	movslq NDATA(%rdi), %rax
+	movslq NOBJ(%rdi), %rcx
+	leaq 3(%rax,%rcx), %rdi
+	shlq $3, %rdi
+	call rt.alloc
+	popq %rdi
+	movslq NDATA(%rdi), %rcx
+	movq %rcx, (%rax)
+	leaq 8(%rax,%rcx,8), %rax
+	movq %rdi, (%rax)
+	ret
+
+# %edi is a length; returns a new string of that many (zero) characters
+rt.newString:
+	movl %edi, %esi
+	leaq vt.String(%rip), %rdi
+	# falls through
+
+# %rdi is the descriptor of an array type (or of String), and %esi a
+# (non-negative) length; returns a new array (or string) of that length
+rt.newArray:
+	pushq %rdi
+	movl %esi, %esi
+	pushq %rsi
+	pushq $DATA_TAG
+	movq %rsi, %rax
+	movl KIND(%rdi), %ecx
+	cmpl $KIND_REFARRAY, %ecx
+	je 2f
+	cmpl $KIND_DATAARRAY, %ecx
+	jne 1f
+	addq $1, %rax
+	shrq $1, %rax
+	jmp 2f
+1:	addq $3, %rax
+	shrq $2, %rax
+2:	leaq 24(,%rax,8), %rdi
+	call rt.alloc
+	movq 8(%rsp), %rsi
+	movq 16(%rsp), %rdi
+	addq $24, %rsp
+	addq $8, %rax
+	movq %rdi, (%rax)
+	movl %esi, LENGTH(%rax)
+	ret
+
+# %rdi is a number of bytes (a multiple of 8); returns the address of that
+# many zeroed bytes.  Preserves %rbx, %rbp and %r12-%r15.
+rt.alloc:
+	movq rt.free(%rip), %rax
+	leaq (%rax,%rdi), %rdx
+	cmpq rt.limit(%rip), %rdx
+	ja rt.collect
+	movq %rdx, rt.free(%rip)
+	ret
+
+# rt.alloc, when the heap is full: copies the objects reachable from the
+# stack into a new heap, big enough for them and the request, and frees
+# the old one.  If the reachable objects and the request fill more than
+# half of the new heap, the next one is made twice as big as they are.
+rt.collect:
+	pushq %rbp
+	movq %rsp, %rbp
+	pushq %rbx
+	pushq %r12
+	pushq %r13
+	pushq %r14
+	pushq %r15
+	pushq %rdi			# -48(%rbp): the request
+	subq $8, %rsp			# -56(%rbp): the end of an object's pointers
+	andq $-16, %rsp
+	movq rt.free(%rip), %rsi
+	subq rt.heapStart(%rip), %rsi
+	addq %rdi, %rsi
+	cmpq rt.heapSize(%rip), %rsi
+	jae 1f
+	movq rt.heapSize(%rip), %rsi
+1:	movq %rsi, %r14
+	movl $1, %edi
+	call calloc@PLT
+	testq %rax, %rax
+	jz rt.outOfMemory
+	movq %rax, %r12			# the new heap
+	movq %rax, %r13			# its first free byte
+	addq %rax, %r14			# its end
+	# the roots: the stack above the return address into the caller of
+	# rt.alloc
+	leaq 16(%rbp), %rbx
+2:	cmpq rt.stackBase(%rip), %rbx
+	jae 4f
+	movq (%rbx), %rdi
+	cmpq $DATA_TAG, %rdi
+	jne 3f
+	addq $16, %rbx
+	jmp 2b
+3:	call rt.forward
+	movq %rax, (%rbx)
+	addq $8, %rbx
+	jmp 2b
+	# the objects copied so far, in turn, forwarding their pointers
+4:	movq %r12, %rbx
+5:	cmpq %r13, %rbx
+	jae 8f
+	movq (%rbx), %rcx
+	leaq 8(%rbx,%rcx,8), %r15	# the object
+	movq (%r15), %rdx
+	movq %r15, %rdi
+	call rt.blockSize
+	addq %rax, %rbx
+	movl KIND(%rdx), %ecx
+	cmpl $KIND_OBJECT, %ecx
+	jne 6f
+	movslq NOBJ(%rdx), %rcx
+	jmp 7f
+6:	cmpl $KIND_REFARRAY, %ecx
+	jne 5b
+	movslq LENGTH(%r15), %rcx
+7:	addq $BODY, %r15
+	leaq (%r15,%rcx,8), %rax
+	movq %rax, -56(%rbp)
+	jmp 72f
+71:	movq (%r15), %rdi
+	call rt.forward
+	movq %rax, (%r15)
+	addq $8, %r15
+72:	cmpq -56(%rbp), %r15
+	jb 71b
+	jmp 5b
+8:	movq rt.heapStart(%rip), %rdi
+	call free@PLT
+	movq %r12, rt.heapStart(%rip)
+	movq %r14, rt.limit(%rip)
+	movq %r13, %rax
+	subq %r12, %rax
+	addq -48(%rbp), %rax
+	movq %r14, %rcx
+	subq %r12, %rcx
+	shrq $1, %rcx
+	cmpq %rcx, %rax
+	jbe 9f
+	addq %rax, %rax
+	movq %rax, rt.heapSize(%rip)
+9:	movq %r13, %rax
+	addq -48(%rbp), %r13
+	movq %r13, rt.free(%rip)
+	movq -40(%rbp), %r15
+	movq -32(%rbp), %r14
+	movq -24(%rbp), %r13
+	movq -16(%rbp), %r12
+	movq -8(%rbp), %rbx
+	leave
+	ret
+
+# during a collection (see rt.collect, whose %r12-%r14 describe the new
+# heap): if %rdi points into the old heap, returns the object's address in
+# the new one, copying the object there if that has not been done;
+# otherwise returns %rdi.  A copied object's descriptor is replaced by its
+# new address.
+rt.forward:
+	movq %rdi, %rax
+	cmpq rt.heapStart(%rip), %rdi
+	jb 9f
+	cmpq rt.free(%rip), %rdi
+	jae 9f
+	movq (%rdi), %rdx
+	cmpq %r12, %rdx
+	jb 1f
+	cmpq %r14, %rdx
+	jae 1f
+	movq %rdx, %rax
+	ret
+1:	call rt.blockSize
+	leaq 8(,%rcx,8), %r9		# the object's offset in its block
+	movq %rdi, %r11
+	movq %rdi, %rsi
+	subq %r9, %rsi
+	movq %r13, %r10
+	movq %rax, %rcx
+	shrq $3, %rcx
+	movq %r13, %rdi
+	rep movsq
+	movq %rdi, %r13
+	leaq (%r10,%r9), %rax
+	movq %rax, (%r11)
+9:	ret
+
+# %rdi is an object and %rdx its descriptor; returns (in %rax) the size in
+# bytes of the object's block, and (in %rcx) its number of data words
+rt.blockSize:
+	movslq NDATA(%rdx), %rcx
+	movl KIND(%rdx), %r8d
+	cmpl $KIND_OBJECT, %r8d
+	jne 1f
+	movslq NOBJ(%rdx), %rax
+	jmp 4f
+1:	movslq LENGTH(%rdi), %rax
+	cmpl $KIND_REFARRAY, %r8d
+	je 4f
+	cmpl $KIND_DATAARRAY, %r8d
+	jne 2f
+	addq $1, %rax
+	shrq $1, %rax
+	jmp 4f
+2:	addq $3, %rax
+	shrq $2, %rax
+4:	leaq 3(%rax,%rcx), %rax
+	shlq $3, %rax
+	ret
+
+# %rdi is an object; returns its identity hash code, choosing it (from a
+# xorshift sequence) the first time it is asked for
+rt.identityHash:
+	movl HASH(%rdi), %eax
+	testl %eax, %eax
+	jnz 2f
+1:	movl rt.hashSeed(%rip), %eax
+	movl %eax, %edx
+	shll $13, %edx
+	xorl %edx, %eax
+	movl %eax, %edx
+	shrl $17, %edx
+	xorl %edx, %eax
+	movl %eax, %edx
+	shll $5, %edx
+	xorl %edx, %eax
+	movl %eax, rt.hashSeed(%rip)
+	andl $0x7FFFFFFF, %eax
+	jz 1b
+	movl %eax, HASH(%rdi)
+2:	ret
+
+#################### input and output ####################
+
+# writes out the buffered output; preserves %rbx and %r12-%r15
+rt.flush:
+	cmpl $0, rt.outLen(%rip)
+	je 3f
+	pushq %rbp
+	movq %rsp, %rbp
+	pushq %rbx
+	pushq %r12
+	andq $-16, %rsp
+	leaq rt.outBuf(%rip), %rbx
+	movl rt.outLen(%rip), %r12d
+1:	testl %r12d, %r12d
+	jle 2f
+	movl $1, %edi
+	movq %rbx, %rsi
+	movl %r12d, %edx
+	call write@PLT
+	testq %rax, %rax
+	jle 2f
+	addq %rax, %rbx
+	subl %eax, %r12d
+	jmp 1b
+2:	movl $0, rt.outLen(%rip)
+	movq -16(%rbp), %r12
+	movq -8(%rbp), %rbx
+	leave
+3:	ret
+
+# buffers the byte in %dil for output; preserves %rbx, %rsi and %r12-%r15
+rt.putByte:
+	movl rt.outLen(%rip), %eax
+	cmpl $OUT_BUF_SIZE, %eax
+	jb 1f
+	pushq %rsi
+	pushq %rdi
+	call rt.flush
+	popq %rdi
+	popq %rsi
+	xorl %eax, %eax
+1:	leaq rt.outBuf(%rip), %rdx
+	movb %dil, (%rdx,%rax)
+	incl %eax
+	movl %eax, rt.outLen(%rip)
+	ret
+
+# buffers the bytes of the C string at %rsi for output
+rt.putCString:
+1:	movzbl (%rsi), %edi
+	testl %edi, %edi
+	jz 2f
+	call rt.putByte
+	incq %rsi
+	jmp 1b
+2:	ret
+
+# returns (in %eax) the next byte of input, or -1 at the end of the input;
+# the output is written out first.  Preserves %rbx and %r12-%r15.
+rt.readByte:
+	call rt.flush
+	movl rt.inPos(%rip), %eax
+	cmpl rt.inLen(%rip), %eax
+	jb 2f
+	pushq %rbp
+	movq %rsp, %rbp
+	andq $-16, %rsp
+	xorl %edi, %edi
+	leaq rt.inBuf(%rip), %rsi
+	movl $IN_BUF_SIZE, %edx
+	call read@PLT
+	leave
+	testq %rax, %rax
+	jle 1f
+	movl %eax, rt.inLen(%rip)
+	movl $0, rt.inPos(%rip)
+	xorl %eax, %eax
+2:	leaq rt.inBuf(%rip), %rdx
+	movzbl (%rdx,%rax), %ecx
+	incl %eax
+	movl %eax, rt.inPos(%rip)
+	movl %ecx, %eax
+	ret
+1:	movl $-1, %eax
+	ret
+
+# %edi is an int; leaves its decimal digits (after a '-' if it is
+# negative) in rt.numBuf, and returns their address in %rsi and their
+# number in %ecx
+rt.formatInt:
+	movslq %edi, %rax
+	movq %rax, %r8
+	leaq rt.numBuf+16(%rip), %rsi
+	testq %rax, %rax
+	jns 1f
+	negq %rax
+1:	movl $10, %r9d
+2:	xorl %edx, %edx
+	divq %r9
+	addb $'0', %dl
+	decq %rsi
+	movb %dl, (%rsi)
+	testq %rax, %rax
+	jnz 2b
+	testq %r8, %r8
+	jns 3f
+	decq %rsi
+	movb $'-', (%rsi)
+3:	leaq rt.numBuf+16(%rip), %rcx
+	subq %rsi, %rcx
+	ret
+
+# %rsi is some UTF-8 bytes and %rdx their number; returns (in %eax) the
+# number of UTF-16 characters they decode to, storing those at %rdi
+# unless that is 0.  A byte that does not start a well-formed sequence
+# decodes to U+FFFD.
+rt.utf8Decode:
+	xorl %eax, %eax
+	leaq (%rsi,%rdx), %r8
+1:	cmpq %r8, %rsi
+	jae 9f
+	movzbl (%rsi), %ecx
+	cmpl $0x80, %ecx
+	jb 7f
+	cmpl $0xC2, %ecx
+	jb 6f
+	cmpl $0xE0, %ecx
+	jb 2f
+	cmpl $0xF0, %ecx
+	jb 3f
+	cmpl $0xF5, %ecx
+	jb 4f
+	jmp 6f
+2:	# two bytes
+	leaq 2(%rsi), %r9
+	cmpq %r8, %r9
+	ja 6f
+	movzbl 1(%rsi), %edx
+	movl %edx, %r10d
+	andl $0xC0, %r10d
+	cmpl $0x80, %r10d
+	jne 6f
+	andl $0x1F, %ecx
+	shll $6, %ecx
+	andl $0x3F, %edx
+	orl %edx, %ecx
+	movq %r9, %rsi
+	jmp 8f
+3:	# three bytes, which must not be too long or a surrogate
+	leaq 3(%rsi), %r9
+	cmpq %r8, %r9
+	ja 6f
+	movzbl 1(%rsi), %edx
+	movl %edx, %r10d
+	andl $0xC0, %r10d
+	cmpl $0x80, %r10d
+	jne 6f
+	cmpl $0xE0, %ecx
+	jne 31f
+	cmpl $0xA0, %edx
+	jb 6f
+31:	cmpl $0xED, %ecx
+	jne 32f
+	cmpl $0xA0, %edx
+	jae 6f
+32:	movzbl 2(%rsi), %r10d
+	movl %r10d, %r11d
+	andl $0xC0, %r11d
+	cmpl $0x80, %r11d
+	jne 6f
+	andl $0x0F, %ecx
+	shll $12, %ecx
+	andl $0x3F, %edx
+	shll $6, %edx
+	orl %edx, %ecx
+	andl $0x3F, %r10d
+	orl %r10d, %ecx
+	movq %r9, %rsi
+	jmp 8f
+4:	# four bytes, which become a surrogate pair
+	leaq 4(%rsi), %r9
+	cmpq %r8, %r9
+	ja 6f
+	movzbl 1(%rsi), %edx
+	movl %edx, %r10d
+	andl $0xC0, %r10d
+	cmpl $0x80, %r10d
+	jne 6f
+	cmpl $0xF0, %ecx
+	jne 41f
+	cmpl $0x90, %edx
+	jb 6f
+41:	cmpl $0xF4, %ecx
+	jne 42f
+	cmpl $0x90, %edx
+	jae 6f
+42:	movzbl 2(%rsi), %r10d
+	movl %r10d, %r11d
+	andl $0xC0, %r11d
+	cmpl $0x80, %r11d
+	jne 6f
+	movzbl 3(%rsi), %r11d
+	pushq %r11
+	andl $0xC0, %r11d
+	cmpl $0x80, %r11d
+	popq %r11
+	jne 6f
+	andl $0x07, %ecx
+	shll $18, %ecx
+	andl $0x3F, %edx
+	shll $12, %edx
+	orl %edx, %ecx
+	andl $0x3F, %r10d
+	shll $6, %r10d
+	orl %r10d, %ecx
+	andl $0x3F, %r11d
+	orl %r11d, %ecx
+	movq %r9, %rsi
+	subl $0x10000, %ecx
+	movl %ecx, %edx
+	shrl $10, %edx
+	addl $0xD800, %edx
+	testq %rdi, %rdi
+	jz 5f
+	movw %dx, (%rdi,%rax,2)
+5:	incl %eax
+	andl $0x3FF, %ecx
+	addl $0xDC00, %ecx
+	jmp 8f
+6:	# not well-formed
+	movl $0xFFFD, %ecx
+7:	incq %rsi
+8:	testq %rdi, %rdi
+	jz 81f
+	movw %cx, (%rdi,%rax,2)
+81:	incl %eax
+	jmp 1b
+9:	ret
+
+#################### Object ####################
+
+m.Object.hashCode:
+	movq 8(%rsp), %rdi
+	jmp rt.identityHash
+
+m.Object.equals:
+	movq 8(%rsp), %rax
+	cmpq 16(%rsp), %rax
+	sete %al
+	movzbl %al, %eax
+	ret
+
+# the type's name, '@' and the identity hash code in hexadecimal
+m.Object.toString:
+	movq 8(%rsp), %rdi
+	call rt.identityHash
+	movl %eax, %r12d
+	movq 8(%rsp), %rax
+	movq (%rax), %rax
+	movq NAME(%rax), %rbx
+	xorl %r13d, %r13d
+1:	cmpb $0, (%rbx,%r13)
+	je 2f
+	incl %r13d
+	jmp 1b
+2:	movl $1, %r14d
+	movl %r12d, %eax
+3:	shrl $4, %eax
+	jz 4f
+	incl %r14d
+	jmp 3b
+4:	leal 1(%r13,%r14), %edi
+	call rt.newString
+	leaq BODY(%rax), %rdi
+	xorl %ecx, %ecx
+5:	cmpl %r13d, %ecx
+	jge 6f
+	movzbl (%rbx,%rcx), %edx
+	movw %dx, (%rdi,%rcx,2)
+	incl %ecx
+	jmp 5b
+6:	movw $'@', (%rdi,%rcx,2)
+	incl %ecx
+	addl %ecx, %r14d
+	leaq rt.hexDigits(%rip), %rsi
+7:	decl %r14d
+	movl %r12d, %edx
+	andl $15, %edx
+	movzbl (%rsi,%rdx), %edx
+	movw %dx, (%rdi,%r14,2)
+	shrl $4, %r12d
+	cmpl %ecx, %r14d
+	jg 7b
+	ret
+
+#################### String ####################
+
+# as in Java, the hash code is remembered once it is not 0
+m.String.hashCode:
+	movq 8(%rsp), %rdi
+	movl HASH(%rdi), %eax
+	testl %eax, %eax
+	jnz 2f
+	movl LENGTH(%rdi), %ecx
+	xorl %edx, %edx
+1:	cmpl %ecx, %edx
+	jge 3f
+	imull $31, %eax, %eax
+	movzwl BODY(%rdi,%rdx,2), %esi
+	addl %esi, %eax
+	incl %edx
+	jmp 1b
+3:	movl %eax, HASH(%rdi)
+2:	ret
+
+m.String.equals:
+	movq 16(%rsp), %rsi
+	movq 8(%rsp), %rdi
+	cmpq %rsi, %rdi
+	je 1f
+	testq %rdi, %rdi
+	jz 2f
+	leaq vt.String(%rip), %rax
+	cmpq %rax, (%rdi)
+	jne 2f
+	movl LENGTH(%rsi), %ecx
+	cmpl LENGTH(%rdi), %ecx
+	jne 2f
+	testl %ecx, %ecx
+	jz 1f
+	addq $BODY, %rsi
+	addq $BODY, %rdi
+	repe cmpsw
+	jne 2f
+1:	movl $1, %eax
+	ret
+2:	xorl %eax, %eax
+	ret
+
+m.String.toString:
+	movq 8(%rsp), %rax
+	ret
+
+# %r11 is the position of the call; as in Java, concatenating the empty
+# string gives the string itself
+m.String.concat:
+	movq 8(%rsp), %rsi
+	testq %rsi, %rsi
+	jz 2f
+	movq 16(%rsp), %rax
+	movl LENGTH(%rsi), %edi
+	testl %edi, %edi
+	jz 1f
+	addl LENGTH(%rax), %edi
+	call rt.newString
+	leaq BODY(%rax), %rdi
+	movq 16(%rsp), %rsi
+	movl LENGTH(%rsi), %ecx
+	addq $BODY, %rsi
+	rep movsw
+	movq 8(%rsp), %rsi
+	movl LENGTH(%rsi), %ecx
+	addq $BODY, %rsi
+	rep movsw
+1:	ret
+2:	movq %r11, %rdi
+	jmp rt.nullPointer
+
+# %r11 is the position of the call; as in Java, the whole string is the
+# string itself, and an empty substring is the empty string
+m.String.substring:
+	movq 40(%rsp), %rax
+	movl 32(%rsp), %esi
+	movl 16(%rsp), %edx
+	movl LENGTH(%rax), %ecx
+	testl %esi, %esi
+	js 9f
+	cmpl %ecx, %edx
+	jg 9f
+	cmpl %edx, %esi
+	jg 9f
+	testl %esi, %esi
+	jnz 1f
+	cmpl %ecx, %edx
+	je 3f
+1:	cmpl %esi, %edx
+	jne 2f
+	leaq rt.emptyString(%rip), %rax
+	ret
+2:	movl %edx, %edi
+	subl %esi, %edi
+	call rt.newString
+	movq 40(%rsp), %rsi
+	movslq 32(%rsp), %rcx
+	leaq BODY(%rsi,%rcx,2), %rsi
+	leaq BODY(%rax), %rdi
+	movl LENGTH(%rax), %ecx
+	rep movsw
+3:	ret
+9:	movq %r11, %rdi
+	jmp rt.substringError
+
+m.String.length:
+	movq 8(%rsp), %rax
+	movl LENGTH(%rax), %eax
+	ret
+
+# %r11 is the position of the call
+m.String.charAt:
+	movq 24(%rsp), %rax
+	movl 16(%rsp), %esi
+	movl LENGTH(%rax), %edx
+	cmpl %edx, %esi
+	jae 1f
+	movzwl BODY(%rax,%rsi,2), %eax
+	ret
+1:	movq %r11, %rdi
+	jmp rt.stringIndexError
+
+# %r11 is the position of the call
+m.String.compareTo:
+	movq 8(%rsp), %rdi
+	testq %rdi, %rdi
+	jz 3f
+	movq 16(%rsp), %rsi
+	movl LENGTH(%rsi), %ecx
+	movl LENGTH(%rdi), %edx
+	movl %ecx, %r8d
+	cmpl %edx, %r8d
+	jle 1f
+	movl %edx, %r8d
+1:	xorl %r9d, %r9d
+2:	cmpl %r8d, %r9d
+	jge 4f
+	movzwl BODY(%rsi,%r9,2), %eax
+	movzwl BODY(%rdi,%r9,2), %r10d
+	incl %r9d
+	subl %r10d, %eax
+	jz 2b
+	ret
+4:	movl %ecx, %eax
+	subl %edx, %eax
+	ret
+3:	movq %r11, %rdi
+	jmp rt.nullPointer
+
+#################### Lib ####################
+
+# the next line of input, without its line terminator, or null at the end
+# of the input; the line is read into rt.lineBuf, which grows as needed
+m.Lib.readLine:
+	pushq %rbp
+	movq %rsp, %rbp
+	call rt.readByte
+	cmpl $-1, %eax
+	je 8f
+	xorl %r12d, %r12d
+1:	cmpl $'\n', %eax
+	je 3f
+	cmpl $-1, %eax
+	je 3f
+	cmpq rt.lineCap(%rip), %r12
+	jb 2f
+	movl %eax, %ebx
+	movq rt.lineCap(%rip), %rsi
+	addq %rsi, %rsi
+	cmpq $256, %rsi
+	jae 11f
+	movl $256, %esi
+11:	movq %rsi, rt.lineCap(%rip)
+	movq rt.lineBuf(%rip), %rdi
+	andq $-16, %rsp
+	call realloc@PLT
+	movq %rbp, %rsp
+	testq %rax, %rax
+	jz rt.outOfMemory
+	movq %rax, rt.lineBuf(%rip)
+	movl %ebx, %eax
+2:	movq rt.lineBuf(%rip), %rdx
+	movb %al, (%rdx,%r12)
+	incq %r12
+	call rt.readByte
+	jmp 1b
+3:	testq %r12, %r12
+	jz 4f
+	movq rt.lineBuf(%rip), %rdx
+	cmpb $'\r', -1(%rdx,%r12)
+	jne 4f
+	decq %r12
+4:	movq rt.lineBuf(%rip), %rsi
+	movq %r12, %rdx
+	xorl %edi, %edi
+	call rt.utf8Decode
+	movl %eax, %edi
+	call rt.newString
+	movq %rax, %rbx
+	movq rt.lineBuf(%rip), %rsi
+	movq %r12, %rdx
+	leaq BODY(%rax), %rdi
+	call rt.utf8Decode
+	movq %rbx, %rax
+	leave
+	ret
+8:	xorl %eax, %eax
+	leave
+	ret
+
+# the next integer in the input, after any white space; the character
+# after it is left to be read next.  %r11 is the position of the call.
+m.Lib.readInt:
+	movq %r11, %rbx
+1:	call rt.readByte
+	cmpl $' ', %eax
+	je 1b
+	cmpl $'\t', %eax
+	je 1b
+	cmpl $'\n', %eax
+	je 1b
+	cmpl $'\r', %eax
+	je 1b
+	xorl %r12d, %r12d
+	cmpl $'-', %eax
+	jne 2f
+	movl $1, %r12d
+	call rt.readByte
+2:	subl $'0', %eax
+	cmpl $9, %eax
+	ja 8f
+	movl %eax, %r13d
+3:	call rt.readByte
+	movl %eax, %ecx
+	subl $'0', %ecx
+	cmpl $9, %ecx
+	ja 4f
+	imull $10, %r13d, %r13d
+	addl %ecx, %r13d
+	jmp 3b
+4:	cmpl $-1, %eax
+	je 5f
+	decl rt.inPos(%rip)
+5:	movl %r13d, %eax
+	testl %r12d, %r12d
+	jz 6f
+	negl %eax
+6:	ret
+8:	movq %rbx, %rdi
+	jmp rt.noIntegerError
+
+m.Lib.readChar:
+	jmp rt.readByte
+
+# a string's characters are written in UTF-8; an unpaired surrogate is
+# written as '?'
+m.Lib.printStr:
+	movq 8(%rsp), %rbx
+	testq %rbx, %rbx
+	jnz 1f
+	leaq rt.null(%rip), %rsi
+	jmp rt.putCString
+1:	movl LENGTH(%rbx), %r12d
+	xorl %r13d, %r13d
+2:	cmpl %r12d, %r13d
+	jge 9f
+	movzwl BODY(%rbx,%r13,2), %r14d
+	incl %r13d
+	movl %r14d, %edi
+	cmpl $0x80, %r14d
+	jb 8f
+	cmpl $0x800, %r14d
+	jae 3f
+	shrl $6, %edi
+	orl $0xC0, %edi
+	call rt.putByte
+	jmp 7f
+3:	movl %r14d, %eax
+	andl $0xF800, %eax
+	cmpl $0xD800, %eax
+	je 4f
+	shrl $12, %edi
+	orl $0xE0, %edi
+	call rt.putByte
+	jmp 6f
+4:	# a surrogate, which must be a high one followed by a low one
+	cmpl $0xDC00, %r14d
+	jae 5f
+	cmpl %r12d, %r13d
+	jge 5f
+	movzwl BODY(%rbx,%r13,2), %eax
+	movl %eax, %edx
+	andl $0xFC00, %edx
+	cmpl $0xDC00, %edx
+	jne 5f
+	incl %r13d
+	subl $0xD800, %r14d
+	shll $10, %r14d
+	subl $0xDC00, %eax
+	addl %eax, %r14d
+	addl $0x10000, %r14d
+	movl %r14d, %edi
+	shrl $18, %edi
+	orl $0xF0, %edi
+	call rt.putByte
+	movl %r14d, %edi
+	shrl $12, %edi
+	andl $0x3F, %edi
+	orl $0x80, %edi
+	call rt.putByte
+	jmp 6f
+5:	movl $'?', %edi
+	jmp 8f
+6:	movl %r14d, %edi
+	shrl $6, %edi
+	andl $0x3F, %edi
+	orl $0x80, %edi
+	call rt.putByte
+7:	movl %r14d, %edi
+	andl $0x3F, %edi
+	orl $0x80, %edi
+8:	call rt.putByte
+	jmp 2b
+9:	ret
+
+m.Lib.printBool:
+	leaq rt.false(%rip), %rsi
+	cmpl $0, 16(%rsp)
+	je 1f
+	leaq rt.true(%rip), %rsi
+1:	jmp rt.putCString
+
+m.Lib.printInt:
+	movl 16(%rsp), %edi
+	call rt.formatInt
+	movl %ecx, %r12d
+1:	movzbl (%rsi), %edi
+	call rt.putByte
+	incq %rsi
+	decl %r12d
+	jnz 1b
+	ret
+
+m.Lib.intToString:
+	movl 16(%rsp), %edi
+	call rt.formatInt
+	movq %rsi, %rbx
+	movl %ecx, %r12d
+	movl %ecx, %edi
+	call rt.newString
+	xorl %ecx, %ecx
+1:	movzbl (%rbx,%rcx), %edx
+	movw %dx, BODY(%rax,%rcx,2)
+	incl %ecx
+	cmpl %r12d, %ecx
+	jl 1b
+	ret
+
+m.Lib.intToChar:
+	movl $1, %edi
+	call rt.newString
+	movl 16(%rsp), %edx
+	movw %dx, BODY(%rax)
+	ret
+
+	.section .note.GNU-stack,"",@progbits
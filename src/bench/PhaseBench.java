@@ -0,0 +1,252 @@
+package bench;
+
+import java.io.*;
+import java.util.*;
+
+import parse.*;
+import syntaxtree.*;
+import treedisplay.*;
+import visitor.*;
+import errorMsg.*;
+
+// Measures each phase of the compiler separately, over a set of MiniJava
+// input files:
+//   java bench.PhaseBench [-w <warmup-ms>] [-m <measure-ms>] [-n <min-ops>] [file ...]
+// With no files, TypeErrors.java and Unreachable.java are used.
+//
+// For each input and phase, the phases before it are re-run (untimed)
+// to give it a fresh AST, since most phases modify the tree; the phase
+// is then timed on its own.  Each phase is run repeatedly for the warmup
+// period (results discarded, so the JIT settles) and then for the
+// measurement period, or until it has run min-ops times (10 by default)
+// if that takes longer, so that a slow phase still gets a usable mean and
+// minimum.  A phase is skipped ("-") for an input on which an
+// earlier phase reports errors, just as Main4 would skip it.
+//
+// The results are printed as a table (microseconds per operation) and
+// are meant to be compared against bench/baseline.txt, which also covers
+// a medium and a large generated program (see ProgramGenerator):
+//   java bench.ProgramGenerator -classes 10 -o gen10.java
+//   java bench.ProgramGenerator -classes 100 -o gen100.java
+// "grammar" is the grammar parse alone; "trim" and "intern" are the
+// passes that Main4 runs over the tree straight after it.
+public class PhaseBench {
+
+	private static final String[] DEFAULT_INPUTS = {
+		"Unreachable.java", "TypeErrors.java",
+	};
+
+	private static final String[] PHASES = {
+		"scan", "grammar", "trim", "intern", "sem1", "sem2", "sem3", "hier",
+		"sem4", "sem5", "sem4+5", "prettyprint", "treeprint",
+	};
+
+	private static final PrintStream NULL_STREAM =
+		new PrintStream(OutputStream.nullOutputStream());
+
+	// results are stored here, so that the JIT cannot discard the work
+	public static volatile Object sink;
+
+	private long warmupNanos = 2000L * 1000000;
+	private long measureNanos = 3000L * 1000000;
+	private long minOps = 10;
+
+	public static void main(String[] args) throws IOException {
+		PhaseBench bench = new PhaseBench();
+		Vector<String> inputs = new Vector<String>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-w") && i+1 < args.length) {
+				bench.warmupNanos = Long.parseLong(args[++i]) * 1000000;
+			}
+			else if (args[i].equals("-m") && i+1 < args.length) {
+				bench.measureNanos = Long.parseLong(args[++i]) * 1000000;
+			}
+			else if (args[i].equals("-n") && i+1 < args.length) {
+				bench.minOps = Math.max(1, Long.parseLong(args[++i]));
+			}
+			else {
+				inputs.addElement(args[i]);
+			}
+		}
+		if (inputs.isEmpty()) {
+			inputs.addAll(Arrays.asList(DEFAULT_INPUTS));
+		}
+		System.out.println("# java " + System.getProperty("java.version") +
+				", " + Runtime.getRuntime().availableProcessors() + " cpus");
+		System.out.printf("%-28s %-12s %8s %12s %12s%n",
+				"input", "phase", "ops", "mean(us)", "min(us)");
+		for (String input : inputs) {
+			bench.benchInput(input);
+		}
+	}
+
+	// one input file, its text and its filtered (scanned) text
+	private String fileName;
+	private byte[] source;
+	private byte[] filtered;
+
+	private void benchInput(String name) throws IOException {
+		fileName = name;
+		source = readFile(name);
+		filtered = scan();
+		String label = new File(name).getName() + " (" + source.length + "B)";
+		for (String phase : PHASES) {
+			if (!runnable(phase)) {
+				System.out.printf("%-28s %-12s %8s %12s %12s%n",
+						label, phase, "-", "-", "-");
+				continue;
+			}
+			long[] stats = measure(phase);
+			System.out.printf("%-28s %-12s %8d %12.1f %12.1f%n",
+					label, phase, stats[0], stats[1]/1000.0/stats[0], stats[2]/1000.0);
+		}
+	}
+
+	// runs the phase repeatedly; returns {ops, total nanos, min nanos}
+	private long[] measure(String phase) {
+		long end = System.nanoTime() + warmupNanos;
+		do {
+			runOnce(phase);
+		} while (System.nanoTime() < end);
+		long ops = 0;
+		long total = 0;
+		long min = Long.MAX_VALUE;
+		end = System.nanoTime() + measureNanos;
+		do {
+			long t = runOnce(phase);
+			ops++;
+			total += t;
+			min = Math.min(min, t);
+		} while (System.nanoTime() < end || ops < minOps);
+		return new long[]{ops, total, min};
+	}
+
+	// whether every phase before this one runs without errors
+	private boolean runnable(String phase) {
+		State st = prepare(phase);
+		return st != null;
+	}
+
+	// the state a phase starts from
+	private static class State {
+		ErrorMsg errorMsg;
+		Program ast;
+		Hashtable<String,ClassDecl> globalTab;
+	}
+
+	// runs the phase once on fresh state; returns the elapsed nanoseconds
+	private long runOnce(String phase) {
+		State st = prepare(phase);
+		long start = System.nanoTime();
+		switch (phase) {
+		case "scan":
+			sink = scan();
+			break;
+		case "grammar":
+			sink = parse(st.errorMsg);
+			break;
+		default:
+			runPhase(phase, st);
+			sink = st;
+			break;
+		}
+		return System.nanoTime() - start;
+	}
+
+	// runs every phase before the given one; returns null if any of them
+	// reported an error.  The printing phases start from the tree as Main4
+	// would leave it: checked as far as the first phase with errors.
+	private State prepare(String phase) {
+		State st = new State();
+		st.errorMsg = new ErrorMsg(fileName, NULL_STREAM);
+		if (phase.equals("scan") || phase.equals("grammar")) {
+			return st;
+		}
+		st.ast = parse(st.errorMsg);
+		if (st.ast == null || st.errorMsg.anyErrors) return null;
+		if (phase.equals("trim")) {
+			return st;
+		}
+		st.ast.accept(new ListTrimVisitor());
+		if (phase.equals("intern")) {
+			return st;
+		}
+		st.ast.accept(new NameInternVisitor());
+		if (phase.equals("sem4+5")) {
+			phase = "sem4"; // an alternative to sem4 and sem5, so same start
+		}
+		boolean printing = phase.equals("prettyprint") || phase.equals("treeprint");
+		for (String p : PHASES) {
+			if (p.equals("scan") || p.equals("grammar") || p.equals("trim") ||
+					p.equals("intern") || p.equals("sem4+5")) continue;
+			if (p.equals(phase) || p.equals("prettyprint")) break;
+			if (st.errorMsg.anyErrors) {
+				if (printing) break;
+				return null;
+			}
+			runPhase(p, st);
+		}
+		if (st.errorMsg.anyErrors && !printing) return null;
+		return st;
+	}
+
+	private void runPhase(String phase, State st) {
+		switch (phase) {
+		case "trim":
+			st.ast.accept(new ListTrimVisitor());
+			break;
+		case "intern":
+			st.ast.accept(new NameInternVisitor());
+			break;
+		case "sem1":
+			Sem1Visitor s1 = new Sem1Visitor(st.errorMsg);
+			s1.visit(st.ast);
+			st.globalTab = s1.getGlobalSymTab();
+			break;
+		case "sem2":
+			new Sem2Visitor(st.globalTab, st.errorMsg).visit(st.ast);
+			break;
+		case "sem3":
+			new Sem3Visitor(st.globalTab, st.errorMsg).visit(st.ast);
+			break;
+		case "hier":
+			new HierarchyNumberer().number(st.globalTab);
+			break;
+		case "sem4":
+			new Sem4Visitor(st.globalTab, st.errorMsg).visit(st.ast);
+			break;
+		case "sem5":
+			new Sem5Visitor(st.errorMsg).visit(st.ast);
+			break;
+		case "sem4+5":
+			new Sem45Visitor(st.globalTab, st.errorMsg).visit(st.ast);
+			break;
+		case "prettyprint":
+			st.ast.accept(new PrettyPrintVisitor(true, true, false, NULL_STREAM));
+			break;
+		case "treeprint":
+			new TreeDrawer(st.ast, null).printToStream(NULL_STREAM);
+			break;
+		}
+	}
+
+	private byte[] scan() {
+		ByteArrayOutputStream os = new ByteArrayOutputStream(source.length);
+		ErrorMsg err = new ErrorMsg(fileName, NULL_STREAM);
+		new MJScannerParseTable(new MJScanner(err, os)).parse(
+				new ByteArrayInputStream(source), 0, false);
+		return os.toByteArray();
+	}
+
+	private Program parse(ErrorMsg err) {
+		MJGrammar mj = new MJGrammar(err);
+		new MJGrammarParseTable(mj).parse(new ByteArrayInputStream(filtered), 0, false);
+		return mj.parseResult();
+	}
+
+	private static byte[] readFile(String name) throws IOException {
+		try (InputStream is = new FileInputStream(name)) {
+			return is.readAllBytes();
+		}
+	}
+}
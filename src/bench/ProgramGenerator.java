@@ -0,0 +1,653 @@
+package bench;
+
+import java.io.*;
+import java.util.*;
+
+// Writes a synthetic MiniJava program of a chosen size and shape, for
+// benchmarks and stress tests that need more than the small sample files:
+//   java bench.ProgramGenerator [options] [-o <file>]
+// The options (with their defaults) are
+//   -classes <n>    number of classes, besides Main (100)
+//   -depth <n>      greatest inheritance depth; classes form chains of
+//                   this many subclasses under a base class (3)
+//   -methods <n>    methods per class, besides 'run' (5)
+//   -stmts <n>      statements per block (4)
+//   -nesting <n>    greatest nesting of compound statements (3)
+//   -switch <pct>   percentage of compound statements that are switches (20)
+//   -expsize <n>    operators per expression (3)
+//   -errors <n>     number of deliberate type errors to put in (0)
+//   -seed <n>       seed for the random choices (1)
+// Without '-o', the program goes to standard output.
+//
+// The program uses only constructs that the grammar (MJGrammar) accepts:
+// classes with 'extends', instance variables, void and non-void methods,
+// local declarations, assignments, ++ and --, if/else, while, do-while,
+// for, switch with case and default labels, break, blocks, method calls
+// (including super calls), instanceof, casts, arrays and string literals.
+// Without '-errors', it passes every semantic phase.  It also terminates
+// when run: loops count up to a small bound using variables that nothing
+// else assigns, only 'run' makes calls (outside loops, to the class's
+// other methods, and to its superclass's 'run'), and nothing is divided
+// by a variable.  Arrays are indexed only by constants below their
+// (fixed) length.  Main prints the result of each class's 'run', so that
+// runs of the program (e.g., with '-run' and '-vm') can be compared.
+//
+// The same options and seed always give the same program, so a generated
+// file can be named by its options instead of being kept.  With the other
+// options at their defaults, each class comes to about 2000 AST nodes, so
+//   -classes 1000
+// gives a program of about two million nodes.
+public class ProgramGenerator {
+
+	private static final int LOOP_BOUND = 2;
+	private static final int NUM_CASES = 3;
+	private static final int ARRAY_SIZE = 4;
+
+	private int numClasses = 100;
+	private int maxDepth = 3;
+	private int numMethods = 5;
+	private int numStmts = 4;
+	private int maxNesting = 3;
+	private int switchPercent = 20;
+	private int expSize = 3;
+	private int numErrors = 0;
+	private long seed = 1;
+
+	private Random rand;
+	private PrintWriter out;
+	private StringBuilder sb;
+
+	// the (class, method) pairs that get an error, as class*(numMethods+1)+method
+	private HashSet<Long> errorSites;
+
+	// the class being written: its number, and the int and boolean
+	// instance variables it can see (its own and its superclasses')
+	private int classNum;
+	private Vector<String> intFields;
+	private Vector<String> boolFields;
+
+	// the method being written: its number ('numMethods' for 'run'), its
+	// in-scope locals, which of them may be assigned to, and a counter for
+	// naming new ones
+	private int methodNum;
+	private Vector<String> intVars;
+	private Vector<String> boolVars;
+	private Vector<String> arrayVars;
+	private HashSet<String> readOnly;
+	private int localCounter;
+	private int loopDepth;
+	private int errorCounter;
+
+	public static void main(String[] args) throws IOException {
+		ProgramGenerator gen = new ProgramGenerator();
+		String outName = null;
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (i+1 >= args.length) usage("Missing value after '" + arg + "'");
+			String val = args[++i];
+			try {
+				switch (arg) {
+				case "-classes": gen.numClasses = nonNegative(arg, val); break;
+				case "-depth": gen.maxDepth = nonNegative(arg, val); break;
+				case "-methods": gen.numMethods = nonNegative(arg, val); break;
+				case "-stmts": gen.numStmts = nonNegative(arg, val); break;
+				case "-nesting": gen.maxNesting = nonNegative(arg, val); break;
+				case "-switch": gen.switchPercent = Math.min(100, nonNegative(arg, val)); break;
+				case "-expsize": gen.expSize = nonNegative(arg, val); break;
+				case "-errors": gen.numErrors = nonNegative(arg, val); break;
+				case "-seed": gen.seed = Long.parseLong(val); break;
+				case "-o": outName = val; break;
+				default: usage("Unknown option '" + arg + "'");
+				}
+			}
+			catch (NumberFormatException nfx) {
+				usage("Bad number after '" + arg + "': " + val);
+			}
+		}
+		Writer w = outName == null
+				? new OutputStreamWriter(System.out)
+				: new FileWriter(outName);
+		try (PrintWriter pw = new PrintWriter(new BufferedWriter(w, 1 << 16))) {
+			gen.generate(pw);
+		}
+	}
+
+	private static int nonNegative(String arg, String val) {
+		int n = Integer.parseInt(val);
+		if (n < 0) usage("Negative value after '" + arg + "'");
+		return n;
+	}
+
+	private static void usage(String msg) {
+		System.err.println(msg);
+		System.err.println("Usage: java bench.ProgramGenerator [-classes n] [-depth n] " +
+				"[-methods n] [-stmts n] [-nesting n] [-switch pct] [-expsize n] " +
+				"[-errors n] [-seed n] [-o file]");
+		System.exit(1);
+	}
+
+	// writes the whole program
+	public void generate(PrintWriter pw) {
+		rand = new Random(seed);
+		out = pw;
+		sb = new StringBuilder(1 << 12);
+		errorSites = new HashSet<Long>();
+		long numSites = (long)Math.max(1, numClasses) * (numMethods+1);
+		while (errorSites.size() < Math.min(numErrors, numSites)) {
+			errorSites.add((long)(rand.nextDouble() * numSites));
+		}
+		errorCounter = 0;
+
+		sb.append("class Main {\n");
+		sb.append("\tpublic void main() {\n");
+		sb.append("\t\tLib lib = new Lib();\n");
+		for (int i = 0; i < numClasses; i++) {
+			sb.append("\t\tint r").append(i).append(" = new ").append(className(i))
+				.append("().run(").append(i).append(", true);\n");
+			sb.append("\t\tlib.printInt(r").append(i).append(");\n");
+			sb.append("\t\tlib.printStr(\"\\n\");\n");
+			flushIfLarge();
+		}
+		sb.append("\t}\n");
+		sb.append("}\n");
+		intFields = new Vector<String>();
+		boolFields = new Vector<String>();
+		for (classNum = 0; classNum < numClasses; classNum++) {
+			writeClass();
+			flushIfLarge();
+		}
+		out.append(sb);
+		out.flush();
+	}
+
+	private void flushIfLarge() {
+		if (sb.length() >= 1 << 16) {
+			out.append(sb);
+			sb.setLength(0);
+		}
+	}
+
+	private static String className(int i) {
+		return "C" + i;
+	}
+
+	private int depthOf(int cls) {
+		return cls % (maxDepth+1);
+	}
+
+	private void writeClass() {
+		int depth = depthOf(classNum);
+		if (depth == 0) {
+			intFields.clear();
+			boolFields.clear();
+		}
+		sb.append("\nclass ").append(className(classNum));
+		if (depth > 0) {
+			sb.append(" extends ").append(className(classNum-1));
+		}
+		sb.append(" {\n");
+		String fi = "f" + classNum;
+		String fb = "g" + classNum;
+		sb.append("\tint ").append(fi).append(";\n");
+		sb.append("\tboolean ").append(fb).append(";\n");
+		sb.append("\tString s").append(classNum).append(";\n");
+		intFields.addElement(fi);
+		boolFields.addElement(fb);
+		for (methodNum = 0; methodNum < numMethods; methodNum++) {
+			writeMethod();
+		}
+		methodNum = numMethods;
+		writeMethod();
+		sb.append("}\n");
+	}
+
+	// writes method number 'methodNum' of the current class: m<class>_<n>,
+	// or, for n == numMethods, 'run', which every class has and overrides
+	private void writeMethod() {
+		intVars = new Vector<String>();
+		boolVars = new Vector<String>();
+		arrayVars = new Vector<String>();
+		readOnly = new HashSet<String>();
+		localCounter = 0;
+		loopDepth = 0;
+		boolean isRun = methodNum == numMethods;
+		sb.append("\n\tpublic int ")
+			.append(isRun ? "run" : methodName(classNum, methodNum))
+			.append("(int p, boolean q) {\n");
+		intVars.addElement("p");
+		boolVars.addElement("q");
+		if (errorSites.contains((long)classNum * (numMethods+1) + methodNum)) {
+			writeError(2);
+		}
+		if (isRun && depthOf(classNum) > 0) {
+			indent(2).append("int sup = super.run(p, q);\n");
+			intVars.addElement("sup");
+		}
+		writeStmts(2, 0);
+		indent(2).append("return ");
+		writeIntExp(expSize);
+		sb.append(";\n");
+		sb.append("\t}\n");
+	}
+
+	private static String methodName(int cls, int meth) {
+		return "m" + cls + "_" + meth;
+	}
+
+	private StringBuilder indent(int level) {
+		for (int i = 0; i < level; i++) {
+			sb.append('\t');
+		}
+		return sb;
+	}
+
+	private String newLocal(String prefix) {
+		return prefix + (localCounter++);
+	}
+
+	// writes a block's statements; locals declared in it go out of scope
+	// at its end
+	private void writeStmts(int indent, int nesting) {
+		int ni = intVars.size();
+		int nb = boolVars.size();
+		int na = arrayVars.size();
+		for (int i = 0; i < numStmts; i++) {
+			writeStmt(indent, nesting);
+		}
+		intVars.setSize(ni);
+		boolVars.setSize(nb);
+		arrayVars.setSize(na);
+	}
+
+	private void writeBlock(int indent, int nesting) {
+		sb.append("{\n");
+		writeStmts(indent+1, nesting+1);
+		indent(indent).append("}");
+	}
+
+	private void writeStmt(int indent, int nesting) {
+		if (nesting < maxNesting && rand.nextInt(100) < 35) {
+			writeCompound(indent, nesting);
+		}
+		else {
+			writeSimple(indent, true);
+		}
+	}
+
+	// an if, loop, switch or block
+	private void writeCompound(int indent, int nesting) {
+		indent(indent);
+		if (rand.nextInt(100) < switchPercent) {
+			writeSwitch(indent, nesting);
+			return;
+		}
+		switch (rand.nextInt(5)) {
+		case 0: {
+			sb.append("if (");
+			writeBoolExp(expSize);
+			sb.append(") ");
+			writeBlock(indent, nesting);
+			if (rand.nextBoolean()) {
+				sb.append("\n");
+				indent(indent).append("else ");
+				writeBlock(indent, nesting);
+			}
+			sb.append("\n");
+			break;
+		}
+		case 1: {
+			String v = newLocal("w");
+			sb.append("int ").append(v).append(" = 0;\n");
+			indent(indent).append("while (").append(v).append(" < ").append(LOOP_BOUND).append(") ");
+			loopBody(v, indent, nesting, true);
+			break;
+		}
+		case 2: {
+			String v = newLocal("d");
+			sb.append("int ").append(v).append(" = 0;\n");
+			indent(indent).append("do ");
+			loopBody(v, indent, nesting, true);
+			sb.setLength(sb.length()-1);
+			sb.append(" while (").append(v).append(" < ").append(LOOP_BOUND).append(");\n");
+			break;
+		}
+		case 3: {
+			String v = newLocal("i");
+			sb.append("for (int ").append(v).append(" = 0; ").append(v).append(" < ")
+				.append(LOOP_BOUND).append("; ").append(v).append("++) ");
+			loopBody(v, indent, nesting, false);
+			break;
+		}
+		default:
+			writeBlock(indent, nesting);
+			sb.append("\n");
+			break;
+		}
+	}
+
+	// a loop body, in which 'counter' may be read but not assigned to; if
+	// 'step', the body ends by incrementing the counter
+	private void loopBody(String counter, int indent, int nesting, boolean step) {
+		intVars.addElement(counter);
+		readOnly.add(counter);
+		loopDepth++;
+		sb.append("{\n");
+		writeStmts(indent+1, nesting+1);
+		if (step) {
+			indent(indent+1).append(counter).append("++;\n");
+		}
+		indent(indent).append("}\n");
+		loopDepth--;
+		intVars.removeElement(counter);
+	}
+
+	private void writeSwitch(int indent, int nesting) {
+		sb.append("switch (");
+		writeIntExp(expSize);
+		sb.append(") {\n");
+		int[] labels = new int[NUM_CASES];
+		int label = rand.nextInt(10);
+		for (int i = 0; i < NUM_CASES; i++) {
+			label += 1 + rand.nextInt(5);
+			labels[i] = label;
+		}
+		for (int i = 0; i <= NUM_CASES; i++) {
+			indent(indent+1);
+			if (i < NUM_CASES) {
+				sb.append("case ").append(labels[i]).append(":\n");
+			}
+			else {
+				sb.append("default:\n");
+			}
+			if (nesting+1 < maxNesting && rand.nextInt(100) < 25) {
+				indent(indent+2);
+				writeBlock(indent+2, nesting+1);
+				sb.append("\n");
+			}
+			else {
+				int n = 1 + rand.nextInt(Math.max(1, numStmts));
+				for (int j = 0; j < n; j++) {
+					writeSimple(indent+2, false);
+				}
+			}
+			if (i < NUM_CASES || rand.nextBoolean()) {
+				indent(indent+2).append("break;\n");
+			}
+		}
+		indent(indent).append("}\n");
+	}
+
+	// a statement with no nested statements; local declarations are
+	// allowed only if 'declOk' (not directly under a case label)
+	private void writeSimple(int indent, boolean declOk) {
+		indent(indent);
+		int kind = rand.nextInt(declOk ? 10 : 7);
+		switch (kind) {
+		case 0:
+		case 1: {
+			String v = assignableInt();
+			if (v == null) {
+				writeFieldAssign();
+				break;
+			}
+			sb.append(v).append(" = ");
+			writeIntExp(expSize);
+			sb.append(";\n");
+			break;
+		}
+		case 2: {
+			String v = assignableInt();
+			if (v == null) {
+				writeFieldAssign();
+				break;
+			}
+			sb.append(v).append(rand.nextBoolean() ? "++" : "--").append(";\n");
+			break;
+		}
+		case 3:
+			if (!arrayVars.isEmpty() && rand.nextBoolean()) {
+				sb.append(pick(arrayVars)).append("[").append(rand.nextInt(ARRAY_SIZE))
+					.append("] = ");
+				writeIntExp(expSize);
+				sb.append(";\n");
+				break;
+			}
+			writeFieldAssign();
+			break;
+		case 4: {
+			String b = pick(boolVars);
+			sb.append(b).append(" = ");
+			writeBoolExp(expSize);
+			sb.append(";\n");
+			break;
+		}
+		case 5:
+			if (methodNum == numMethods && numMethods > 0 && loopDepth == 0) {
+				writeCall(expSize);
+				sb.append(";\n");
+			}
+			else {
+				sb.append("this.s").append(classNum).append(" = \"")
+					.append(newLocal("str")).append("\";\n");
+			}
+			break;
+		case 6: {
+			// a cast to the class itself, as through a superclass reference
+			String f = pick(intFields);
+			sb.append(f).append(" = ((").append(className(classNum)).append(")this).")
+				.append(f).append(" + 1;\n");
+			break;
+		}
+		case 7: {
+			String v = newLocal("v");
+			sb.append("int ").append(v).append(" = ");
+			writeIntExp(expSize);
+			sb.append(";\n");
+			intVars.addElement(v);
+			break;
+		}
+		case 8: {
+			String v = newLocal("b");
+			sb.append("boolean ").append(v).append(" = ");
+			writeBoolExp(expSize);
+			sb.append(";\n");
+			boolVars.addElement(v);
+			break;
+		}
+		default: {
+			String v = newLocal("a");
+			sb.append("int[] ").append(v).append(" = new int[").append(ARRAY_SIZE).append("];\n");
+			arrayVars.addElement(v);
+			break;
+		}
+		}
+	}
+
+	private void writeFieldAssign() {
+		sb.append("this.").append(pick(intFields)).append(" = ");
+		writeIntExp(expSize);
+		sb.append(";\n");
+	}
+
+	// an int local that is not a loop counter, or null if there is none
+	private String assignableInt() {
+		int start = rand.nextInt(intVars.size());
+		for (int i = 0; i < intVars.size(); i++) {
+			String v = intVars.elementAt((start + i) % intVars.size());
+			if (!readOnly.contains(v)) return v;
+		}
+		return null;
+	}
+
+	private String pick(Vector<String> names) {
+		return names.elementAt(rand.nextInt(names.size()));
+	}
+
+	// a call of one of the current class's other methods
+	private void writeCall(int size) {
+		int target = rand.nextInt(numMethods);
+		sb.append(rand.nextBoolean() ? "this." : "")
+			.append(methodName(classNum, target)).append("(");
+		writeIntExp(size/2);
+		sb.append(", ");
+		writeBoolExp(size/2);
+		sb.append(")");
+	}
+
+	// an int expression with (about) 'size' operators
+	private void writeIntExp(int size) {
+		if (size <= 0) {
+			writeIntAtom();
+			return;
+		}
+		int left = rand.nextInt(size);
+		int right = size - 1 - left;
+		switch (rand.nextInt(8)) {
+		case 0:
+			sb.append("-(");
+			writeIntExp(size-1);
+			sb.append(")");
+			break;
+		case 1:
+			sb.append("(");
+			writeIntExp(left);
+			sb.append(" * ");
+			writeIntExp(right);
+			sb.append(")");
+			break;
+		case 2:
+			sb.append("(");
+			writeIntExp(left);
+			sb.append(rand.nextBoolean() ? " / " : " % ")
+				.append(1 + rand.nextInt(9)).append(")");
+			break;
+		case 3:
+		case 4:
+			sb.append("(");
+			writeIntExp(left);
+			sb.append(" - ");
+			writeIntExp(right);
+			sb.append(")");
+			break;
+		default:
+			sb.append("(");
+			writeIntExp(left);
+			sb.append(" + ");
+			writeIntExp(right);
+			sb.append(")");
+			break;
+		}
+	}
+
+	private void writeIntAtom() {
+		switch (rand.nextInt(8)) {
+		case 0:
+		case 1:
+			sb.append(rand.nextInt(100));
+			break;
+		case 2:
+			sb.append("this.").append(pick(intFields));
+			break;
+		case 3:
+			sb.append(pick(intFields));
+			break;
+		case 4:
+			if (!arrayVars.isEmpty()) {
+				sb.append(pick(arrayVars));
+				if (rand.nextBoolean()) {
+					sb.append(".length");
+				}
+				else {
+					sb.append("[").append(rand.nextInt(ARRAY_SIZE)).append("]");
+				}
+			}
+			else {
+				sb.append(pick(intVars));
+			}
+			break;
+		default:
+			sb.append(pick(intVars));
+			break;
+		}
+	}
+
+	// a boolean expression with (about) 'size' operators
+	private void writeBoolExp(int size) {
+		if (size <= 0) {
+			writeBoolAtom();
+			return;
+		}
+		int left = rand.nextInt(size);
+		int right = size - 1 - left;
+		switch (rand.nextInt(7)) {
+		case 0:
+			sb.append("!");
+			writeBoolExp(size-1);
+			break;
+		case 1:
+			sb.append("(");
+			writeBoolExp(left);
+			sb.append(" && ");
+			writeBoolExp(right);
+			sb.append(")");
+			break;
+		case 2:
+			sb.append("(");
+			writeBoolExp(left);
+			sb.append(" || ");
+			writeBoolExp(right);
+			sb.append(")");
+			break;
+		default: {
+			String[] ops = {" < ", " > ", " <= ", " >= ", " == ", " != "};
+			sb.append("(");
+			writeIntExp(left);
+			sb.append(ops[rand.nextInt(ops.length)]);
+			writeIntExp(right);
+			sb.append(")");
+			break;
+		}
+		}
+	}
+
+	private void writeBoolAtom() {
+		switch (rand.nextInt(6)) {
+		case 0:
+			sb.append(rand.nextBoolean() ? "true" : "false");
+			break;
+		case 1:
+			sb.append(pick(boolFields));
+			break;
+		case 2:
+			sb.append("(this instanceof ").append(className(classNum)).append(")");
+			break;
+		default:
+			sb.append(pick(boolVars));
+			break;
+		}
+	}
+
+	// a statement with a type error, cycling through a few kinds
+	private void writeError(int indent) {
+		indent(indent);
+		String v = "err" + errorCounter;
+		switch (errorCounter++ % 4) {
+		case 0:
+			// an int initializer for a boolean
+			sb.append("boolean ").append(v).append(" = 1;\n");
+			break;
+		case 1:
+			// an undeclared variable
+			sb.append(v).append(" = p;\n");
+			break;
+		case 2:
+			// a method that does not exist
+			sb.append("this.").append(v).append("(p);\n");
+			break;
+		default:
+			// '&&' on ints
+			sb.append("int ").append(v).append(" = p && 1;\n");
+			break;
+		}
+	}
+}
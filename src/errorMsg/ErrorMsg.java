@@ -3,21 +3,36 @@ package errorMsg;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import terminal.*;
 
 public class ErrorMsg {
 	
-	private LineList linePos = new LineList(-1,null);
+	// lineStarts[i] is the position just before line i+1 starts (-1 for
+	// the first line); only the first lineNum entries are in use
+	private int[] lineStarts = initLineStarts();
 	private int lineNum=1;
+	private boolean lineStartsSorted = true;
 	private String filename;
 	public boolean anyErrors;
 	private boolean doFrame;
+	private PrintStream msgStream;
+	private ArrayList<String> heldMessages; // null unless messages are held
 	GuiTerminal2 terminal;
 	
 	
 	public ErrorMsg(String f) {
+		this(f, System.err);
+	}
+	
+	// messages go to the given stream rather than System.err; used when
+	// several files are compiled at once, so each keeps its own diagnostics
+	public ErrorMsg(String f, PrintStream ms) {
 		filename=f;
 		doFrame = false;
+		msgStream = ms;
 	}
 	
 	public String getFileName() {
@@ -36,9 +51,20 @@ public class ErrorMsg {
 		
 	}
 	
+	private static int[] initLineStarts() {
+		int[] rtnVal = new int[256];
+		rtnVal[0] = -1;
+		return rtnVal;
+	}
+	
 	public void newline(int pos) {
-		lineNum++;
-		linePos = new LineList(pos,linePos);
+		if (lineNum == lineStarts.length) {
+			lineStarts = Arrays.copyOf(lineStarts, lineNum*2);
+		}
+		if (pos < lineStarts[lineNum-1]) {
+			lineStartsSorted = false;
+		}
+		lineStarts[lineNum++] = pos;
 	}
 	
 	public void error(int pos, String msg) {
@@ -55,38 +81,143 @@ public class ErrorMsg {
 		msgOut(s);
 	}
 	
+	// the line table: element i is the position just before line i+1
+	// starts; saved along with a tree, so that its positions can still be
+	// resolved when it is reloaded
+	public int[] getLineStarts() {
+		return Arrays.copyOf(lineStarts, lineNum);
+	}
+	
+	// replaces the file name and line table with those of the source that
+	// a reloaded tree was compiled from
+	public void setSource(String f, int[] starts) {
+		filename = f;
+		if (starts.length == 0) {
+			lineStarts = initLineStarts();
+			lineNum = 1;
+		}
+		else {
+			lineStarts = Arrays.copyOf(starts, starts.length);
+			lineNum = starts.length;
+		}
+		lineStartsSorted = true;
+		for (int i = 1; i < lineNum; i++) {
+			if (lineStarts[i] < lineStarts[i-1]) {
+				lineStartsSorted = false;
+			}
+		}
+	}
+	
 	public String lineAndChar(int pos) {
-		int n = lineNum;
-		LineList p = linePos;
-		while (p!=null) {
-			if (p.head<pos) {
-				return String.valueOf(n) + "." + String.valueOf(pos-p.head);
+		return lineAndChar(pos, lineIndex(pos));
+	}
+	
+	// resolves many positions at once: the positions are visited in sorted
+	// order, so each line-table entry is passed over at most once; the
+	// result for positions[i] is in element i of the returned array
+	public String[] lineAndChar(int[] positions) {
+		String[] rtnVal = new String[positions.length];
+		if (!lineStartsSorted) {
+			for (int i = 0; i < positions.length; i++) {
+				rtnVal[i] = lineAndChar(positions[i]);
 			}
-			p=p.tail; n--;
+			return rtnVal;
 		}
-		return "0.0";
+		// position in the high half, original index in the low half
+		long[] keys = new long[positions.length];
+		for (int i = 0; i < positions.length; i++) {
+			keys[i] = ((long)positions[i] << 32) | i;
+		}
+		Arrays.sort(keys);
+		int idx = -1;
+		for (long key : keys) {
+			int pos = (int)(key >> 32);
+			while (idx+1 < lineNum && lineStarts[idx+1] < pos) {
+				idx++;
+			}
+			rtnVal[(int)key] = lineAndChar(pos, idx);
+		}
+		return rtnVal;
+	}
+	
+	// the number of the line that contains pos, or 0 if it is before the
+	// first line
+	public int lineNumber(int pos) {
+		return lineIndex(pos)+1;
+	}
+
+	// the position of the first character of the given line, or -1 if there
+	// is no such line
+	public int lineStart(int line) {
+		if (line < 1 || line > lineNum) {
+			return -1;
+		}
+		return lineStarts[line-1]+1;
+	}
+
+	private String lineAndChar(int pos, int idx) {
+		if (idx < 0) {
+			return "0.0";
+		}
+		return String.valueOf(idx+1) + "." + String.valueOf(pos-lineStarts[idx]);
+	}
+	
+	// the index of the last line that starts before pos, or -1 if there is
+	// none
+	private int lineIndex(int pos) {
+		if (!lineStartsSorted) {
+			for (int i = lineNum-1; i >= 0; i--) {
+				if (lineStarts[i] < pos) return i;
+			}
+			return -1;
+		}
+		int lo = 0;
+		int hi = lineNum-1;
+		int rtnVal = -1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if (lineStarts[mid] < pos) {
+				rtnVal = mid;
+				lo = mid+1;
+			}
+			else {
+				hi = mid-1;
+			}
+		}
+		return rtnVal;
 	}
 	
 	private void msgOut(String s) {
+		if (heldMessages != null) {
+			heldMessages.add(s);
+			return;
+		}
 		createFrameIfNeeded();
 		if (terminal == null) {
-			System.err.println(s);
+			msgStream.println(s);
 		}
 		else {
 			terminal.println(s);
 		}
 	}
 	
+	// from now on keeps messages instead of writing them, until
+	// takeHeldMessages is called; used when another source's messages must
+	// come out first
+	public void holdMessages() {
+		heldMessages = new ArrayList<String>();
+	}
+	
+	// stops holding messages, and returns the ones held, in order
+	public String[] takeHeldMessages() {
+		String[] rtnVal = heldMessages == null ? new String[0]
+				: heldMessages.toArray(new String[0]);
+		heldMessages = null;
+		return rtnVal;
+	}
+	
 	public GuiTerminal2 getTerminal() {
 		createFrameIfNeeded();
 		return terminal;
 	}
-}  
-
-class LineList {
-	int head;
-	LineList tail;
-	LineList(int h, LineList t) {head=h; tail=t;}
 }
-
-
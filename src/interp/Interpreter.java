@@ -0,0 +1,787 @@
+package interp;
+
+import java.io.*;
+import java.util.*;
+
+import syntaxtree.*;
+import visitor.*;
+
+// The purpose of this class is to run a MiniJava program that has passed
+// every semantic phase, by walking its AST.  Use it as:
+//   new Interpreter(programNode, inputStream, printStream).run();
+// which runs 'new Main().main()', with the predefined Lib methods reading
+// from the input stream and writing to the print stream.  A run-time
+// error (e.g., following a null reference) stops the program with a
+// RunError.
+//
+// Before the program starts, everything that would otherwise be looked
+// up by name is worked out:
+// - each local variable and parameter gets a slot in its method's frame
+//   (VarDecl.offset; the 'this' pointer is in slot 0, which is recorded in
+//   MethodDecl.thisPtrOffset), and each instance variable gets a slot in
+//   its object (InstVarDecl.offset, after those of the superclasses)
+// - equal string literals are made the same String (StringLiteral.str),
+//   so that, as in Java, '==' on them is true
+// - each class gets a RuntimeClass, whose v-table (built from the offsets
+//   that HierarchyNumberer assigned) gives the method a call runs, its
+//   frame size, and whether it is one of the predefined methods, which
+//   are implemented here
+// The program then runs from the links that Sem4Visitor filled in
+// (IdentifierExp.link, InstVarAccess.varDec, Call.methodLink, ...).
+//
+// Values are represented as Integer (int), Boolean (boolean), String
+// (String), MJObject (other objects) and MJArray (arrays); null is null.
+// The boxing is deliberate: small Integers and both Booleans are shared,
+// and the rest are cheap to allocate, whereas passing ints unboxed (in a
+// field, with separate int slots in frames, objects and arrays, as the VM
+// has) measured no faster on loops and slower on calls; the time goes to
+// the visitor's dispatch on each node.
+//
+// Each statement's visit method returns null if it completes normally, or
+// the BreakTarget that a 'break' inside it leaves.
+public class Interpreter extends InhVisitor {
+
+	// the predefined methods
+	static final int NATIVE_OBJECT_HASHCODE = 0;
+	static final int NATIVE_OBJECT_EQUALS = 1;
+	static final int NATIVE_OBJECT_TOSTRING = 2;
+	static final int NATIVE_STRING_HASHCODE = 3;
+	static final int NATIVE_STRING_EQUALS = 4;
+	static final int NATIVE_STRING_TOSTRING = 5;
+	static final int NATIVE_STRING_CONCAT = 6;
+	static final int NATIVE_STRING_SUBSTRING = 7;
+	static final int NATIVE_STRING_LENGTH = 8;
+	static final int NATIVE_STRING_CHARAT = 9;
+	static final int NATIVE_STRING_COMPARETO = 10;
+	static final int NATIVE_LIB_READLINE = 11;
+	static final int NATIVE_LIB_READINT = 12;
+	static final int NATIVE_LIB_READCHAR = 13;
+	static final int NATIVE_LIB_PRINTSTR = 14;
+	static final int NATIVE_LIB_PRINTBOOL = 15;
+	static final int NATIVE_LIB_PRINTINT = 16;
+	static final int NATIVE_LIB_INTTOSTRING = 17;
+	static final int NATIVE_LIB_INTTOCHAR = 18;
+
+	private static final Integer ZERO = Integer.valueOf(0);
+
+	// the deepest the calls may nest; like the VM's fixed register stack,
+	// this stops a runaway recursion quickly, well before it fills the
+	// Java stack
+	private static final int MAX_CALL_DEPTH = 1 << 18;
+
+	private Program program;
+	private LibInput in;
+	private PrintStream out;
+
+	private IdentityHashMap<ClassDecl,RuntimeClass> classes;
+	private IdentityHashMap<ClassDecl,Integer> fieldCounts;
+	private IdentityHashMap<MethodDecl,Integer> nativeCodes;
+	private IdentityHashMap<MethodDecl,Integer> frameSizes;
+	private RuntimeClass objectClass;
+	private RuntimeClass stringClass;
+	private ConstEvaluator constEval;
+
+	// the frame of the method being run; slot 0 holds 'this'
+	private Object[] frame;
+	// the number of calls being run
+	private int callDepth;
+
+	public Interpreter(Program aprogram, InputStream ain, PrintStream aout) {
+		program = aprogram;
+		in = new LibInput(ain, aout);
+		out = aout;
+		classes = new IdentityHashMap<ClassDecl,RuntimeClass>();
+		fieldCounts = new IdentityHashMap<ClassDecl,Integer>();
+		nativeCodes = new IdentityHashMap<MethodDecl,Integer>();
+		frameSizes = new IdentityHashMap<MethodDecl,Integer>();
+		constEval = new ConstEvaluator();
+		for (int i = 0; i < program.dummyNodes.size(); i++) {
+			ClassDecl cd = program.dummyNodes.elementAt(i);
+			for (int j = 0; j < cd.decls.size(); j++) {
+				Decl d = cd.decls.elementAt(j);
+				if (d instanceof MethodDecl) {
+					nativeCodes.put((MethodDecl)d, nativeCode(cd.name, d.name));
+				}
+			}
+		}
+		layoutClasses(program.dummyNodes);
+		layoutClasses(program.classDecls);
+		program.accept(new LiteralInterner());
+		for (int i = 0; i < program.dummyNodes.size(); i++) {
+			ClassDecl cd = program.dummyNodes.elementAt(i);
+			if (cd.name.equals("Object")) objectClass = classes.get(cd);
+			else if (cd.name.equals("String")) stringClass = classes.get(cd);
+		}
+	}
+
+	// runs the program
+	public void run() {
+		frame = new Object[1];
+		try {
+			program.mainStatement.accept(this);
+		}
+		catch (StackOverflowError sox) {
+			throw new RunError(-1, "stack overflow");
+		}
+		finally {
+			out.flush();
+		}
+	}
+
+	/*************** layout ****************/
+
+	private static int nativeCode(String className, String methName) {
+		switch (className + "." + methName) {
+		case "Object.hashCode": return NATIVE_OBJECT_HASHCODE;
+		case "Object.equals": return NATIVE_OBJECT_EQUALS;
+		case "Object.toString": return NATIVE_OBJECT_TOSTRING;
+		case "String.hashCode": return NATIVE_STRING_HASHCODE;
+		case "String.equals": return NATIVE_STRING_EQUALS;
+		case "String.toString": return NATIVE_STRING_TOSTRING;
+		case "String.concat": return NATIVE_STRING_CONCAT;
+		case "String.substring": return NATIVE_STRING_SUBSTRING;
+		case "String.length": return NATIVE_STRING_LENGTH;
+		case "String.charAt": return NATIVE_STRING_CHARAT;
+		case "String.compareTo": return NATIVE_STRING_COMPARETO;
+		case "Lib.readLine": return NATIVE_LIB_READLINE;
+		case "Lib.readInt": return NATIVE_LIB_READINT;
+		case "Lib.readChar": return NATIVE_LIB_READCHAR;
+		case "Lib.printStr": return NATIVE_LIB_PRINTSTR;
+		case "Lib.printBool": return NATIVE_LIB_PRINTBOOL;
+		case "Lib.printInt": return NATIVE_LIB_PRINTINT;
+		case "Lib.intToString": return NATIVE_LIB_INTTOSTRING;
+		case "Lib.intToChar": return NATIVE_LIB_INTTOCHAR;
+		default: return -1;
+		}
+	}
+
+	// lays out the methods and instance variables of each class, and then
+	// builds the classes' v-tables
+	private void layoutClasses(ClassDeclList decls) {
+		for (int i = 0; i < decls.size(); i++) {
+			ClassDecl cd = decls.elementAt(i);
+			layoutFields(cd);
+			for (int j = 0; j < cd.decls.size(); j++) {
+				Decl d = cd.decls.elementAt(j);
+				if (d instanceof MethodDecl) {
+					layoutMethod((MethodDecl)d);
+				}
+			}
+		}
+		for (int i = 0; i < decls.size(); i++) {
+			runtimeClass(decls.elementAt(i));
+		}
+	}
+
+	// gives the instance variables of a class the slots after those of its
+	// superclasses; returns the number of slots an object of the class has
+	private int layoutFields(ClassDecl cd) {
+		Integer count = fieldCounts.get(cd);
+		if (count != null) {
+			return count;
+		}
+		fieldCounts.put(cd, 0); // guards against an inheritance cycle
+		int next = cd.superLink == null ? 0 : layoutFields(cd.superLink);
+		for (int i = 0; i < cd.decls.size(); i++) {
+			Decl d = cd.decls.elementAt(i);
+			if (d instanceof InstVarDecl) {
+				((InstVarDecl)d).offset = next++;
+			}
+		}
+		fieldCounts.put(cd, next);
+		return next;
+	}
+
+	private void layoutMethod(MethodDecl md) {
+		md.thisPtrOffset = 0;
+		int next = 1;
+		for (int i = 0; i < md.formals.size(); i++) {
+			md.formals.elementAt(i).offset = next++;
+		}
+		frameSizes.put(md, layoutStmts(md.stmts, next));
+	}
+
+	// gives slots, starting at 'next', to the locals declared in a list of
+	// statements (a block, a method body or a switch's body); returns one
+	// more than the highest slot used.  Locals in separate blocks share
+	// slots.
+	private int layoutStmts(StatementList stmts, int next) {
+		int max = next;
+		for (int i = 0; i < stmts.size(); i++) {
+			Statement s = stmts.elementAt(i);
+			if (s instanceof LocalDeclStatement) {
+				((LocalDeclStatement)s).localVarDecl.offset = next++;
+				max = Math.max(max, next);
+			}
+			else {
+				max = Math.max(max, layoutStmt(s, next));
+			}
+		}
+		return max;
+	}
+
+	private int layoutStmt(Statement s, int next) {
+		if (s instanceof Block) {
+			return layoutStmts(((Block)s).stmts, next);
+		}
+		else if (s instanceof If) {
+			If ifStmt = (If)s;
+			int max = layoutStmt(ifStmt.trueStmt, next);
+			return ifStmt.falseStmt == null ? max : Math.max(max, layoutStmt(ifStmt.falseStmt, next));
+		}
+		else if (s instanceof While) {
+			return layoutStmt(((While)s).body, next);
+		}
+		else if (s instanceof Switch) {
+			StatementList stmts = ((Switch)s).stmts;
+			for (int i = 0; i < stmts.size(); i++) {
+				if (stmts.elementAt(i) instanceof Case) {
+					constEval.eval(((Case)stmts.elementAt(i)).exp);
+				}
+			}
+			return layoutStmts(stmts, next);
+		}
+		else if (s instanceof LocalDeclStatement) {
+			((LocalDeclStatement)s).localVarDecl.offset = next;
+			return next+1;
+		}
+		return next;
+	}
+
+	// interns the string of each string literal
+	private static class LiteralInterner extends ASTvisitor {
+
+		@Override
+		public Object visitStringLiteral(StringLiteral n) {
+			n.str = n.str.intern();
+			return null;
+		}
+	}
+
+	private RuntimeClass runtimeClass(ClassDecl cd) {
+		RuntimeClass rc = classes.get(cd);
+		if (rc != null) {
+			return rc;
+		}
+		cd.buildLookupTables();
+		rc = new RuntimeClass(cd);
+		classes.put(cd, rc);
+		for (MethodDecl md : cd.allMethods.values()) {
+			int slot = md.vtableOffset;
+			if (slot < 0 || slot >= rc.vtable.length) continue;
+			rc.vtable[slot] = md;
+			Integer size = frameSizes.get(md);
+			rc.frameSizes[slot] = size == null ? 1 + md.formals.size() : size;
+			Integer code = nativeCodes.get(md);
+			rc.nativeOps[slot] = code == null ? -1 : code;
+		}
+		rc.fieldTemplate = new Object[layoutFields(cd)];
+		for (ClassDecl c = cd; c != null && c != c.superLink; c = c.superLink) {
+			for (int i = 0; i < c.decls.size(); i++) {
+				Decl d = c.decls.elementAt(i);
+				if (d instanceof InstVarDecl) {
+					InstVarDecl ivd = (InstVarDecl)d;
+					rc.fieldTemplate[ivd.offset] = defaultValue(ivd.type);
+				}
+			}
+		}
+		return rc;
+	}
+
+	private static Object defaultValue(Type t) {
+		if (t instanceof IntegerType) {
+			return ZERO;
+		}
+		else if (t instanceof BooleanType) {
+			return Boolean.FALSE;
+		}
+		else {
+			return null;
+		}
+	}
+
+	/*************** helpers ****************/
+
+	private int intVal(Exp e) {
+		return ((Integer)e.accept(this)).intValue();
+	}
+
+	private boolean boolVal(Exp e) {
+		return ((Boolean)e.accept(this)).booleanValue();
+	}
+
+	private RuntimeClass classOf(Object v) {
+		if (v instanceof MJObject) {
+			return ((MJObject)v).cls;
+		}
+		else if (v instanceof String) {
+			return stringClass;
+		}
+		else {
+			return objectClass;
+		}
+	}
+
+	// whether a (non-null) value is of the given type
+	private boolean isInstance(Object v, Type t) {
+		if (t instanceof IdentifierType) {
+			return HierarchyNumberer.isSubclass(classOf(v).decl, ((IdentifierType)t).link);
+		}
+		else if (t instanceof ArrayType) {
+			return v instanceof MJArray && ((MJArray)v).type.equals(t);
+		}
+		return false;
+	}
+
+	private static MJObject object(Object v, int pos) {
+		if (v == null) {
+			throw new RunError(pos, "null pointer");
+		}
+		return (MJObject)v;
+	}
+
+	private static MJArray array(Object v, int pos) {
+		if (v == null) {
+			throw new RunError(pos, "null pointer");
+		}
+		return (MJArray)v;
+	}
+
+	private static int checkIndex(MJArray arr, int idx, int pos) {
+		if (idx < 0 || idx >= arr.elems.length) {
+			throw new RunError(pos, "array index " + idx + " out of bounds for length " +
+					arr.elems.length);
+		}
+		return idx;
+	}
+
+	/*************** statements ****************/
+
+	@Override
+	public Object visitAstNode(AstNode n) {
+		throw new IllegalStateException("cannot run a " + n.getClass().getSimpleName());
+	}
+
+	@Override
+	public Object visitAstList(AstList n) {
+		throw new IllegalStateException("cannot run a " + n.getClass().getSimpleName());
+	}
+
+	@Override
+	public Object visitBlock(Block n) {
+		StatementList stmts = n.stmts;
+		for (int i = 0; i < stmts.size(); i++) {
+			Object brk = stmts.elementAt(i).accept(this);
+			if (brk != null) {
+				return brk;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public Object visitLocalDeclStatement(LocalDeclStatement n) {
+		LocalVarDecl decl = n.localVarDecl;
+		frame[decl.offset] = decl.initExp.accept(this);
+		return null;
+	}
+
+	@Override
+	public Object visitAssign(Assign n) {
+		Exp lhs = n.lhs;
+		if (lhs instanceof IdentifierExp) {
+			VarDecl decl = ((IdentifierExp)lhs).link;
+			Object val = n.rhs.accept(this);
+			if (decl instanceof InstVarDecl) {
+				((MJObject)frame[0]).fields[decl.offset] = val;
+			}
+			else {
+				frame[decl.offset] = val;
+			}
+		}
+		else if (lhs instanceof InstVarAccess) {
+			InstVarAccess iva = (InstVarAccess)lhs;
+			Object obj = iva.exp.accept(this);
+			Object val = n.rhs.accept(this);
+			object(obj, iva.pos).fields[iva.varDec.offset] = val;
+		}
+		else {
+			ArrayLookup al = (ArrayLookup)lhs;
+			Object arr = al.arrExp.accept(this);
+			int idx = intVal(al.idxExp);
+			Object val = n.rhs.accept(this);
+			MJArray a = array(arr, al.pos);
+			a.elems[checkIndex(a, idx, al.pos)] = val;
+		}
+		return null;
+	}
+
+	@Override
+	public Object visitCallStatement(CallStatement n) {
+		n.callExp.accept(this);
+		return null;
+	}
+
+	@Override
+	public Object visitIf(If n) {
+		if (boolVal(n.exp)) {
+			return n.trueStmt.accept(this);
+		}
+		else if (n.falseStmt != null) {
+			return n.falseStmt.accept(this);
+		}
+		return null;
+	}
+
+	@Override
+	public Object visitWhile(While n) {
+		while (boolVal(n.exp)) {
+			Object brk = n.body.accept(this);
+			if (brk == n) {
+				break;
+			}
+			else if (brk != null) {
+				return brk;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public Object visitSwitch(Switch n) {
+		int val = intVal(n.exp);
+		StatementList stmts = n.stmts;
+		int start = -1;
+		for (int i = 0; i < stmts.size(); i++) {
+			Statement s = stmts.elementAt(i);
+			if (s instanceof Case) {
+				Exp e = ((Case)s).exp;
+				int caseVal = e.constTag == ConstEvaluator.INT_CONST ? e.constVal : intVal(e);
+				if (caseVal == val) {
+					start = i;
+					break;
+				}
+			}
+			else if (s instanceof Default && start < 0) {
+				start = i;
+			}
+		}
+		if (start < 0) {
+			return null;
+		}
+		for (int i = start; i < stmts.size(); i++) {
+			Object brk = stmts.elementAt(i).accept(this);
+			if (brk == n) {
+				break;
+			}
+			else if (brk != null) {
+				return brk;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public Object visitLabel(Label n) {
+		return null;
+	}
+
+	@Override
+	public Object visitBreak(Break n) {
+		return n.breakLink;
+	}
+
+	/*************** expressions ****************/
+
+	@Override
+	public Object visitIntegerLiteral(IntegerLiteral n) {
+		return Integer.valueOf(n.val);
+	}
+
+	@Override
+	public Object visitTrue(True n) {
+		return Boolean.TRUE;
+	}
+
+	@Override
+	public Object visitFalse(False n) {
+		return Boolean.FALSE;
+	}
+
+	@Override
+	public Object visitNull(Null n) {
+		return null;
+	}
+
+	@Override
+	public Object visitStringLiteral(StringLiteral n) {
+		return n.str;
+	}
+
+	@Override
+	public Object visitThis(This n) {
+		return frame[0];
+	}
+
+	@Override
+	public Object visitSuper(Super n) {
+		return frame[0];
+	}
+
+	@Override
+	public Object visitIdentifierExp(IdentifierExp n) {
+		VarDecl decl = n.link;
+		if (decl instanceof InstVarDecl) {
+			return ((MJObject)frame[0]).fields[decl.offset];
+		}
+		return frame[decl.offset];
+	}
+
+	@Override
+	public Object visitInstVarAccess(InstVarAccess n) {
+		return object(n.exp.accept(this), n.pos).fields[n.varDec.offset];
+	}
+
+	@Override
+	public Object visitArrayLookup(ArrayLookup n) {
+		Object arr = n.arrExp.accept(this);
+		int idx = intVal(n.idxExp);
+		MJArray a = array(arr, n.pos);
+		return a.elems[checkIndex(a, idx, n.pos)];
+	}
+
+	@Override
+	public Object visitArrayLength(ArrayLength n) {
+		return Integer.valueOf(array(n.exp.accept(this), n.pos).elems.length);
+	}
+
+	@Override
+	public Object visitPlus(Plus n) {
+		return Integer.valueOf(intVal(n.left) + intVal(n.right));
+	}
+
+	@Override
+	public Object visitMinus(Minus n) {
+		return Integer.valueOf(intVal(n.left) - intVal(n.right));
+	}
+
+	@Override
+	public Object visitTimes(Times n) {
+		return Integer.valueOf(intVal(n.left) * intVal(n.right));
+	}
+
+	@Override
+	public Object visitDivide(Divide n) {
+		int left = intVal(n.left);
+		int right = intVal(n.right);
+		if (right == 0) {
+			throw new RunError(n.pos, "division by zero");
+		}
+		return Integer.valueOf(left / right);
+	}
+
+	@Override
+	public Object visitRemainder(Remainder n) {
+		int left = intVal(n.left);
+		int right = intVal(n.right);
+		if (right == 0) {
+			throw new RunError(n.pos, "division by zero");
+		}
+		return Integer.valueOf(left % right);
+	}
+
+	@Override
+	public Object visitLessThan(LessThan n) {
+		return Boolean.valueOf(intVal(n.left) < intVal(n.right));
+	}
+
+	@Override
+	public Object visitGreaterThan(GreaterThan n) {
+		return Boolean.valueOf(intVal(n.left) > intVal(n.right));
+	}
+
+	@Override
+	public Object visitEquals(Equals n) {
+		Object left = n.left.accept(this);
+		Object right = n.right.accept(this);
+		return Boolean.valueOf(left == right || (left instanceof Integer && left.equals(right)));
+	}
+
+	@Override
+	public Object visitAnd(And n) {
+		return Boolean.valueOf(boolVal(n.left) && boolVal(n.right));
+	}
+
+	@Override
+	public Object visitOr(Or n) {
+		return Boolean.valueOf(boolVal(n.left) || boolVal(n.right));
+	}
+
+	@Override
+	public Object visitNot(Not n) {
+		return Boolean.valueOf(!boolVal(n.exp));
+	}
+
+	@Override
+	public Object visitNewObject(NewObject n) {
+		RuntimeClass rc = runtimeClass(n.objType.link);
+		if (rc == stringClass) {
+			return new String(); // Strings are represented as Java Strings
+		}
+		return new MJObject(rc);
+	}
+
+	@Override
+	public Object visitNewArray(NewArray n) {
+		int size = intVal(n.sizeExp);
+		if (size < 0) {
+			throw new RunError(n.pos, "negative array size " + size);
+		}
+		ArrayType type = (ArrayType)n.type;
+		return new MJArray(type, size, defaultValue(type.baseType));
+	}
+
+	@Override
+	public Object visitCast(Cast n) {
+		Object val = n.exp.accept(this);
+		if (val != null && !isInstance(val, n.castType)) {
+			throw new RunError(n.pos, "cannot cast " + classOf(val).decl.name + " to " + n.castType);
+		}
+		return val;
+	}
+
+	@Override
+	public Object visitInstanceOf(InstanceOf n) {
+		Object val = n.exp.accept(this);
+		return Boolean.valueOf(val != null && isInstance(val, n.checkType));
+	}
+
+	@Override
+	public Object visitCall(Call n) {
+		Object recv = n.obj.accept(this);
+		int slot = n.methodLink.vtableOffset;
+		// a call through 'super' runs the superclass's method, whatever the
+		// object's class
+		RuntimeClass rc;
+		if (n.obj instanceof Super) {
+			rc = runtimeClass(((IdentifierType)n.obj.type).link);
+		}
+		else {
+			rc = recv == null ? null : classOf(recv);
+		}
+		ExpList parms = n.parms;
+		Object[] newFrame = new Object[rc == null ? 1 + parms.size() : rc.frameSizes[slot]];
+		for (int i = 0; i < parms.size(); i++) {
+			newFrame[i+1] = parms.elementAt(i).accept(this);
+		}
+		if (recv == null) {
+			throw new RunError(n.pos, "null pointer");
+		}
+		newFrame[0] = recv;
+		int op = rc.nativeOps[slot];
+		if (op >= 0) {
+			return callNative(op, newFrame, n.pos);
+		}
+		if (callDepth == MAX_CALL_DEPTH) {
+			throw new RunError(n.pos, "stack overflow");
+		}
+		MethodDecl md = rc.vtable[slot];
+		Object[] oldFrame = frame;
+		frame = newFrame;
+		callDepth++;
+		try {
+			StatementList stmts = md.stmts;
+			for (int i = 0; i < stmts.size(); i++) {
+				stmts.elementAt(i).accept(this);
+			}
+			if (md instanceof MethodDeclNonVoid) {
+				return ((MethodDeclNonVoid)md).rtnExp.accept(this);
+			}
+			return null;
+		}
+		catch (StackOverflowError sox) {
+			// deep expressions can fill the Java stack before the limit
+			throw new RunError(n.pos, "stack overflow");
+		}
+		finally {
+			frame = oldFrame;
+			callDepth--;
+		}
+	}
+
+	/*************** the predefined methods ****************/
+
+	// runs a predefined method, whose receiver and arguments are in
+	// f[0], f[1], ...
+	private Object callNative(int op, Object[] f, int pos) {
+		switch (op) {
+		case NATIVE_OBJECT_HASHCODE:
+			return Integer.valueOf(System.identityHashCode(f[0]));
+		case NATIVE_OBJECT_EQUALS:
+			return Boolean.valueOf(f[0] == f[1]);
+		case NATIVE_OBJECT_TOSTRING: {
+			String name = f[0] instanceof MJArray
+					? ((MJArray)f[0]).type.toString() : classOf(f[0]).decl.name;
+			return name + "@" + Integer.toHexString(System.identityHashCode(f[0]));
+		}
+		case NATIVE_STRING_HASHCODE:
+			return Integer.valueOf(f[0].hashCode());
+		case NATIVE_STRING_EQUALS:
+			return Boolean.valueOf(f[0].equals(f[1]));
+		case NATIVE_STRING_TOSTRING:
+			return f[0];
+		case NATIVE_STRING_CONCAT:
+			if (f[1] == null) {
+				throw new RunError(pos, "null pointer");
+			}
+			return ((String)f[0]).concat((String)f[1]);
+		case NATIVE_STRING_SUBSTRING: {
+			String s = (String)f[0];
+			int from = (Integer)f[1];
+			int to = (Integer)f[2];
+			if (from < 0 || to > s.length() || from > to) {
+				throw new RunError(pos, "substring(" + from + ", " + to +
+						") out of bounds for length " + s.length());
+			}
+			return s.substring(from, to);
+		}
+		case NATIVE_STRING_LENGTH:
+			return Integer.valueOf(((String)f[0]).length());
+		case NATIVE_STRING_CHARAT: {
+			String s = (String)f[0];
+			int idx = (Integer)f[1];
+			if (idx < 0 || idx >= s.length()) {
+				throw new RunError(pos, "string index " + idx + " out of bounds for length " +
+						s.length());
+			}
+			return Integer.valueOf(s.charAt(idx));
+		}
+		case NATIVE_STRING_COMPARETO:
+			if (f[1] == null) {
+				throw new RunError(pos, "null pointer");
+			}
+			return Integer.valueOf(((String)f[0]).compareTo((String)f[1]));
+		case NATIVE_LIB_READLINE:
+			return in.readLine();
+		case NATIVE_LIB_READINT:
+			return Integer.valueOf(in.readInt(pos));
+		case NATIVE_LIB_READCHAR:
+			return Integer.valueOf(in.readChar());
+		case NATIVE_LIB_PRINTSTR:
+			out.print((String)f[1]);
+			return null;
+		case NATIVE_LIB_PRINTBOOL:
+			out.print(((Boolean)f[1]).booleanValue());
+			return null;
+		case NATIVE_LIB_PRINTINT:
+			out.print(((Integer)f[1]).intValue());
+			return null;
+		case NATIVE_LIB_INTTOSTRING:
+			return Integer.toString((Integer)f[1]);
+		case NATIVE_LIB_INTTOCHAR:
+			return String.valueOf((char)((Integer)f[1]).intValue());
+		default:
+			throw new IllegalStateException("unknown predefined method " + op);
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package interp;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+// The input side of the predefined Lib class (readLine, readInt and
+// readChar), for the engines that run MiniJava programs.  Before each
+// read, the program's output is flushed, so that a prompt is seen before
+// the program waits for its answer.
+public class LibInput {
+
+	private InputStream in;
+	private PrintStream out;
+
+	public LibInput(InputStream ain, PrintStream aout) {
+		in = new BufferedInputStream(ain);
+		out = aout;
+	}
+
+	// the next byte of input, or -1 at the end of the input
+	public int readChar() {
+		try {
+			out.flush();
+			return in.read();
+		}
+		catch (IOException iox) {
+			return -1;
+		}
+	}
+
+	// the next line of input, without its line terminator, or null at the
+	// end of the input
+	public String readLine() {
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		int b = readChar();
+		if (b < 0) {
+			return null;
+		}
+		while (b >= 0 && b != '\n') {
+			line.write(b);
+			b = readChar();
+		}
+		byte[] bytes = line.toByteArray();
+		int len = bytes.length;
+		if (len > 0 && bytes[len-1] == '\r') len--;
+		return new String(bytes, 0, len, StandardCharsets.UTF_8);
+	}
+
+	// the next integer in the input, skipping white space before it; 'pos'
+	// is the position of the call, for the error if there is no integer
+	public int readInt(int pos) {
+		in.mark(1);
+		int b = readChar();
+		while (b == ' ' || b == '\t' || b == '\n' || b == '\r') {
+			in.mark(1);
+			b = readChar();
+		}
+		boolean negative = b == '-';
+		if (negative) {
+			in.mark(1);
+			b = readChar();
+		}
+		if (b < '0' || b > '9') {
+			throw new RunError(pos, "no integer in the input");
+		}
+		int val = 0;
+		while (b >= '0' && b <= '9') {
+			val = 10*val + (b - '0');
+			in.mark(1);
+			b = readChar();
+		}
+		// leave the character after the number to be read next
+		try {
+			in.reset();
+		}
+		catch (IOException iox) {
+			// not possible with a mark set just before the read
+		}
+		return negative ? -val : val;
+	}
+}
@@ -0,0 +1,19 @@
+package interp;
+
+import syntaxtree.*;
+
+// A MiniJava array at run time: its type (which a cast or instanceof may
+// test), and its elements.
+class MJArray {
+
+	final ArrayType type;
+	final Object[] elems;
+
+	MJArray(ArrayType atype, int size, Object initVal) {
+		type = atype;
+		elems = new Object[size];
+		if (initVal != null) {
+			java.util.Arrays.fill(elems, initVal);
+		}
+	}
+}
@@ -0,0 +1,14 @@
+package interp;
+
+// A MiniJava object at run time: its class, and its instance variables,
+// indexed by InstVarDecl.offset.
+class MJObject {
+
+	final RuntimeClass cls;
+	final Object[] fields;
+
+	MJObject(RuntimeClass acls) {
+		cls = acls;
+		fields = acls.fieldTemplate.clone();
+	}
+}
@@ -0,0 +1,16 @@
+package interp;
+
+// An error that stops a running MiniJava program, such as following a
+// null reference or indexing past the end of an array.  'pos' is the
+// source position of the construct that failed, or -1 if there is none.
+public class RunError extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public final int pos;
+
+	public RunError(int pos, String msg) {
+		super(msg);
+		this.pos = pos;
+	}
+}
@@ -0,0 +1,29 @@
+package interp;
+
+import syntaxtree.*;
+
+// What the interpreter needs to know about a class at run time, all of it
+// worked out before the program starts:
+// - vtable: the method that an object of this class runs for each
+//   v-table offset (MethodDecl.vtableOffset)
+// - frameSizes: for each v-table entry, the number of slots the method's
+//   frame needs
+// - nativeOps: for each v-table entry, the Interpreter.NATIVE_... code of
+//   a predefined method, or -1 for a method written in MiniJava
+// - fieldTemplate: the initial values of an object's instance variables
+class RuntimeClass {
+
+	final ClassDecl decl;
+	final MethodDecl[] vtable;
+	final int[] frameSizes;
+	final int[] nativeOps;
+	Object[] fieldTemplate;
+
+	RuntimeClass(ClassDecl adecl) {
+		decl = adecl;
+		int size = Math.max(0, adecl.vtableSize);
+		vtable = new MethodDecl[size];
+		frameSizes = new int[size];
+		nativeOps = new int[size];
+	}
+}
@@ -0,0 +1,449 @@
+package jvm;
+
+import java.util.*;
+
+// The code of a method being built.  Each instruction is emitted with the
+// source position of the construct it comes from, which (through
+// ClassGen.lineNumber) gives the line-number table.  Branches go to labels, which
+// are numbers from newLabel that are given addresses by placeLabel; once
+// all the code has been emitted, 'finish' fills in the branch offsets.
+//
+// The depth of the operand stack is followed as instructions are emitted,
+// which gives the method's max_stack.  Where a label follows code that
+// does not fall through, the depth is the depth at the branches to the
+// label, or, if none has been emitted yet (as for the top of a loop), the
+// depth is left as it was.
+final class Bytecode {
+
+	static final int ACONST_NULL = 1;
+	static final int ICONST_0 = 3;
+	static final int BIPUSH = 16;
+	static final int SIPUSH = 17;
+	static final int LDC = 18;
+	static final int LDC_W = 19;
+	static final int ILOAD = 21;
+	static final int ALOAD = 25;
+	static final int IALOAD = 46;
+	static final int AALOAD = 50;
+	static final int BALOAD = 51;
+	static final int ISTORE = 54;
+	static final int ASTORE = 58;
+	static final int IASTORE = 79;
+	static final int AASTORE = 83;
+	static final int BASTORE = 84;
+	static final int POP = 87;
+	static final int DUP = 89;
+	static final int IADD = 96;
+	static final int ISUB = 100;
+	static final int IMUL = 104;
+	static final int IDIV = 108;
+	static final int IREM = 112;
+	static final int IINC = 132;
+	static final int IFEQ = 153;
+	static final int IFNE = 154;
+	static final int IFLT = 155;
+	static final int IFGE = 156;
+	static final int IFGT = 157;
+	static final int IFLE = 158;
+	static final int IF_ICMPEQ = 159;
+	static final int IF_ICMPNE = 160;
+	static final int IF_ICMPLT = 161;
+	static final int IF_ICMPGE = 162;
+	static final int IF_ICMPGT = 163;
+	static final int IF_ICMPLE = 164;
+	static final int IF_ACMPEQ = 165;
+	static final int IF_ACMPNE = 166;
+	static final int GOTO = 167;
+	static final int TABLESWITCH = 170;
+	static final int LOOKUPSWITCH = 171;
+	static final int IRETURN = 172;
+	static final int ARETURN = 176;
+	static final int RETURN = 177;
+	static final int GETSTATIC = 178;
+	static final int GETFIELD = 180;
+	static final int PUTFIELD = 181;
+	static final int INVOKEVIRTUAL = 182;
+	static final int INVOKESPECIAL = 183;
+	static final int INVOKESTATIC = 184;
+	static final int NEW = 187;
+	static final int NEWARRAY = 188;
+	static final int ANEWARRAY = 189;
+	static final int ARRAYLENGTH = 190;
+	static final int CHECKCAST = 192;
+	static final int INSTANCEOF = 193;
+	static final int WIDE = 196;
+	static final int IFNULL = 198;
+	static final int IFNONNULL = 199;
+
+	// element types for NEWARRAY
+	static final int T_BOOLEAN = 4;
+	static final int T_INT = 10;
+
+	private static final int MAX_CODE_SIZE = 0xFFFF;
+
+	private ClassFile cf;
+	private ClassGen gen;
+
+	private byte[] code;
+	private int size;
+	private int depth;
+	private int maxDepth;
+	private int numLocals;
+	private boolean reachable;
+
+	private int[] labelAddrs;
+	private int[] labelDepths;
+	private int numLabels;
+	// for each branch: the address of the instruction, the address of the
+	// offset, the offset's size (2 or 4) and the label
+	private Vector<int[]> fixups;
+
+	// the line-number table, and the last position and line emitted (see
+	// ClassGen for what a line is)
+	private int[] linePcs;
+	private int[] lineNumbers;
+	private int numLines;
+	private int lastPos;
+	private int lastLine;
+
+	Bytecode(ClassFile acf, ClassGen agen) {
+		cf = acf;
+		gen = agen;
+		code = new byte[64];
+		size = 0;
+		depth = 0;
+		maxDepth = 0;
+		numLocals = 0;
+		reachable = true;
+		labelAddrs = new int[16];
+		labelDepths = new int[16];
+		numLabels = 0;
+		fixups = new Vector<int[]>();
+		linePcs = new int[16];
+		lineNumbers = new int[16];
+		numLines = 0;
+		lastPos = Integer.MIN_VALUE;
+		lastLine = 0;
+	}
+
+	/*************** the finished code ****************/
+
+	byte[] bytes() {
+		return code;
+	}
+
+	int size() {
+		return size;
+	}
+
+	int maxStack() {
+		return maxDepth;
+	}
+
+	int maxLocals() {
+		return numLocals;
+	}
+
+	int numLines() {
+		return numLines;
+	}
+
+	int linePc(int i) {
+		return linePcs[i];
+	}
+
+	int lineNumber(int i) {
+		return lineNumbers[i];
+	}
+
+	// notes that the method uses local variable slots 0 .. n-1
+	void useLocals(int n) {
+		numLocals = Math.max(numLocals, n);
+	}
+
+	// fills in the branch offsets; returns false if the code is too large
+	// for a class file
+	boolean finish() {
+		if (size > MAX_CODE_SIZE) {
+			return false;
+		}
+		for (int[] fixup : fixups) {
+			int offset = labelAddrs[fixup[3]] - fixup[0];
+			if (fixup[2] == 2) {
+				if (offset != (short)offset) {
+					return false;
+				}
+				code[fixup[1]] = (byte)(offset >> 8);
+				code[fixup[1]+1] = (byte)offset;
+			}
+			else {
+				putInt(fixup[1], offset);
+			}
+		}
+		return true;
+	}
+
+	/*************** emitting code ****************/
+
+	private void u1(int val) {
+		if (size == code.length) {
+			code = Arrays.copyOf(code, 2*size);
+		}
+		code[size++] = (byte)val;
+	}
+
+	private void u2(int val) {
+		u1(val >> 8);
+		u1(val);
+	}
+
+	private void u4(int val) {
+		u2(val >> 16);
+		u2(val);
+	}
+
+	private void putInt(int addr, int val) {
+		code[addr] = (byte)(val >> 24);
+		code[addr+1] = (byte)(val >> 16);
+		code[addr+2] = (byte)(val >> 8);
+		code[addr+3] = (byte)val;
+	}
+
+	// starts an instruction that changes the stack depth by 'delta'
+	private void start(int opcode, int delta, int pos) {
+		if (pos >= 0 && pos != lastPos) {
+			lastPos = pos;
+			int line = gen.lineNumber(pos);
+			if (line > 0 && line <= 0xFFFF && line != lastLine) {
+				if (numLines == linePcs.length) {
+					linePcs = Arrays.copyOf(linePcs, 2*numLines);
+					lineNumbers = Arrays.copyOf(lineNumbers, 2*numLines);
+				}
+				linePcs[numLines] = size;
+				lineNumbers[numLines++] = line;
+				lastLine = line;
+			}
+		}
+		u1(opcode);
+		depth += delta;
+		maxDepth = Math.max(maxDepth, depth);
+	}
+
+	// an instruction without operands
+	void op(int opcode, int pos) {
+		start(opcode, stackEffect(opcode), pos);
+		if (opcode == IRETURN || opcode == ARETURN || opcode == RETURN) {
+			reachable = false;
+		}
+	}
+
+	private static int stackEffect(int opcode) {
+		switch (opcode) {
+		case ACONST_NULL: case DUP:
+			return 1;
+		case IALOAD: case AALOAD: case BALOAD: case POP:
+		case IADD: case ISUB: case IMUL: case IDIV: case IREM:
+		case IRETURN: case ARETURN:
+			return -1;
+		case IASTORE: case AASTORE: case BASTORE:
+			return -3;
+		case RETURN: case ARRAYLENGTH:
+			return 0;
+		default:
+			if (opcode >= ICONST_0 - 1 && opcode <= ICONST_0 + 5) {
+				return 1;
+			}
+			throw new IllegalArgumentException("opcode " + opcode + " has operands");
+		}
+	}
+
+	// pushes an int constant
+	void intConst(int val, int pos) {
+		if (val >= -1 && val <= 5) {
+			start(ICONST_0 + val, 1, pos);
+		}
+		else if (val == (byte)val) {
+			start(BIPUSH, 1, pos);
+			u1(val);
+		}
+		else if (val == (short)val) {
+			start(SIPUSH, 1, pos);
+			u2(val);
+		}
+		else {
+			ldc(cf.integer(val), pos);
+		}
+	}
+
+	// pushes a string constant
+	void stringConst(String s, int pos) {
+		ldc(cf.string(s), pos);
+	}
+
+	private void ldc(int idx, int pos) {
+		if (idx < 256) {
+			start(LDC, 1, pos);
+			u1(idx);
+		}
+		else {
+			start(LDC_W, 1, pos);
+			u2(idx);
+		}
+	}
+
+	// ILOAD, ALOAD, ISTORE or ASTORE of a local variable
+	void local(int opcode, int slot, int pos) {
+		int delta = opcode == ILOAD || opcode == ALOAD ? 1 : -1;
+		if (slot < 4) {
+			// the one-byte forms ILOAD_0 .. ALOAD_3 follow ALOAD, and
+			// ISTORE_0 .. ASTORE_3 follow ASTORE
+			int shortBase = opcode == ILOAD || opcode == ALOAD ? ALOAD + 1 : ASTORE + 1;
+			start(shortBase + 4*(opcode - (delta > 0 ? ILOAD : ISTORE)) + slot, delta, pos);
+		}
+		else if (slot < 256) {
+			start(opcode, delta, pos);
+			u1(slot);
+		}
+		else {
+			start(WIDE, 0, pos);
+			u1(opcode);
+			depth += delta;
+			maxDepth = Math.max(maxDepth, depth);
+			u2(slot);
+		}
+		useLocals(slot+1);
+	}
+
+	// adds a constant (which must fit in 16 bits) to an int local variable
+	void iinc(int slot, int k, int pos) {
+		if (slot < 256 && k == (byte)k) {
+			start(IINC, 0, pos);
+			u1(slot);
+			u1(k);
+		}
+		else {
+			start(WIDE, 0, pos);
+			u1(IINC);
+			u2(slot);
+			u2(k);
+		}
+	}
+
+	// GETFIELD, PUTFIELD or GETSTATIC
+	void field(int opcode, String owner, String name, String desc, int pos) {
+		start(opcode, opcode == GETFIELD ? 0 : opcode == PUTFIELD ? -2 : 1, pos);
+		u2(cf.fieldRef(owner, name, desc));
+	}
+
+	// INVOKEVIRTUAL, INVOKESPECIAL or INVOKESTATIC
+	void invoke(int opcode, String owner, String name, String desc, int pos) {
+		int numArgs = 0;
+		int i = 1;
+		while (desc.charAt(i) != ')') {
+			while (desc.charAt(i) == '[') i++;
+			if (desc.charAt(i) == 'L') i = desc.indexOf(';', i);
+			i++;
+			numArgs++;
+		}
+		int delta = (desc.charAt(i+1) == 'V' ? 0 : 1) - numArgs - (opcode == INVOKESTATIC ? 0 : 1);
+		start(opcode, delta, pos);
+		u2(cf.methodRef(owner, name, desc));
+	}
+
+	// NEW, ANEWARRAY, CHECKCAST or INSTANCEOF, with a class (or, except
+	// for NEW, an array type) named by its internal name
+	void type(int opcode, String className, int pos) {
+		start(opcode, opcode == NEW ? 1 : 0, pos);
+		u2(cf.classRef(className));
+	}
+
+	// NEWARRAY with an element type
+	void newArray(int elemType, int pos) {
+		start(NEWARRAY, 0, pos);
+		u1(elemType);
+	}
+
+	/*************** branches ****************/
+
+	int newLabel() {
+		if (numLabels == labelAddrs.length) {
+			labelAddrs = Arrays.copyOf(labelAddrs, 2*numLabels);
+			labelDepths = Arrays.copyOf(labelDepths, 2*numLabels);
+		}
+		labelAddrs[numLabels] = -1;
+		labelDepths[numLabels] = -1;
+		return numLabels++;
+	}
+
+	void placeLabel(int label) {
+		labelAddrs[label] = size;
+		if (!reachable && labelDepths[label] >= 0) {
+			depth = labelDepths[label];
+		}
+		reachable = true;
+	}
+
+	// the depth at the label is the depth after the branch
+	private void branchTo(int label, int instrAddr, int offsetSize) {
+		if (labelDepths[label] < 0) {
+			labelDepths[label] = depth;
+		}
+		fixups.addElement(new int[]{instrAddr, size, offsetSize, label});
+		if (offsetSize == 2) {
+			u2(0);
+		}
+		else {
+			u4(0);
+		}
+	}
+
+	// GOTO, or a conditional branch
+	void jump(int opcode, int label, int pos) {
+		int addr = size;
+		int delta;
+		if (opcode == GOTO) {
+			delta = 0;
+		}
+		else if (opcode >= IF_ICMPEQ && opcode <= IF_ACMPNE) {
+			delta = -2;
+		}
+		else {
+			delta = -1;
+		}
+		start(opcode, delta, pos);
+		branchTo(label, addr, 2);
+		if (opcode == GOTO) {
+			reachable = false;
+		}
+	}
+
+	// a TABLESWITCH on the int on the stack, whose values lo .. hi go to
+	// labels[0] .. labels[hi-lo]
+	void tableSwitch(int lo, int hi, int defaultLabel, int[] labels, int pos) {
+		int addr = size;
+		start(TABLESWITCH, -1, pos);
+		while (size % 4 != 0) u1(0);
+		branchTo(defaultLabel, addr, 4);
+		u4(lo);
+		u4(hi);
+		for (int label : labels) {
+			branchTo(label, addr, 4);
+		}
+		reachable = false;
+	}
+
+	// a LOOKUPSWITCH on the int on the stack; 'keys' must be in increasing
+	// order
+	void lookupSwitch(int[] keys, int[] labels, int defaultLabel, int pos) {
+		int addr = size;
+		start(LOOKUPSWITCH, -1, pos);
+		while (size % 4 != 0) u1(0);
+		branchTo(defaultLabel, addr, 4);
+		u4(keys.length);
+		for (int i = 0; i < keys.length; i++) {
+			u4(keys[i]);
+			branchTo(labels[i], addr, 4);
+		}
+		reachable = false;
+	}
+}
@@ -0,0 +1,240 @@
+package jvm;
+
+import java.io.*;
+import java.util.*;
+
+// A class file being built: its constant pool, fields and methods.  Use
+// it as:
+//   ClassFile cf = new ClassFile(access, name, superName, interfaces, sourceFile);
+//   ... cf.addField(...), cf.addMethod(...) ...
+//   byte[] bytes = cf.toBytes();
+// Class names are internal names (e.g., "java/lang/Object").
+//
+// The class files are version 49, the last version whose code the JVM
+// verifies without StackMapTable attributes, so none are written.
+final class ClassFile {
+
+	static final int ACC_PUBLIC = 0x0001;
+	static final int ACC_STATIC = 0x0008;
+	static final int ACC_FINAL = 0x0010;
+	static final int ACC_SUPER = 0x0020;
+
+	private static final int MAGIC = 0xCAFEBABE;
+	private static final int MAJOR_VERSION = 49;
+
+	private static final int CONSTANT_UTF8 = 1;
+	private static final int CONSTANT_INTEGER = 3;
+	private static final int CONSTANT_CLASS = 7;
+	private static final int CONSTANT_STRING = 8;
+	private static final int CONSTANT_FIELDREF = 9;
+	private static final int CONSTANT_METHODREF = 10;
+	private static final int CONSTANT_NAMEANDTYPE = 12;
+
+	private ByteArrayOutputStream pool;
+	private int poolSize;
+	private HashMap<String,Integer> poolIndices;
+
+	private int access;
+	private int thisClass;
+	private int superClass;
+	private int[] interfaces;
+	private int sourceFile;
+	private ByteArrayOutputStream fields;
+	private int numFields;
+	private ByteArrayOutputStream methods;
+	private int numMethods;
+
+	ClassFile(int aaccess, String name, String superName, String[] interfaceNames,
+			String sourceFileName) {
+		pool = new ByteArrayOutputStream();
+		poolSize = 1;
+		poolIndices = new HashMap<String,Integer>();
+		access = aaccess;
+		thisClass = classRef(name);
+		superClass = classRef(superName);
+		interfaces = new int[interfaceNames.length];
+		for (int i = 0; i < interfaceNames.length; i++) {
+			interfaces[i] = classRef(interfaceNames[i]);
+		}
+		sourceFile = sourceFileName == null ? 0 : utf8(sourceFileName);
+		fields = new ByteArrayOutputStream();
+		numFields = 0;
+		methods = new ByteArrayOutputStream();
+		numMethods = 0;
+	}
+
+	/*************** the constant pool ****************/
+
+	// the index of a constant, which is added to the pool (by 'write') if
+	// it is not already there; 'key' identifies the constant
+	private int constant(String key, Runnable write) {
+		Integer idx = poolIndices.get(key);
+		if (idx == null) {
+			write.run();
+			idx = poolSize++;
+			poolIndices.put(key, idx);
+		}
+		return idx;
+	}
+
+	int utf8(final String s) {
+		return constant("U" + s, new Runnable() {
+			public void run() {
+				pool.write(CONSTANT_UTF8);
+				writeUtf8(pool, s);
+			}
+		});
+	}
+
+	int integer(final int val) {
+		return constant("I" + val, new Runnable() {
+			public void run() {
+				pool.write(CONSTANT_INTEGER);
+				u4(pool, val);
+			}
+		});
+	}
+
+	int classRef(String name) {
+		return ref(CONSTANT_CLASS, "C" + name, utf8(name));
+	}
+
+	int string(String s) {
+		return ref(CONSTANT_STRING, "S" + s, utf8(s));
+	}
+
+	int fieldRef(String owner, String name, String desc) {
+		return ref(CONSTANT_FIELDREF, "F" + owner + "." + name + ":" + desc,
+				classRef(owner), nameAndType(name, desc));
+	}
+
+	int methodRef(String owner, String name, String desc) {
+		return ref(CONSTANT_METHODREF, "M" + owner + "." + name + ":" + desc,
+				classRef(owner), nameAndType(name, desc));
+	}
+
+	private int nameAndType(String name, String desc) {
+		return ref(CONSTANT_NAMEANDTYPE, "N" + name + ":" + desc, utf8(name), utf8(desc));
+	}
+
+	// a constant made of a tag and the indices of other constants
+	private int ref(final int tag, String key, final int... indices) {
+		return constant(key, new Runnable() {
+			public void run() {
+				pool.write(tag);
+				for (int idx : indices) {
+					u2(pool, idx);
+				}
+			}
+		});
+	}
+
+	/*************** members ****************/
+
+	void addField(int faccess, String name, String desc) {
+		u2(fields, faccess);
+		u2(fields, utf8(name));
+		u2(fields, utf8(desc));
+		u2(fields, 0);
+		numFields++;
+	}
+
+	// adds a method, whose code must be finished (see Bytecode.finish)
+	void addMethod(int maccess, String name, String desc, Bytecode code) {
+		u2(methods, maccess);
+		u2(methods, utf8(name));
+		u2(methods, utf8(desc));
+		u2(methods, 1);
+		int lineCount = code.numLines();
+		int linesLength = lineCount == 0 ? 0 : 8 + 4*lineCount;
+		u2(methods, utf8("Code"));
+		u4(methods, 12 + code.size() + linesLength);
+		u2(methods, code.maxStack());
+		u2(methods, code.maxLocals());
+		u4(methods, code.size());
+		methods.write(code.bytes(), 0, code.size());
+		u2(methods, 0);
+		if (lineCount == 0) {
+			u2(methods, 0);
+		}
+		else {
+			u2(methods, 1);
+			u2(methods, utf8("LineNumberTable"));
+			u4(methods, 2 + 4*lineCount);
+			u2(methods, lineCount);
+			for (int i = 0; i < lineCount; i++) {
+				u2(methods, code.linePc(i));
+				u2(methods, code.lineNumber(i));
+			}
+		}
+		numMethods++;
+	}
+
+	/*************** the whole file ****************/
+
+	byte[] toBytes() {
+		int sourceFileAttr = sourceFile == 0 ? 0 : utf8("SourceFile");
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		u4(os, MAGIC);
+		u2(os, 0);
+		u2(os, MAJOR_VERSION);
+		u2(os, poolSize);
+		os.write(pool.toByteArray(), 0, pool.size());
+		u2(os, access);
+		u2(os, thisClass);
+		u2(os, superClass);
+		u2(os, interfaces.length);
+		for (int idx : interfaces) {
+			u2(os, idx);
+		}
+		u2(os, numFields);
+		os.write(fields.toByteArray(), 0, fields.size());
+		u2(os, numMethods);
+		os.write(methods.toByteArray(), 0, methods.size());
+		if (sourceFile == 0) {
+			u2(os, 0);
+		}
+		else {
+			u2(os, 1);
+			u2(os, sourceFileAttr);
+			u4(os, 2);
+			u2(os, sourceFile);
+		}
+		return os.toByteArray();
+	}
+
+	private static void u2(ByteArrayOutputStream os, int val) {
+		os.write(val >> 8);
+		os.write(val);
+	}
+
+	private static void u4(ByteArrayOutputStream os, int val) {
+		u2(os, val >> 16);
+		u2(os, val);
+	}
+
+	// a string in the class file's form of UTF-8, preceded by its length
+	private static void writeUtf8(ByteArrayOutputStream os, String s) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(s.length());
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c != 0 && c < 0x80) {
+				bytes.write(c);
+			}
+			else if (c < 0x800) {
+				bytes.write(0xC0 | (c >> 6));
+				bytes.write(0x80 | (c & 0x3F));
+			}
+			else {
+				bytes.write(0xE0 | (c >> 12));
+				bytes.write(0x80 | ((c >> 6) & 0x3F));
+				bytes.write(0x80 | (c & 0x3F));
+			}
+		}
+		if (bytes.size() > 0xFFFF) {
+			throw new IllegalArgumentException("constant too long for a class file");
+		}
+		u2(os, bytes.size());
+		os.write(bytes.toByteArray(), 0, bytes.size());
+	}
+}
@@ -0,0 +1,306 @@
+package jvm;
+
+import java.io.*;
+import java.util.*;
+
+import syntaxtree.*;
+import visitor.*;
+import errorMsg.*;
+
+// The purpose of this class is to translate a checked program into class
+// files for the JVM, one per class of the program, plus one for the class
+// MAIN_CLASS_NAME, which runs the program's main statement.  Use it as:
+//   Map<String,byte[]> classFiles = new ClassGen(program, errorMsg, exact).generate();
+// The program can then be run in this JVM (see Launcher), or the class
+// files written out (see 'write') and run with
+//   java -cp <dir>:<the compiler's classes> RunMain
+// The class files' line-number tables give source lines, unless 'exact'
+// is true: then each "line" is a number, from 1, of a source position in
+// the table that 'positions' returns, so that a run in this JVM can
+// report an error at its exact position.  A table holds at most 65535
+// positions; an instruction after that has the last position recorded
+// before it.
+//
+// Each MiniJava class becomes a JVM class of the same name, whose instance
+// variables are fields and whose methods are public methods.  The
+// predefined classes are Java's Object and String, and the Lib class in
+// this package.  A method's descriptor is that of the method it
+// (eventually) overrides, so that it overrides it in the JVM too; where
+// its return type is narrower, a call's result is cast.
+public class ClassGen {
+
+	public static final String MAIN_CLASS_NAME = "RunMain";
+
+	// methods of Object that a MiniJava method may not be named for in the
+	// JVM, as they are final or are called by the JVM itself
+	private static final Set<String> RESERVED_NAMES = new HashSet<String>(
+			Arrays.asList("wait", "notify", "notifyAll", "finalize"));
+
+	private Program program;
+	ErrorMsg errorMsg;
+	private String sourceFileName;
+
+	// the class in which each method and instance variable is declared
+	private IdentityHashMap<Decl,ClassDecl> owners;
+
+	// the positions that the line-number tables number, if exact, and the
+	// number of each
+	private boolean exact;
+	private ArrayList<Integer> positions;
+	private HashMap<Integer,Integer> positionNumbers;
+
+	public ClassGen(Program aprogram, ErrorMsg aerrorMsg, boolean aexact) {
+		program = aprogram;
+		errorMsg = aerrorMsg;
+		exact = aexact;
+		positions = new ArrayList<Integer>();
+		positionNumbers = new HashMap<Integer,Integer>();
+		sourceFileName = new File(errorMsg.getFileName()).getName();
+		owners = new IdentityHashMap<Decl,ClassDecl>();
+		for (int i = 0; i < program.dummyNodes.size(); i++) {
+			addOwners(program.dummyNodes.elementAt(i));
+		}
+		for (int i = 0; i < program.classDecls.size(); i++) {
+			addOwners(program.classDecls.elementAt(i));
+		}
+	}
+
+	private void addOwners(ClassDecl cd) {
+		for (int i = 0; i < cd.decls.size(); i++) {
+			owners.put(cd.decls.elementAt(i), cd);
+		}
+	}
+
+	// the class files, by class name, in the order of the program's classes
+	public Map<String,byte[]> generate() {
+		LinkedHashMap<String,byte[]> rtnVal = new LinkedHashMap<String,byte[]>();
+		for (int i = 0; i < program.classDecls.size(); i++) {
+			ClassDecl cd = program.classDecls.elementAt(i);
+			rtnVal.put(cd.name, genClass(cd));
+		}
+		rtnVal.put(MAIN_CLASS_NAME, genMainClass());
+		return rtnVal;
+	}
+
+	// the source position of each number in the line-number tables, from
+	// 1 (at index 0), or null if the tables give lines
+	public int[] positions() {
+		if (!exact) {
+			return null;
+		}
+		int[] rtnVal = new int[positions.size()];
+		for (int i = 0; i < rtnVal.length; i++) {
+			rtnVal[i] = positions.get(i);
+		}
+		return rtnVal;
+	}
+
+	// the number that the line-number table gives for a source position, or
+	// 0 if it cannot give one
+	int lineNumber(int pos) {
+		if (!exact) {
+			return errorMsg.lineNumber(pos);
+		}
+		Integer rtnVal = positionNumbers.get(pos);
+		if (rtnVal == null) {
+			if (positions.size() == 0xFFFF) {
+				return 0;
+			}
+			positions.add(pos);
+			rtnVal = positions.size();
+			positionNumbers.put(pos, rtnVal);
+		}
+		return rtnVal;
+	}
+
+	// writes class files to a directory, which is created if need be
+	public static void write(Map<String,byte[]> classFiles, File dir) throws IOException {
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("cannot create directory " + dir);
+		}
+		for (Map.Entry<String,byte[]> entry : classFiles.entrySet()) {
+			try (OutputStream os = new FileOutputStream(new File(dir, entry.getKey() + ".class"))) {
+				os.write(entry.getValue());
+			}
+		}
+	}
+
+	/*************** classes ****************/
+
+	private byte[] genClass(ClassDecl cd) {
+		String superName = className(cd.superLink);
+		ClassFile cf = new ClassFile(ClassFile.ACC_PUBLIC | ClassFile.ACC_SUPER,
+				cd.name, superName, new String[0], sourceFileName);
+		genConstructor(cf, superName, cd.pos);
+		for (int i = 0; i < cd.decls.size(); i++) {
+			Decl d = cd.decls.elementAt(i);
+			if (d instanceof InstVarDecl) {
+				cf.addField(0, d.name, descriptor(((InstVarDecl)d).type));
+			}
+			else if (d instanceof MethodDecl) {
+				MethodDecl md = (MethodDecl)d;
+				checkReturnType(md);
+				Bytecode code = new CodeGen(this, cf).genMethod(md);
+				if (!code.finish()) {
+					errorMsg.error(md.pos, "Method " + md.name + " is too large for a class file");
+				}
+				else {
+					cf.addMethod(ClassFile.ACC_PUBLIC, methodName(md), methodDescriptor(md), code);
+				}
+			}
+		}
+		return cf.toBytes();
+	}
+
+	// a public constructor, with no parameters, that calls the superclass's
+	private void genConstructor(ClassFile cf, String superName, int pos) {
+		Bytecode code = new Bytecode(cf, this);
+		code.local(Bytecode.ALOAD, 0, pos);
+		code.invoke(Bytecode.INVOKESPECIAL, superName, "<init>", "()V", pos);
+		code.op(Bytecode.RETURN, pos);
+		code.finish();
+		cf.addMethod(ClassFile.ACC_PUBLIC, "<init>", "()V", code);
+	}
+
+	// the class whose 'run' method runs the program's main statement, and
+	// whose 'main' method runs that, with the program's input and output
+	// on System.in and System.out
+	private byte[] genMainClass() {
+		ClassFile cf = new ClassFile(ClassFile.ACC_PUBLIC | ClassFile.ACC_SUPER | ClassFile.ACC_FINAL,
+				MAIN_CLASS_NAME, "java/lang/Object", new String[]{"java/lang/Runnable"},
+				sourceFileName);
+		int pos = program.mainStatement.pos;
+		genConstructor(cf, "java/lang/Object", pos);
+		Bytecode run = new CodeGen(this, cf).genMainStatement(program.mainStatement);
+		run.finish();
+		cf.addMethod(ClassFile.ACC_PUBLIC, "run", "()V", run);
+		Bytecode main = new Bytecode(cf, this);
+		main.useLocals(1);
+		main.type(Bytecode.NEW, MAIN_CLASS_NAME, pos);
+		main.op(Bytecode.DUP, pos);
+		main.invoke(Bytecode.INVOKESPECIAL, MAIN_CLASS_NAME, "<init>", "()V", pos);
+		main.field(Bytecode.GETSTATIC, "java/lang/System", "in", "Ljava/io/InputStream;", pos);
+		main.field(Bytecode.GETSTATIC, "java/lang/System", "out", "Ljava/io/PrintStream;", pos);
+		main.invoke(Bytecode.INVOKESTATIC, "jvm/Lib", "run",
+				"(Ljava/lang/Runnable;Ljava/io/InputStream;Ljava/io/PrintStream;)V", pos);
+		main.op(Bytecode.RETURN, pos);
+		main.finish();
+		cf.addMethod(ClassFile.ACC_PUBLIC | ClassFile.ACC_STATIC, "main",
+				"([Ljava/lang/String;)V", main);
+		return cf.toBytes();
+	}
+
+	// a method's return type must conform to that of the method it
+	// overrides, which is more than the semantic checks ask
+	private void checkReturnType(MethodDecl md) {
+		MethodDecl root = rootMethod(md);
+		if (root == md || !(md instanceof MethodDeclNonVoid) ||
+				!(root instanceof MethodDeclNonVoid)) {
+			return;
+		}
+		Type have = ((MethodDeclNonVoid)md).rtnType;
+		Type need = ((MethodDeclNonVoid)root).rtnType;
+		boolean ok;
+		if (isData(have) || isData(need)) {
+			ok = isData(have) && isData(need);
+		}
+		else if (descriptor(have).equals(descriptor(need)) ||
+				descriptor(need).equals("Ljava/lang/Object;")) {
+			ok = true;
+		}
+		else {
+			ok = have instanceof IdentifierType && need instanceof IdentifierType &&
+					((IdentifierType)have).link != null && ((IdentifierType)need).link != null &&
+					HierarchyNumberer.isSubclass(((IdentifierType)have).link,
+							((IdentifierType)need).link);
+		}
+		if (!ok) {
+			errorMsg.error(md.pos, "Return type " + have + " of method " + md.name +
+					" does not conform to " + need + ", the return type of the method it overrides");
+		}
+	}
+
+	/*************** names and descriptors ****************/
+
+	// whether values of a type are ints on the JVM (rather than references)
+	static boolean isData(Type t) {
+		return t instanceof IntegerType || t instanceof BooleanType;
+	}
+
+	// the internal name of the class that a MiniJava class becomes
+	static String className(String name) {
+		switch (name) {
+		case "Object": return "java/lang/Object";
+		case "String": return "java/lang/String";
+		case "Lib": return "jvm/Lib";
+		default: return name;
+		}
+	}
+
+	static String className(ClassDecl cd) {
+		return cd == null ? "java/lang/Object" : className(cd.name);
+	}
+
+	// the class, or array type, that a cast, instanceof or new array
+	// names for a type
+	static String typeName(Type t) {
+		if (t instanceof IdentifierType) {
+			return className(((IdentifierType)t).name);
+		}
+		return descriptor(t);
+	}
+
+	static String descriptor(Type t) {
+		if (t instanceof IntegerType) {
+			return "I";
+		}
+		else if (t instanceof BooleanType) {
+			return "Z";
+		}
+		else if (t instanceof ArrayType) {
+			return "[" + descriptor(((ArrayType)t).baseType);
+		}
+		else if (t instanceof IdentifierType) {
+			return "L" + className(((IdentifierType)t).name) + ";";
+		}
+		else if (t == null || t instanceof VoidType) {
+			return "V";
+		}
+		throw new IllegalArgumentException("no descriptor for " + t);
+	}
+
+	// the method that a method overrides, directly or indirectly, and that
+	// does not itself override one
+	static MethodDecl rootMethod(MethodDecl md) {
+		while (md.superMethod != null) {
+			md = md.superMethod;
+		}
+		return md;
+	}
+
+	static String methodName(MethodDecl md) {
+		return RESERVED_NAMES.contains(md.name) ? md.name + "$" : md.name;
+	}
+
+	// the descriptor of a method, which is that of its root method;
+	// String's charAt returns a char in Java
+	String methodDescriptor(MethodDecl md) {
+		MethodDecl root = rootMethod(md);
+		if (root.name.equals("charAt") && className(owner(root)).equals("java/lang/String")) {
+			return "(I)C";
+		}
+		StringBuilder sb = new StringBuilder("(");
+		for (int i = 0; i < root.formals.size(); i++) {
+			sb.append(descriptor(root.formals.elementAt(i).type));
+		}
+		sb.append(')');
+		sb.append(root instanceof MethodDeclNonVoid
+				? descriptor(((MethodDeclNonVoid)root).rtnType) : "V");
+		return sb.toString();
+	}
+
+	// the class in which a method or instance variable is declared
+	ClassDecl owner(Decl d) {
+		return owners.get(d);
+	}
+}
@@ -0,0 +1,623 @@
+package jvm;
+
+import java.util.*;
+
+import syntaxtree.*;
+import visitor.*;
+
+// The purpose of this class is to translate one method of a checked
+// program into JVM bytecode.  Use it as:
+//   Bytecode code = new CodeGen(classGen, classFile).genMethod(methodDecl);
+//
+// 'this' is local variable 0, the parameters follow it, and then the
+// locals (VarDecl.offset); a block's locals are freed at the end of the
+// block, so that locals in separate blocks share a slot.
+//
+// Each expression's code leaves its value on the operand stack, and each
+// statement's leaves the stack as it found it.  Conditions (of if and
+// while, and the operands of && and ||) are translated into branches, as
+// are comparisons whose value is used.  A switch whose case values are
+// all constants becomes a tableswitch if the values are dense enough, and
+// otherwise a lookupswitch.
+class CodeGen extends InhVisitor {
+
+	private ClassGen gen;
+	private ClassFile cf;
+	private ConstEvaluator constEval;
+	private Bytecode code;
+	private IdentityHashMap<BreakTarget,Integer> breakLabels;
+
+	// the number of local variable slots in use
+	private int numLocals;
+
+	CodeGen(ClassGen agen, ClassFile acf) {
+		gen = agen;
+		cf = acf;
+		constEval = new ConstEvaluator();
+		breakLabels = new IdentityHashMap<BreakTarget,Integer>();
+	}
+
+	Bytecode genMethod(MethodDecl md) {
+		code = new Bytecode(cf, gen);
+		md.thisPtrOffset = 0;
+		numLocals = 1;
+		for (int i = 0; i < md.formals.size(); i++) {
+			md.formals.elementAt(i).offset = numLocals++;
+		}
+		code.useLocals(numLocals);
+		genStmts(md.stmts);
+		if (md instanceof MethodDeclNonVoid) {
+			Exp rtnExp = ((MethodDeclNonVoid)md).rtnExp;
+			rtnExp.accept(this);
+			code.op(ClassGen.isData(rtnExp.type) ? Bytecode.IRETURN : Bytecode.ARETURN,
+					rtnExp.pos);
+		}
+		else {
+			code.op(Bytecode.RETURN, md.pos);
+		}
+		return code;
+	}
+
+	// the code of the main class's 'run' method (see ClassGen)
+	Bytecode genMainStatement(Statement s) {
+		code = new Bytecode(cf, gen);
+		numLocals = 1;
+		code.useLocals(numLocals);
+		s.accept(this);
+		code.op(Bytecode.RETURN, s.pos);
+		return code;
+	}
+
+	private int newLocal() {
+		code.useLocals(numLocals+1);
+		return numLocals++;
+	}
+
+	/*************** statements ****************/
+
+	private void genStmts(StatementList stmts) {
+		for (int i = 0; i < stmts.size(); i++) {
+			stmts.elementAt(i).accept(this);
+		}
+	}
+
+	@Override
+	public Object visitAstNode(AstNode n) {
+		throw new IllegalStateException("cannot generate code for a " + n.getClass().getSimpleName());
+	}
+
+	@Override
+	public Object visitAstList(AstList n) {
+		throw new IllegalStateException("cannot generate code for a " + n.getClass().getSimpleName());
+	}
+
+	@Override
+	public Object visitBlock(Block n) {
+		int saved = numLocals;
+		genStmts(n.stmts);
+		numLocals = saved;
+		return null;
+	}
+
+	@Override
+	public Object visitLocalDeclStatement(LocalDeclStatement n) {
+		LocalVarDecl decl = n.localVarDecl;
+		decl.offset = newLocal();
+		decl.initExp.accept(this);
+		code.local(ClassGen.isData(decl.type) ? Bytecode.ISTORE : Bytecode.ASTORE,
+				decl.offset, n.pos);
+		return null;
+	}
+
+	@Override
+	public Object visitAssign(Assign n) {
+		Exp lhs = n.lhs;
+		boolean isData = ClassGen.isData(lhs.type);
+		if (lhs instanceof IdentifierExp && !(((IdentifierExp)lhs).link instanceof InstVarDecl)) {
+			VarDecl decl = ((IdentifierExp)lhs).link;
+			if (!genIncrement(decl, n.rhs)) {
+				n.rhs.accept(this);
+				code.local(isData ? Bytecode.ISTORE : Bytecode.ASTORE, decl.offset, n.pos);
+			}
+		}
+		else if (lhs instanceof IdentifierExp) {
+			code.local(Bytecode.ALOAD, 0, lhs.pos);
+			n.rhs.accept(this);
+			putField(((IdentifierExp)lhs).link, lhs.pos);
+		}
+		else if (lhs instanceof InstVarAccess) {
+			InstVarAccess iva = (InstVarAccess)lhs;
+			iva.exp.accept(this);
+			n.rhs.accept(this);
+			putField(iva.varDec, iva.pos);
+		}
+		else {
+			ArrayLookup al = (ArrayLookup)lhs;
+			al.arrExp.accept(this);
+			al.idxExp.accept(this);
+			n.rhs.accept(this);
+			code.op(lhs.type instanceof IntegerType ? Bytecode.IASTORE
+					: lhs.type instanceof BooleanType ? Bytecode.BASTORE : Bytecode.AASTORE, al.pos);
+		}
+		return null;
+	}
+
+	// an IINC for 'x = x + k' or 'x = x - k', where x is an int local;
+	// returns false if the assignment is not of that form
+	private boolean genIncrement(VarDecl decl, Exp rhs) {
+		if (!(decl.type instanceof IntegerType) || !(rhs instanceof Plus || rhs instanceof Minus)) {
+			return false;
+		}
+		BinExp be = (BinExp)rhs;
+		long k;
+		if (isVar(be.left, decl) && be.right instanceof IntegerLiteral) {
+			k = ((IntegerLiteral)be.right).val;
+			if (rhs instanceof Minus) k = -k;
+		}
+		else if (rhs instanceof Plus && be.left instanceof IntegerLiteral && isVar(be.right, decl)) {
+			k = ((IntegerLiteral)be.left).val;
+		}
+		else {
+			return false;
+		}
+		if (k != (short)k) {
+			return false;
+		}
+		code.iinc(decl.offset, (int)k, rhs.pos);
+		return true;
+	}
+
+	private static boolean isVar(Exp e, VarDecl decl) {
+		return e instanceof IdentifierExp && ((IdentifierExp)e).link == decl;
+	}
+
+	@Override
+	public Object visitCallStatement(CallStatement n) {
+		genCall(n.callExp);
+		if (n.callExp.methodLink instanceof MethodDeclNonVoid) {
+			code.op(Bytecode.POP, n.pos);
+		}
+		return null;
+	}
+
+	@Override
+	public Object visitIf(If n) {
+		int elseLabel = code.newLabel();
+		genCond(n.exp, false, elseLabel);
+		n.trueStmt.accept(this);
+		if (n.falseStmt == null ||
+				(n.falseStmt instanceof Block && ((Block)n.falseStmt).stmts.size() == 0)) {
+			code.placeLabel(elseLabel);
+		}
+		else {
+			int endLabel = code.newLabel();
+			code.jump(Bytecode.GOTO, endLabel, n.pos);
+			code.placeLabel(elseLabel);
+			n.falseStmt.accept(this);
+			code.placeLabel(endLabel);
+		}
+		return null;
+	}
+
+	// the test goes after the body, so that each iteration takes one branch
+	@Override
+	public Object visitWhile(While n) {
+		int bodyLabel = code.newLabel();
+		int testLabel = code.newLabel();
+		int breakLabel = code.newLabel();
+		breakLabels.put(n, breakLabel);
+		code.jump(Bytecode.GOTO, testLabel, n.pos);
+		code.placeLabel(bodyLabel);
+		n.body.accept(this);
+		code.placeLabel(testLabel);
+		genCond(n.exp, true, bodyLabel);
+		code.placeLabel(breakLabel);
+		return null;
+	}
+
+	@Override
+	public Object visitSwitch(Switch n) {
+		int breakLabel = code.newLabel();
+		breakLabels.put(n, breakLabel);
+		StatementList stmts = n.stmts;
+		int[] labels = new int[stmts.size()];
+		int defaultLabel = breakLabel;
+		boolean allConst = true;
+		for (int i = 0; i < stmts.size(); i++) {
+			Statement s = stmts.elementAt(i);
+			if (s instanceof Label) {
+				labels[i] = code.newLabel();
+				if (s instanceof Default) {
+					if (defaultLabel == breakLabel) defaultLabel = labels[i];
+				}
+				else if (constEval.eval(((Case)s).exp) != ConstEvaluator.INT_CONST) {
+					allConst = false;
+				}
+			}
+		}
+		n.exp.accept(this);
+		if (allConst) {
+			genSwitchTable(n, labels, defaultLabel);
+		}
+		else {
+			// compare with each label in turn, as the labels may have
+			// side effects
+			int val = newLocal();
+			code.local(Bytecode.ISTORE, val, n.pos);
+			for (int i = 0; i < stmts.size(); i++) {
+				if (stmts.elementAt(i) instanceof Case) {
+					Exp e = ((Case)stmts.elementAt(i)).exp;
+					code.local(Bytecode.ILOAD, val, e.pos);
+					e.accept(this);
+					code.jump(Bytecode.IF_ICMPEQ, labels[i], e.pos);
+				}
+			}
+			code.jump(Bytecode.GOTO, defaultLabel, n.pos);
+			numLocals--;
+		}
+		int saved = numLocals;
+		for (int i = 0; i < stmts.size(); i++) {
+			if (stmts.elementAt(i) instanceof Label) {
+				code.placeLabel(labels[i]);
+			}
+			else {
+				stmts.elementAt(i).accept(this);
+			}
+		}
+		numLocals = saved;
+		code.placeLabel(breakLabel);
+		return null;
+	}
+
+	// a tableswitch if the case values are dense enough, otherwise a
+	// lookupswitch; if a value is repeated, its first case is the one taken
+	private void genSwitchTable(Switch n, int[] labels, int defaultLabel) {
+		TreeMap<Integer,Integer> targets = new TreeMap<Integer,Integer>();
+		for (int i = 0; i < n.stmts.size(); i++) {
+			Statement s = n.stmts.elementAt(i);
+			if (s instanceof Case) {
+				targets.putIfAbsent(((Case)s).exp.constVal, labels[i]);
+			}
+		}
+		if (targets.isEmpty()) {
+			code.op(Bytecode.POP, n.pos);
+			code.jump(Bytecode.GOTO, defaultLabel, n.pos);
+			return;
+		}
+		long lo = targets.firstKey();
+		long hi = targets.lastKey();
+		if (hi - lo < 2L*targets.size() + 4) {
+			int[] table = new int[(int)(hi - lo + 1)];
+			for (long v = lo; v <= hi; v++) {
+				Integer label = targets.get((int)v);
+				table[(int)(v - lo)] = label == null ? defaultLabel : label;
+			}
+			code.tableSwitch((int)lo, (int)hi, defaultLabel, table, n.pos);
+		}
+		else {
+			int[] keys = new int[targets.size()];
+			int[] targetLabels = new int[targets.size()];
+			int k = 0;
+			for (Map.Entry<Integer,Integer> entry : targets.entrySet()) {
+				keys[k] = entry.getKey();
+				targetLabels[k++] = entry.getValue();
+			}
+			code.lookupSwitch(keys, targetLabels, defaultLabel, n.pos);
+		}
+	}
+
+	@Override
+	public Object visitBreak(Break n) {
+		code.jump(Bytecode.GOTO, breakLabels.get(n.breakLink), n.pos);
+		return null;
+	}
+
+	/*************** conditions ****************/
+
+	// generates code that branches to 'label' if 'e' is 'jumpIf', and
+	// otherwise falls through
+	private void genCond(Exp e, boolean jumpIf, int label) {
+		if (e instanceof True || e instanceof False) {
+			if ((e instanceof True) == jumpIf) {
+				code.jump(Bytecode.GOTO, label, e.pos);
+			}
+		}
+		else if (e instanceof Not) {
+			genCond(((Not)e).exp, !jumpIf, label);
+		}
+		else if (e instanceof And || e instanceof Or) {
+			BinExp be = (BinExp)e;
+			// for &&, the left operand decides the result if it is false;
+			// for ||, if it is true
+			boolean decides = e instanceof Or;
+			if (jumpIf == decides) {
+				genCond(be.left, decides, label);
+				genCond(be.right, decides, label);
+			}
+			else {
+				int skip = code.newLabel();
+				genCond(be.left, decides, skip);
+				genCond(be.right, jumpIf, label);
+				code.placeLabel(skip);
+			}
+		}
+		else if (e instanceof LessThan) {
+			genCompareJump((BinExp)e, jumpIf ? Bytecode.IF_ICMPLT : Bytecode.IF_ICMPGE,
+					jumpIf ? Bytecode.IFLT : Bytecode.IFGE, label);
+		}
+		else if (e instanceof GreaterThan) {
+			genCompareJump((BinExp)e, jumpIf ? Bytecode.IF_ICMPGT : Bytecode.IF_ICMPLE,
+					jumpIf ? Bytecode.IFGT : Bytecode.IFLE, label);
+		}
+		else if (e instanceof Equals && ClassGen.isData(((Equals)e).left.type)) {
+			genCompareJump((BinExp)e, jumpIf ? Bytecode.IF_ICMPEQ : Bytecode.IF_ICMPNE,
+					jumpIf ? Bytecode.IFEQ : Bytecode.IFNE, label);
+		}
+		else if (e instanceof Equals) {
+			BinExp be = (BinExp)e;
+			if (be.right instanceof Null || be.left instanceof Null) {
+				(be.right instanceof Null ? be.left : be.right).accept(this);
+				code.jump(jumpIf ? Bytecode.IFNULL : Bytecode.IFNONNULL, label, e.pos);
+			}
+			else {
+				be.left.accept(this);
+				be.right.accept(this);
+				code.jump(jumpIf ? Bytecode.IF_ACMPEQ : Bytecode.IF_ACMPNE, label, e.pos);
+			}
+		}
+		else {
+			e.accept(this);
+			code.jump(jumpIf ? Bytecode.IFNE : Bytecode.IFEQ, label, e.pos);
+		}
+	}
+
+	// a comparison of two ints; 'opcodeZero' compares with zero, for when
+	// the right operand is 0
+	private void genCompareJump(BinExp e, int opcode, int opcodeZero, int label) {
+		e.left.accept(this);
+		if (e.right instanceof IntegerLiteral && ((IntegerLiteral)e.right).val == 0) {
+			code.jump(opcodeZero, label, e.pos);
+		}
+		else {
+			e.right.accept(this);
+			code.jump(opcode, label, e.pos);
+		}
+	}
+
+	// the value of a condition, from branches
+	private Object genCondValue(Exp n) {
+		int falseLabel = code.newLabel();
+		int endLabel = code.newLabel();
+		genCond(n, false, falseLabel);
+		code.intConst(1, n.pos);
+		code.jump(Bytecode.GOTO, endLabel, n.pos);
+		code.placeLabel(falseLabel);
+		code.intConst(0, n.pos);
+		code.placeLabel(endLabel);
+		return null;
+	}
+
+	/*************** expressions ****************/
+
+	@Override
+	public Object visitIntegerLiteral(IntegerLiteral n) {
+		code.intConst(n.val, n.pos);
+		return null;
+	}
+
+	@Override
+	public Object visitTrue(True n) {
+		code.intConst(1, n.pos);
+		return null;
+	}
+
+	@Override
+	public Object visitFalse(False n) {
+		code.intConst(0, n.pos);
+		return null;
+	}
+
+	@Override
+	public Object visitNull(Null n) {
+		code.op(Bytecode.ACONST_NULL, n.pos);
+		return null;
+	}
+
+	@Override
+	public Object visitStringLiteral(StringLiteral n) {
+		code.stringConst(n.str, n.pos);
+		return null;
+	}
+
+	@Override
+	public Object visitThis(This n) {
+		code.local(Bytecode.ALOAD, 0, n.pos);
+		return null;
+	}
+
+	@Override
+	public Object visitSuper(Super n) {
+		code.local(Bytecode.ALOAD, 0, n.pos);
+		return null;
+	}
+
+	@Override
+	public Object visitIdentifierExp(IdentifierExp n) {
+		VarDecl decl = n.link;
+		if (decl instanceof InstVarDecl) {
+			code.local(Bytecode.ALOAD, 0, n.pos);
+			getField(decl, n.pos);
+		}
+		else {
+			code.local(ClassGen.isData(decl.type) ? Bytecode.ILOAD : Bytecode.ALOAD,
+					decl.offset, n.pos);
+		}
+		return null;
+	}
+
+	@Override
+	public Object visitInstVarAccess(InstVarAccess n) {
+		n.exp.accept(this);
+		getField(n.varDec, n.pos);
+		return null;
+	}
+
+	private void getField(VarDecl decl, int pos) {
+		code.field(Bytecode.GETFIELD, ClassGen.className(gen.owner(decl)), decl.name,
+				ClassGen.descriptor(decl.type), pos);
+	}
+
+	private void putField(VarDecl decl, int pos) {
+		code.field(Bytecode.PUTFIELD, ClassGen.className(gen.owner(decl)), decl.name,
+				ClassGen.descriptor(decl.type), pos);
+	}
+
+	@Override
+	public Object visitArrayLookup(ArrayLookup n) {
+		n.arrExp.accept(this);
+		n.idxExp.accept(this);
+		code.op(n.type instanceof IntegerType ? Bytecode.IALOAD
+				: n.type instanceof BooleanType ? Bytecode.BALOAD : Bytecode.AALOAD, n.pos);
+		return null;
+	}
+
+	@Override
+	public Object visitArrayLength(ArrayLength n) {
+		n.exp.accept(this);
+		code.op(Bytecode.ARRAYLENGTH, n.pos);
+		return null;
+	}
+
+	@Override
+	public Object visitPlus(Plus n) {
+		return genBinary(n, Bytecode.IADD);
+	}
+
+	@Override
+	public Object visitMinus(Minus n) {
+		return genBinary(n, Bytecode.ISUB);
+	}
+
+	@Override
+	public Object visitTimes(Times n) {
+		return genBinary(n, Bytecode.IMUL);
+	}
+
+	@Override
+	public Object visitDivide(Divide n) {
+		return genBinary(n, Bytecode.IDIV);
+	}
+
+	@Override
+	public Object visitRemainder(Remainder n) {
+		return genBinary(n, Bytecode.IREM);
+	}
+
+	private Object genBinary(BinExp n, int opcode) {
+		n.left.accept(this);
+		n.right.accept(this);
+		code.op(opcode, n.pos);
+		return null;
+	}
+
+	@Override
+	public Object visitLessThan(LessThan n) {
+		return genCondValue(n);
+	}
+
+	@Override
+	public Object visitGreaterThan(GreaterThan n) {
+		return genCondValue(n);
+	}
+
+	@Override
+	public Object visitEquals(Equals n) {
+		return genCondValue(n);
+	}
+
+	@Override
+	public Object visitAnd(And n) {
+		return genCondValue(n);
+	}
+
+	@Override
+	public Object visitOr(Or n) {
+		return genCondValue(n);
+	}
+
+	@Override
+	public Object visitNot(Not n) {
+		return genCondValue(n);
+	}
+
+	// a new String is the empty string
+	@Override
+	public Object visitNewObject(NewObject n) {
+		String name = ClassGen.className(n.objType.name);
+		if (name.equals("java/lang/String")) {
+			code.stringConst("", n.pos);
+			return null;
+		}
+		code.type(Bytecode.NEW, name, n.pos);
+		code.op(Bytecode.DUP, n.pos);
+		code.invoke(Bytecode.INVOKESPECIAL, name, "<init>", "()V", n.pos);
+		return null;
+	}
+
+	@Override
+	public Object visitNewArray(NewArray n) {
+		n.sizeExp.accept(this);
+		Type baseType = ((ArrayType)n.type).baseType;
+		if (baseType instanceof IntegerType) {
+			code.newArray(Bytecode.T_INT, n.pos);
+		}
+		else if (baseType instanceof BooleanType) {
+			code.newArray(Bytecode.T_BOOLEAN, n.pos);
+		}
+		else {
+			code.type(Bytecode.ANEWARRAY, ClassGen.typeName(baseType), n.pos);
+		}
+		return null;
+	}
+
+	@Override
+	public Object visitCast(Cast n) {
+		n.exp.accept(this);
+		code.type(Bytecode.CHECKCAST, ClassGen.typeName(n.castType), n.pos);
+		return null;
+	}
+
+	@Override
+	public Object visitInstanceOf(InstanceOf n) {
+		n.exp.accept(this);
+		code.type(Bytecode.INSTANCEOF, ClassGen.typeName(n.checkType), n.pos);
+		return null;
+	}
+
+	@Override
+	public Object visitCall(Call n) {
+		genCall(n);
+		return null;
+	}
+
+	// a call through the v-table, or, for a call on 'super', a call of the
+	// method itself; if the method's return type is narrower than its
+	// descriptor's, the result is cast
+	private void genCall(Call n) {
+		MethodDecl md = n.methodLink;
+		n.obj.accept(this);
+		for (int i = 0; i < n.parms.size(); i++) {
+			n.parms.elementAt(i).accept(this);
+		}
+		String desc = gen.methodDescriptor(md);
+		code.invoke(n.obj instanceof Super ? Bytecode.INVOKESPECIAL : Bytecode.INVOKEVIRTUAL,
+				ClassGen.className(gen.owner(md)), ClassGen.methodName(md), desc, n.pos);
+		if (md instanceof MethodDeclNonVoid) {
+			Type rtnType = ((MethodDeclNonVoid)md).rtnType;
+			String rtnDesc = ClassGen.descriptor(rtnType);
+			if (!ClassGen.isData(rtnType) && !desc.endsWith(")" + rtnDesc)) {
+				code.type(Bytecode.CHECKCAST, ClassGen.typeName(rtnType), n.pos);
+			}
+		}
+	}
+}
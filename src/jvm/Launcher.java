@@ -0,0 +1,145 @@
+package jvm;
+
+import java.io.*;
+import java.util.*;
+import java.util.regex.*;
+
+import errorMsg.*;
+import interp.*;
+
+// Runs a translated program (see ClassGen) in this JVM.  Use it as:
+//   new Launcher(classFiles, positions, errorMsg).run(in, out);
+// which loads the program's classes and runs its main statement.
+//
+// A Java exception that stops the program becomes a RunError, with the
+// same message as the VM gives where the exception says enough.  The
+// error's position is where the exception was thrown in the program's
+// innermost method on the stack: the position that 'positions' (see
+// ClassGen.positions) gives for the line number there, or, if
+// 'positions' is null, the start of that line.
+public class Launcher {
+
+	private static final Pattern CAST_MSG =
+			Pattern.compile("class (\\S+) cannot be cast to class (\\S+).*");
+	private static final Pattern SUBSTRING_MSG =
+			Pattern.compile("begin (-?\\d+), end (-?\\d+), length (\\d+)");
+	private static final Pattern STRING_INDEX_MSG =
+			Pattern.compile("(?:String index out of range: |index )(-?\\d+)(?:, length (\\d+))?");
+
+	private Map<String,byte[]> classFiles;
+	private int[] positions;
+	private ErrorMsg errorMsg;
+	private Loader loader;
+
+	public Launcher(Map<String,byte[]> aclassFiles, int[] apositions, ErrorMsg aerrorMsg) {
+		classFiles = aclassFiles;
+		positions = apositions;
+		errorMsg = aerrorMsg;
+	}
+
+	public void run(InputStream in, PrintStream out) {
+		loader = new Loader(classFiles, Launcher.class.getClassLoader());
+		Runnable main;
+		try {
+			main = (Runnable)loader.loadClass(ClassGen.MAIN_CLASS_NAME)
+					.getDeclaredConstructor().newInstance();
+		}
+		catch (ReflectiveOperationException rox) {
+			throw new IllegalStateException("cannot load " + ClassGen.MAIN_CLASS_NAME, rox);
+		}
+		try {
+			Lib.run(main, in, out);
+		}
+		catch (StackOverflowError sox) {
+			throw new RunError(failurePos(sox), "stack overflow");
+		}
+		catch (RunError rx) {
+			throw rx.pos >= 0 ? rx : new RunError(failurePos(rx), rx.getMessage());
+		}
+		catch (RuntimeException rx) {
+			String msg = message(rx);
+			if (msg == null) {
+				throw rx;
+			}
+			throw new RunError(failurePos(rx), msg);
+		}
+	}
+
+	// the position where the exception was thrown, or -1 if that is not
+	// known
+	private int failurePos(Throwable t) {
+		for (StackTraceElement frame : t.getStackTrace()) {
+			int line = frame.getLineNumber();
+			if (loader.defines(frame.getClassName()) && line > 0) {
+				if (positions == null) {
+					return errorMsg.lineStart(line);
+				}
+				return line <= positions.length ? positions[line-1] : -1;
+			}
+		}
+		return -1;
+	}
+
+	// the message for an exception that a MiniJava program can cause, or
+	// null if it is not one of those
+	private static String message(RuntimeException rx) {
+		String msg = rx.getMessage() == null ? "" : rx.getMessage();
+		if (rx instanceof NullPointerException) {
+			return "null pointer";
+		}
+		else if (rx instanceof ArithmeticException) {
+			return "division by zero";
+		}
+		else if (rx instanceof ArrayIndexOutOfBoundsException) {
+			return msg.startsWith("Index ") ? "array index " + msg.substring(6)
+					: "array index out of bounds";
+		}
+		else if (rx instanceof StringIndexOutOfBoundsException) {
+			Matcher m = SUBSTRING_MSG.matcher(msg);
+			if (m.matches()) {
+				return "substring(" + m.group(1) + ", " + m.group(2) +
+						") out of bounds for length " + m.group(3);
+			}
+			m = STRING_INDEX_MSG.matcher(msg);
+			if (m.matches()) {
+				return "string index " + m.group(1) + " out of bounds" +
+						(m.group(2) != null ? " for length " + m.group(2) : "");
+			}
+			return "string index out of bounds";
+		}
+		else if (rx instanceof NegativeArraySizeException) {
+			return "negative array size " + msg;
+		}
+		else if (rx instanceof ClassCastException) {
+			Matcher m = CAST_MSG.matcher(msg);
+			if (m.matches()) {
+				return "cannot cast " + sourceName(m.group(1)) + " to " + sourceName(m.group(2));
+			}
+			return "bad cast";
+		}
+		return null;
+	}
+
+	// the MiniJava name of a type, given the name of its Java class
+	private static String sourceName(String name) {
+		if (name.startsWith("[")) {
+			String elem = name.substring(1);
+			if (elem.equals("I")) {
+				return "int[]";
+			}
+			else if (elem.equals("Z")) {
+				return "boolean[]";
+			}
+			else if (elem.startsWith("L") && elem.endsWith(";")) {
+				elem = elem.substring(1, elem.length()-1);
+			}
+			return sourceName(elem) + "[]";
+		}
+		switch (name) {
+		case "java.lang.Object": return "Object";
+		case "java.lang.String": return "String";
+		case "jvm.Lib": return "Lib";
+		default: return name;
+		}
+	}
+}
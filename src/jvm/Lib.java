@@ -0,0 +1,60 @@
+package jvm;
+
+import java.io.*;
+
+import interp.*;
+
+// The predefined class Lib, for programs translated into class files (see
+// ClassGen): its public methods are Lib's MiniJava methods.  All Lib
+// objects share the program's input and output, which 'run' sets up.
+public class Lib {
+
+	private static LibInput in;
+	private static PrintStream out;
+
+	// runs a program's main statement (see ClassGen.MAIN_CLASS_NAME) with
+	// the given input and output; the output is buffered, and flushed
+	// before each read and when the program stops
+	public static synchronized void run(Runnable main, InputStream ain, PrintStream aout) {
+		out = new PrintStream(new BufferedOutputStream(aout, 1 << 16), false);
+		in = new LibInput(ain, out);
+		try {
+			main.run();
+		}
+		finally {
+			out.flush();
+		}
+	}
+
+	public String readLine() {
+		return in.readLine();
+	}
+
+	public int readInt() {
+		return in.readInt(-1);
+	}
+
+	public int readChar() {
+		return in.readChar();
+	}
+
+	public void printStr(String s) {
+		out.print(s);
+	}
+
+	public void printBool(boolean b) {
+		out.print(b);
+	}
+
+	public void printInt(int n) {
+		out.print(n);
+	}
+
+	public String intToString(int n) {
+		return Integer.toString(n);
+	}
+
+	public String intToChar(int n) {
+		return String.valueOf((char)n);
+	}
+}
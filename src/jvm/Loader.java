@@ -0,0 +1,40 @@
+package jvm;
+
+import java.util.*;
+
+// Loads the classes of a translated program (see ClassGen) from class
+// files in memory.  The program's classes are looked for here before the
+// parent loader is asked, so that a MiniJava class is never confused with
+// a class of the same name on the class path.
+final class Loader extends ClassLoader {
+
+	private Map<String,byte[]> classFiles;
+
+	Loader(Map<String,byte[]> aclassFiles, ClassLoader parent) {
+		super(parent);
+		classFiles = aclassFiles;
+	}
+
+	// whether the named class is one of the program's
+	boolean defines(String name) {
+		return classFiles.containsKey(name);
+	}
+
+	@Override
+	protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+		synchronized (getClassLoadingLock(name)) {
+			Class<?> c = findLoadedClass(name);
+			if (c == null) {
+				byte[] bytes = classFiles.get(name);
+				if (bytes == null) {
+					return super.loadClass(name, resolve);
+				}
+				c = defineClass(name, bytes, 0, bytes.length);
+			}
+			if (resolve) {
+				resolveClass(c);
+			}
+			return c;
+		}
+	}
+}
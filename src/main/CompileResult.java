@@ -0,0 +1,27 @@
+package main;
+
+/**
+ * the outcome of compiling a single input file
+ */
+public class CompileResult {
+
+	public String fileName; // the file that was compiled
+	public boolean success; // whether the compilation was free of errors
+	public String diagnostics; // error, warning and summary messages
+	public String output; // anything the compiler wrote to its output stream
+
+	/**
+	 * constructor
+	 * @param aFileName the file that was compiled
+	 * @param aSuccess whether the compilation was free of errors
+	 * @param aDiagnostics the messages produced during compilation
+	 * @param anOutput the output produced during compilation
+	 */
+	public CompileResult(String aFileName, boolean aSuccess,
+			String aDiagnostics, String anOutput) {
+		fileName = aFileName;
+		success = aSuccess;
+		diagnostics = aDiagnostics;
+		output = anOutput;
+	}
+}
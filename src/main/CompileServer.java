@@ -0,0 +1,193 @@
+package main;
+
+import java.io.*;
+import java.net.*;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.*;
+
+// A long-lived compile server.  Because the JVM stays up between
+// requests, the parse tables (MJScannerParseTable, MJGrammarParseTable)
+// are built once, and the compiler code stays JIT-compiled, so each
+// request pays only for the compilation itself.
+//
+// The server listens on a loopback TCP port.  A client sends one request
+// per line:
+//   compile [-1 .. -9] [-p | -pp | -vpp] <file>
+//   shutdown <key>
+// and, for each compile request, receives
+//   ok | failed
+//   diagnostics <n>
+//   ... n lines of diagnostics ...
+//   output <m>
+//   ... m lines of output ...
+//   end
+// A malformed request is answered with "error <message>".  The key that
+// shutdown needs is chosen at random when the server starts, and is given
+// only in the server's startup message, so that a client cannot stop the
+// server unless it was given the key.
+//
+// Each connection is served by a thread of its own, which waits for the
+// client's requests; only the compilations themselves run on the pool of
+// workers, so idle connections do not keep other clients waiting.
+public class CompileServer {
+
+	// a tiny program compiled at startup, so the parse tables are loaded
+	// and the compiler is warm before the first real request
+	private static final String WARMUP_SOURCE =
+		"class Main {\n" +
+		"    public void main() {\n" +
+		"        int x = 3;\n" +
+		"        while (x > 0) {\n" +
+		"            x--;\n" +
+		"        }\n" +
+		"        new Main().test(x);\n" +
+		"    }\n" +
+		"    public void test(int n) {\n" +
+		"        if (n < 0) {\n" +
+		"            n = n * 2;\n" +
+		"        }\n" +
+		"    }\n" +
+		"}\n";
+
+	private int port;
+	private int numWorkers;
+	private ServerSocket serverSocket;
+	private ExecutorService pool;
+	private String shutdownKey;
+	private volatile boolean shuttingDown;
+
+	public CompileServer(int aport, int anumWorkers) {
+		port = aport;
+		numWorkers = anumWorkers;
+		shuttingDown = false;
+	}
+
+	public void run() {
+		warmUp();
+		pool = Executors.newFixedThreadPool(numWorkers);
+		shutdownKey = newKey();
+		try {
+			serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+			System.err.println("Compile server listening on port " +
+					serverSocket.getLocalPort() + " (shutdown key " + shutdownKey + ").");
+			while (!shuttingDown) {
+				final Socket client = serverSocket.accept();
+				Thread handler = new Thread(new Runnable() {
+					public void run() {
+						serve(client);
+					}
+				}, "client " + client.getPort());
+				handler.setDaemon(true);
+				handler.start();
+			}
+		}
+		catch (IOException iox) {
+			if (!shuttingDown) {
+				Main4.exitError("Compile server error: " + iox);
+			}
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+
+	private static String newKey() {
+		byte[] bytes = new byte[16];
+		new SecureRandom().nextBytes(bytes);
+		StringBuilder sb = new StringBuilder();
+		for (byte b : bytes) {
+			sb.append(String.format("%02x", b & 0xFF));
+		}
+		return sb.toString();
+	}
+
+	private void warmUp() {
+		Main4.forSource("<warmup>", WARMUP_SOURCE).compileToResult();
+	}
+
+	// handles the requests on one connection, in order, until the client
+	// closes it
+	private void serve(Socket client) {
+		try (Socket s = client;
+				BufferedReader in = new BufferedReader(
+						new InputStreamReader(s.getInputStream()));
+				PrintWriter out = new PrintWriter(new BufferedWriter(
+						new OutputStreamWriter(s.getOutputStream())))) {
+			for (String line = in.readLine(); line != null; line = in.readLine()) {
+				String[] words = line.trim().split("\\s+");
+				if (words[0].equals("shutdown")) {
+					if (words.length == 2 && words[1].equals(shutdownKey)) {
+						shutdown();
+						return;
+					}
+					out.println("error shutdown refused");
+				}
+				else if (words[0].equals("compile")) {
+					final Main4 job = Main4.forRequest(
+							Arrays.copyOfRange(words, 1, words.length));
+					if (job == null) {
+						out.println("error malformed compile request");
+					}
+					else {
+						compile(out, job);
+					}
+				}
+				else if (words[0].length() > 0) {
+					out.println("error unknown request '" + words[0] + "'");
+				}
+				out.flush();
+			}
+		}
+		catch (IOException iox) {
+			// the client went away; nothing more to do for it
+		}
+	}
+
+	// runs a compilation on the pool, and waits for its result
+	private void compile(PrintWriter out, final Main4 job) {
+		Future<CompileResult> result = pool.submit(new Callable<CompileResult>() {
+			public CompileResult call() {
+				return job.compileToResult();
+			}
+		});
+		try {
+			writeResult(out, result.get());
+		}
+		catch (ExecutionException ex) {
+			out.println("error compilation failed: " + ex.getCause());
+		}
+		catch (InterruptedException ix) {
+			result.cancel(true);
+			Thread.currentThread().interrupt();
+			out.println("error server shutting down");
+		}
+	}
+
+	private void shutdown() {
+		shuttingDown = true;
+		try {
+			serverSocket.close();
+		}
+		catch (IOException iox) {
+			// already closed
+		}
+	}
+
+	private static void writeResult(PrintWriter out, CompileResult result) {
+		out.println(result.success ? "ok" : "failed");
+		writeSection(out, "diagnostics", result.diagnostics);
+		writeSection(out, "output", result.output);
+		out.println("end");
+	}
+
+	private static void writeSection(PrintWriter out, String name, String text) {
+		String[] lines = text.length() == 0 ? new String[0] : text.split("\r?\n", -1);
+		int n = lines.length;
+		if (n > 0 && lines[n-1].length() == 0) n--; // trailing newline
+		out.println(name + " " + n);
+		for (int i = 0; i < n; i++) {
+			out.println(lines[i]);
+		}
+	}
+}
@@ -7,19 +7,31 @@ import syntaxtree.*;
 import treedisplay.*;
 import visitor.*;
 import errorMsg.*;
+import interp.*;
+import vm.*;
+import jvm.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.awt.*;
 
 public class Main4 {
 	
 	private static final boolean SCANNER_ONLY = false;
+	private static final boolean STREAM_SCANNER_OUTPUT = true;
+	private static final int PIPE_BUFFER_SIZE = 1 << 16;
+	private static final boolean FUSE_SEMANTIC_PHASES_4_5 = true;
 	
 	private static final int SILENT = 0;
 	private static final int WINDOW = 1;
 	private static final int PRINT = 2;
 	
 	private static final int DEFAULT_PASS_LIMIT = 10;
+	private static final String AST_FILE_SUFFIX = ".mjast";
 	private static final int DEFAULT_FONT_SIZE = 12;
+	private static final long RUN_STACK_SIZE = 1L << 28;
+	private static final long JVM_RUN_STACK_SIZE = 1L << 26;
+	private static final int DEFAULT_NUM_WORKERS =
+			Runtime.getRuntime().availableProcessors();
 	private static final Color defaultColor() { return new Color(0xbb,0x99,0xff); }
 	
 	private int mode;
@@ -29,36 +41,78 @@ public class Main4 {
 	private int fontSize;
 	private Color color;
 	String inputFileName;
+	private Vector<String> inputFileNames;
+	private int numWorkers;
+	private int serverPort;
 	private String outputFileName;
 	private String appendFileName;
 	private InputStream inputStream;
 	private PrintStream outputStream;
 	private InputStream appendStream;
+	private PrintStream msgStream;
+	private boolean reportHierarchy = false;
+	private boolean gzipOutput = false;
+	private String astSaveFileName;
+	private String cacheDirName;
+	private boolean collectStats = false;
+	private PhaseStats stats;
+	private boolean runAfterCompile = false;
+	private boolean runOnVm = false;
+	private boolean runOnJvm = false;
+	private boolean genAssembly = false;
+	private String classDirName;
+	private Map<String,byte[]> classFiles;
+	private int[] classFilePositions;
+	private boolean runFailed = false;
 	ErrorMsg errorMsg;
 	
 	public static void main(String args[])  {
 		Main4 mainObj = new Main4();
 		mainObj.parseCommandLine(args);
-		mainObj.errorMsg = new ErrorMsg(mainObj.inputFileName);
-		mainObj.execMain(false);
+		if (mainObj.serverPort >= 0) {
+			new CompileServer(mainObj.serverPort, mainObj.numWorkers).run();
+		}
+		else if (mainObj.inputFileNames.size() > 1) {
+			mainObj.execBatch();
+		}
+		else {
+			mainObj.errorMsg = new ErrorMsg(mainObj.inputFileName);
+			mainObj.execMain(false);
+		}
 	}
 	
 	void execMain(boolean useTerminal) {
 		try {
 			this.openFiles();
-			AstNode ast = (Program)this.parseFile();
-			Hashtable<String,ClassDecl> globalTab = this.semanticPhase1(ast);
-			this.semanticPhase2(ast, globalTab);
-			this.semanticPhase3(ast, globalTab);
-			this.semanticPhase4(ast, globalTab);
-			this.semanticPhase5(ast, globalTab);
-//			this.cgPhase1(ast, globalTab);
-//			this.cgPhase2(ast);
-//			this.cgPhase3(ast);
-//			this.appendFile();
-			this.printSummaryMessage();
+			stats = collectStats ? new PhaseStats() : null;
+			AstNode ast;
+			if (inputFileName.endsWith(AST_FILE_SUFFIX)) {
+				PhaseStats.Mark start = this.startPhase();
+				ast = this.loadAst();
+				this.endPhase("load", start, ast);
+			}
+			else {
+				ast = this.compilePhases();
+				this.saveAst(ast);
+			}
+			PhaseStats.Mark start = this.startPhase();
+			this.foldConstants(ast);
+			this.endPhase("fold", start, ast);
+			this.genClassFiles(ast);
+			this.cgPhase1(ast);
+			this.cgPhase2(ast);
+			this.cgPhase3(ast);
+			this.appendFile();
+			start = this.startPhase();
 			this.displayAst(ast);
+			this.endPhase("display", start, ast);
+			this.runProgram(ast);
+			this.printSummaryMessage();
+			this.printStats();
 			this.closeFiles();
+			if (runFailed) {
+				exit(1);
+			}
 		}
 		catch (Exception e) {
 			e.printStackTrace();
@@ -66,13 +120,220 @@ public class Main4 {
 		}
 	}
 	
+	// runs the phases, from parsing through semantic analysis, on the
+	// (already opened) input stream
+	AstNode compilePhases() {
+		AstNode.startIds();
+		PhaseStats.Mark start = this.startPhase();
+		AstNode ast;
+		if (cacheDirName != null) {
+			ast = this.parseFileCached();
+			this.endPhase("parse", start, ast);
+		}
+		else {
+			ast = (Program)this.parseFile();
+			this.endPhase(MJGrammar.FILTER_GRAMMAR && STREAM_SCANNER_OUTPUT
+					? "grammar" : "parse", start, ast);
+		}
+		if (ast != null) {
+			start = this.startPhase();
+			ast.accept(new ListTrimVisitor());
+			this.endPhase("trim", start, ast);
+			start = this.startPhase();
+			ast.accept(new NameInternVisitor());
+			this.endPhase("intern", start, ast);
+		}
+		start = this.startPhase();
+		Hashtable<String,ClassDecl> globalTab = this.semanticPhase1(ast);
+		this.endPhase("sem1", start, ast);
+		start = this.startPhase();
+		this.semanticPhase2(ast, globalTab);
+		this.endPhase("sem2", start, ast);
+		start = this.startPhase();
+		this.semanticPhase3(ast, globalTab);
+		this.endPhase("sem3", start, ast);
+		start = this.startPhase();
+		this.numberClassHierarchy(ast, globalTab);
+		this.endPhase("hier", start, ast);
+		if (FUSE_SEMANTIC_PHASES_4_5 && pass >= 6) {
+			start = this.startPhase();
+			this.semanticPhase45(ast, globalTab);
+			this.endPhase("sem4+5", start, ast);
+		}
+		else {
+			start = this.startPhase();
+			this.semanticPhase4(ast, globalTab);
+			this.endPhase("sem4", start, ast);
+			start = this.startPhase();
+			this.semanticPhase5(ast, globalTab);
+			this.endPhase("sem5", start, ast);
+		}
+		return ast;
+	}
+
+	// the current thread's clocks, if '-stats' was given
+	private PhaseStats.Mark startPhase() {
+		return stats == null ? null : PhaseStats.mark();
+	}
+
+	// if '-stats' was given, records the named phase as having run from
+	// 'start' until now, leaving the given tree
+	private void endPhase(String phase, PhaseStats.Mark start, AstNode ast) {
+		if (stats != null) {
+			stats.record(phase, start, ast);
+		}
+	}
+
+	// if '-stats' was given, reports the costs of the compilation's phases
+	// as a line of JSON
+	private void printStats() {
+		if (stats != null) {
+			msgStream.println(stats.toJson(inputFileName, !errorMsg.anyErrors));
+		}
+	}
+	
+	// reads a tree saved by an earlier '-save' from the (already opened)
+	// input stream, instead of compiling; messages then give the file name
+	// and lines of the source it was compiled from
+	private AstNode loadAst() {
+		try {
+			AstNode.startIds();
+			return new AstReader().read(inputStream, errorMsg);
+		}
+		catch (IOException iox) {
+			exitError("Error reading "+inputFileName+": "+iox.getMessage());
+			return null;
+		}
+	}
+
+	// if '-save' was given, writes the checked tree to the named file, so
+	// that it can be reloaded (by giving that file as the input) without
+	// re-running the phases; a tree with errors is not saved
+	private void saveAst(AstNode ast) {
+		if (astSaveFileName == null || ast == null) return;
+		if (errorMsg.anyErrors) {
+			msgStream.println("Not saving the tree for "+inputFileName+
+					", which has errors.");
+			return;
+		}
+		try (OutputStream os = new FileOutputStream(astSaveFileName)) {
+			new AstWriter().write(ast, errorMsg, os);
+		}
+		catch (IOException iox) {
+			exitError("Error writing "+astSaveFileName+": "+iox.getMessage());
+		}
+	}
+
+	// compiles each input file as an independent job on a pool of worker
+	// threads; results are reported in the order the files were given
+	void execBatch() {
+		if (mode == WINDOW) exitError("Cannot use '-w' with multiple input files");
+		if (outputFileName != null) exitError("Cannot use '-o' with multiple input files");
+		if (gzipOutput) exitError("Cannot use '-gz' with multiple input files");
+		if (astSaveFileName != null) exitError("Cannot use '-save' with multiple input files");
+		if (runAfterCompile) exitError("Cannot use '-run', '-vm' or '-jvm' with multiple input files");
+		if (classDirName != null) exitError("Cannot use '-d' with multiple input files");
+		if (genAssembly) exitError("Cannot use '-S' with multiple input files");
+		ExecutorService pool = Executors.newFixedThreadPool(numWorkers);
+		Vector<Future<CompileResult>> futures = new Vector<Future<CompileResult>>();
+		for (String name : inputFileNames) {
+			final Main4 worker = this.copyFor(name);
+			futures.addElement(pool.submit(new Callable<CompileResult>() {
+				public CompileResult call() {
+					return worker.compileToResult();
+				}
+			}));
+		}
+		pool.shutdown();
+		int numFailed = 0;
+		for (int i = 0; i < futures.size(); i++) {
+			CompileResult result;
+			try {
+				result = futures.elementAt(i).get();
+			}
+			catch (InterruptedException | ExecutionException e) {
+				result = new CompileResult(inputFileNames.elementAt(i), false,
+						"Unexpected exception: "+e+"\n", "");
+			}
+			System.out.print(result.output);
+			System.out.flush();
+			System.err.print(result.diagnostics);
+			if (!result.success) numFailed++;
+		}
+		System.err.println("Batch compilation: "+futures.size()+" files, "+
+				numFailed+" failed.");
+	}
+	
+	// a copy of this object's settings, set up to compile the given file
+	private Main4 copyFor(String fileName) {
+		Main4 rtnVal = new Main4();
+		rtnVal.mode = mode;
+		rtnVal.prettyPrint = prettyPrint;
+		rtnVal.verbosePrettyPrint = verbosePrettyPrint;
+		rtnVal.pass = pass;
+		rtnVal.reportHierarchy = reportHierarchy;
+		rtnVal.cacheDirName = cacheDirName;
+		rtnVal.collectStats = collectStats;
+		rtnVal.inputFileName = fileName;
+		rtnVal.inputFileNames.addElement(fileName);
+		return rtnVal;
+	}
+	
+	// compiles the input file (or the input stream, if one has already been
+	// supplied), collecting diagnostics and output into a result object
+	// instead of writing them to System.err/System.out
+	CompileResult compileToResult() {
+		ByteArrayOutputStream msgBuf = new ByteArrayOutputStream();
+		ByteArrayOutputStream outBuf = new ByteArrayOutputStream();
+		msgStream = new PrintStream(msgBuf);
+		outputStream = new PrintStream(outBuf);
+		errorMsg = new ErrorMsg(inputFileName, msgStream);
+		try {
+			if (inputStream == null) {
+				inputStream = new FileInputStream(inputFileName);
+			}
+			stats = collectStats ? new PhaseStats() : null;
+			AstNode ast = this.compilePhases();
+			this.printSummaryMessage();
+			PhaseStats.Mark start = this.startPhase();
+			this.displayAst(ast);
+			this.endPhase("display", start, ast);
+			this.printStats();
+		}
+		catch (FileNotFoundException e) {
+			msgStream.println("File not found: " + inputFileName);
+			errorMsg.anyErrors = true;
+		}
+		catch (Exception e) {
+			e.printStackTrace(msgStream);
+			msgStream.println("Unexpected exception: "+e);
+			errorMsg.anyErrors = true;
+		}
+		finally {
+			try {
+				if (inputStream != null) inputStream.close();
+			}
+			catch (IOException iox) {
+				// nothing useful to do; the file has been read
+			}
+		}
+		msgStream.flush();
+		outputStream.flush();
+		return new CompileResult(inputFileName, !errorMsg.anyErrors,
+				msgBuf.toString(), outBuf.toString());
+	}
+	
 	Main4() {
 		mode = SILENT;
 		pass = DEFAULT_PASS_LIMIT;
 		fontSize = DEFAULT_FONT_SIZE;
 		inputFileName = null;
+		inputFileNames = new Vector<String>();
+		numWorkers = DEFAULT_NUM_WORKERS;
+		serverPort = -1;
 		outputFileName = null;
 		appendFileName = null;
+		msgStream = System.err;
 		errorMsg = null;
 	}
 	
@@ -120,6 +381,62 @@ public class Main4 {
 					prettyPrint = true;
 					verbosePrettyPrint = true;
 				}
+				else if (arg.equals("-hier")) {
+					reportHierarchy = true;
+				}
+				else if (arg.equals("-gz")) {
+					gzipOutput = true;
+				}
+				else if (arg.equals("-stats")) {
+					collectStats = true;
+				}
+				else if (arg.equals("-run")) {
+					runAfterCompile = true;
+				}
+				else if (arg.equals("-vm")) {
+					runAfterCompile = true;
+					runOnVm = true;
+				}
+				else if (arg.equals("-jvm")) {
+					runAfterCompile = true;
+					runOnJvm = true;
+				}
+				else if (arg.equals("-S")) {
+					genAssembly = true;
+				}
+				else if (arg.equals("-cache")) {
+					i++;
+					if (i >= args.length) exitError("No directory name after '-cache'");
+					cacheDirName = args[i];
+				}
+				else if (arg.equals("-save")) {
+					i++;
+					if (i >= args.length) exitError("No file name after '-save'");
+					astSaveFileName = args[i];
+				}
+				else if (arg.equals("-server")) {
+					i++;
+					if (i >= args.length) exitError("No port number after '-server'");
+					try {
+						serverPort = Integer.parseInt(args[i]);
+					}
+					catch (NumberFormatException nfx) {
+						exitError("Illegal port number: '"+args[i]+"'");
+					}
+					if (serverPort < 0) exitError("Illegal port number: '"+args[i]+"'");
+				}
+				else if (arg.startsWith("-j")) {
+					numWorkers = DEFAULT_NUM_WORKERS;
+					if (arg.length() > 2) {
+						try {
+							numWorkers = Integer.parseInt(arg.substring(2));
+						}
+						catch (NumberFormatException nfx) {
+							exitError("Illegal worker count: '"+arg+"'");
+						}
+						if (numWorkers <= 0) exitError("Illegal worker count: '"+arg+"'");
+					}
+				}
 				else if (arg.length() == 2) {
 					switch (arg.charAt(1)) {
 						case '1': pass = 1; break;
@@ -136,6 +453,11 @@ public class Main4 {
 							if (i >= args.length) exitError ("No file name after '-a'");
 							appendFileName = args[i];
 							break;
+						case 'd':
+							i++;
+							if (i >= args.length) exitError("No directory name after '-d'");
+							classDirName = args[i];
+							break;
 						case 'p': mode = PRINT; prettyPrint = false; break;
 						case 'w':
 							mode = WINDOW;	
@@ -158,11 +480,91 @@ public class Main4 {
 				}
 			}
 			else {
-				if (inputFileName != null) exitError("Too many input file names given");
-				inputFileName = arg;
+				addInputFileName(arg);
+			}
+		}
+		if (serverPort >= 0) return;
+		if (inputFileNames.isEmpty()) exitError("No input file name given");
+		inputFileName = inputFileNames.firstElement();
+	}
+	
+	// the settings for a single compile request received by the compile
+	// server: an optional pass limit ('-1' .. '-9'), an optional print
+	// switch ('-p', '-pp' or '-vpp') and a file name; returns null if the
+	// request is malformed
+	static Main4 forRequest(String[] args) {
+		Main4 rtnVal = new Main4();
+		for (String arg : args) {
+			if (arg.equals("-p")) {
+				rtnVal.mode = PRINT;
+				rtnVal.prettyPrint = false;
+			}
+			else if (arg.equals("-pp") || arg.equals("-vpp")) {
+				rtnVal.mode = PRINT;
+				rtnVal.prettyPrint = true;
+				rtnVal.verbosePrettyPrint = arg.equals("-vpp");
+			}
+			else if (arg.length() == 2 && arg.charAt(0) == '-' &&
+					arg.charAt(1) >= '1' && arg.charAt(1) <= '9') {
+				rtnVal.pass = arg.charAt(1) - '0';
+			}
+			else if (arg.length() > 0 && arg.charAt(0) != '-' &&
+					rtnVal.inputFileName == null) {
+				rtnVal.inputFileName = arg;
+			}
+			else {
+				return null;
+			}
+		}
+		if (rtnVal.inputFileName == null) return null;
+		rtnVal.inputFileNames.addElement(rtnVal.inputFileName);
+		return rtnVal;
+	}
+	
+	// the settings for compiling source text that is already in memory
+	static Main4 forSource(String fileName, String source) {
+		Main4 rtnVal = new Main4();
+		rtnVal.inputFileName = fileName;
+		rtnVal.inputFileNames.addElement(fileName);
+		rtnVal.inputStream = new ByteArrayInputStream(source.getBytes());
+		return rtnVal;
+	}
+	
+	// adds an input file; a directory contributes every .java file beneath
+	// it, and '@name' contributes each file named (one per line) in 'name'
+	private void addInputFileName(String arg) {
+		if (arg.startsWith("@") && arg.length() > 1) {
+			String listFileName = arg.substring(1);
+			try (BufferedReader rdr = new BufferedReader(new FileReader(listFileName))) {
+				for (String line = rdr.readLine(); line != null; line = rdr.readLine()) {
+					line = line.trim();
+					if (line.length() > 0) addInputFileName(line);
+				}
+			}
+			catch (IOException iox) {
+				exitError("Error reading file list: " + listFileName);
+			}
+		}
+		else if (new File(arg).isDirectory()) {
+			addJavaFiles(new File(arg));
+		}
+		else {
+			inputFileNames.addElement(arg);
+		}
+	}
+	
+	private void addJavaFiles(File dir) {
+		File[] entries = dir.listFiles();
+		if (entries == null) return;
+		Arrays.sort(entries);
+		for (File f : entries) {
+			if (f.isDirectory()) {
+				addJavaFiles(f);
+			}
+			else if (f.getName().endsWith(".java")) {
+				inputFileNames.addElement(f.getPath());
 			}
 		}
-		if (inputFileName == null) exitError("No input file name given");
 	}
 	
 	private void openFiles() {
@@ -197,13 +599,16 @@ public class Main4 {
 			new MJScannerParseTable(new MJScanner(errorMsg, System.out)).parse(inputStream,0,false);	
 			return null;
 		}
+		else if (MJGrammar.FILTER_GRAMMAR && STREAM_SCANNER_OUTPUT) {
+			return parseFileStreaming();
+		}
 		else if (MJGrammar.FILTER_GRAMMAR) {
 			
 			try {
 				
 				ByteArrayOutputStream os = new ByteArrayOutputStream(1000000);
 				// parse the original input, sending its data to the pipe
-				ErrorMsg scannerErrorObject = new ErrorMsg(errorMsg.getFileName());
+				ErrorMsg scannerErrorObject = new ErrorMsg(errorMsg.getFileName(), msgStream);
 				MJScanner scanner = new MJScanner(scannerErrorObject, os);
 				new MJScannerParseTable(scanner).parse(inputStream,0,false);
 
@@ -225,7 +630,7 @@ public class Main4 {
 				return mj.parseResult();
 			}
 			catch (IOException iox) {
-				System.err.println("Internal piping error.");
+				msgStream.println("Internal piping error.");
 				return null;
 			}
 		}
@@ -241,6 +646,202 @@ public class Main4 {
 		}
 	}
 	
+	// like parseFile, but goes through the parse cache (see ParseCache):
+	// each class whose text has been parsed before is loaded from the
+	// cache, the others are parsed together in one pass and added to the
+	// cache, and the classes are then put together into one program.  If
+	// that pass reports anything, the file is parsed as a whole instead,
+	// so that messages come out just as they would without the cache.
+	private AstNode parseFileCached() {
+		byte[] text;
+		try {
+			text = inputStream.readAllBytes();
+		}
+		catch (IOException iox) {
+			msgStream.println("Error reading "+inputFileName+".");
+			return null;
+		}
+		inputStream = new ByteArrayInputStream(text);
+		int[] ends = ParseCache.pieceEnds(text);
+		if (ends == null) {
+			return parseFile();
+		}
+		ParseCache cache = new ParseCache(cacheDirName);
+		ClassDecl[] classes = new ClassDecl[ends.length];
+		ByteArrayOutputStream missedText = new ByteArrayOutputStream();
+		for (int i = 0; i < ends.length; i++) {
+			int from = i == 0 ? 0 : ends[i-1];
+			classes[i] = cache.lookup(text, from, ends[i]);
+			if (classes[i] == null) {
+				missedText.write(text, from, ends[i]-from);
+			}
+		}
+		if (cache.numMisses > 0) {
+			Program missed = parseText(missedText.toByteArray());
+			if (missed == null || missed.classDecls.size() != cache.numMisses) {
+				inputStream = new ByteArrayInputStream(text);
+				return parseFile();
+			}
+			int k = 0;
+			int missedFrom = 0;
+			for (int i = 0; i < ends.length; i++) {
+				if (classes[i] == null) {
+					int from = i == 0 ? 0 : ends[i-1];
+					classes[i] = missed.classDecls.elementAt(k++);
+					classes[i].accept(new PositionShiftVisitor(-missedFrom));
+					cache.store(text, from, ends[i], classes[i]);
+					missedFrom += ends[i]-from;
+				}
+			}
+		}
+		ClassDeclList classList = new ClassDeclList();
+		for (int i = 0; i < ends.length; i++) {
+			if (i > 0) {
+				classes[i].accept(new PositionShiftVisitor(ends[i-1]));
+			}
+			classList.addElement(classes[i]);
+		}
+		// the line structure that the parser would have recorded
+		for (int i = 0; i < text.length; i++) {
+			if (text[i] == '\n') {
+				errorMsg.newline(i);
+			}
+		}
+		if (stats != null) {
+			stats.recordParseCache(cache.numHits, ends.length);
+		}
+		return new Program(ParseCache.firstTokenPos(text), classList);
+	}
+
+	// parses 'text' as a separate file; returns null if there are any
+	// messages, of any kind
+	private Program parseText(byte[] text) {
+		Main4 sub = new Main4();
+		ByteArrayOutputStream msgBuf = new ByteArrayOutputStream();
+		sub.inputFileName = inputFileName;
+		sub.msgStream = new PrintStream(msgBuf);
+		sub.errorMsg = new ErrorMsg(inputFileName, sub.msgStream);
+		sub.inputStream = new ByteArrayInputStream(text);
+		AstNode ast = sub.parseFile();
+		sub.msgStream.flush();
+		if (sub.errorMsg.anyErrors || msgBuf.size() > 0 ||
+				!(ast instanceof Program)) {
+			return null;
+		}
+		return (Program)ast;
+	}
+
+	// like the FILTER_GRAMMAR case of parseFile, but the scanner runs on its
+	// own thread and feeds its filtered output to the grammar parser through
+	// a bounded pipe, so scanning and parsing overlap and the filtered text
+	// is never held in memory all at once
+	private AstNode parseFileStreaming() {
+		// the scanner's messages are kept until it is done, and the
+		// parser's until those have been written, so that they come out in
+		// the same order as when the scanner runs first
+		final ByteArrayOutputStream scannerMessages = new ByteArrayOutputStream();
+		final ErrorMsg scannerErrorObject = new ErrorMsg(errorMsg.getFileName(),
+				new PrintStream(scannerMessages, true));
+		final PipedInputStream pipeIn = new PipedInputStream(PIPE_BUFFER_SIZE);
+		final PipedOutputStream pipeOut;
+		try {
+			pipeOut = new PipedOutputStream(pipeIn);
+		}
+		catch (IOException iox) {
+			msgStream.println("Internal piping error.");
+			return null;
+		}
+		final Throwable[] scannerFailure = new Throwable[1];
+		final long[][] scannerCost = new long[1][];
+		final boolean measureScanner = stats != null;
+		Thread scannerThread = new Thread(new Runnable() {
+			public void run() {
+				PhaseStats.Mark start = measureScanner ? PhaseStats.mark() : null;
+				OutputStream os = new BufferedOutputStream(pipeOut, PIPE_BUFFER_SIZE);
+				try {
+					// parse the original input, sending its data to the pipe
+					MJScanner scanner = new MJScanner(scannerErrorObject, os);
+					new MJScannerParseTable(scanner).parse(inputStream,0,false);
+				}
+				catch (Throwable t) {
+					scannerFailure[0] = t;
+				}
+				finally {
+					try {
+						os.close();
+					}
+					catch (IOException iox) {
+						scannerFailure[0] = iox;
+					}
+					if (measureScanner) {
+						scannerCost[0] = PhaseStats.since(start);
+					}
+				}
+			}
+		}, "scanner:" + errorMsg.getFileName());
+		scannerThread.setDaemon(true);
+		scannerThread.start();
+
+		// create the semantic action object
+		MJGrammar mj = new MJGrammar(errorMsg);
+		InputStream is = new BufferedInputStream(pipeIn, PIPE_BUFFER_SIZE);
+		boolean pipeFailed = false;
+		errorMsg.holdMessages();
+		try {
+			// parse the filtered text as the scanner produces it
+			new MJGrammarParseTable(mj).parse(is,0,false);
+
+			// the parser may stop early (e.g., on a syntax error); drain the
+			// pipe so the scanner is not left blocked on a full buffer
+			byte[] discard = new byte[PIPE_BUFFER_SIZE];
+			while (is.read(discard) >= 0) {
+			}
+		}
+		catch (IOException iox) {
+			pipeFailed = true;
+		}
+		finally {
+			// closing the pipe stops the scanner if the parser failed
+			try {
+				is.close();
+			}
+			catch (IOException iox) {
+				pipeFailed = true;
+			}
+			try {
+				scannerThread.join();
+			}
+			catch (InterruptedException ix) {
+				Thread.currentThread().interrupt();
+				pipeFailed = true;
+			}
+			String[] parserMessages = errorMsg.takeHeldMessages();
+			String text = new String(scannerMessages.toByteArray());
+			if (text.length() > 0) {
+				for (String line : text.split("\r?\n")) {
+					errorMsg.info(line);
+				}
+			}
+			if (scannerErrorObject.anyErrors) {
+				errorMsg.error(-1, "Error detected during scanning");
+			}
+			for (String line : parserMessages) {
+				errorMsg.info(line);
+			}
+		}
+		if (scannerCost[0] != null) {
+			stats.record("scan", scannerCost[0], null);
+		}
+		if (pipeFailed || scannerFailure[0] != null) {
+			msgStream.println("Internal piping error.");
+			return null;
+		}
+
+		// return the result of the parse
+		return mj.parseResult();
+	}
+
+	
 	public Hashtable<String,ClassDecl> semanticPhase1(AstNode ast) {
 		if (!errorMsg.anyErrors && ast != null && pass >= 2) {
 			Sem1Visitor vis = new Sem1Visitor(errorMsg);
@@ -264,6 +865,19 @@ public class Main4 {
 		}
 	}
 	
+	public void numberClassHierarchy(AstNode ast, Hashtable<String,ClassDecl> globalTbl) {
+		if (!errorMsg.anyErrors && ast != null && pass >= 5) {
+			HierarchyNumberer numberer = new HierarchyNumberer();
+			numberer.number(globalTbl);
+			if (reportHierarchy) {
+				msgStream.println(numberer.depthStatistics());
+			}
+			if (stats != null) {
+				stats.recordHierarchy(numberer);
+			}
+		}
+	}
+	
 	public void semanticPhase4(AstNode ast, Hashtable<String,ClassDecl> globalTbl) {
 		if (!errorMsg.anyErrors && ast != null && pass >= 5) {
 			new Sem4Visitor(globalTbl, errorMsg).visit(ast);
@@ -275,27 +889,132 @@ public class Main4 {
 			new Sem5Visitor(errorMsg).visit(ast);
 		}
 	}
-//	
-//	public void cgPhase1(AstNode ast, Hashtable<String,ClassDecl> globalTbl) {
-//		if (!errorMsg.anyErrors && ast != null && pass >= 7) {
-//			new CG1Visitor(errorMsg, outputStream).visit(ast);
-//		}
-//	}
-//	
-//	public void cgPhase2(AstNode ast) {
-//		if (!errorMsg.anyErrors && ast != null && pass >= 8) {
-//			new CG2Visitor(errorMsg, outputStream).visit(ast);
-//		}
-//	}
-//	
-//	public void cgPhase3(AstNode ast) {
-//		if (!errorMsg.anyErrors && ast != null && pass >= 9) {
-//			new CG3Visitor(errorMsg, outputStream).visit(ast);
-//		}
-//	}
-//	
+	
+	// phases 4 and 5 in a single traversal
+	public void semanticPhase45(AstNode ast, Hashtable<String,ClassDecl> globalTbl) {
+		if (!errorMsg.anyErrors && ast != null && pass >= 6) {
+			new Sem45Visitor(globalTbl, errorMsg).visit(ast);
+		}
+	}
+	
+	// if a backend is to be used ('-run', '-vm', '-jvm', '-S' or '-d'),
+	// simplifies the (successfully checked) program for it: folds its
+	// constant expressions and removes the branches, loops and switch cases
+	// that they make dead.  Otherwise the tree is left as it was checked,
+	// so that '-p', '-pp' and '-save' show the program as written.
+	public void foldConstants(AstNode ast) {
+		if (!errorMsg.anyErrors && (runAfterCompile || genAssembly || classDirName != null) &&
+				ast instanceof Program && pass >= 7) {
+			new ConstFoldVisitor().visit(ast);
+		}
+	}
+	
+	// if '-jvm' or '-d' was given, translates the (successfully checked)
+	// program into class files, which '-d' writes to the given directory.
+	// Class files that are only run here number positions rather than
+	// lines (see ClassGen), so that run-time errors give exact positions.
+	public void genClassFiles(AstNode ast) {
+		if (!errorMsg.anyErrors && (runOnJvm || classDirName != null) &&
+				ast instanceof Program && pass >= 7) {
+			PhaseStats.Mark start = this.startPhase();
+			ClassGen gen = new ClassGen((Program)ast, errorMsg, classDirName == null);
+			classFiles = gen.generate();
+			classFilePositions = gen.positions();
+			this.endPhase("jvm", start, ast);
+			if (classDirName != null && !errorMsg.anyErrors) {
+				try {
+					ClassGen.write(classFiles, new File(classDirName));
+				}
+				catch (IOException iox) {
+					exitError("Error writing class files to "+classDirName+": "+iox.getMessage());
+				}
+			}
+		}
+	}
+	
+	// if '-S' was given, the three phases of translating the (successfully
+	// checked) program into x86-64 assembly code, written to the output
+	// file; '-a' appends the runtime (runtime/mjrt.s) to complete it
+	public void cgPhase1(AstNode ast) {
+		if (!errorMsg.anyErrors && genAssembly && ast instanceof Program && pass >= 7) {
+			PhaseStats.Mark start = this.startPhase();
+			new CG1Visitor(errorMsg, outputStream).visit(ast);
+			this.endPhase("cg1", start, ast);
+		}
+	}
+	
+	public void cgPhase2(AstNode ast) {
+		if (!errorMsg.anyErrors && genAssembly && ast instanceof Program && pass >= 8) {
+			PhaseStats.Mark start = this.startPhase();
+			new CG2Visitor(errorMsg, outputStream).visit(ast);
+			this.endPhase("cg2", start, ast);
+		}
+	}
+	
+	public void cgPhase3(AstNode ast) {
+		if (!errorMsg.anyErrors && genAssembly && ast instanceof Program && pass >= 9) {
+			PhaseStats.Mark start = this.startPhase();
+			new CG3Visitor(errorMsg, outputStream).visit(ast);
+			this.endPhase("cg3", start, ast);
+		}
+	}
+	
+	// if '-run', '-vm' or '-jvm' was given, runs the (successfully checked)
+	// program with the interpreter, the VM or this JVM, with the program's
+	// input and output on System.in and System.out.  The program runs on a
+	// thread of its own with a large stack, as each level of recursion in
+	// the program takes several Java frames.  The stack is bounded, so that
+	// a runaway recursion stops with a stack overflow in reasonable time
+	// and memory; under '-jvm', where each level takes one small frame but
+	// the JVM's handling of an overflow costs time and memory in proportion
+	// to the stack, it is smaller.  A run-time error is reported as an
+	// error at its position, and execMain then exits with status 1, as the
+	// native runtime does.
+	public void runProgram(final AstNode ast) {
+		if (!errorMsg.anyErrors && runAfterCompile && ast instanceof Program && pass >= 6 &&
+				(!runOnJvm || classFiles != null)) {
+			final RuntimeException[] failure = new RuntimeException[1];
+			Thread runner = new Thread(null, new Runnable() {
+				public void run() {
+					PhaseStats.Mark start = startPhase();
+					try {
+						if (runOnJvm) {
+							new Launcher(classFiles, classFilePositions, errorMsg)
+									.run(System.in, System.out);
+						}
+						else if (runOnVm) {
+							new VM((Program)ast, System.in, System.out).run();
+						}
+						else {
+							new Interpreter((Program)ast, System.in, System.out).run();
+						}
+					}
+					catch (RuntimeException rx) {
+						failure[0] = rx;
+					}
+					endPhase("run", start, ast);
+				}
+			}, "run " + inputFileName, runOnJvm ? JVM_RUN_STACK_SIZE : RUN_STACK_SIZE);
+			runner.start();
+			try {
+				runner.join();
+			}
+			catch (InterruptedException ix) {
+				Thread.currentThread().interrupt();
+			}
+			if (failure[0] instanceof RunError) {
+				RunError rx = (RunError)failure[0];
+				errorMsg.error(rx.pos, "Runtime error: " + rx.getMessage());
+				runFailed = true;
+			}
+			else if (failure[0] != null) {
+				throw failure[0];
+			}
+		}
+	}
+	
 	public void appendFile() {
-		if (!errorMsg.anyErrors && appendStream != null && pass >= 10) {
+		if (!errorMsg.anyErrors && genAssembly && appendStream != null && pass >= 10) {
 			try {
 				for (;;) {
 					int b = appendStream.read();
@@ -324,11 +1043,14 @@ public class Main4 {
 	}
 	
 	public void printSummaryMessage() {
-		if (errorMsg.anyErrors) {
-			System.err.println("Compilation failed for "+inputFileName+".");
+		if (runFailed) {
+			msgStream.println("Run failed for "+inputFileName+".");
+		}
+		else if (errorMsg.anyErrors) {
+			msgStream.println("Compilation failed for "+inputFileName+".");
 		}
 		else {
-			System.err.println("Compilation successful for "+inputFileName+".");
+			msgStream.println("Compilation successful for "+inputFileName+".");
 		}
 	}
 	
@@ -347,8 +1069,13 @@ public class Main4 {
 			}
 			else {
 				TreeDrawer myObj = new TreeDrawer(ast, null);
-					myObj.printToStream(new PrintStream(outputStream));
-					return;
+				try {
+					myObj.printToStream(outputStream, gzipOutput);
+				}
+				catch (IOException iox) {
+					exitError("Error writing abstract syntax tree: " + iox);
+				}
+				return;
 			}		}	
 		else {
 			TreeDisplayFrame myObj =
@@ -0,0 +1,173 @@
+package main;
+
+import java.io.*;
+import java.security.*;
+import java.util.Arrays;
+
+import syntaxtree.*;
+import visitor.*;
+
+// An on-disk cache of parsed classes, used with the '-cache <dir>' switch.
+//
+// A source file is split into pieces, one per top-level class: each piece
+// runs from the end of the previous class (or the start of the file)
+// through the closing brace of its class, and the last piece also takes
+// whatever follows it.  The cache stores the class's parse tree (in
+// AstWriter's format, with positions relative to the start of the piece)
+// under a hash of the piece's text, so a class whose text has not changed
+// is loaded instead of being scanned and parsed again.  Since the key is
+// the text itself, entries never go stale; an edited class simply gets a
+// new entry.
+//
+// Only parsing is cached.  It is where nearly all of a compilation's time
+// goes, and a parsed class depends on nothing but its own text.  The
+// semantic phases then run over the whole program as usual, so the links
+// between classes, and the error messages, are always up to date.
+class ParseCache {
+
+	private static final String FORMAT = "MJAS-parse-1";
+	private static final String ENTRY_SUFFIX = ".mjast";
+
+	private File dir;
+	int numHits;
+	int numMisses;
+
+	ParseCache(String dirName) {
+		dir = new File(dirName);
+		numHits = 0;
+		numMisses = 0;
+	}
+
+	// the end (one past the closing brace) of each top-level class in
+	// 'text', ignoring braces in comments and string literals; the last
+	// element is text.length, so that any trailing text goes with the last
+	// class.  Returns null if the text does not look like a sequence of
+	// classes, in which case the file should be parsed as a whole.
+	static int[] pieceEnds(byte[] text) {
+		int[] ends = new int[16];
+		int numEnds = 0;
+		int depth = 0;
+		int i = 0;
+		while (i < text.length) {
+			byte b = text[i];
+			if (b == '/' && i+1 < text.length && text[i+1] == '/') {
+				while (i < text.length && text[i] != '\n') i++;
+			}
+			else if (b == '/' && i+1 < text.length && text[i+1] == '*') {
+				i += 2;
+				while (i+1 < text.length && !(text[i] == '*' && text[i+1] == '/')) i++;
+				i += 2;
+			}
+			else if (b == '"') {
+				i++;
+				while (i < text.length && text[i] != '"' && text[i] != '\n') {
+					if (text[i] == '\\') i++;
+					i++;
+				}
+				i++;
+			}
+			else {
+				if (b == '{') {
+					depth++;
+				}
+				else if (b == '}') {
+					depth--;
+					if (depth < 0) return null;
+					if (depth == 0) {
+						if (numEnds == ends.length) {
+							ends = Arrays.copyOf(ends, 2*numEnds);
+						}
+						ends[numEnds++] = i+1;
+					}
+				}
+				i++;
+			}
+		}
+		if (depth != 0 || numEnds == 0) return null;
+		ends[numEnds-1] = text.length;
+		return Arrays.copyOf(ends, numEnds);
+	}
+
+	// the position of the first token in 'text' (that is, of the first
+	// character that is not white space or part of a comment)
+	static int firstTokenPos(byte[] text) {
+		int i = 0;
+		while (i < text.length) {
+			byte b = text[i];
+			if (b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f') {
+				i++;
+			}
+			else if (b == '/' && i+1 < text.length && text[i+1] == '/') {
+				while (i < text.length && text[i] != '\n') i++;
+			}
+			else if (b == '/' && i+1 < text.length && text[i+1] == '*') {
+				i += 2;
+				while (i+1 < text.length && !(text[i] == '*' && text[i+1] == '/')) i++;
+				i += 2;
+			}
+			else {
+				return i;
+			}
+		}
+		return text.length;
+	}
+
+	// the cached parse of the class in text[from..to), or null if there is
+	// none (or it cannot be read); the nodes get new unique IDs
+	ClassDecl lookup(byte[] text, int from, int to) {
+		File f = entryFile(text, from, to);
+		if (f.isFile()) {
+			try (InputStream is = new FileInputStream(f)) {
+				AstNode ast = new AstReader(false).read(is);
+				if (ast instanceof ClassDecl) {
+					numHits++;
+					return (ClassDecl)ast;
+				}
+			}
+			catch (IOException iox) {
+				// treat a damaged entry as missing; it will be replaced
+			}
+		}
+		numMisses++;
+		return null;
+	}
+
+	// records the parse of the class in text[from..to), whose positions
+	// must be relative to 'from'; the cache is only an aid, so failing to
+	// write it is not an error
+	void store(byte[] text, int from, int to, ClassDecl ast) {
+		if (!dir.isDirectory() && !dir.mkdirs()) return;
+		File f = entryFile(text, from, to);
+		File tmp = new File(dir, f.getName() + "." + Thread.currentThread().getId() + ".tmp");
+		try {
+			try (OutputStream os = new FileOutputStream(tmp)) {
+				new AstWriter().write(ast, os);
+			}
+			if (!tmp.renameTo(f)) {
+				tmp.delete();
+			}
+		}
+		catch (IOException iox) {
+			tmp.delete();
+		}
+	}
+
+	private File entryFile(byte[] text, int from, int to) {
+		MessageDigest md;
+		try {
+			md = MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException nsax) {
+			throw new IllegalStateException(nsax);
+		}
+		md.update(FORMAT.getBytes());
+		md.update(text, from, to-from);
+		byte[] digest = md.digest();
+		StringBuilder sb = new StringBuilder(2*digest.length + ENTRY_SUFFIX.length());
+		for (int i = 0; i < digest.length; i++) {
+			sb.append(Character.forDigit((digest[i] >> 4) & 0xf, 16));
+			sb.append(Character.forDigit(digest[i] & 0xf, 16));
+		}
+		return new File(dir, sb.append(ENTRY_SUFFIX).toString());
+	}
+}
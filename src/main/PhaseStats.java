@@ -0,0 +1,173 @@
+package main;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Vector;
+
+import syntaxtree.*;
+import visitor.*;
+
+// The costs of the phases of one compilation, collected when the '-stats'
+// switch is given, and reported as a single line of JSON:
+//   {"file":"Foo.java","success":true,
+//    "phases":[{"phase":"scan","wallNs":...,"cpuNs":...,
+//               "allocBytes":...,"astNodes":...}, ...],
+//    "total":{"wallNs":...,"cpuNs":...,"allocBytes":...},
+//    "hierarchy":{"classes":...,"maxDepth":...,"meanDepth":...},
+//    "parseCache":{"classes":...,"reused":...}}
+// CPU time and allocation are those of the thread that ran the phase (the
+// scanner's own thread, for "scan"), as reported by ThreadMXBean, or -1 if
+// the JVM cannot measure them.  "astNodes" is the number of nodes in the
+// tree once the phase is done.  "hierarchy" appears only if the class
+// hierarchy was numbered, and "parseCache" (the number of top-level
+// classes, and how many of them the parse cache supplied) only if the
+// file was parsed through the cache ('-cache').
+class PhaseStats {
+
+	private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+	private static final boolean cpuTimeSupported = threadBean.isThreadCpuTimeSupported();
+
+	// a thread's clocks at some point, from which a phase's costs are
+	// measured
+	static class Mark {
+		final long wallNs;
+		final long cpuNs;
+		final long allocBytes;
+
+		Mark() {
+			wallNs = System.nanoTime();
+			cpuNs = threadCpuTime();
+			allocBytes = threadAllocatedBytes();
+		}
+	}
+
+	private Vector<String> names;
+	private Vector<long[]> costs; // wall, cpu, alloc, nodes
+	private String hierarchy;
+	private String parseCache;
+
+	PhaseStats() {
+		names = new Vector<String>();
+		costs = new Vector<long[]>();
+		hierarchy = null;
+		parseCache = null;
+	}
+
+	// the current thread's clocks
+	static Mark mark() {
+		return new Mark();
+	}
+
+	// the current thread's costs since 'start', as {wall, cpu, alloc}
+	static long[] since(Mark start) {
+		Mark now = new Mark();
+		return new long[] {
+			now.wallNs - start.wallNs,
+			start.cpuNs < 0 ? -1 : now.cpuNs - start.cpuNs,
+			start.allocBytes < 0 ? -1 : now.allocBytes - start.allocBytes,
+		};
+	}
+
+	// records a phase that the current thread ran from 'start' until now
+	void record(String phase, Mark start, AstNode ast) {
+		record(phase, since(start), ast);
+	}
+
+	// records a phase whose costs ({wall, cpu, alloc}) were measured
+	// elsewhere
+	void record(String phase, long[] cost, AstNode ast) {
+		names.addElement(phase);
+		costs.addElement(new long[] {cost[0], cost[1], cost[2], countNodes(ast)});
+	}
+
+	void recordHierarchy(HierarchyNumberer numberer) {
+		hierarchy = "{\"classes\":" + numberer.numClasses() +
+				",\"maxDepth\":" + numberer.maxDepth() +
+				",\"meanDepth\":" + String.format("%.3f", numberer.meanDepth()) + "}";
+	}
+
+	void recordParseCache(int reused, int classes) {
+		parseCache = "{\"classes\":" + classes + ",\"reused\":" + reused + "}";
+	}
+
+	String toJson(String fileName, boolean success) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\"file\":").append(quote(fileName));
+		sb.append(",\"success\":").append(success);
+		sb.append(",\"phases\":[");
+		long[] total = new long[3];
+		for (int i = 0; i < names.size(); i++) {
+			long[] c = costs.elementAt(i);
+			if (i > 0) sb.append(',');
+			sb.append("{\"phase\":").append(quote(names.elementAt(i)));
+			appendCosts(sb, c);
+			sb.append(",\"astNodes\":").append(c[3]).append('}');
+			// the scanner runs alongside the grammar, so its wall time is
+			// not added to the total
+			if (!names.elementAt(i).equals("scan")) total[0] += c[0];
+			total[1] = c[1] < 0 || total[1] < 0 ? -1 : total[1] + c[1];
+			total[2] = c[2] < 0 || total[2] < 0 ? -1 : total[2] + c[2];
+		}
+		sb.append("],\"total\":{\"wallNs\":").append(total[0]);
+		sb.append(",\"cpuNs\":").append(total[1]);
+		sb.append(",\"allocBytes\":").append(total[2]).append('}');
+		if (hierarchy != null) {
+			sb.append(",\"hierarchy\":").append(hierarchy);
+		}
+		if (parseCache != null) {
+			sb.append(",\"parseCache\":").append(parseCache);
+		}
+		sb.append('}');
+		return sb.toString();
+	}
+
+	private static void appendCosts(StringBuilder sb, long[] c) {
+		sb.append(",\"wallNs\":").append(c[0]);
+		sb.append(",\"cpuNs\":").append(c[1]);
+		sb.append(",\"allocBytes\":").append(c[2]);
+	}
+
+	private static String quote(String s) {
+		StringBuilder sb = new StringBuilder("\"");
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			}
+			else if (c < ' ') {
+				sb.append(String.format("\\u%04x", (int)c));
+			}
+			else {
+				sb.append(c);
+			}
+		}
+		return sb.append('"').toString();
+	}
+
+	private static int countNodes(AstNode ast) {
+		if (ast == null) return 0;
+		final int[] count = new int[1];
+		ast.accept(new ASTvisitor() {
+			@Override
+			public Object visitAstNode(AstNode n) {
+				count[0]++;
+				return null;
+			}
+		});
+		return count[0];
+	}
+
+	private static long threadCpuTime() {
+		return cpuTimeSupported ? threadBean.getCurrentThreadCpuTime() : -1;
+	}
+
+	private static long threadAllocatedBytes() {
+		if (threadBean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean)threadBean;
+			if (bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()) {
+				return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+}
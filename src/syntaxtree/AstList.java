@@ -1,7 +1,10 @@
 package syntaxtree;
 
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
-import java.util.Vector;
+import java.util.RandomAccess;
 import java.io.PrintStream;
 
 import treedisplay.*;
@@ -9,15 +12,31 @@ import visitor.Visitor;
 
 /**
  * a list of a given AST node type (abstract)
+ *
+ * The elements are kept in an unsynchronized array, with free space at
+ * both ends, so that adding at either end is amortized constant-time.
+ * The Vector-style methods (elementAt, addElement, insertElementAt, ...)
+ * that the parser and visitors use are provided on top of it.
  * @param <T> the base type of the list
  */
-public abstract class AstList<T> extends Vector<T> implements TreeDisplayable {
+public abstract class AstList<T> extends AbstractList<T>
+		implements RandomAccess, TreeDisplayable {
+
+	private static final Object[] EMPTY = {};
+	private static final int MIN_CAPACITY = 4;
+
+	private Object[] data; // the elements are data[start] .. data[end-1]
+	private int start;
+	private int end;
 
 	/**
 	 * constructor -- initializes to an empty list
 	 */
 	public AstList() {
 		super();
+		data = EMPTY;
+		start = 0;
+		end = 0;
 	}
 
 	/**
@@ -30,12 +49,169 @@ public abstract class AstList<T> extends Vector<T> implements TreeDisplayable {
 		this.addAll(lst);
 	}
 
+	/**
+	 * the number of elements in the list
+	 * @return the number of elements
+	 */
+	@Override
+	public int size() {
+		return end - start;
+	}
+
+	/**
+	 * the element at a given position
+	 * @param idx the position
+	 * @return the element at position idx
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public T get(int idx) {
+		if (idx < 0 || idx >= end - start) {
+			throw new ArrayIndexOutOfBoundsException(idx);
+		}
+		return (T)data[start+idx];
+	}
+
+	/**
+	 * the element at a given position
+	 * @param idx the position
+	 * @return the element at position idx
+	 */
+	public T elementAt(int idx) {
+		return get(idx);
+	}
+
+	/**
+	 * the first element of the list
+	 * @return the first element
+	 */
+	public T firstElement() {
+		return get(0);
+	}
+
+	/**
+	 * the last element of the list
+	 * @return the last element
+	 */
+	public T lastElement() {
+		return get(size()-1);
+	}
+
+	/**
+	 * replaces the element at a given position
+	 * @param idx the position
+	 * @param n the new element
+	 * @return the element previously at position idx
+	 */
+	@Override
+	public T set(int idx, T n) {
+		T rtnVal = get(idx);
+		data[start+idx] = n;
+		return rtnVal;
+	}
+
+	/**
+	 * adds an element to the end of the list
+	 * @param n the element to add
+	 * @return true
+	 */
+	@Override
+	public boolean add(T n) {
+		if (end == data.length) {
+			grow(0, 1);
+		}
+		data[end++] = n;
+		modCount++;
+		return true;
+	}
+
+	/**
+	 * inserts an element at a given position
+	 * @param idx the position
+	 * @param n the element to insert
+	 */
+	@Override
+	public void add(int idx, T n) {
+		int size = end - start;
+		if (idx < 0 || idx > size) {
+			throw new ArrayIndexOutOfBoundsException(idx);
+		}
+		if (idx == 0) {
+			if (start == 0) {
+				grow(1, 0);
+			}
+			data[--start] = n;
+		}
+		else if (idx == size) {
+			add(n);
+			return;
+		}
+		else {
+			if (end == data.length) {
+				grow(0, 1);
+			}
+			System.arraycopy(data, start+idx, data, start+idx+1, size-idx);
+			data[start+idx] = n;
+			end++;
+		}
+		modCount++;
+	}
+
+	/**
+	 * adds all elements of a collection to the end of the list
+	 * @param c the collection
+	 * @return whether any elements were added
+	 */
+	@Override
+	public boolean addAll(Collection<? extends T> c) {
+		Object[] elems = c.toArray();
+		if (elems.length == 0) {
+			return false;
+		}
+		if (data.length - end < elems.length) {
+			grow(0, elems.length);
+		}
+		System.arraycopy(elems, 0, data, end, elems.length);
+		end += elems.length;
+		modCount++;
+		return true;
+	}
+
+	/**
+	 * removes the element at a given position
+	 * @param idx the position
+	 * @return the element that was removed
+	 */
+	@Override
+	public T remove(int idx) {
+		T rtnVal = get(idx);
+		if (idx == 0) {
+			data[start++] = null;
+		}
+		else {
+			System.arraycopy(data, start+idx+1, data, start+idx, end-start-idx-1);
+			data[--end] = null;
+		}
+		modCount++;
+		return rtnVal;
+	}
+
+	/**
+	 * removes all elements from the list
+	 */
+	@Override
+	public void clear() {
+		Arrays.fill(data, start, end, null);
+		start = end = 0;
+		modCount++;
+	}
+
 	/**
 	 * adds an element to the end of the list
 	 * @param n the element to add
 	 */
 	public void addElement(T n) {
-		super.addElement(n);
+		add(n);
 	}
 
 	/**
@@ -43,9 +219,63 @@ public abstract class AstList<T> extends Vector<T> implements TreeDisplayable {
 	 * @param n the element to add
 	 */
 	public void addElementAtFront(T n) {
-		super.insertElementAt(n, 0);
+		add(0, n);
 	}
-	
+
+	/**
+	 * inserts an element at a given position
+	 * @param n the element to insert
+	 * @param idx the position
+	 */
+	public void insertElementAt(T n, int idx) {
+		add(idx, n);
+	}
+
+	/**
+	 * removes the element at a given position
+	 * @param idx the position
+	 */
+	public void removeElementAt(int idx) {
+		remove(idx);
+	}
+
+	/**
+	 * replaces the element at a given position
+	 * @param n the new element
+	 * @param idx the position
+	 */
+	public void setElementAt(T n, int idx) {
+		set(idx, n);
+	}
+
+	/**
+	 * shrinks the list's storage to exactly its current size; done once
+	 * the list is complete (e.g., after parsing)
+	 */
+	public void trimToSize() {
+		int size = end - start;
+		if (size != data.length) {
+			data = size == 0 ? EMPTY : Arrays.copyOfRange(data, start, end);
+			start = 0;
+			end = size;
+		}
+	}
+
+	// makes room for at least 'front' more elements before the first one
+	// and 'back' more after the last one
+	private void grow(int front, int back) {
+		int size = end - start;
+		int newCapacity = Math.max(MIN_CAPACITY, 2*size + front + back);
+		Object[] newData = new Object[newCapacity];
+		// a list that has been prepended to keeps its spare room at the
+		// front; otherwise the spare room goes at the back
+		int newStart = front > 0 ? newCapacity - size - back : 0;
+		System.arraycopy(data, start, newData, newStart, size);
+		data = newData;
+		start = newStart;
+		end = newStart + size;
+	}
+
 	/*************** remaining methods are visitor- and display-related ****************/
 
 	public abstract Object accept(Visitor v);
@@ -12,10 +12,18 @@ public abstract class AstNode implements TreeDisplayable {
 
 	// instance variables filled in by constructor
 	public int pos; // the character-position of this construct in the source file
-	public int uniqueId; // the object's unique ID
+	public int uniqueId; // the object's ID, unique within its compilation
 
-	// static variable used to generate unique IDs
-	private static int uniqueIdCounter = 0;
+	// the next ID to give out, for each thread.  A compilation creates all
+	// of its nodes on one thread, and starts that thread's IDs from 0 (see
+	// startIds), so a compilation's IDs are dense and do not depend on what
+	// other compilations are running at the same time.
+	private static final ThreadLocal<int[]> nextId = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue() {
+			return new int[1];
+		}
+	};
 
 	/**
 	 * constructor
@@ -23,7 +31,36 @@ public abstract class AstNode implements TreeDisplayable {
 	 */
 	public AstNode(int poss) {
 		pos = poss;
-		uniqueId = uniqueIdCounter++;
+		uniqueId = nextId.get()[0]++;
+	}
+
+	/**
+	 * makes the nodes created on the current thread from now on take IDs
+	 * from 0 up; called at the start of each compilation
+	 */
+	public static void startIds() {
+		nextId.get()[0] = 0;
+	}
+
+	/**
+	 * the number of IDs given out on the current thread since startIds, so
+	 * that a table with an entry per node can be an array indexed by ID
+	 * @return one more than the largest ID given out
+	 */
+	public static int idLimit() {
+		return nextId.get()[0];
+	}
+
+	/**
+	 * makes sure that the nodes created on the current thread from now on
+	 * take IDs above a given one; used when a node is given a saved ID
+	 * @param id the ID
+	 */
+	public static void reserveId(int id) {
+		int[] next = nextId.get();
+		if (next[0] <= id) {
+			next[0] = id+1;
+		}
 	}
 	
 	/*************** remaining methods are visitor- and display-related ****************/
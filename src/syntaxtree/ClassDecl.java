@@ -21,6 +21,12 @@ public class ClassDecl extends Decl {
 	public Hashtable<String,MethodDecl> methodTable; // symbol table for methods
 	public int numDataInstVars; // number of non-object instance variables
 	public int numObjInstVars; // number of object instance variables
+	public int preOrderNum; // position in a pre-order walk of the class hierarchy
+	public int postOrderNum; // position in a post-order walk of the class hierarchy
+	public int hierarchyDepth; // number of superclasses
+	public HashMap<String,InstVarDecl> allInstVars; // instance variables, including inherited ones
+	public HashMap<String,MethodDecl> allMethods; // methods, including inherited ones
+	public int vtableSize; // number of entries in the class's v-table
 
 	/**
 	 * constructor
@@ -37,6 +43,75 @@ public class ClassDecl extends Decl {
 		subclasses = new ClassDeclList();
 		instVarTable = new Hashtable<String,InstVarDecl>();
 		methodTable = new Hashtable<String,MethodDecl>();
+		preOrderNum = -1;
+		postOrderNum = -1;
+		hierarchyDepth = -1;
+		allInstVars = null;
+		allMethods = null;
+		vtableSize = Integer.MIN_VALUE;
+	}
+
+	/**
+	 * looks up an instance variable declared in this class or a superclass
+	 * @param name the variable's name
+	 * @return the variable's declaration, or null if there is none
+	 */
+	public InstVarDecl lookupInstVar(String name) {
+		if (allInstVars == null) buildLookupTables();
+		return allInstVars.get(name);
+	}
+
+	/**
+	 * looks up a method declared in this class or a superclass
+	 * @param name the method's name
+	 * @return the method's declaration, or null if there is none
+	 */
+	public MethodDecl lookupMethod(String name) {
+		if (allMethods == null) buildLookupTables();
+		return allMethods.get(name);
+	}
+
+	/**
+	 * builds the inheritance-flattened lookup tables from this class's
+	 * own symbol tables and its superclass's flattened tables, and assigns
+	 * v-table offsets to this class's methods: an overriding method takes
+	 * the offset of the method it overrides; any other method gets the
+	 * next free slot
+	 */
+	public void buildLookupTables() {
+		if (allMethods != null) return;
+		// guards against an inheritance cycle (already reported as an error)
+		allInstVars = new HashMap<String,InstVarDecl>();
+		allMethods = new HashMap<String,MethodDecl>();
+		vtableSize = 0;
+		if (superLink != null && superLink.allMethods == null) {
+			superLink.buildLookupTables();
+		}
+		HashMap<String,InstVarDecl> instVars = new HashMap<String,InstVarDecl>();
+		HashMap<String,MethodDecl> methods = new HashMap<String,MethodDecl>();
+		int numSlots = 0;
+		if (superLink != null && superLink != this) {
+			instVars.putAll(superLink.allInstVars);
+			methods.putAll(superLink.allMethods);
+			numSlots = Math.max(0, superLink.vtableSize);
+		}
+		instVars.putAll(instVarTable);
+		for (int i = 0; i < decls.size(); i++) {
+			Decl d = decls.elementAt(i);
+			if (!(d instanceof MethodDecl) || methodTable.get(d.name) != d) continue;
+			MethodDecl md = (MethodDecl)d;
+			MethodDecl overridden = methods.get(md.name);
+			if (overridden != null && overridden.vtableOffset != Integer.MIN_VALUE) {
+				md.vtableOffset = overridden.vtableOffset;
+			}
+			else {
+				md.vtableOffset = numSlots++;
+			}
+			methods.put(md.name, md);
+		}
+		allInstVars = instVars;
+		allMethods = methods;
+		vtableSize = numSlots;
 	}
 
 	/*************** remaining methods are visitor- and display-related ****************/
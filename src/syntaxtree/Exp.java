@@ -8,6 +8,10 @@ public abstract class Exp extends AstNode {
 	
 	// instance variables filled in by constructor
 	public Type type; // the expression's type
+
+	// instance variables filled in during later phases
+	public int constTag; // whether (and how) the expression is a compile-time constant
+	public int constVal; // the constant's value, if constTag says it has one
 	
 	/**
 	 * constructor
@@ -16,6 +20,8 @@ public abstract class Exp extends AstNode {
 	public Exp(int pos) {
 		super(pos);
 		type=null;
+		constTag=0;
+		constVal=0;
 	}
 
 	/*************** remaining methods are visitor- and display-related ****************/
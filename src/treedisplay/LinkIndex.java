@@ -0,0 +1,81 @@
+package treedisplay;
+
+import java.util.*;
+
+// An index of the cross links (getDrawTreeLinks) between the nodes of a
+// displayed tree.  It maps each node to the helpers that display it and to
+// the helpers whose nodes link to it, so that highlighting the links of a
+// selected node takes time proportional to the number of links rather than
+// a scan (and a getDrawTreeLinks call) per node.  The links are those in
+// place when the index is built; the tree is not expected to change while
+// it is being displayed.
+class LinkIndex {
+	private IdentityHashMap<TreeDisplayable, Vector<TDHelper>> helpersFor;
+	private IdentityHashMap<TreeDisplayable, Vector<TDHelper>> linkersOf;
+
+	LinkIndex(Vector<TDHelper> helpers) {
+		helpersFor = new IdentityHashMap<TreeDisplayable, Vector<TDHelper>>();
+		linkersOf = new IdentityHashMap<TreeDisplayable, Vector<TDHelper>>();
+		for (int i = 0; i < helpers.size(); i++) {
+			TDHelper h = helpers.elementAt(i);
+			if (h.original == null)
+				continue;
+			entry(helpersFor, h.original).addElement(h);
+			TreeDisplayable links[] = h.original.getDrawTreeLinks();
+			if (links == null)
+				continue;
+			for (int j = 0; j < links.length; j++) {
+				// a node that links to the same node twice is listed once
+				if (links[j] != null && indexOf(links, links[j]) == j) {
+					entry(linkersOf, links[j]).addElement(h);
+				}
+			}
+		}
+	}
+
+	// the helpers whose nodes link to the given node
+	Set<TDHelper> linkersOf(TreeDisplayable node) {
+		Set<TDHelper> rtnVal = Collections.newSetFromMap(
+				new IdentityHashMap<TDHelper, Boolean>());
+		Vector<TDHelper> v = linkersOf.get(node);
+		if (v != null) {
+			rtnVal.addAll(v);
+		}
+		return rtnVal;
+	}
+
+	// the helpers whose nodes the given node links to
+	Set<TDHelper> linkeesOf(TreeDisplayable node) {
+		Set<TDHelper> rtnVal = Collections.newSetFromMap(
+				new IdentityHashMap<TDHelper, Boolean>());
+		TreeDisplayable links[] = node.getDrawTreeLinks();
+		if (links != null) {
+			for (int j = 0; j < links.length; j++) {
+				Vector<TDHelper> v = links[j] == null ? null : helpersFor.get(links[j]);
+				if (v != null) {
+					rtnVal.addAll(v);
+				}
+			}
+		}
+		return rtnVal;
+	}
+
+	private static Vector<TDHelper> entry(
+			IdentityHashMap<TreeDisplayable, Vector<TDHelper>> map,
+			TreeDisplayable key) {
+		Vector<TDHelper> rtnVal = map.get(key);
+		if (rtnVal == null) {
+			rtnVal = new Vector<TDHelper>();
+			map.put(key, rtnVal);
+		}
+		return rtnVal;
+	}
+
+	private static int indexOf(TreeDisplayable[] arr, TreeDisplayable elem) {
+		for (int i = 0; i < arr.length; i++) {
+			if (arr[i] == elem)
+				return i;
+		}
+		return -1;
+	}
+}
@@ -51,4 +51,9 @@ class TDHelper {
   private static int yBase(int row) {
     return rowPixelBase+row*(verticalSpread+TreeDrawCanvas.FontHeight);
   }
+  // the row whose box covers (or is just above) pixel-row y; may be out of
+  // range, so callers clamp it
+  static int rowAt(int y) {
+    return Math.floorDiv(y-rowPixelBase, verticalSpread+TreeDrawCanvas.FontHeight);
+  }
 }
@@ -2,6 +2,7 @@ package treedisplay;
 
 import java.awt.*;
 import java.io.*;
+import java.util.Set;
 import java.util.Vector;
 
 public class TreeDrawCanvas extends Canvas {
@@ -11,10 +12,17 @@ public class TreeDrawCanvas extends Canvas {
 	private TreeDisplayable target;
 	private Vector<TDHelper> helpers;
 	private Object auxData;
-	private Vector<TDHelper> linkers;
-	private Vector<TDHelper> linkees;
+	private Set<TDHelper> linkers;
+	private Set<TDHelper> linkees;
 	private TDHelper linkObject;
+	private LinkIndex linkIndex; // built on the first selection
 	private Color backgroundColor;
+	// the helpers that currently have boxes, in row order (so the helper in
+	// row r is visibleHelpers.elementAt(r)), and for each row, the row of
+	// its parent and of its last child (-1 if none); rebuilt by layoutRects
+	private Vector<TDHelper> visibleHelpers;
+	private int[] parentRow;
+	private int[] lastChildRow;
 
 	private static boolean doWindow;
 	
@@ -131,13 +139,17 @@ public class TreeDrawCanvas extends Canvas {
 		}
 	}
 
+	// selects the one node whose box lies entirely within r (if there is
+	// exactly one), and highlights the nodes it links to and from; only the
+	// rows that r covers are examined
 	void setLinksFor(Rectangle r) {
-		int limit = helpers.size();
 		TDHelper theObject = null;
-		for (int i = 0; i < limit; i++) {
-			TDHelper h = helpers.elementAt(i);
+		int firstRow = Math.max(0, TDHelper.rowAt(r.y));
+		int lastRow = Math.min(visibleHelpers.size() - 1,
+				TDHelper.rowAt(r.y + r.height));
+		for (int i = firstRow; i <= lastRow; i++) {
+			TDHelper h = visibleHelpers.elementAt(i);
 			if (h.original != null
-					&& h.drawRect != null
 					&& r.contains(h.drawRect.x, h.drawRect.y)
 					&& r.contains(h.drawRect.x + h.drawRect.width, h.drawRect.y
 							+ h.drawRect.height)) {
@@ -152,32 +164,12 @@ public class TreeDrawCanvas extends Canvas {
 		}
 		if (theObject == null)
 			return;
-		linkObject = theObject;
-		linkers = new Vector<TDHelper>();
-		linkees = new Vector<TDHelper>();
-		TreeDisplayable links[] = theObject.original.getDrawTreeLinks();
-		for (int i = 0; i < limit; i++) {
-			TDHelper h = helpers.elementAt(i);
-			if (h.original != null) {
-				TreeDisplayable links2[] = h.original.getDrawTreeLinks();
-				if (links2 != null) {
-					for (int j = 0; j < links2.length; j++) {
-						if (links2[j] == theObject.original) {
-							linkers.addElement(h);
-							break;
-						}
-					}
-				}
-				if (links != null) {
-					for (int j = 0; j < links.length; j++) {
-						if (links[j] == h.original) {
-							linkees.addElement(h);
-							break;
-						}
-					}
-				}
-			}
+		if (linkIndex == null) {
+			linkIndex = new LinkIndex(helpers);
 		}
+		linkObject = theObject;
+		linkers = linkIndex.linkersOf(theObject.original);
+		linkees = linkIndex.linkeesOf(theObject.original);
 	}
 
 	private Rectangle layoutRects() {
@@ -204,6 +196,7 @@ public class TreeDrawCanvas extends Canvas {
 			maxHeight = Math.max(maxHeight, thisHelper.drawRect.y
 					+ thisHelper.drawRect.height);
 		}
+		indexRows();
 		Rectangle rtnVal = new Rectangle(maxWidth + TDHelper.rowPixelBase,
 				maxHeight + TDHelper.colPixelBase);
 		this.setSize(Math.max(500, rtnVal.width), Math.max(500, rtnVal.height));
@@ -211,6 +204,37 @@ public class TreeDrawCanvas extends Canvas {
 
 	}
 
+	// records which helper is in each row, and the parent and last child
+	// of each row, so that painting can go straight to the rows in view
+	private void indexRows() {
+		visibleHelpers = new Vector<TDHelper>();
+		for (int i = 0; i < helpers.size(); i++) {
+			TDHelper h = helpers.elementAt(i);
+			if (h.drawRect != null) {
+				visibleHelpers.addElement(h);
+			}
+		}
+		int numRows = visibleHelpers.size();
+		parentRow = new int[numRows];
+		lastChildRow = new int[numRows];
+		int[] stack = new int[numRows];
+		int top = -1;
+		for (int r = 0; r < numRows; r++) {
+			int indent = visibleHelpers.elementAt(r).indentation;
+			while (top >= 0 &&
+					visibleHelpers.elementAt(stack[top]).indentation >= indent) {
+				top--;
+			}
+			parentRow[r] = -1;
+			lastChildRow[r] = -1;
+			if (top >= 0) {
+				parentRow[r] = stack[top];
+				lastChildRow[stack[top]] = r;
+			}
+			stack[++top] = r;
+		}
+	}
+
 	private static void createHelperStruct(TreeDisplayable tgt, Vector<TDHelper> helpers,
 			int indent, Object auxDat) {
 		TDHelper helper = new TDHelper(tgt, indent, false, doWindow);
@@ -260,57 +284,92 @@ public class TreeDrawCanvas extends Canvas {
 	static Color lightBlue = new Color(190, 240, 255);
 	static Color darkGreen = Color.green.darker().darker();
 
+	// paints only the rows that intersect the area being repainted (and
+	// that can be seen through the scroll pane), so the cost of a repaint
+	// depends on the window size rather than on the size of the tree
 	public void paint(Graphics g) {
 		if (!doWindow)
 			return;
-		int limit = helpers.size();
-		for (int i = 0; i < limit; i++) {
-			TDHelper thisHelper = helpers.elementAt(i);
-			Rectangle rect = thisHelper.drawRect;
-			if (rect == null)
-				continue;
-			String boxString = "";
-			Color boxColor = Color.white;
-			if (thisHelper.original == null) {
-				boxColor = Color.orange;
-				boxString = "(null)";
-			}
-			else if (thisHelper.original == dummy) {
-				boxColor = thisHelper.subsVisible ? Color.black : lightGray;
-			}
-			else {
-				boxString = thisHelper.original.shortDescription(auxData);
-				if (!thisHelper.subsVisible) {
-					boxColor = lightBlue;
-				}
-			}
-			Color textColor = Color.white;
-			if (thisHelper == linkObject) {
-				boxColor = Color.red;
-			} else if (linkers != null && linkers.contains(thisHelper)) {
-				boxColor = Color.blue;
-			} else if (linkees != null && linkees.contains(thisHelper)) {
-				boxColor = darkGreen;
-			} else {
-				textColor = Color.black;
+		Rectangle view = viewRect(g);
+		int numRows = visibleHelpers.size();
+		if (view.isEmpty() || numRows == 0)
+			return;
+		int firstRow = Math.max(0, TDHelper.rowAt(view.y));
+		int lastRow = Math.min(numRows - 1, TDHelper.rowAt(view.y + view.height));
+		if (firstRow > lastRow)
+			return;
+		// the boxes stick out to the left by the width of their connecting
+		// stub
+		int left = view.x - TDHelper.minBoxWidth / 2;
+		int right = view.x + view.width;
+		for (int r = firstRow; r <= lastRow; r++) {
+			Rectangle rect = visibleHelpers.elementAt(r).drawRect;
+			if (rect.x + rect.width >= left && rect.x <= right) {
+				paintBox(visibleHelpers.elementAt(r), g);
 			}
+		}
+		g.setColor(Color.black);
+		for (int r = firstRow; r <= lastRow; r++) {
+			paintLineFrom(r, g);
+		}
+		// the lines of the ancestors of the first row start above the view
+		// but may pass through it
+		for (int r = parentRow[firstRow]; r >= 0; r = parentRow[r]) {
+			paintLineFrom(r, g);
+		}
+	}
 
-			drawBox(boxString, rect, boxColor, textColor, g);
+	// the part of the canvas that needs painting
+	private Rectangle viewRect(Graphics g) {
+		Rectangle view = g.getClipBounds();
+		if (view == null) {
+			view = new Rectangle(0, 0, getWidth(), getHeight());
+		}
+		Container parent = getParent();
+		if (parent instanceof ScrollPane) {
+			ScrollPane sp = (ScrollPane) parent;
+			view = view.intersection(new Rectangle(sp.getScrollPosition(),
+					sp.getViewportSize()));
+		}
+		return view;
+	}
 
-			TDHelper target = null;
-			for (int j = i + 1; j < limit; j++) {
-				TDHelper other = helpers.elementAt(j);
-				if (other.indentation <= thisHelper.indentation)
-					break;
-				if (other.indentation == thisHelper.indentation + 1) {
-					target = other;
-				}
-			}
-			if (target != null) {
-				g.setColor(Color.black);
-				drawVerticalLine(rect, target.drawRect, g);
+	private void paintBox(TDHelper thisHelper, Graphics g) {
+		String boxString = "";
+		Color boxColor = Color.white;
+		if (thisHelper.original == null) {
+			boxColor = Color.orange;
+			boxString = "(null)";
+		}
+		else if (thisHelper.original == dummy) {
+			boxColor = thisHelper.subsVisible ? Color.black : lightGray;
+		}
+		else {
+			boxString = thisHelper.original.shortDescription(auxData);
+			if (!thisHelper.subsVisible) {
+				boxColor = lightBlue;
 			}
 		}
+		Color textColor = Color.white;
+		if (thisHelper == linkObject) {
+			boxColor = Color.red;
+		} else if (linkers != null && linkers.contains(thisHelper)) {
+			boxColor = Color.blue;
+		} else if (linkees != null && linkees.contains(thisHelper)) {
+			boxColor = darkGreen;
+		} else {
+			textColor = Color.black;
+		}
+
+		drawBox(boxString, thisHelper.drawRect, boxColor, textColor, g);
+	}
+
+	// draws the line from the box in the given row down to its last child
+	private void paintLineFrom(int row, Graphics g) {
+		if (lastChildRow[row] >= 0) {
+			drawVerticalLine(visibleHelpers.elementAt(row).drawRect,
+					visibleHelpers.elementAt(lastChildRow[row]).drawRect, g);
+		}
 	}
 
 	private static void drawBox(String str, Rectangle r, Color fillColor,
@@ -345,23 +404,21 @@ public class TreeDrawCanvas extends Canvas {
 	}
 
 	void processClick(int x, int y) {
-		int idx = findHelperAt(x, y);
-		if (idx < 0)
+		TDHelper h = findHelperAt(x, y);
+		if (h == null)
 			return;
-		TDHelper h = helpers.elementAt(idx);
 		h.subsVisible = !h.subsVisible;
 		layoutRects();
 		repaint();
 	}
 
-	private int findHelperAt(int xpixel, int ypixel) {
-		int limit = helpers.size();
-		for (int i = 0; i < limit; i++) {
-			TDHelper h = helpers.elementAt(i);
-			if (h.drawRect != null && h.drawRect.contains(xpixel, ypixel)) {
-				return i;
-			}
-		}
-		return -1;
+	// the helper whose box contains the given point, or null; the point's
+	// row is the only one whose box can contain it
+	private TDHelper findHelperAt(int xpixel, int ypixel) {
+		int row = TDHelper.rowAt(ypixel);
+		if (row < 0 || row >= visibleHelpers.size())
+			return null;
+		TDHelper h = visibleHelpers.elementAt(row);
+		return h.drawRect.contains(xpixel, ypixel) ? h : null;
 	}
 }
\ No newline at end of file
@@ -1,72 +1,113 @@
 package treedisplay;
 
 import java.io.*;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.Set;
 import java.util.Vector;
+import java.util.zip.GZIPOutputStream;
 import java.awt.Rectangle;
 
 public class TreeDrawer {
 	private TreeDisplayable target;
 	private Vector<TDHelper> helpers;
 	private Object auxData;
-	private Vector<TDHelper> linkers;
-	private Vector<TDHelper> linkees;
+	private Set<TDHelper> linkers;
+	private Set<TDHelper> linkees;
 	private TDHelper linkObject;
+	private LinkIndex linkIndex; // built on the first selection
 
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final String NULL_LINE = "****NULL****";
+	private static final String LIST_LINE = "*====list====*";
+
+	// prints the tree, one node per line, each indented one space more than
+	// its parent; lists print as LIST_LINE and missing nodes as NULL_LINE.
+	// The walk keeps its own stack, so a deeply nested tree cannot overflow
+	// the Java stack, and the lines are collected in a buffer that is
+	// written out in large blocks.
 	public void printToStream(PrintStream ps) {
-		helpPrintToStream(ps, target, 0);
-	}
+		String newline = System.lineSeparator();
+		char[] buf = new char[BUFFER_SIZE];
+		int len = 0;
+		char[] spaces = new char[64];
+		Arrays.fill(spaces, ' ');
+		TreeDisplayable[] nodes = new TreeDisplayable[64];
+		int[] nextSubobj = new int[64];
+		int top = -1;
+		TreeDisplayable tgt = target;
+		boolean isList = false;
+		for (;;) {
+			// print the current node; 'top+1' is its depth
+			int indentNum = top + 1;
+			String line = tgt == null ? NULL_LINE
+					: isList ? LIST_LINE
+					: String.valueOf(tgt.shortDescription(auxData));
+			if (indentNum > spaces.length) {
+				spaces = new char[Math.max(indentNum, 2 * spaces.length)];
+				Arrays.fill(spaces, ' ');
+			}
+			int lineLen = indentNum + line.length() + newline.length();
+			if (len + lineLen > buf.length) {
+				ps.append(CharBuffer.wrap(buf, 0, len));
+				len = 0;
+				if (lineLen > buf.length) {
+					buf = new char[lineLen];
+				}
+			}
+			System.arraycopy(spaces, 0, buf, len, indentNum);
+			len += indentNum;
+			line.getChars(0, line.length(), buf, len);
+			len += line.length();
+			newline.getChars(0, newline.length(), buf, len);
+			len += newline.length();
 
-	private static void indent(PrintStream ps, int n) {
-		for (int i = 0; i < n; i++)
-			ps.print(" ");
-	}
+			// descend into it, if there is anything to descend into
+			if (tgt != null) {
+				top++;
+				if (top == nodes.length) {
+					nodes = Arrays.copyOf(nodes, 2 * top);
+					nextSubobj = Arrays.copyOf(nextSubobj, 2 * top);
+				}
+				nodes[top] = tgt;
+				nextSubobj[top] = 0;
+			}
 
-	private void helpPrintToStream(PrintStream ps, TreeDisplayable tgt,
-			int indentNum) {
-		if (tgt == null) {
-			/***new***/ indent(ps, indentNum); ps.println("****NULL****");
-			return;
-		}
-		indent(ps, indentNum);
-		ps.println(tgt.shortDescription(auxData));
-		for (int subobjCount = 0;; subobjCount++) {
-			try {
-				TreeDisplayable subobj = tgt.getDrawTreeSubobj(subobjCount);
-				if (subobj != null && subobj.nodeIsList()) {
-					helpPrintToStream2(ps, subobj, indentNum + 1);
-				} else {
-					helpPrintToStream(ps, subobj, indentNum + 1);
+			// find the next node: the next subobject of the deepest node
+			// that has one left
+			tgt = null;
+			for (; top >= 0; top--) {
+				try {
+					tgt = nodes[top].getDrawTreeSubobj(nextSubobj[top]++);
+					break;
+				} catch (TreeDrawException x) {
+					nodes[top] = null;
 				}
-			} catch (TreeDrawException x) {
-				break;
 			}
+			if (top < 0)
+				break;
+			isList = tgt != null && tgt.nodeIsList();
 		}
+		ps.append(CharBuffer.wrap(buf, 0, len));
 	}
 
-	private void helpPrintToStream2(PrintStream ps, TreeDisplayable tgt,
-			int indentNum) {
-		if (tgt == null) {
-			/***new***/ indent(ps, indentNum); ps.println("****NULL****");
-			return;
+	// prints the tree as printToStream(PrintStream) does, to a byte stream,
+	// optionally gzip-compressed
+	public void printToStream(OutputStream os, boolean gzip) throws IOException {
+		GZIPOutputStream gzos = gzip ? new GZIPOutputStream(os, BUFFER_SIZE) : null;
+		PrintStream ps = new PrintStream(new BufferedOutputStream(
+				gzip ? gzos : os, BUFFER_SIZE));
+		printToStream(ps);
+		ps.flush();
+		if (ps.checkError()) {
+			throw new IOException("error writing tree");
 		}
-		indent(ps, indentNum);
-		ps.println("*====list====*");
-		for (int subobjCount = 0;; subobjCount++) {
-			try {
-				TreeDisplayable subobj = tgt.getDrawTreeSubobj(subobjCount);
-				if (subobj != null && subobj.nodeIsList()) {
-					helpPrintToStream2(ps, subobj, indentNum + 1);
-				} else {
-					helpPrintToStream(ps, subobj, indentNum + 1);
-				}
-			} catch (TreeDrawException x) {
-				break;
-			}
+		if (gzos != null) {
+			gzos.finish();
 		}
+		os.flush();
 	}
 
-
-
 	public TreeDrawer(TreeDisplayable theTarget, Object auxDat) {
 		target = theTarget;
 		auxData = auxDat;
@@ -97,32 +138,12 @@ public class TreeDrawer {
 		}
 		if (theObject == null)
 			return;
-		linkObject = theObject;
-		linkers = new Vector<TDHelper>();
-		linkees = new Vector<TDHelper>();
-		TreeDisplayable links[] = theObject.original.getDrawTreeLinks();
-		for (int i = 0; i < limit; i++) {
-			TDHelper h = helpers.elementAt(i);
-			if (h.original != null) {
-				TreeDisplayable links2[] = h.original.getDrawTreeLinks();
-				if (links2 != null) {
-					for (int j = 0; j < links2.length; j++) {
-						if (links2[j] == theObject.original) {
-							linkers.addElement(h);
-							break;
-						}
-					}
-				}
-				if (links != null) {
-					for (int j = 0; j < links.length; j++) {
-						if (links[j] == h.original) {
-							linkees.addElement(h);
-							break;
-						}
-					}
-				}
-			}
+		if (linkIndex == null) {
+			linkIndex = new LinkIndex(helpers);
 		}
+		linkObject = theObject;
+		linkers = linkIndex.linkersOf(theObject.original);
+		linkees = linkIndex.linkeesOf(theObject.original);
 	}
 
 }
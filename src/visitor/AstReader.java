@@ -0,0 +1,518 @@
+package visitor;
+
+import syntaxtree.*;
+import errorMsg.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// The purpose of this class is to load an AST written by AstWriter.  The
+// nodes come back with the same field values (positions and unique IDs
+// included) and the same links between them, so the loaded tree can be
+// used as if it had come out of the phases that produced the original.
+// Use it as:
+//   AstNode root = new AstReader().read(inputStream, errorMsg);
+// which also gives errorMsg the saved file name and line table, so that
+// the loaded positions resolve to the original lines (or as
+// read(inputStream) to skip them); or, to give the loaded nodes new unique IDs rather than the saved ones
+// (when they are to be combined with nodes from elsewhere), as:
+//   AstNode root = new AstReader(false).read(inputStream);
+//
+// Each node is created empty as soon as its number appears in the input,
+// and its fields are then filled in by the visit methods below, which read
+// them in the order AstWriter's visit methods write them.
+public class AstReader extends InhVisitor {
+
+	private byte[] buf;
+	private int bufPos;
+	private String[] strings;
+	private AstNode[] nodes;
+	private int numNodes;
+	private boolean keepIds;
+
+	public AstReader() {
+		this(true);
+	}
+
+	public AstReader(boolean akeepIds) {
+		keepIds = akeepIds;
+	}
+
+	// reads a tree from 'is'; throws an IOException if the input is not in
+	// the format AstWriter writes
+	public AstNode read(InputStream is) throws IOException {
+		return read(is, null);
+	}
+
+	// reads a tree from 'is', and gives 'errorMsg' (if it is not null) the
+	// saved file name and line table
+	public AstNode read(InputStream is, ErrorMsg errorMsg) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(is));
+		if (in.readInt() != AstWriter.MAGIC) {
+			throw new IOException("not an AST file");
+		}
+		if (in.readInt() != AstWriter.VERSION) {
+			throw new IOException("unsupported AST file version");
+		}
+		buf = in.readAllBytes();
+		bufPos = 0;
+		nodes = new AstNode[1024];
+		numNodes = 0;
+		try {
+			strings = new String[readCount()];
+			for (int i = 0; i < strings.length; i++) {
+				int len = readInt();
+				strings[i] = new String(buf, bufPos, len, StandardCharsets.UTF_8);
+				bufPos += len;
+			}
+			readSource(errorMsg);
+			AstNode root = readNode();
+			while (bufPos < buf.length) {
+				if (readInt() != AstWriter.DEFERRED_FIELDS) {
+					throw new IOException("malformed AST file");
+				}
+				readFields(nodes[readInt()]);
+			}
+			return root;
+		}
+		catch (IndexOutOfBoundsException | NullPointerException
+				| ClassCastException | IllegalStateException x) {
+			// the input was cut short, or does not match the format
+			throw new IOException("malformed AST file", x);
+		}
+		finally {
+			buf = null;
+			strings = null;
+			nodes = null;
+		}
+	}
+
+	// reads what AstWriter.writeSource wrote
+	private void readSource(ErrorMsg errorMsg) throws IOException {
+		String fileName = readString();
+		int[] lineStarts = new int[readCount()];
+		int prev = 0;
+		for (int i = 0; i < lineStarts.length; i++) {
+			prev += readSignedInt();
+			lineStarts[i] = prev;
+		}
+		if (errorMsg != null && fileName != null) {
+			errorMsg.setSource(fileName, lineStarts);
+		}
+	}
+
+	// reads a node written by AstWriter.writeNode or AstWriter.writeLink;
+	// the caller's field type decides what the node is cast to
+	@SuppressWarnings("unchecked")
+	private <T extends AstNode> T readNode() {
+		int tag = readInt();
+		AstNode n;
+		switch (tag) {
+		case AstWriter.NULL_NODE:
+			return null;
+		case AstWriter.NEW_NODE:
+			n = newNode(readString());
+			readFields(n);
+			return (T)n;
+		case AstWriter.ANNOUNCED_NODE:
+			return (T)newNode(readString());
+		case AstWriter.DEFERRED_FIELDS:
+			n = nodes[readInt()];
+			readFields(n);
+			return (T)n;
+		default:
+			return (T)nodes[tag - AstWriter.BACK_REF];
+		}
+	}
+
+	private void readFields(AstNode n) {
+		n.accept(this);
+	}
+
+	// creates an empty node of the named class, and gives it the next node
+	// number
+	private AstNode newNode(String className) {
+		AstNode n;
+		switch (className) {
+		case "And": n = new And(0, null, null); break;
+		case "ArrayLength": n = new ArrayLength(0, null); break;
+		case "ArrayLookup": n = new ArrayLookup(0, null, null); break;
+		case "ArrayType": n = new ArrayType(0, null); break;
+		case "Assign": n = new Assign(0, null, null); break;
+		case "Block": n = new Block(0, null); break;
+		case "BooleanType": n = new BooleanType(0); break;
+		case "Break": n = new Break(0); break;
+		case "Call": n = new Call(0, null, null, null); break;
+		case "CallStatement": n = new CallStatement(0, null); break;
+		case "Case": n = new Case(0, null); break;
+		case "Cast": n = new Cast(0, null, null); break;
+		case "ClassDecl": n = new ClassDecl(0, null, null, null); break;
+		case "Default": n = new Default(0); break;
+		case "Divide": n = new Divide(0, null, null); break;
+		case "Equals": n = new Equals(0, null, null); break;
+		case "False": n = new False(0); break;
+		case "FormalDecl": n = new FormalDecl(0, null, null); break;
+		case "GreaterThan": n = new GreaterThan(0, null, null); break;
+		case "IdentifierExp": n = new IdentifierExp(0, null); break;
+		case "IdentifierType": n = new IdentifierType(0, null); break;
+		case "If": n = new If(0, null, null, null); break;
+		case "InstVarAccess": n = new InstVarAccess(0, null, null); break;
+		case "InstVarDecl": n = new InstVarDecl(0, null, null); break;
+		case "InstanceOf": n = new InstanceOf(0, null, null); break;
+		case "IntegerLiteral": n = new IntegerLiteral(0, 0); break;
+		case "IntegerType": n = new IntegerType(0); break;
+		case "LessThan": n = new LessThan(0, null, null); break;
+		case "LocalDeclStatement": n = new LocalDeclStatement(0, null); break;
+		case "LocalVarDecl": n = new LocalVarDecl(0, null, null, null); break;
+		case "MethodDeclNonVoid":
+			n = new MethodDeclNonVoid(0, null, null, null, null, null); break;
+		case "MethodDeclVoid": n = new MethodDeclVoid(0, null, null, null); break;
+		case "Minus": n = new Minus(0, null, null); break;
+		case "NewArray": n = new NewArray(0, null, null); break;
+		case "NewObject": n = new NewObject(0, null); break;
+		case "Not": n = new Not(0, null); break;
+		case "Null": n = new Null(0); break;
+		case "NullType": n = new NullType(0); break;
+		case "Or": n = new Or(0, null, null); break;
+		case "Plus": n = new Plus(0, null, null); break;
+		case "Program": n = new Program(0, null); break;
+		case "Remainder": n = new Remainder(0, null, null); break;
+		case "StringLiteral": n = new StringLiteral(0, null); break;
+		case "Super": n = new Super(0); break;
+		case "Switch": n = new Switch(0, null, null); break;
+		case "This": n = new This(0); break;
+		case "Times": n = new Times(0, null, null); break;
+		case "True": n = new True(0); break;
+		case "VoidType": n = new VoidType(0); break;
+		case "While": n = new While(0, null, null); break;
+		default:
+			throw new IllegalStateException("unknown node class '" + className + "'");
+		}
+		if (numNodes == nodes.length) {
+			nodes = Arrays.copyOf(nodes, 2 * numNodes);
+		}
+		nodes[numNodes++] = n;
+		return n;
+	}
+
+	// fills 'lst' with the elements of a list written by
+	// AstWriter.writeList; returns null if the list was null
+	@SuppressWarnings("unchecked")
+	private <T extends AstList> T readList(T lst) {
+		int size = readInt() - 1;
+		if (size < 0) {
+			return null;
+		}
+		for (int i = 0; i < size; i++) {
+			lst.addElement(readNode());
+		}
+		lst.trimToSize();
+		return lst;
+	}
+
+	// fills 'table' with the entries written by AstWriter.writeTable;
+	// returns null if the table was null
+	private <V extends AstNode, M extends Map<String,V>> M readTable(M table) {
+		int size = readInt() - 1;
+		if (size < 0) {
+			return null;
+		}
+		for (int i = 0; i < size; i++) {
+			String key = readString();
+			V val = readNode();
+			table.put(key, val);
+		}
+		return table;
+	}
+
+	// reads the number of items that follow; each takes at least a byte,
+	// so a count larger than the rest of the input is malformed
+	private int readCount() throws IOException {
+		int rtnVal = readInt();
+		if (rtnVal < 0 || rtnVal > buf.length - bufPos) {
+			throw new IOException("malformed AST file");
+		}
+		return rtnVal;
+	}
+
+	private String readString() {
+		int num = readInt();
+		return num == 0 ? null : strings[num-1];
+	}
+
+	// reads a non-negative integer, seven bits per byte
+	private int readInt() {
+		int rtnVal = 0;
+		for (int shift = 0; ; shift += 7) {
+			int b = buf[bufPos++];
+			rtnVal |= (b & 0x7f) << shift;
+			if (b >= 0) {
+				return rtnVal;
+			}
+		}
+	}
+
+	private int readSignedInt() {
+		int val = readInt();
+		return (val >>> 1) ^ -(val & 1);
+	}
+
+	/*************** the fields of each node class ****************/
+
+	@Override
+	public Object visitAstNode(AstNode n) {
+		n.pos = readSignedInt();
+		int id = readInt();
+		if (keepIds) {
+			n.uniqueId = id;
+			AstNode.reserveId(id);
+		}
+		return null;
+	}
+
+	@Override
+	public Object visitAstList(AstList n) {
+		return null;
+	}
+
+	@Override
+	public Object visitArrayLookup(ArrayLookup n) {
+		n.arrExp = readNode();
+		n.idxExp = readNode();
+		return super.visitArrayLookup(n);
+	}
+
+	@Override
+	public Object visitArrayType(ArrayType n) {
+		n.baseType = readNode();
+		return super.visitArrayType(n);
+	}
+
+	@Override
+	public Object visitAssign(Assign n) {
+		n.lhs = readNode();
+		n.rhs = readNode();
+		return super.visitAssign(n);
+	}
+
+	@Override
+	public Object visitBinExp(BinExp n) {
+		n.left = readNode();
+		n.right = readNode();
+		return super.visitBinExp(n);
+	}
+
+	@Override
+	public Object visitBlock(Block n) {
+		n.stmts = readList(new StatementList());
+		return super.visitBlock(n);
+	}
+
+	@Override
+	public Object visitBreak(Break n) {
+		n.breakLink = readNode();
+		return super.visitBreak(n);
+	}
+
+	@Override
+	public Object visitBreakTarget(BreakTarget n) {
+		n.stackHeight = readSignedInt();
+		return super.visitBreakTarget(n);
+	}
+
+	@Override
+	public Object visitCall(Call n) {
+		n.obj = readNode();
+		n.methName = readString();
+		n.parms = readList(new ExpList());
+		n.methodLink = readNode();
+		return super.visitCall(n);
+	}
+
+	@Override
+	public Object visitCallStatement(CallStatement n) {
+		n.callExp = readNode();
+		return super.visitCallStatement(n);
+	}
+
+	@Override
+	public Object visitCase(Case n) {
+		n.exp = readNode();
+		return super.visitCase(n);
+	}
+
+	@Override
+	public Object visitCast(Cast n) {
+		n.castType = readNode();
+		n.exp = readNode();
+		return super.visitCast(n);
+	}
+
+	@Override
+	public Object visitClassDecl(ClassDecl n) {
+		n.superName = readString();
+		n.decls = readList(new DeclList());
+		n.superLink = readNode();
+		n.subclasses = readList(new ClassDeclList());
+		n.instVarTable = readTable(new Hashtable<String,InstVarDecl>());
+		n.methodTable = readTable(new Hashtable<String,MethodDecl>());
+		n.numDataInstVars = readSignedInt();
+		n.numObjInstVars = readSignedInt();
+		n.preOrderNum = readSignedInt();
+		n.postOrderNum = readSignedInt();
+		n.hierarchyDepth = readSignedInt();
+		n.allInstVars = readTable(new HashMap<String,InstVarDecl>());
+		n.allMethods = readTable(new HashMap<String,MethodDecl>());
+		n.vtableSize = readSignedInt();
+		return super.visitClassDecl(n);
+	}
+
+	@Override
+	public Object visitDecl(Decl n) {
+		n.name = readString();
+		return super.visitDecl(n);
+	}
+
+	@Override
+	public Object visitExp(Exp n) {
+		n.type = readNode();
+		n.constTag = readInt();
+		n.constVal = readSignedInt();
+		return super.visitExp(n);
+	}
+
+	@Override
+	public Object visitIdentifierExp(IdentifierExp n) {
+		n.name = readString();
+		n.link = readNode();
+		return super.visitIdentifierExp(n);
+	}
+
+	@Override
+	public Object visitIdentifierType(IdentifierType n) {
+		n.name = readString();
+		n.link = readNode();
+		return super.visitIdentifierType(n);
+	}
+
+	@Override
+	public Object visitIf(If n) {
+		n.exp = readNode();
+		n.trueStmt = readNode();
+		n.falseStmt = readNode();
+		return super.visitIf(n);
+	}
+
+	@Override
+	public Object visitInstVarAccess(InstVarAccess n) {
+		n.exp = readNode();
+		n.varName = readString();
+		n.varDec = readNode();
+		return super.visitInstVarAccess(n);
+	}
+
+	@Override
+	public Object visitInstanceOf(InstanceOf n) {
+		n.exp = readNode();
+		n.checkType = readNode();
+		return super.visitInstanceOf(n);
+	}
+
+	@Override
+	public Object visitIntegerLiteral(IntegerLiteral n) {
+		n.val = readSignedInt();
+		return super.visitIntegerLiteral(n);
+	}
+
+	@Override
+	public Object visitLabel(Label n) {
+		n.enclosingSwitch = readNode();
+		return super.visitLabel(n);
+	}
+
+	@Override
+	public Object visitLocalDeclStatement(LocalDeclStatement n) {
+		n.localVarDecl = readNode();
+		return super.visitLocalDeclStatement(n);
+	}
+
+	@Override
+	public Object visitLocalVarDecl(LocalVarDecl n) {
+		n.initExp = readNode();
+		return super.visitLocalVarDecl(n);
+	}
+
+	@Override
+	public Object visitMethodDecl(MethodDecl n) {
+		n.formals = readList(new VarDeclList());
+		n.stmts = readList(new StatementList());
+		n.superMethod = readNode();
+		n.thisPtrOffset = readSignedInt();
+		n.vtableOffset = readSignedInt();
+		n.classDecl = readNode();
+		return super.visitMethodDecl(n);
+	}
+
+	@Override
+	public Object visitMethodDeclNonVoid(MethodDeclNonVoid n) {
+		n.rtnType = readNode();
+		n.rtnExp = readNode();
+		return super.visitMethodDeclNonVoid(n);
+	}
+
+	@Override
+	public Object visitNewArray(NewArray n) {
+		n.sizeExp = readNode();
+		n.objType = readNode();
+		return super.visitNewArray(n);
+	}
+
+	@Override
+	public Object visitNewObject(NewObject n) {
+		n.objType = readNode();
+		return super.visitNewObject(n);
+	}
+
+	@Override
+	public Object visitProgram(Program n) {
+		n.classDecls = readList(new ClassDeclList());
+		n.mainStatement = readNode();
+		n.dummyNodes = readList(new ClassDeclList());
+		return super.visitProgram(n);
+	}
+
+	@Override
+	public Object visitStringLiteral(StringLiteral n) {
+		n.str = readString();
+		n.uniqueCgRep = readNode();
+		return super.visitStringLiteral(n);
+	}
+
+	@Override
+	public Object visitSwitch(Switch n) {
+		n.exp = readNode();
+		n.stmts = readList(new StatementList());
+		return super.visitSwitch(n);
+	}
+
+	@Override
+	public Object visitUnExp(UnExp n) {
+		n.exp = readNode();
+		return super.visitUnExp(n);
+	}
+
+	@Override
+	public Object visitVarDecl(VarDecl n) {
+		n.type = readNode();
+		n.offset = readSignedInt();
+		return super.visitVarDecl(n);
+	}
+
+	@Override
+	public Object visitWhile(While n) {
+		n.exp = readNode();
+		n.body = readNode();
+		return super.visitWhile(n);
+	}
+}
@@ -0,0 +1,477 @@
+package visitor;
+
+import syntaxtree.*;
+import errorMsg.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// The purpose of this class is to write an AST, including the links that
+// the semantic phases fill in, in a compact binary form that AstReader can
+// load back.  Use it as:
+//   new AstWriter().write(programNode, errorMsg, outputStream);
+// where errorMsg is the one the tree was compiled with, whose file name
+// and line table are saved too (or as write(programNode, outputStream)
+// to save neither).
+//
+// The format is
+//   MAGIC VERSION
+//   <number of strings> <strings>   -- every name, string literal and
+//                                      node-class name, each stored once
+//   <file name> <number of lines> <line starts>
+//   <root node> <deferred nodes>
+// where integers are variable-length (small values take one byte) and
+// strings are referred to by their position in the string table.
+//
+// Each node is written where it first appears in the tree, with its class
+// and then its fields (in the order of the visit methods below, from the
+// node's own class up to AstNode); later references to it are back-
+// references by node number.  A link (a field that does not own the node
+// it refers to, such as IdentifierType.link or Call.methodLink) to a node
+// that has not been written yet only announces the node's number and
+// class; its fields follow when the tree walk reaches it, or, for a node
+// that no tree field owns (such as a type made up during type checking),
+// after the root.  That keeps the writer's recursion as deep as the tree,
+// however long the chains of links are.
+public class AstWriter extends InhVisitor {
+
+	static final int MAGIC = 0x4d4a4153; // "MJAS"
+	static final int VERSION = 2;
+
+	// node tags
+	static final int NULL_NODE = 0; // no node
+	static final int NEW_NODE = 1; // class, then fields
+	static final int ANNOUNCED_NODE = 2; // class; fields come later
+	static final int DEFERRED_FIELDS = 3; // node number, then fields
+	static final int BACK_REF = 4; // BACK_REF+n refers to node number n
+
+	private IdentityHashMap<AstNode,Integer> nodeNums;
+	private IdentityHashMap<AstNode,Boolean> fieldsWritten;
+	private Vector<AstNode> deferred;
+	private HashMap<String,Integer> stringNums;
+	private Vector<String> strings;
+	private ByteArrayOutputStream body;
+
+	public AstWriter() {
+	}
+
+	// writes the tree rooted at 'root' to 'os', without a file name or line
+	// table
+	public void write(AstNode root, OutputStream os) throws IOException {
+		write(root, null, os);
+	}
+
+	// writes the tree rooted at 'root' to 'os', with the file name and
+	// line table of 'errorMsg' (if it is not null)
+	public void write(AstNode root, ErrorMsg errorMsg, OutputStream os)
+			throws IOException {
+		nodeNums = new IdentityHashMap<AstNode,Integer>();
+		fieldsWritten = new IdentityHashMap<AstNode,Boolean>();
+		deferred = new Vector<AstNode>();
+		stringNums = new HashMap<String,Integer>();
+		strings = new Vector<String>();
+		body = new ByteArrayOutputStream(1 << 16);
+		writeSource(errorMsg);
+		writeNode(root);
+		for (int i = 0; i < deferred.size(); i++) {
+			AstNode n = deferred.elementAt(i);
+			if (!fieldsWritten.containsKey(n)) {
+				writeInt(DEFERRED_FIELDS);
+				writeInt(nodeNums.get(n));
+				writeFields(n);
+			}
+		}
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		ByteArrayOutputStream nodeBytes = body;
+		body = new ByteArrayOutputStream();
+		writeInt(strings.size());
+		for (int i = 0; i < strings.size(); i++) {
+			byte[] bytes = strings.elementAt(i).getBytes(StandardCharsets.UTF_8);
+			writeInt(bytes.length);
+			body.write(bytes);
+		}
+		body.writeTo(out);
+		nodeBytes.writeTo(out);
+		out.flush();
+		body = null;
+	}
+
+	// writes the file name and the line table, each line start as the
+	// difference from the one before
+	private void writeSource(ErrorMsg errorMsg) {
+		if (errorMsg == null) {
+			writeString(null);
+			writeInt(0);
+			return;
+		}
+		writeString(errorMsg.getFileName());
+		int[] lineStarts = errorMsg.getLineStarts();
+		writeInt(lineStarts.length);
+		int prev = 0;
+		for (int start : lineStarts) {
+			writeSignedInt(start - prev);
+			prev = start;
+		}
+	}
+
+	// writes a node that the field being written owns
+	private void writeNode(AstNode n) {
+		if (n == null) {
+			writeInt(NULL_NODE);
+			return;
+		}
+		Integer num = nodeNums.get(n);
+		if (num == null) {
+			nodeNums.put(n, nodeNums.size());
+			writeInt(NEW_NODE);
+			writeString(n.getClass().getSimpleName());
+			writeFields(n);
+		}
+		else if (!fieldsWritten.containsKey(n)) {
+			writeInt(DEFERRED_FIELDS);
+			writeInt(num);
+			writeFields(n);
+		}
+		else {
+			writeInt(BACK_REF + num);
+		}
+	}
+
+	// writes a reference to a node that the field being written does not
+	// own
+	private void writeLink(AstNode n) {
+		if (n == null) {
+			writeInt(NULL_NODE);
+			return;
+		}
+		Integer num = nodeNums.get(n);
+		if (num == null) {
+			nodeNums.put(n, nodeNums.size());
+			deferred.addElement(n);
+			writeInt(ANNOUNCED_NODE);
+			writeString(n.getClass().getSimpleName());
+		}
+		else {
+			writeInt(BACK_REF + num);
+		}
+	}
+
+	private void writeFields(AstNode n) {
+		fieldsWritten.put(n, Boolean.TRUE);
+		n.accept(this);
+	}
+
+	private void writeList(AstList<? extends AstNode> lst, boolean owned) {
+		if (lst == null) {
+			writeInt(0);
+			return;
+		}
+		writeInt(lst.size()+1);
+		for (int i = 0; i < lst.size(); i++) {
+			if (owned) {
+				writeNode(lst.elementAt(i));
+			}
+			else {
+				writeLink(lst.elementAt(i));
+			}
+		}
+	}
+
+	private void writeTable(Map<String,? extends AstNode> table) {
+		if (table == null) {
+			writeInt(0);
+			return;
+		}
+		writeInt(table.size()+1);
+		for (Map.Entry<String,? extends AstNode> e : table.entrySet()) {
+			writeString(e.getKey());
+			writeLink(e.getValue());
+		}
+	}
+
+	private void writeString(String s) {
+		if (s == null) {
+			writeInt(0);
+			return;
+		}
+		Integer num = stringNums.get(s);
+		if (num == null) {
+			num = strings.size();
+			stringNums.put(s, num);
+			strings.addElement(s);
+		}
+		writeInt(num+1);
+	}
+
+	// writes a non-negative integer, seven bits per byte
+	private void writeInt(int val) {
+		while ((val & ~0x7f) != 0) {
+			body.write((val & 0x7f) | 0x80);
+			val >>>= 7;
+		}
+		body.write(val);
+	}
+
+	// writes any integer, mapping small negative ones to small codes
+	private void writeSignedInt(int val) {
+		writeInt((val << 1) ^ (val >> 31));
+	}
+
+	/*************** the fields of each node class ****************/
+
+	@Override
+	public Object visitAstNode(AstNode n) {
+		writeSignedInt(n.pos);
+		writeInt(n.uniqueId);
+		return null;
+	}
+
+	@Override
+	public Object visitAstList(AstList n) {
+		return null;
+	}
+
+	@Override
+	public Object visitArrayLookup(ArrayLookup n) {
+		writeNode(n.arrExp);
+		writeNode(n.idxExp);
+		return super.visitArrayLookup(n);
+	}
+
+	@Override
+	public Object visitArrayType(ArrayType n) {
+		writeNode(n.baseType);
+		return super.visitArrayType(n);
+	}
+
+	@Override
+	public Object visitAssign(Assign n) {
+		writeNode(n.lhs);
+		writeNode(n.rhs);
+		return super.visitAssign(n);
+	}
+
+	@Override
+	public Object visitBinExp(BinExp n) {
+		writeNode(n.left);
+		writeNode(n.right);
+		return super.visitBinExp(n);
+	}
+
+	@Override
+	public Object visitBlock(Block n) {
+		writeList(n.stmts, true);
+		return super.visitBlock(n);
+	}
+
+	@Override
+	public Object visitBreak(Break n) {
+		writeLink(n.breakLink);
+		return super.visitBreak(n);
+	}
+
+	@Override
+	public Object visitBreakTarget(BreakTarget n) {
+		writeSignedInt(n.stackHeight);
+		return super.visitBreakTarget(n);
+	}
+
+	@Override
+	public Object visitCall(Call n) {
+		writeNode(n.obj);
+		writeString(n.methName);
+		writeList(n.parms, true);
+		writeLink(n.methodLink);
+		return super.visitCall(n);
+	}
+
+	@Override
+	public Object visitCallStatement(CallStatement n) {
+		writeNode(n.callExp);
+		return super.visitCallStatement(n);
+	}
+
+	@Override
+	public Object visitCase(Case n) {
+		writeNode(n.exp);
+		return super.visitCase(n);
+	}
+
+	@Override
+	public Object visitCast(Cast n) {
+		writeNode(n.castType);
+		writeNode(n.exp);
+		return super.visitCast(n);
+	}
+
+	@Override
+	public Object visitClassDecl(ClassDecl n) {
+		writeString(n.superName);
+		writeList(n.decls, true);
+		writeLink(n.superLink);
+		writeList(n.subclasses, false);
+		writeTable(n.instVarTable);
+		writeTable(n.methodTable);
+		writeSignedInt(n.numDataInstVars);
+		writeSignedInt(n.numObjInstVars);
+		writeSignedInt(n.preOrderNum);
+		writeSignedInt(n.postOrderNum);
+		writeSignedInt(n.hierarchyDepth);
+		writeTable(n.allInstVars);
+		writeTable(n.allMethods);
+		writeSignedInt(n.vtableSize);
+		return super.visitClassDecl(n);
+	}
+
+	@Override
+	public Object visitDecl(Decl n) {
+		writeString(n.name);
+		return super.visitDecl(n);
+	}
+
+	@Override
+	public Object visitExp(Exp n) {
+		writeLink(n.type);
+		writeInt(n.constTag);
+		writeSignedInt(n.constVal);
+		return super.visitExp(n);
+	}
+
+	@Override
+	public Object visitIdentifierExp(IdentifierExp n) {
+		writeString(n.name);
+		writeLink(n.link);
+		return super.visitIdentifierExp(n);
+	}
+
+	@Override
+	public Object visitIdentifierType(IdentifierType n) {
+		writeString(n.name);
+		writeLink(n.link);
+		return super.visitIdentifierType(n);
+	}
+
+	@Override
+	public Object visitIf(If n) {
+		writeNode(n.exp);
+		writeNode(n.trueStmt);
+		writeNode(n.falseStmt);
+		return super.visitIf(n);
+	}
+
+	@Override
+	public Object visitInstVarAccess(InstVarAccess n) {
+		writeNode(n.exp);
+		writeString(n.varName);
+		writeLink(n.varDec);
+		return super.visitInstVarAccess(n);
+	}
+
+	@Override
+	public Object visitInstanceOf(InstanceOf n) {
+		writeNode(n.exp);
+		writeNode(n.checkType);
+		return super.visitInstanceOf(n);
+	}
+
+	@Override
+	public Object visitIntegerLiteral(IntegerLiteral n) {
+		writeSignedInt(n.val);
+		return super.visitIntegerLiteral(n);
+	}
+
+	@Override
+	public Object visitLabel(Label n) {
+		writeLink(n.enclosingSwitch);
+		return super.visitLabel(n);
+	}
+
+	@Override
+	public Object visitLocalDeclStatement(LocalDeclStatement n) {
+		writeNode(n.localVarDecl);
+		return super.visitLocalDeclStatement(n);
+	}
+
+	@Override
+	public Object visitLocalVarDecl(LocalVarDecl n) {
+		writeNode(n.initExp);
+		return super.visitLocalVarDecl(n);
+	}
+
+	@Override
+	public Object visitMethodDecl(MethodDecl n) {
+		writeList(n.formals, true);
+		writeList(n.stmts, true);
+		writeLink(n.superMethod);
+		writeSignedInt(n.thisPtrOffset);
+		writeSignedInt(n.vtableOffset);
+		writeLink(n.classDecl);
+		return super.visitMethodDecl(n);
+	}
+
+	@Override
+	public Object visitMethodDeclNonVoid(MethodDeclNonVoid n) {
+		writeNode(n.rtnType);
+		writeNode(n.rtnExp);
+		return super.visitMethodDeclNonVoid(n);
+	}
+
+	@Override
+	public Object visitNewArray(NewArray n) {
+		writeNode(n.sizeExp);
+		writeNode(n.objType);
+		return super.visitNewArray(n);
+	}
+
+	@Override
+	public Object visitNewObject(NewObject n) {
+		writeNode(n.objType);
+		return super.visitNewObject(n);
+	}
+
+	@Override
+	public Object visitProgram(Program n) {
+		writeList(n.classDecls, true);
+		writeNode(n.mainStatement);
+		writeList(n.dummyNodes, true);
+		return super.visitProgram(n);
+	}
+
+	@Override
+	public Object visitStringLiteral(StringLiteral n) {
+		writeString(n.str);
+		writeLink(n.uniqueCgRep);
+		return super.visitStringLiteral(n);
+	}
+
+	@Override
+	public Object visitSwitch(Switch n) {
+		writeNode(n.exp);
+		writeList(n.stmts, true);
+		return super.visitSwitch(n);
+	}
+
+	@Override
+	public Object visitUnExp(UnExp n) {
+		writeNode(n.exp);
+		return super.visitUnExp(n);
+	}
+
+	@Override
+	public Object visitVarDecl(VarDecl n) {
+		writeNode(n.type);
+		writeSignedInt(n.offset);
+		return super.visitVarDecl(n);
+	}
+
+	@Override
+	public Object visitWhile(While n) {
+		writeNode(n.exp);
+		writeNode(n.body);
+		return super.visitWhile(n);
+	}
+}
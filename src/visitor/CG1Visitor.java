@@ -0,0 +1,263 @@
+package visitor;
+
+import java.io.PrintStream;
+import java.util.*;
+
+import syntaxtree.*;
+import errorMsg.*;
+
+// The purpose of this class is to do the first phase of generating x86-64
+// assembly code (see CG3Visitor): laying out the program's objects and
+// stack frames.  It runs on a program that has passed every semantic
+// phase, and writes only the start of the assembly file: the name of the
+// source file, which runtime error messages give.
+//
+// An object's data (int and boolean) instance variables are below the
+// object pointer, one word each, the first at -8, and its object instance
+// variables above the two header words, the first at +16; a subclass's
+// variables follow those of its superclass, so that an inherited variable
+// is at the same offset in every subclass (InstVarDecl.offset,
+// ClassDecl.numDataInstVars and ClassDecl.numObjInstVars).
+//
+// A method's frame is addressed from %rbp.  Above the saved %rbp and the
+// return address are the parameters, the last one nearest, and above them
+// the this-pointer (MethodDecl.thisPtrOffset); an int or boolean takes two
+// words, the tag that tells the garbage collector to skip it and, above
+// that, the value itself.  Below %rbp are the locals: first the data
+// locals, two words each in the same way, then the object locals, one
+// word each.  Locals in separate blocks share slots.  A VarDecl's offset
+// is that of its value.
+//
+// It also makes each string literal's uniqueCgRep the first literal with
+// the same text, so that each distinct string is emitted once.
+public class CG1Visitor extends ASTvisitor {
+
+	static final int WORD_SIZE = 8;
+	static final int DATA_SLOT_SIZE = 2*WORD_SIZE;
+	static final int FIRST_DATA_INST_VAR = -WORD_SIZE;
+	static final int FIRST_OBJ_INST_VAR = 2*WORD_SIZE;
+	static final int FIRST_PARAMETER = 2*WORD_SIZE;
+
+	private ErrorMsg errorMsg;
+	private PrintStream out;
+
+	private IdentityHashMap<ClassDecl,Boolean> laidOut;
+	private HashMap<String,StringLiteral> strings;
+
+	// the locals of the method being laid out: their number in scope, in
+	// each kind of slot, the most in scope at once, and the declarations
+	// seen so far (whose offsets are slot numbers until the method is done)
+	private int numData;
+	private int numObj;
+	private int maxData;
+	private Vector<LocalVarDecl> locals;
+
+	public CG1Visitor(ErrorMsg e, PrintStream out) {
+		errorMsg = e;
+		this.out = out;
+		laidOut = new IdentityHashMap<ClassDecl,Boolean>();
+		strings = new HashMap<String,StringLiteral>();
+		locals = new Vector<LocalVarDecl>();
+	}
+
+	// whether values of a type are ints or booleans, rather than object
+	// pointers
+	static boolean isData(Type t) {
+		return t instanceof IntegerType || t instanceof BooleanType;
+	}
+
+	/*************** the names the phases share ****************/
+
+	static String methodLabel(MethodDecl md) {
+		return "m." + md.classDecl.name + "." + md.name;
+	}
+
+	static String vtableLabel(ClassDecl cd) {
+		return "vt." + cd.name;
+	}
+
+	static String nameLabel(ClassDecl cd) {
+		return "n." + cd.name;
+	}
+
+	// a string as the operand of .ascii or .asciz
+	static String quote(String s) {
+		StringBuilder sb = new StringBuilder("\"");
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			}
+			else if (c >= ' ' && c < 0x7F) {
+				sb.append(c);
+			}
+			else {
+				for (byte b : String.valueOf(c).getBytes(java.nio.charset.StandardCharsets.UTF_8)) {
+					sb.append(String.format("\\%03o", b & 0xFF));
+				}
+			}
+		}
+		return sb.append('"').toString();
+	}
+
+	/*************** the program ****************/
+
+	@Override
+	public Object visitProgram(Program n) {
+		out.println("# " + errorMsg.getFileName() +
+				", compiled from MiniJava to x86-64 assembly (GNU as, Linux)");
+		out.println();
+		out.println("\t.section .rodata");
+		out.println("mj.fileName:\t.asciz " + quote(errorMsg.getFileName()));
+		out.println();
+		for (int i = 0; i < n.dummyNodes.size(); i++) {
+			layoutClass(n.dummyNodes.elementAt(i));
+		}
+		for (int i = 0; i < n.classDecls.size(); i++) {
+			layoutClass(n.classDecls.elementAt(i));
+		}
+		n.classDecls.accept(this);
+		return null;
+	}
+
+	// gives the instance variables of a class the offsets after those of
+	// its superclasses, and records the class of each of its methods
+	private void layoutClass(ClassDecl cd) {
+		if (laidOut.containsKey(cd)) {
+			return;
+		}
+		laidOut.put(cd, Boolean.TRUE);
+		int numDataVars = 0;
+		int numObjVars = 0;
+		if (cd.superLink != null) {
+			layoutClass(cd.superLink);
+			numDataVars = cd.superLink.numDataInstVars;
+			numObjVars = cd.superLink.numObjInstVars;
+		}
+		for (int i = 0; i < cd.decls.size(); i++) {
+			Decl d = cd.decls.elementAt(i);
+			if (d instanceof InstVarDecl) {
+				InstVarDecl ivd = (InstVarDecl)d;
+				if (isData(ivd.type)) {
+					ivd.offset = FIRST_DATA_INST_VAR - WORD_SIZE*numDataVars++;
+				}
+				else {
+					ivd.offset = FIRST_OBJ_INST_VAR + WORD_SIZE*numObjVars++;
+				}
+			}
+			else if (d instanceof MethodDecl) {
+				((MethodDecl)d).classDecl = cd;
+			}
+		}
+		cd.numDataInstVars = numDataVars;
+		cd.numObjInstVars = numObjVars;
+		cd.buildLookupTables();
+	}
+
+	/*************** methods ****************/
+
+	@Override
+	public Object visitMethodDecl(MethodDecl n) {
+		int offset = FIRST_PARAMETER;
+		for (int i = n.formals.size()-1; i >= 0; i--) {
+			VarDecl vd = n.formals.elementAt(i);
+			if (isData(vd.type)) {
+				vd.offset = offset + WORD_SIZE;
+				offset += DATA_SLOT_SIZE;
+			}
+			else {
+				vd.offset = offset;
+				offset += WORD_SIZE;
+			}
+		}
+		n.thisPtrOffset = offset;
+		numData = 0;
+		numObj = 0;
+		maxData = 0;
+		locals.clear();
+		super.visitMethodDecl(n);
+		// the object locals go below all of the data locals
+		for (LocalVarDecl lvd : locals) {
+			if (isData(lvd.type)) {
+				lvd.offset = -DATA_SLOT_SIZE*lvd.offset - WORD_SIZE;
+			}
+			else {
+				lvd.offset = -DATA_SLOT_SIZE*maxData - WORD_SIZE*(lvd.offset+1);
+			}
+		}
+		locals.clear();
+		return null;
+	}
+
+	@Override
+	public Object visitLocalVarDecl(LocalVarDecl n) {
+		super.visitLocalVarDecl(n);
+		if (isData(n.type)) {
+			n.offset = numData++;
+			maxData = Math.max(maxData, numData);
+		}
+		else {
+			n.offset = numObj++;
+		}
+		locals.addElement(n);
+		return null;
+	}
+
+	/*************** scopes ****************/
+
+	// visits a statement whose locals go out of scope after it
+	private void visitScope(AstNode n) {
+		int savedData = numData;
+		int savedObj = numObj;
+		if (n != null) {
+			n.accept(this);
+		}
+		numData = savedData;
+		numObj = savedObj;
+	}
+
+	private void visitScope(StatementList stmts) {
+		int savedData = numData;
+		int savedObj = numObj;
+		stmts.accept(this);
+		numData = savedData;
+		numObj = savedObj;
+	}
+
+	@Override
+	public Object visitBlock(Block n) {
+		visitScope(n.stmts);
+		return null;
+	}
+
+	@Override
+	public Object visitIf(If n) {
+		n.exp.accept(this);
+		visitScope(n.trueStmt);
+		visitScope(n.falseStmt);
+		return null;
+	}
+
+	@Override
+	public Object visitWhile(While n) {
+		n.exp.accept(this);
+		visitScope(n.body);
+		return null;
+	}
+
+	@Override
+	public Object visitSwitch(Switch n) {
+		n.exp.accept(this);
+		visitScope(n.stmts);
+		return null;
+	}
+
+	/*************** strings ****************/
+
+	@Override
+	public Object visitStringLiteral(StringLiteral n) {
+		StringLiteral first = strings.putIfAbsent(n.str, n);
+		n.uniqueCgRep = first == null ? n : first;
+		return null;
+	}
+}
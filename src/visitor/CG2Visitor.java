@@ -0,0 +1,85 @@
+package visitor;
+
+import java.io.PrintStream;
+
+import syntaxtree.*;
+import errorMsg.*;
+
+// The purpose of this class is to do the second phase of generating x86-64
+// assembly code (see CG3Visitor): writing each class's descriptor, which
+// every object of the class points to.  It runs after CG1Visitor, on a
+// program that has passed every semantic phase.
+//
+// A class's descriptor is labeled vt.<class>, and starts with its v-table:
+// the address of the method in each slot (MethodDecl.vtableOffset),
+// inherited or not.  The words before it give the class's name, its pre-
+// and post-order numbers in the class hierarchy (see HierarchyNumberer),
+// the kind of its objects, and their numbers of data and object instance
+// variables; runtime/mjrt.s names these fields.  The predefined classes'
+// descriptors are written too, as the runtime's methods are in their
+// v-tables.
+public class CG2Visitor extends ASTvisitor {
+
+	static final int KIND_OBJECT = 0;
+	static final int KIND_REFARRAY = 1;
+	static final int KIND_DATAARRAY = 2;
+	static final int KIND_STRING = 3;
+
+	private ErrorMsg errorMsg;
+	private PrintStream out;
+
+	public CG2Visitor(ErrorMsg e, PrintStream out) {
+		errorMsg = e;
+		this.out = out;
+	}
+
+	@Override
+	public Object visitProgram(Program n) {
+		out.println("\t.section .rodata");
+		for (int i = 0; i < n.dummyNodes.size(); i++) {
+			writeName(n.dummyNodes.elementAt(i));
+		}
+		for (int i = 0; i < n.classDecls.size(); i++) {
+			writeName(n.classDecls.elementAt(i));
+		}
+		out.println();
+		out.println("\t.section .data.rel.ro,\"aw\"");
+		for (int i = 0; i < n.dummyNodes.size(); i++) {
+			ClassDecl cd = n.dummyNodes.elementAt(i);
+			writeDescriptor(cd, cd.name.equals("String") ? KIND_STRING : KIND_OBJECT);
+		}
+		for (int i = 0; i < n.classDecls.size(); i++) {
+			writeDescriptor(n.classDecls.elementAt(i), KIND_OBJECT);
+		}
+		out.println();
+		return null;
+	}
+
+	private void writeName(ClassDecl cd) {
+		out.println(CG1Visitor.nameLabel(cd) + ":\t.asciz " + CG1Visitor.quote(cd.name));
+	}
+
+	private void writeDescriptor(ClassDecl cd, int kind) {
+		MethodDecl[] vtable = new MethodDecl[Math.max(0, cd.vtableSize)];
+		for (MethodDecl md : cd.allMethods.values()) {
+			if (md.vtableOffset >= 0 && md.vtableOffset < vtable.length) {
+				vtable[md.vtableOffset] = md;
+			}
+		}
+		writeHeader(out, CG1Visitor.nameLabel(cd), cd.preOrderNum, cd.postOrderNum, kind,
+				cd.numDataInstVars, cd.numObjInstVars);
+		out.println(CG1Visitor.vtableLabel(cd) + ":");
+		for (MethodDecl md : vtable) {
+			out.println("\t.quad " + CG1Visitor.methodLabel(md));
+		}
+	}
+
+	// the words before a descriptor's v-table
+	static void writeHeader(PrintStream out, String nameLabel, int pre, int post,
+			int kind, int numData, int numObj) {
+		out.println("\t.balign 8");
+		out.println("\t.quad " + nameLabel);
+		out.println("\t.long " + pre + ", " + post + ", " + kind + ", 0, " +
+				numData + ", " + numObj);
+	}
+}
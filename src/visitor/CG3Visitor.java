@@ -0,0 +1,1153 @@
+package visitor;
+
+import java.io.PrintStream;
+import java.util.*;
+
+import syntaxtree.*;
+import errorMsg.*;
+
+// The purpose of this class is to do the last phase of generating x86-64
+// assembly code: the code of each method, the code that runs the main
+// statement ('mj.main'), and the constant data that the code uses.  It
+// runs after CG1Visitor, which lays out the objects and frames, and
+// CG2Visitor, which writes the class descriptors.  The output is GNU as
+// syntax for Linux, and is completed by the runtime (runtime/mjrt.s),
+// which provides storage allocation, garbage collection, the predefined
+// methods and the error messages.  The conventions below are shared with
+// the runtime.
+//
+// Each expression's code leaves its value in %rax (%eax for an int or a
+// boolean, which is 0 or 1).  An operand that must survive the code of a
+// later one is pushed; one that is a constant, a local or a parameter, or
+// is loaded straight from 'this', is used in place instead.  Conditions
+// (of if and while, and the operands of && and ||) are translated into
+// jumps.
+//
+// A call pushes the receiver and then the arguments, in order, calls the
+// method through the receiver's v-table (or directly, when no class
+// overrides the method), and pops them; the result is in %rax.  Methods
+// need not preserve any register but %rbp and %rsp, and a call to a
+// predefined method has the position of the call in %r11, for the
+// runtime's error messages.
+//
+// The garbage collector finds the program's pointers on the stack, and
+// treats any word there that points into the heap as an object pointer.
+// So a pointer is never kept in a register across anything that may
+// allocate (any call, or 'new'), and every int or boolean on the stack is
+// preceded by the tag DATA_TAG, which makes the collector skip it.  A
+// frame's locals are set up (tagged, or null) on entry to the method.
+//
+// A runtime error (e.g., a null pointer) jumps to a stub at the end of the
+// method, which passes the position of the error to the runtime.
+public class CG3Visitor extends InhVisitor {
+
+	// these must agree with runtime/mjrt.s
+	private static final int DATA_TAG = 5;
+	private static final int PRE = -24;
+	private static final int LENGTH = 8;
+	private static final int BODY = 16;
+
+	// a frame with more slots than this is set up by a loop
+	private static final int MAX_UNROLLED_SLOTS = 8;
+	// the stack check allows for this much below the stack pointer
+	private static final int STACK_CHECK_SLACK = 1 << 16;
+
+	private ErrorMsg errorMsg;
+	private PrintStream out;
+	private ConstEvaluator constEval;
+
+	private ClassDecl objectClass;
+	private IdentityHashMap<ClassDecl,Boolean> predefined;
+	private IdentityHashMap<MethodDecl,Boolean> overridden;
+
+	// the constant data, by label, which is written after all the code
+	private IdentityHashMap<StringLiteral,String> stringLabels;
+	private LinkedHashMap<String,String> positionLabels;
+	private LinkedHashMap<ArrayType,String> arrayLabels;
+	private int numLabels;
+
+	// the method being generated: its code, and the stubs that its
+	// runtime errors jump to
+	private StringBuilder code;
+	private StringBuilder stubs;
+	private HashMap<String,String> stubLabels;
+	private IdentityHashMap<BreakTarget,String> breakLabels;
+	private int thisOffset;
+	private int dataFrameSize;
+	private int frameSize;
+
+	public CG3Visitor(ErrorMsg e, PrintStream out) {
+		errorMsg = e;
+		this.out = out;
+		constEval = new ConstEvaluator();
+		predefined = new IdentityHashMap<ClassDecl,Boolean>();
+		overridden = new IdentityHashMap<MethodDecl,Boolean>();
+		stringLabels = new IdentityHashMap<StringLiteral,String>();
+		positionLabels = new LinkedHashMap<String,String>();
+		arrayLabels = new LinkedHashMap<ArrayType,String>();
+		breakLabels = new IdentityHashMap<BreakTarget,String>();
+		numLabels = 0;
+	}
+
+	/*************** the program ****************/
+
+	@Override
+	public Object visitProgram(Program n) {
+		for (int i = 0; i < n.dummyNodes.size(); i++) {
+			ClassDecl cd = n.dummyNodes.elementAt(i);
+			predefined.put(cd, Boolean.TRUE);
+			if (cd.name.equals("Object")) objectClass = cd;
+			findOverridden(cd);
+		}
+		for (int i = 0; i < n.classDecls.size(); i++) {
+			findOverridden(n.classDecls.elementAt(i));
+		}
+		out.println("\t.text");
+		out.println();
+		startMethod(0);
+		n.mainStatement.accept(this);
+		// the main statement has no position of its own; an overflow here is
+		// reported at the 'main' it calls
+		finishMethod("mj.main", ((CallStatement)n.mainStatement).callExp.methodLink.pos);
+		for (int i = 0; i < n.classDecls.size(); i++) {
+			ClassDecl cd = n.classDecls.elementAt(i);
+			for (int j = 0; j < cd.decls.size(); j++) {
+				Decl d = cd.decls.elementAt(j);
+				if (d instanceof MethodDecl) {
+					d.accept(this);
+				}
+			}
+		}
+		writeData();
+		out.flush();
+		return null;
+	}
+
+	// records the methods that a class's methods override
+	private void findOverridden(ClassDecl cd) {
+		if (cd.superLink == null) {
+			return;
+		}
+		for (int i = 0; i < cd.decls.size(); i++) {
+			Decl d = cd.decls.elementAt(i);
+			if (d instanceof MethodDecl) {
+				MethodDecl md = cd.superLink.lookupMethod(d.name);
+				if (md != null) {
+					overridden.put(md, Boolean.TRUE);
+				}
+			}
+		}
+	}
+
+	@Override
+	public Object visitMethodDecl(MethodDecl n) {
+		startMethod(n.thisPtrOffset);
+		genStmts(n.stmts);
+		if (n instanceof MethodDeclNonVoid) {
+			gen(((MethodDeclNonVoid)n).rtnExp);
+		}
+		finishMethod(CG1Visitor.methodLabel(n), n.pos);
+		return null;
+	}
+
+	private void startMethod(int thisPtrOffset) {
+		code = new StringBuilder();
+		stubs = new StringBuilder();
+		stubLabels = new HashMap<String,String>();
+		thisOffset = thisPtrOffset;
+		dataFrameSize = 0;
+		frameSize = 0;
+	}
+
+	// writes the method: the prologue, which checks for stack overflow
+	// (reported at 'pos', the method's position) and sets up the locals,
+	// the code, the epilogue and the error stubs
+	private void finishMethod(String label, int pos) {
+		out.println("\t.p2align 4");
+		out.println(label + ":");
+		out.println("\tpushq %rbp");
+		out.println("\tmovq %rsp, %rbp");
+		if (frameSize < STACK_CHECK_SLACK) {
+			out.println("\tcmpq rt.stackLimit(%rip), %rsp");
+		}
+		else {
+			out.println("\tleaq " + (-frameSize) + "(%rsp), %rax");
+			out.println("\tcmpq rt.stackLimit(%rip), %rax");
+		}
+		out.println("\tjb " + stub("rt.stackOverflow", pos, ""));
+		int numData = dataFrameSize / CG1Visitor.DATA_SLOT_SIZE;
+		int numObj = (frameSize - dataFrameSize) / CG1Visitor.WORD_SIZE;
+		pushSlots(numData, "\tpushq $0\n\tpushq $" + DATA_TAG + "\n");
+		pushSlots(numObj, "\tpushq $0\n");
+		out.print(code);
+		out.println("\tleave");
+		out.println("\tret");
+		out.print(stubs);
+		out.println();
+	}
+
+	private void pushSlots(int num, String push) {
+		if (num <= MAX_UNROLLED_SLOTS) {
+			for (int i = 0; i < num; i++) {
+				out.print(push);
+			}
+		}
+		else {
+			out.println("\tmovl $" + num + ", %ecx");
+			out.print("1:");
+			out.print(push);
+			out.println("\tdecl %ecx");
+			out.println("\tjnz 1b");
+		}
+	}
+
+	/*************** the constant data ****************/
+
+	private void writeData() {
+		out.println("\t.section .rodata");
+		for (Map.Entry<String,String> entry : positionLabels.entrySet()) {
+			out.println(entry.getValue() + ":\t.asciz \"" + entry.getKey() + "\"");
+		}
+		for (Map.Entry<ArrayType,String> entry : arrayLabels.entrySet()) {
+			out.println("n" + entry.getValue().substring(2) + ":\t.asciz " +
+					CG1Visitor.quote(entry.getKey().toString()));
+		}
+		out.println();
+		out.println("\t.section .data.rel.ro,\"aw\"");
+		for (Map.Entry<ArrayType,String> entry : arrayLabels.entrySet()) {
+			ArrayType t = entry.getKey();
+			String label = entry.getValue();
+			int kind = CG1Visitor.isData(t.baseType) ? CG2Visitor.KIND_DATAARRAY
+					: CG2Visitor.KIND_REFARRAY;
+			// an array is an Object, and no other class
+			CG2Visitor.writeHeader(out, "n" + label.substring(2), objectClass.preOrderNum,
+					objectClass.preOrderNum, kind, 0, 0);
+			out.println(label + ":");
+			for (int i = 0; i < objectClass.vtableSize; i++) {
+				for (MethodDecl md : objectClass.allMethods.values()) {
+					if (md.vtableOffset == i) {
+						out.println("\t.quad " + CG1Visitor.methodLabel(md));
+					}
+				}
+			}
+		}
+		out.println();
+		// strings are not in the heap, but String.hashCode records its
+		// result in them
+		out.println("\t.data");
+		for (Map.Entry<StringLiteral,String> entry : stringLabels.entrySet()) {
+			String s = entry.getKey().str;
+			out.println("\t.balign 8");
+			out.println("\t.quad 0");
+			out.println(entry.getValue() + ":\t.quad vt.String");
+			out.println("\t.long " + s.length() + ", 0");
+			for (int i = 0; i < s.length(); i += 16) {
+				StringBuilder sb = new StringBuilder("\t.short ");
+				for (int j = i; j < s.length() && j < i+16; j++) {
+					if (j > i) sb.append(", ");
+					sb.append((int)s.charAt(j));
+				}
+				out.println(sb);
+			}
+		}
+		out.println();
+	}
+
+	private String newLabel() {
+		return ".L" + numLabels++;
+	}
+
+	// the label of a position's text, as runtime error messages give it
+	private String positionLabel(int pos) {
+		String text = errorMsg.lineAndChar(pos);
+		String rtnVal = positionLabels.get(text);
+		if (rtnVal == null) {
+			rtnVal = "p." + text;
+			positionLabels.put(text, rtnVal);
+		}
+		return rtnVal;
+	}
+
+	// the label of an array type's descriptor, e.g., vt.int.1 for int[]
+	private String arrayLabel(ArrayType t) {
+		String rtnVal = arrayLabels.get(t);
+		if (rtnVal == null) {
+			int dims = 0;
+			Type base = t;
+			while (base instanceof ArrayType) {
+				base = ((ArrayType)base).baseType;
+				dims++;
+			}
+			String baseName = base instanceof IntegerType ? "int"
+					: base instanceof BooleanType ? "boolean" : ((IdentifierType)base).name;
+			rtnVal = "vt." + baseName + "." + dims;
+			arrayLabels.put(t, rtnVal);
+		}
+		return rtnVal;
+	}
+
+	private String stringLabel(StringLiteral n) {
+		StringLiteral rep = n.uniqueCgRep != null ? n.uniqueCgRep : n;
+		String rtnVal = stringLabels.get(rep);
+		if (rtnVal == null) {
+			rtnVal = "s." + stringLabels.size();
+			stringLabels.put(rep, rtnVal);
+		}
+		return rtnVal;
+	}
+
+	/*************** emitting code ****************/
+
+	private void emit(String instr) {
+		code.append('\t').append(instr).append('\n');
+	}
+
+	private void placeLabel(String label) {
+		code.append(label).append(":\n");
+	}
+
+	// the label of a stub that reports an error at the given position; the
+	// stub's code is 'setup' (which moves the values in the message into
+	// place), and then a jump to the runtime's routine
+	private String stub(String routine, int pos, String setup) {
+		String pl = positionLabel(pos);
+		String key = routine + " " + pl + " " + setup;
+		String rtnVal = stubLabels.get(key);
+		if (rtnVal == null) {
+			rtnVal = newLabel();
+			stubLabels.put(key, rtnVal);
+			stubs.append(rtnVal).append(":\n");
+			stubs.append(setup);
+			stubs.append("\tleaq ").append(pl).append("(%rip), %rdi\n");
+			stubs.append("\tjmp ").append(routine).append('\n');
+		}
+		return rtnVal;
+	}
+
+	// jumps to a null-pointer stub if the register is null
+	private void nullCheck(String reg, int pos) {
+		emit("testq " + reg + ", " + reg);
+		emit("jz " + stub("rt.nullPointer", pos, ""));
+	}
+
+	// checks the index in %ecx against the length of the array in 'reg'
+	private void indexCheck(String reg, int pos) {
+		emit("cmpl " + LENGTH + "(" + reg + "), %ecx");
+		emit("jae " + stub("rt.arrayIndexError", pos,
+				"\tmovl %ecx, %esi\n\tmovl " + LENGTH + "(" + reg + "), %edx\n"));
+	}
+
+	// whether an expression's value is never null
+	private static boolean isNonNull(Exp e) {
+		return e instanceof This || e instanceof Super || e instanceof NewObject ||
+				e instanceof StringLiteral;
+	}
+
+	// pushes the value in %rax, which is of the given type
+	private void push(Type t) {
+		emit("pushq %rax");
+		if (CG1Visitor.isData(t)) {
+			emit("pushq $" + DATA_TAG);
+		}
+	}
+
+	// pops a value of the given type into a register
+	private void pop(Type t, String reg) {
+		if (CG1Visitor.isData(t)) {
+			emit("movl 8(%rsp), " + reg32(reg));
+			emit("addq $16, %rsp");
+		}
+		else {
+			emit("popq " + reg);
+		}
+	}
+
+	private static String reg32(String reg) {
+		return "%e" + reg.substring(2);
+	}
+
+	private static String reg(String reg, Type t) {
+		return CG1Visitor.isData(t) ? reg32(reg) : reg;
+	}
+
+	private static String suffix(Type t) {
+		return CG1Visitor.isData(t) ? "l" : "q";
+	}
+
+	/*************** operands ****************/
+
+	// whether an expression is a constant, a local or a parameter: one whose
+	// value nothing that the program does in an expression can change
+	private boolean isFixed(Exp e) {
+		int tag = constEval.eval(e);
+		return tag == ConstEvaluator.INT_CONST || tag == ConstEvaluator.BOOL_CONST ||
+				tag == ConstEvaluator.NULL_CONST || e instanceof This ||
+				(e instanceof IdentifierExp && !(((IdentifierExp)e).link instanceof InstVarDecl));
+	}
+
+	// if an expression can be used as an operand without generating its
+	// code, returns the operand, which may be formed by loading the object
+	// pointer 'scratch'; otherwise returns null
+	private String operand(Exp e, String scratch) {
+		int tag = constEval.eval(e);
+		if (tag == ConstEvaluator.INT_CONST || tag == ConstEvaluator.BOOL_CONST) {
+			return "$" + e.constVal;
+		}
+		else if (tag == ConstEvaluator.NULL_CONST) {
+			return "$0";
+		}
+		else if (e instanceof This) {
+			return thisOffset + "(%rbp)";
+		}
+		else if (e instanceof IdentifierExp) {
+			VarDecl decl = ((IdentifierExp)e).link;
+			if (decl instanceof InstVarDecl) {
+				emit("movq " + thisOffset + "(%rbp), " + scratch);
+				return decl.offset + "(" + scratch + ")";
+			}
+			return decl.offset + "(%rbp)";
+		}
+		return null;
+	}
+
+	// loads a fixed expression (see isFixed) into a register
+	private void loadFixed(Exp e, String reg) {
+		String opnd = operand(e, reg);
+		if (opnd.equals("$0")) {
+			emit("xorl " + reg32(reg) + ", " + reg32(reg));
+		}
+		else {
+			emit("mov" + suffix(e.type) + " " + opnd + ", " + reg(reg, e.type));
+		}
+	}
+
+	// generates the left operand of a binary expression into %rax, and
+	// returns the right operand, which is in %rcx unless it can be used in
+	// place
+	private String genOperands(BinExp n) {
+		gen(n.left);
+		String rtnVal = operand(n.right, "%rcx");
+		if (rtnVal == null) {
+			push(n.left.type);
+			gen(n.right);
+			emit("mov" + suffix(n.right.type) + " " + reg("%rax", n.right.type) + ", " +
+					reg("%rcx", n.right.type));
+			pop(n.left.type, "%rax");
+			rtnVal = reg("%rcx", n.right.type);
+		}
+		return rtnVal;
+	}
+
+	/*************** statements ****************/
+
+	private void genStmts(StatementList stmts) {
+		for (int i = 0; i < stmts.size(); i++) {
+			stmts.elementAt(i).accept(this);
+		}
+	}
+
+	@Override
+	public Object visitAstNode(AstNode n) {
+		throw new IllegalStateException("cannot generate code for a " + n.getClass().getSimpleName());
+	}
+
+	@Override
+	public Object visitAstList(AstList n) {
+		throw new IllegalStateException("cannot generate code for a " + n.getClass().getSimpleName());
+	}
+
+	@Override
+	public Object visitBlock(Block n) {
+		genStmts(n.stmts);
+		return null;
+	}
+
+	@Override
+	public Object visitLocalDeclStatement(LocalDeclStatement n) {
+		LocalVarDecl decl = n.localVarDecl;
+		if (CG1Visitor.isData(decl.type)) {
+			dataFrameSize = Math.max(dataFrameSize, CG1Visitor.WORD_SIZE - decl.offset);
+			frameSize = Math.max(frameSize, dataFrameSize);
+		}
+		else {
+			frameSize = Math.max(frameSize, -decl.offset);
+		}
+		gen(decl.initExp);
+		emit("mov" + suffix(decl.type) + " " + reg("%rax", decl.type) + ", " +
+				decl.offset + "(%rbp)");
+		return null;
+	}
+
+	// the right-hand side is evaluated after the object (and index) it is
+	// stored in, which are checked only then
+	@Override
+	public Object visitAssign(Assign n) {
+		Exp lhs = n.lhs;
+		String store = "mov" + suffix(lhs.type) + " " + reg("%rax", lhs.type) + ", ";
+		if (lhs instanceof IdentifierExp && !(((IdentifierExp)lhs).link instanceof InstVarDecl)) {
+			gen(n.rhs);
+			emit(store + ((IdentifierExp)lhs).link.offset + "(%rbp)");
+		}
+		else if (lhs instanceof IdentifierExp) {
+			gen(n.rhs);
+			emit("movq " + thisOffset + "(%rbp), %rdx");
+			emit(store + ((IdentifierExp)lhs).link.offset + "(%rdx)");
+		}
+		else if (lhs instanceof InstVarAccess) {
+			InstVarAccess iva = (InstVarAccess)lhs;
+			boolean fixedObj = isFixed(iva.exp);
+			if (!fixedObj) {
+				gen(iva.exp);
+				push(iva.exp.type);
+			}
+			gen(n.rhs);
+			if (fixedObj) {
+				loadFixed(iva.exp, "%rdx");
+			}
+			else {
+				pop(iva.exp.type, "%rdx");
+			}
+			if (!isNonNull(iva.exp)) {
+				nullCheck("%rdx", iva.pos);
+			}
+			emit(store + iva.varDec.offset + "(%rdx)");
+		}
+		else {
+			ArrayLookup al = (ArrayLookup)lhs;
+			boolean fixedArr = isFixed(al.arrExp);
+			boolean fixedIdx = isFixed(al.idxExp);
+			if (!fixedArr) {
+				gen(al.arrExp);
+				push(al.arrExp.type);
+			}
+			if (!fixedIdx) {
+				gen(al.idxExp);
+				push(al.idxExp.type);
+			}
+			gen(n.rhs);
+			if (fixedIdx) {
+				loadFixed(al.idxExp, "%rcx");
+			}
+			else {
+				pop(al.idxExp.type, "%rcx");
+			}
+			if (fixedArr) {
+				loadFixed(al.arrExp, "%rdx");
+			}
+			else {
+				pop(al.arrExp.type, "%rdx");
+			}
+			nullCheck("%rdx", al.pos);
+			indexCheck("%rdx", al.pos);
+			emit(store + BODY + "(%rdx,%rcx," + elementSize(lhs.type) + ")");
+		}
+		return null;
+	}
+
+	private static int elementSize(Type t) {
+		return CG1Visitor.isData(t) ? 4 : 8;
+	}
+
+	@Override
+	public Object visitCallStatement(CallStatement n) {
+		n.callExp.accept(this);
+		return null;
+	}
+
+	@Override
+	public Object visitIf(If n) {
+		if (constEval.isTrue(n.exp)) {
+			n.trueStmt.accept(this);
+		}
+		else if (constEval.isFalse(n.exp)) {
+			if (n.falseStmt != null) n.falseStmt.accept(this);
+		}
+		else if (n.falseStmt == null ||
+				(n.falseStmt instanceof Block && ((Block)n.falseStmt).stmts.size() == 0)) {
+			String endLabel = newLabel();
+			genCond(n.exp, false, endLabel);
+			n.trueStmt.accept(this);
+			placeLabel(endLabel);
+		}
+		else {
+			String elseLabel = newLabel();
+			String endLabel = newLabel();
+			genCond(n.exp, false, elseLabel);
+			n.trueStmt.accept(this);
+			emit("jmp " + endLabel);
+			placeLabel(elseLabel);
+			n.falseStmt.accept(this);
+			placeLabel(endLabel);
+		}
+		return null;
+	}
+
+	// the test goes after the body, so that each iteration takes one jump
+	@Override
+	public Object visitWhile(While n) {
+		String breakLabel = newLabel();
+		breakLabels.put(n, breakLabel);
+		if (!constEval.isFalse(n.exp)) {
+			String bodyLabel = newLabel();
+			String testLabel = newLabel();
+			emit("jmp " + testLabel);
+			code.append("\t.p2align 4,,10\n");
+			placeLabel(bodyLabel);
+			n.body.accept(this);
+			placeLabel(testLabel);
+			genCond(n.exp, true, bodyLabel);
+		}
+		placeLabel(breakLabel);
+		return null;
+	}
+
+	@Override
+	public Object visitSwitch(Switch n) {
+		String breakLabel = newLabel();
+		breakLabels.put(n, breakLabel);
+		StatementList stmts = n.stmts;
+		String[] labels = new String[stmts.size()];
+		String defaultLabel = breakLabel;
+		boolean allConst = true;
+		for (int i = 0; i < stmts.size(); i++) {
+			Statement s = stmts.elementAt(i);
+			if (s instanceof Label) {
+				labels[i] = newLabel();
+				if (s instanceof Default) {
+					if (defaultLabel == breakLabel) defaultLabel = labels[i];
+				}
+				else if (constEval.eval(((Case)s).exp) != ConstEvaluator.INT_CONST) {
+					allConst = false;
+				}
+			}
+		}
+		gen(n.exp);
+		if (allConst) {
+			genSwitchTable(n, labels, defaultLabel);
+		}
+		else {
+			// compare with each label in turn, as the labels may have
+			// side effects
+			push(n.exp.type);
+			for (int i = 0; i < stmts.size(); i++) {
+				if (stmts.elementAt(i) instanceof Case) {
+					Exp e = ((Case)stmts.elementAt(i)).exp;
+					String next = newLabel();
+					if (constEval.eval(e) == ConstEvaluator.INT_CONST) {
+						emit("cmpl $" + e.constVal + ", 8(%rsp)");
+					}
+					else {
+						gen(e);
+						emit("cmpl 8(%rsp), %eax");
+					}
+					emit("jne " + next);
+					emit("addq $16, %rsp");
+					emit("jmp " + labels[i]);
+					placeLabel(next);
+				}
+			}
+			emit("addq $16, %rsp");
+			emit("jmp " + defaultLabel);
+		}
+		for (int i = 0; i < stmts.size(); i++) {
+			if (stmts.elementAt(i) instanceof Label) {
+				placeLabel(labels[i]);
+			}
+			else {
+				stmts.elementAt(i).accept(this);
+			}
+		}
+		placeLabel(breakLabel);
+		return null;
+	}
+
+	// a jump table if the case values are dense enough, otherwise a binary
+	// search; if a value is repeated, its first case is the one taken
+	private void genSwitchTable(Switch n, String[] labels, String defaultLabel) {
+		TreeMap<Integer,String> targets = new TreeMap<Integer,String>();
+		for (int i = 0; i < n.stmts.size(); i++) {
+			Statement s = n.stmts.elementAt(i);
+			if (s instanceof Case) {
+				targets.putIfAbsent(((Case)s).exp.constVal, labels[i]);
+			}
+		}
+		if (targets.isEmpty()) {
+			emit("jmp " + defaultLabel);
+			return;
+		}
+		long lo = targets.firstKey();
+		long hi = targets.lastKey();
+		if (hi - lo < 2L*targets.size() + 4) {
+			String table = newLabel();
+			if (lo != 0) {
+				emit("subl $" + lo + ", %eax");
+			}
+			emit("cmpl $" + (hi - lo) + ", %eax");
+			emit("ja " + defaultLabel);
+			emit("leaq " + table + "(%rip), %rdx");
+			emit("movslq (%rdx,%rax,4), %rax");
+			emit("addq %rdx, %rax");
+			emit("jmp *%rax");
+			code.append("\t.section .rodata\n\t.balign 4\n");
+			placeLabel(table);
+			for (long v = lo; v <= hi; v++) {
+				String label = targets.get((int)v);
+				emit(".long " + (label == null ? defaultLabel : label) + "-" + table);
+			}
+			code.append("\t.text\n");
+		}
+		else {
+			Integer[] values = targets.keySet().toArray(new Integer[0]);
+			genSearch(values, 0, values.length, targets, defaultLabel);
+		}
+	}
+
+	// compares %eax with values[from], ..., values[to-1], which are sorted
+	private void genSearch(Integer[] values, int from, int to,
+			TreeMap<Integer,String> targets, String defaultLabel) {
+		if (to - from <= 3) {
+			for (int i = from; i < to; i++) {
+				emit("cmpl $" + values[i] + ", %eax");
+				emit("je " + targets.get(values[i]));
+			}
+			emit("jmp " + defaultLabel);
+		}
+		else {
+			int mid = (from + to) >>> 1;
+			String lower = newLabel();
+			emit("cmpl $" + values[mid] + ", %eax");
+			emit("je " + targets.get(values[mid]));
+			emit("jl " + lower);
+			genSearch(values, mid+1, to, targets, defaultLabel);
+			placeLabel(lower);
+			genSearch(values, from, mid, targets, defaultLabel);
+		}
+	}
+
+	@Override
+	public Object visitBreak(Break n) {
+		emit("jmp " + breakLabels.get(n.breakLink));
+		return null;
+	}
+
+	/*************** conditions ****************/
+
+	// generates code that jumps to 'label' if 'e' is 'jumpIf', and
+	// otherwise falls through
+	private void genCond(Exp e, boolean jumpIf, String label) {
+		if (constEval.eval(e) == ConstEvaluator.BOOL_CONST) {
+			if ((e.constVal != 0) == jumpIf) {
+				emit("jmp " + label);
+			}
+		}
+		else if (e instanceof Not) {
+			genCond(((Not)e).exp, !jumpIf, label);
+		}
+		else if (e instanceof And || e instanceof Or) {
+			BinExp be = (BinExp)e;
+			// for &&, the left operand decides the result if it is false;
+			// for ||, if it is true
+			boolean decides = e instanceof Or;
+			if (jumpIf == decides) {
+				genCond(be.left, decides, label);
+				genCond(be.right, decides, label);
+			}
+			else {
+				String skip = newLabel();
+				genCond(be.left, decides, skip);
+				genCond(be.right, jumpIf, label);
+				placeLabel(skip);
+			}
+		}
+		else if (e instanceof LessThan || e instanceof GreaterThan || e instanceof Equals) {
+			BinExp be = (BinExp)e;
+			genCompare(be);
+			emit((jumpIf ? "j" : "jn") + condition(be) + " " + label);
+		}
+		else {
+			gen(e);
+			emit("testl %eax, %eax");
+			emit((jumpIf ? "jnz " : "jz ") + label);
+		}
+	}
+
+	private void genCompare(BinExp n) {
+		String right = genOperands(n);
+		emit("cmp" + suffix(n.left.type) + " " + right + ", " + reg("%rax", n.left.type));
+	}
+
+	// the condition code that a comparison's being true sets
+	private static String condition(BinExp n) {
+		return n instanceof LessThan ? "l" : n instanceof GreaterThan ? "g" : "e";
+	}
+
+	/*************** expressions ****************/
+
+	// generates an expression, leaving its value in %rax
+	private void gen(Exp e) {
+		int tag = constEval.eval(e);
+		if (tag == ConstEvaluator.INT_CONST || tag == ConstEvaluator.BOOL_CONST) {
+			emit(e.constVal == 0 ? "xorl %eax, %eax" : "movl $" + e.constVal + ", %eax");
+		}
+		else if (tag == ConstEvaluator.NULL_CONST) {
+			emit("xorl %eax, %eax");
+		}
+		else {
+			e.accept(this);
+		}
+	}
+
+	@Override
+	public Object visitStringLiteral(StringLiteral n) {
+		if (n.str.length() == 0) {
+			emit("leaq rt.emptyString(%rip), %rax");
+		}
+		else {
+			emit("leaq " + stringLabel(n) + "(%rip), %rax");
+		}
+		return null;
+	}
+
+	@Override
+	public Object visitThis(This n) {
+		emit("movq " + thisOffset + "(%rbp), %rax");
+		return null;
+	}
+
+	@Override
+	public Object visitSuper(Super n) {
+		emit("movq " + thisOffset + "(%rbp), %rax");
+		return null;
+	}
+
+	@Override
+	public Object visitIdentifierExp(IdentifierExp n) {
+		emit("mov" + suffix(n.type) + " " + operand(n, "%rax") + ", " + reg("%rax", n.type));
+		return null;
+	}
+
+	@Override
+	public Object visitInstVarAccess(InstVarAccess n) {
+		gen(n.exp);
+		if (!isNonNull(n.exp)) {
+			nullCheck("%rax", n.pos);
+		}
+		emit("mov" + suffix(n.varDec.type) + " " + n.varDec.offset + "(%rax), " +
+				reg("%rax", n.varDec.type));
+		return null;
+	}
+
+	@Override
+	public Object visitArrayLookup(ArrayLookup n) {
+		gen(n.arrExp);
+		String idx = operand(n.idxExp, "%rcx");
+		if (idx == null) {
+			push(n.arrExp.type);
+			gen(n.idxExp);
+			emit("movl %eax, %ecx");
+			pop(n.arrExp.type, "%rax");
+		}
+		else {
+			emit("movl " + idx + ", %ecx");
+		}
+		nullCheck("%rax", n.pos);
+		indexCheck("%rax", n.pos);
+		emit("mov" + suffix(n.type) + " " + BODY + "(%rax,%rcx," + elementSize(n.type) + "), " +
+				reg("%rax", n.type));
+		return null;
+	}
+
+	@Override
+	public Object visitArrayLength(ArrayLength n) {
+		gen(n.exp);
+		nullCheck("%rax", n.pos);
+		emit("movl " + LENGTH + "(%rax), %eax");
+		return null;
+	}
+
+	@Override
+	public Object visitPlus(Plus n) {
+		emit("addl " + genOperands(n) + ", %eax");
+		return null;
+	}
+
+	@Override
+	public Object visitMinus(Minus n) {
+		emit("subl " + genOperands(n) + ", %eax");
+		return null;
+	}
+
+	@Override
+	public Object visitTimes(Times n) {
+		emit("imull " + genOperands(n) + ", %eax");
+		return null;
+	}
+
+	@Override
+	public Object visitDivide(Divide n) {
+		genDivide(n, false);
+		return null;
+	}
+
+	@Override
+	public Object visitRemainder(Remainder n) {
+		genDivide(n, true);
+		return null;
+	}
+
+	// as in Java, dividing the least int by -1 gives the least int (where
+	// idiv would trap), and a remainder takes the sign of the dividend
+	private void genDivide(BinExp n, boolean remainder) {
+		String divisor = genOperands(n);
+		if (divisor.startsWith("$")) {
+			int k = Integer.parseInt(divisor.substring(1));
+			if (k == 0) {
+				emit("jmp " + stub("rt.divideByZero", n.pos, ""));
+				return;
+			}
+			else if (k == 1 || k == -1) {
+				if (remainder) {
+					emit("xorl %eax, %eax");
+				}
+				else if (k == -1) {
+					emit("negl %eax");
+				}
+				return;
+			}
+			else if (k > 0 && (k & (k-1)) == 0) {
+				// a power of two: shift, rounding toward zero
+				int shift = Integer.numberOfTrailingZeros(k);
+				emit("movl %eax, %edx");
+				emit("sarl $31, %edx");
+				emit("shrl $" + (32 - shift) + ", %edx");
+				if (remainder) {
+					emit("leal (%rax,%rdx), %ecx");
+					emit("andl $" + (-k) + ", %ecx");
+					emit("subl %ecx, %eax");
+				}
+				else {
+					emit("addl %edx, %eax");
+					emit("sarl $" + shift + ", %eax");
+				}
+				return;
+			}
+			emit("movl " + divisor + ", %ecx");
+			emit("cltd");
+			emit("idivl %ecx");
+		}
+		else {
+			if (!divisor.equals("%ecx")) {
+				emit("movl " + divisor + ", %ecx");
+			}
+			String minusOne = newLabel();
+			String done = newLabel();
+			emit("testl %ecx, %ecx");
+			emit("jz " + stub("rt.divideByZero", n.pos, ""));
+			emit("cmpl $-1, %ecx");
+			emit("je " + minusOne);
+			emit("cltd");
+			emit("idivl %ecx");
+			if (remainder) emit("movl %edx, %eax");
+			emit("jmp " + done);
+			placeLabel(minusOne);
+			emit(remainder ? "xorl %eax, %eax" : "negl %eax");
+			placeLabel(done);
+			return;
+		}
+		if (remainder) emit("movl %edx, %eax");
+	}
+
+	@Override
+	public Object visitLessThan(LessThan n) {
+		return genCompareValue(n);
+	}
+
+	@Override
+	public Object visitGreaterThan(GreaterThan n) {
+		return genCompareValue(n);
+	}
+
+	@Override
+	public Object visitEquals(Equals n) {
+		return genCompareValue(n);
+	}
+
+	private Object genCompareValue(BinExp n) {
+		genCompare(n);
+		emit("set" + condition(n) + " %al");
+		emit("movzbl %al, %eax");
+		return null;
+	}
+
+	@Override
+	public Object visitAnd(And n) {
+		return genCondValue(n);
+	}
+
+	@Override
+	public Object visitOr(Or n) {
+		return genCondValue(n);
+	}
+
+	// the value of a condition, from jumps
+	private Object genCondValue(Exp n) {
+		String falseLabel = newLabel();
+		String endLabel = newLabel();
+		genCond(n, false, falseLabel);
+		emit("movl $1, %eax");
+		emit("jmp " + endLabel);
+		placeLabel(falseLabel);
+		emit("xorl %eax, %eax");
+		placeLabel(endLabel);
+		return null;
+	}
+
+	@Override
+	public Object visitNot(Not n) {
+		gen(n.exp);
+		emit("xorl $1, %eax");
+		return null;
+	}
+
+	@Override
+	public Object visitNewObject(NewObject n) {
+		ClassDecl cd = n.objType.link;
+		if (predefined.containsKey(cd) && cd.name.equals("String")) {
+			emit("leaq rt.emptyString(%rip), %rax");
+		}
+		else {
+			emit("leaq " + CG1Visitor.vtableLabel(cd) + "(%rip), %rdi");
+			emit("call rt.newObject");
+		}
+		return null;
+	}
+
+	@Override
+	public Object visitNewArray(NewArray n) {
+		gen(n.sizeExp);
+		emit("testl %eax, %eax");
+		emit("js " + stub("rt.negativeSizeError", n.pos, "\tmovl %eax, %esi\n"));
+		emit("movl %eax, %esi");
+		emit("leaq " + arrayLabel((ArrayType)n.type) + "(%rip), %rdi");
+		emit("call rt.newArray");
+		return null;
+	}
+
+	@Override
+	public Object visitCast(Cast n) {
+		gen(n.exp);
+		Type t = n.type;
+		if (isUpcast(n.exp.type, t)) {
+			return null;
+		}
+		String ok = newLabel();
+		emit("testq %rax, %rax");
+		emit("jz " + ok);
+		String typeName;
+		if (t instanceof ArrayType) {
+			String label = arrayLabel((ArrayType)t);
+			typeName = "n" + label.substring(2);
+			emit("leaq " + label + "(%rip), %rcx");
+			emit("cmpq %rcx, (%rax)");
+			emit("jne " + stub("rt.castError", n.pos,
+					"\tmovq %rax, %rsi\n\tleaq " + typeName + "(%rip), %rdx\n"));
+		}
+		else {
+			ClassDecl cd = ((IdentifierType)t).link;
+			typeName = CG1Visitor.nameLabel(cd);
+			genSubclassTest(cd);
+			emit("ja " + stub("rt.castError", n.pos,
+					"\tmovq %rax, %rsi\n\tleaq " + typeName + "(%rip), %rdx\n"));
+		}
+		placeLabel(ok);
+		return null;
+	}
+
+	// whether every value of type 'from' (null aside) is of type 'to'
+	private static boolean isUpcast(Type from, Type to) {
+		if (from instanceof NullType) {
+			return true;
+		}
+		else if (to instanceof IdentifierType) {
+			ClassDecl toClass = ((IdentifierType)to).link;
+			if (toClass.superLink == null) {
+				return true; // Object
+			}
+			return from instanceof IdentifierType &&
+					HierarchyNumberer.isSubclass(((IdentifierType)from).link, toClass);
+		}
+		return to.equals(from);
+	}
+
+	// for a (non-null) object pointer in %rax, sets the flags so that 'ja'
+	// jumps unless the object is of the class
+	private void genSubclassTest(ClassDecl cd) {
+		emit("movq (%rax), %rcx");
+		emit("movl " + PRE + "(%rcx), %ecx");
+		if (cd.preOrderNum != 0) {
+			emit("subl $" + cd.preOrderNum + ", %ecx");
+		}
+		emit("cmpl $" + (cd.postOrderNum - cd.preOrderNum) + ", %ecx");
+	}
+
+	@Override
+	public Object visitInstanceOf(InstanceOf n) {
+		gen(n.exp);
+		Type t = n.checkType;
+		if (t instanceof IdentifierType && ((IdentifierType)t).link.superLink == null) {
+			// Object
+			emit("testq %rax, %rax");
+			emit("setnz %al");
+			emit("movzbl %al, %eax");
+			return null;
+		}
+		String done = newLabel();
+		emit("testq %rax, %rax");
+		emit("jz " + done);
+		if (t instanceof ArrayType) {
+			emit("leaq " + arrayLabel((ArrayType)t) + "(%rip), %rcx");
+			emit("cmpq %rcx, (%rax)");
+			emit("sete %al");
+		}
+		else {
+			genSubclassTest(((IdentifierType)t).link);
+			emit("setbe %al");
+		}
+		emit("movzbl %al, %eax");
+		placeLabel(done);
+		return null;
+	}
+
+	@Override
+	public Object visitCall(Call n) {
+		MethodDecl md = n.methodLink;
+		gen(n.obj);
+		emit("pushq %rax");
+		int argBytes = 0;
+		for (int i = 0; i < n.parms.size(); i++) {
+			Type t = md.formals.elementAt(i).type;
+			gen(n.parms.elementAt(i));
+			push(t);
+			argBytes += CG1Visitor.isData(t) ? CG1Visitor.DATA_SLOT_SIZE : CG1Visitor.WORD_SIZE;
+		}
+		if (argBytes > 0) {
+			emit("movq " + argBytes + "(%rsp), %rax");
+		}
+		if (!isNonNull(n.obj)) {
+			nullCheck("%rax", n.pos);
+		}
+		if (predefined.containsKey(md.classDecl)) {
+			emit("leaq " + positionLabel(n.pos) + "(%rip), %r11");
+		}
+		if (n.obj instanceof Super || !overridden.containsKey(md)) {
+			emit("call " + CG1Visitor.methodLabel(md));
+		}
+		else {
+			emit("movq (%rax), %rax");
+			emit("call *" + (md.vtableOffset == 0 ? "" : CG1Visitor.WORD_SIZE*md.vtableOffset) +
+					"(%rax)");
+		}
+		emit("addq $" + (argBytes + CG1Visitor.WORD_SIZE) + ", %rsp");
+		return null;
+	}
+}
@@ -10,141 +10,84 @@ import syntaxtree.*;
 //   - null, which means that the expression did NOT evaluate to a constant
 //   - An object of (wrapper-class) type Boolean or Integer, in which case
 //     the evaluated.
+// The evaluation itself is done (and memoized) by ConstEvaluator; this
+// class only wraps the result.  Code that evaluates many expressions
+// should use ConstEvaluator directly.
 public class ConstEvalVisitor extends ASTvisitor {
 	
+	private ConstEvaluator evaluator;
+	
 	public ConstEvalVisitor() {
+		evaluator = new ConstEvaluator();
 	}
 
-	public Object visitAnd(And n) {
-		try {
-			return new Boolean(getBool(n.left) && getBool(n.right));
-		}
-		catch (NullPointerException npx) {
-			return null;
+	private Object result(Exp n) {
+		switch (evaluator.eval(n)) {
+		case ConstEvaluator.INT_CONST: return Integer.valueOf(n.constVal);
+		case ConstEvaluator.BOOL_CONST: return Boolean.valueOf(n.constVal != 0);
+		case ConstEvaluator.NULL_CONST: return "NULL";
+		default: return null;
 		}
 	}
+
+	public Object visitAnd(And n) {
+		return result(n);
+	}
 	
 	public Object visitDivide(Divide n) {
-		try {
-			return new Integer(getInt(n.left) / getInt(n.right));
-		}
-		catch (NullPointerException npx) {
-			return null;
-		}
-		catch (ArithmeticException dbzx) {
-			return null;
-		}
+		return result(n);
 	}
 	
 	public Object visitEquals(Equals n) {
-		Object left = n.left.accept(this);
-		Object right = n.right.accept(this);
-		if (left == null || right == null) return null;
-		else return new Boolean(left.equals(right));
+		return result(n);
 	}
 	
 	public Object visitFalse(False n) {
-		return Boolean.FALSE;
+		return result(n);
 	}
 	
 	public Object visitGreaterThan(GreaterThan n) {
-		try {
-			return new Boolean(getInt(n.left) > getInt(n.right));
-		}
-		catch (NullPointerException npx) {
-			return null;
-		}
+		return result(n);
 	}
 	
 	public Object visitIntegerLiteral(IntegerLiteral n) {
-		try {
-			return new Integer(n.val);
-		}
-		catch (NullPointerException npx) {
-			return null;
-		}
+		return result(n);
 	}
 	
 	public Object visitLessThan(LessThan n) {
-		try {
-			return new Boolean(getInt(n.left) < getInt(n.right));
-		}
-		catch (NullPointerException npx) {
-			return null;
-		}
+		return result(n);
 	}
 	
 	public Object visitMinus(Minus n) {
-		try {
-			return new Integer(getInt(n.left) - getInt(n.right));
-		}
-		catch (NullPointerException npx) {
-			return null;
-		}
+		return result(n);
 	}
 	
 	public Object visitNot(Not n) {
-		try {
-			return new Boolean(!getBool(n.exp));
-		}
-		catch (NullPointerException npx) {
-			return null;
-		}
+		return result(n);
 	}
 	
 	public Object visitNull(Null n) {
-		return "NULL";
+		return result(n);
 	}
 
 	public Object visitOr(Or n) {
-		try {
-			return new Boolean(getBool(n.left) || getBool(n.right));
-		}
-		catch (NullPointerException npx) {
-			return null;
-		}
+		return result(n);
 	}
 	
 	public Object visitPlus(Plus n) {
-		try {
-			return new Integer(getInt(n.left) + getInt(n.right));
-		}
-		catch (NullPointerException npx) {
-			return null;
-		}
+		return result(n);
 	}
 	
 	public Object visitRemainder(Remainder n) {
-		try {
-			return new Integer(getInt(n.left) % getInt(n.right));
-		}
-		catch (NullPointerException npx) {
-			return null;
-		}
-		catch (ArithmeticException dbzx) {
-			return null;
-		}
+		return result(n);
 	}
 	
 	public Object visitTimes(Times n) {
-		try {
-			return new Integer(getInt(n.left) * getInt(n.right));
-		}
-		catch (NullPointerException npx) {
-			return null;
-		}
+		return result(n);
 	}
 	
 	public Object visitTrue(True n) {
-		return Boolean.TRUE;
-	}
-	
-	private boolean getBool(Exp e) throws NullPointerException {
-		return ((Boolean)e.accept(this)).booleanValue();
-	}
-	
-	private int getInt(Exp e) throws NullPointerException {
-		return ((Integer)e.accept(this)).intValue();
+		return result(n);
 	}
 }
 
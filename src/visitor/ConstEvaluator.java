@@ -0,0 +1,227 @@
+package visitor;
+
+import syntaxtree.*;
+
+// The purpose of this class is to evaluate constant expressions at
+// compile-time without allocating.  The result for an expression 'e' is
+// recorded in the expression itself:
+//   e.constTag - one of NOT_CONSTANT, INT_CONST, BOOL_CONST or NULL_CONST
+//                (UNEVALUATED until the expression has been evaluated)
+//   e.constVal - the value: the integer itself, or 1/0 for true/false
+// Results are memoized, so asking about the same expression again (or
+// about an expression containing it) costs nothing.  Use it as:
+//   if (ceval.eval(e) == ConstEvaluator.BOOL_CONST) ... e.constVal ...
+// The values agree with those of ConstEvalVisitor.
+public class ConstEvaluator extends InhVisitor {
+
+	public static final int UNEVALUATED = 0;
+	public static final int NOT_CONSTANT = 1;
+	public static final int INT_CONST = 2;
+	public static final int BOOL_CONST = 3;
+	public static final int NULL_CONST = 4;
+
+	public ConstEvaluator() {
+	}
+
+	// evaluates e (if that has not already been done); returns its tag
+	public int eval(Exp e) {
+		if (e.constTag == UNEVALUATED) {
+			e.accept(this);
+		}
+		return e.constTag;
+	}
+
+	public boolean isTrue(Exp e) {
+		return eval(e) == BOOL_CONST && e.constVal != 0;
+	}
+
+	public boolean isFalse(Exp e) {
+		return eval(e) == BOOL_CONST && e.constVal == 0;
+	}
+
+	private static void set(Exp e, int tag, int val) {
+		e.constTag = tag;
+		e.constVal = val;
+	}
+
+	private static void setBool(Exp e, boolean b) {
+		set(e, BOOL_CONST, b ? 1 : 0);
+	}
+
+	// anything not handled below is not a constant
+	@Override
+	public Object visitAstNode(AstNode n) {
+		if (n instanceof Exp) {
+			set((Exp)n, NOT_CONSTANT, 0);
+		}
+		return null;
+	}
+
+	@Override
+	public Object visitAstList(AstList n) {
+		return null;
+	}
+
+	@Override
+	public Object visitIntegerLiteral(IntegerLiteral n) {
+		set(n, INT_CONST, n.val);
+		return null;
+	}
+
+	@Override
+	public Object visitTrue(True n) {
+		setBool(n, true);
+		return null;
+	}
+
+	@Override
+	public Object visitFalse(False n) {
+		setBool(n, false);
+		return null;
+	}
+
+	@Override
+	public Object visitNull(Null n) {
+		set(n, NULL_CONST, 0);
+		return null;
+	}
+
+	@Override
+	public Object visitNot(Not n) {
+		if (eval(n.exp) == BOOL_CONST) {
+			setBool(n, n.exp.constVal == 0);
+		}
+		else {
+			set(n, NOT_CONSTANT, 0);
+		}
+		return null;
+	}
+
+	// as in ConstEvalVisitor, the right operand need not be constant when
+	// the left one decides the result
+	@Override
+	public Object visitAnd(And n) {
+		if (eval(n.left) != BOOL_CONST) {
+			set(n, NOT_CONSTANT, 0);
+		}
+		else if (n.left.constVal == 0) {
+			setBool(n, false);
+		}
+		else {
+			copyBool(n, n.right);
+		}
+		return null;
+	}
+
+	@Override
+	public Object visitOr(Or n) {
+		if (eval(n.left) != BOOL_CONST) {
+			set(n, NOT_CONSTANT, 0);
+		}
+		else if (n.left.constVal != 0) {
+			setBool(n, true);
+		}
+		else {
+			copyBool(n, n.right);
+		}
+		return null;
+	}
+
+	private void copyBool(Exp n, Exp operand) {
+		if (eval(operand) == BOOL_CONST) {
+			setBool(n, operand.constVal != 0);
+		}
+		else {
+			set(n, NOT_CONSTANT, 0);
+		}
+	}
+
+	@Override
+	public Object visitEquals(Equals n) {
+		int leftTag = eval(n.left);
+		int rightTag = eval(n.right);
+		if (leftTag == NOT_CONSTANT || rightTag == NOT_CONSTANT) {
+			set(n, NOT_CONSTANT, 0);
+		}
+		else {
+			setBool(n, leftTag == rightTag && n.left.constVal == n.right.constVal);
+		}
+		return null;
+	}
+
+	@Override
+	public Object visitLessThan(LessThan n) {
+		if (bothInts(n)) {
+			setBool(n, n.left.constVal < n.right.constVal);
+		}
+		return null;
+	}
+
+	@Override
+	public Object visitGreaterThan(GreaterThan n) {
+		if (bothInts(n)) {
+			setBool(n, n.left.constVal > n.right.constVal);
+		}
+		return null;
+	}
+
+	@Override
+	public Object visitPlus(Plus n) {
+		if (bothInts(n)) {
+			set(n, INT_CONST, n.left.constVal + n.right.constVal);
+		}
+		return null;
+	}
+
+	@Override
+	public Object visitMinus(Minus n) {
+		if (bothInts(n)) {
+			set(n, INT_CONST, n.left.constVal - n.right.constVal);
+		}
+		return null;
+	}
+
+	@Override
+	public Object visitTimes(Times n) {
+		if (bothInts(n)) {
+			set(n, INT_CONST, n.left.constVal * n.right.constVal);
+		}
+		return null;
+	}
+
+	@Override
+	public Object visitDivide(Divide n) {
+		if (bothInts(n)) {
+			if (n.right.constVal == 0) {
+				set(n, NOT_CONSTANT, 0);
+			}
+			else {
+				set(n, INT_CONST, n.left.constVal / n.right.constVal);
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public Object visitRemainder(Remainder n) {
+		if (bothInts(n)) {
+			if (n.right.constVal == 0) {
+				set(n, NOT_CONSTANT, 0);
+			}
+			else {
+				set(n, INT_CONST, n.left.constVal % n.right.constVal);
+			}
+		}
+		return null;
+	}
+
+	// whether both operands are integer constants; if not, marks n as not
+	// being a constant
+	private boolean bothInts(BinExp n) {
+		if (eval(n.left) == INT_CONST && eval(n.right) == INT_CONST) {
+			return true;
+		}
+		set(n, NOT_CONSTANT, 0);
+		return false;
+	}
+}
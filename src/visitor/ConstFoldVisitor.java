@@ -0,0 +1,297 @@
+package visitor;
+
+import syntaxtree.*;
+
+// The purpose of this class is to simplify a program that has passed
+// every semantic phase, rewriting its AST in place, so that the backends
+// (and any later walk) have less tree to process:
+// - each constant expression that is not already a literal (see
+//   ConstEvaluator) is replaced by an IntegerLiteral, True or False node
+//   with the same value, position and type; 'true && e' and 'false || e'
+//   become 'e'
+// - an if-statement whose test is constant is replaced by the branch that
+//   is taken (an empty block if there is none)
+// - a while-statement whose test is false is removed
+// - a switch-statement whose selector and case labels are constant is cut
+//   down to the statements from the label that is taken up to the first
+//   break; it becomes a block if nothing else breaks out of it, and is
+//   removed if no label is taken
+// Statements that are removed from a list, and empty blocks, are dropped
+// from it; elsewhere (the branch of an if or the body of a while) they are
+// replaced by an empty block.  Null literals, and expressions that are not
+// constant, are left alone (although their operands are simplified).
+public class ConstFoldVisitor extends ASTvisitor {
+
+	private ConstEvaluator constEval;
+
+	public ConstFoldVisitor() {
+		constEval = new ConstEvaluator();
+	}
+
+	/*************** expressions ****************/
+
+	// the expression that replaces e; a non-constant expression's operands
+	// are simplified in place
+	private Exp fold(Exp e) {
+		int tag = constEval.eval(e);
+		Exp rtnVal;
+		if (tag == ConstEvaluator.INT_CONST) {
+			if (e instanceof IntegerLiteral) return e;
+			rtnVal = new IntegerLiteral(e.pos, e.constVal);
+		}
+		else if (tag == ConstEvaluator.BOOL_CONST) {
+			if (e instanceof True || e instanceof False) return e;
+			rtnVal = e.constVal != 0 ? new True(e.pos) : new False(e.pos);
+		}
+		else if (e instanceof And && constEval.isTrue(((And)e).left)) {
+			return fold(((And)e).right);
+		}
+		else if (e instanceof Or && constEval.isFalse(((Or)e).left)) {
+			return fold(((Or)e).right);
+		}
+		else {
+			e.accept(this);
+			return e;
+		}
+		rtnVal.type = e.type;
+		constEval.eval(rtnVal);
+		return rtnVal;
+	}
+
+	private void foldAll(ExpList exps) {
+		for (int i = 0; i < exps.size(); i++) {
+			exps.setElementAt(fold(exps.elementAt(i)), i);
+		}
+	}
+
+	@Override
+	public Object visitArrayLookup(ArrayLookup n) {
+		n.arrExp = fold(n.arrExp);
+		n.idxExp = fold(n.idxExp);
+		return null;
+	}
+
+	@Override
+	public Object visitBinExp(BinExp n) {
+		n.left = fold(n.left);
+		n.right = fold(n.right);
+		return null;
+	}
+
+	@Override
+	public Object visitCall(Call n) {
+		n.obj = fold(n.obj);
+		foldAll(n.parms);
+		return null;
+	}
+
+	@Override
+	public Object visitCast(Cast n) {
+		n.exp = fold(n.exp);
+		return null;
+	}
+
+	@Override
+	public Object visitInstanceOf(InstanceOf n) {
+		n.exp = fold(n.exp);
+		return null;
+	}
+
+	@Override
+	public Object visitInstVarAccess(InstVarAccess n) {
+		n.exp = fold(n.exp);
+		return null;
+	}
+
+	@Override
+	public Object visitNewArray(NewArray n) {
+		n.sizeExp = fold(n.sizeExp);
+		return null;
+	}
+
+	@Override
+	public Object visitUnExp(UnExp n) {
+		n.exp = fold(n.exp);
+		return null;
+	}
+
+	@Override
+	public Object visitLocalVarDecl(LocalVarDecl n) {
+		n.initExp = fold(n.initExp);
+		return null;
+	}
+
+	@Override
+	public Object visitMethodDeclNonVoid(MethodDeclNonVoid n) {
+		foldAll(n.stmts);
+		n.rtnExp = fold(n.rtnExp);
+		return null;
+	}
+
+	@Override
+	public Object visitMethodDecl(MethodDecl n) {
+		foldAll(n.stmts);
+		return null;
+	}
+
+	/*************** statements ****************/
+
+	// Each statement's visit method returns the statement that replaces
+	// it, or null if it is to be removed.
+
+	@Override
+	public Object visitStatement(Statement n) {
+		super.visitStatement(n);
+		return n;
+	}
+
+	// the statement that replaces s where a statement is required
+	private Statement fold(Statement s) {
+		Statement rtnVal = (Statement)s.accept(this);
+		return rtnVal != null ? rtnVal : new Block(s.pos, new StatementList());
+	}
+
+	// simplifies each statement in a list, dropping the ones removed
+	private void foldAll(StatementList stmts) {
+		int count = 0;
+		for (int i = 0; i < stmts.size(); i++) {
+			Statement s = (Statement)stmts.elementAt(i).accept(this);
+			if (s != null && !(s instanceof Block && ((Block)s).stmts.isEmpty())) {
+				stmts.setElementAt(s, count++);
+			}
+		}
+		while (stmts.size() > count) {
+			stmts.removeElementAt(stmts.size()-1);
+		}
+	}
+
+	@Override
+	public Object visitAssign(Assign n) {
+		n.lhs = fold(n.lhs);
+		n.rhs = fold(n.rhs);
+		return n;
+	}
+
+	@Override
+	public Object visitBlock(Block n) {
+		foldAll(n.stmts);
+		return n;
+	}
+
+	@Override
+	public Object visitCallStatement(CallStatement n) {
+		n.callExp.accept(this);
+		return n;
+	}
+
+	@Override
+	public Object visitLocalDeclStatement(LocalDeclStatement n) {
+		n.localVarDecl.accept(this);
+		return n;
+	}
+
+	@Override
+	public Object visitCase(Case n) {
+		n.exp = fold(n.exp);
+		return n;
+	}
+
+	@Override
+	public Object visitIf(If n) {
+		n.exp = fold(n.exp);
+		if (constEval.isTrue(n.exp)) {
+			return n.trueStmt.accept(this);
+		}
+		else if (constEval.isFalse(n.exp)) {
+			return n.falseStmt == null ? null : n.falseStmt.accept(this);
+		}
+		n.trueStmt = fold(n.trueStmt);
+		if (n.falseStmt != null) {
+			n.falseStmt = fold(n.falseStmt);
+		}
+		return n;
+	}
+
+	@Override
+	public Object visitWhile(While n) {
+		n.exp = fold(n.exp);
+		if (constEval.isFalse(n.exp)) {
+			return null;
+		}
+		n.body = fold(n.body);
+		return n;
+	}
+
+	@Override
+	public Object visitSwitch(Switch n) {
+		n.exp = fold(n.exp);
+		foldAll(n.stmts);
+		if (constEval.eval(n.exp) != ConstEvaluator.INT_CONST) {
+			return n;
+		}
+		// the label that is taken: the first case with the selector's
+		// value, or else the first default
+		int taken = -1;
+		for (int i = 0; i < n.stmts.size(); i++) {
+			Statement s = n.stmts.elementAt(i);
+			if (s instanceof Case) {
+				Exp label = ((Case)s).exp;
+				if (constEval.eval(label) != ConstEvaluator.INT_CONST) {
+					return n; // its evaluation may have side effects
+				}
+				if (label.constVal == n.exp.constVal &&
+						(taken < 0 || n.stmts.elementAt(taken) instanceof Default)) {
+					taken = i;
+				}
+			}
+			else if (s instanceof Default && taken < 0) {
+				taken = i;
+			}
+		}
+		if (taken < 0) {
+			return null;
+		}
+		// the statements that run, without the other labels, which have no
+		// effect once one has been taken
+		StatementList stmts = new StatementList();
+		boolean breaksOut = false;
+		for (int i = taken+1; i < n.stmts.size(); i++) {
+			Statement s = n.stmts.elementAt(i);
+			if (s instanceof Break && ((Break)s).breakLink == n) {
+				break;
+			}
+			else if (!(s instanceof Label)) {
+				stmts.addElement(s);
+				breaksOut |= BreakFinder.breaksOutOf(s, n);
+			}
+		}
+		if (!breaksOut) {
+			return new Block(n.pos, stmts);
+		}
+		stmts.insertElementAt(n.stmts.elementAt(taken), 0);
+		stmts.trimToSize();
+		n.stmts = stmts;
+		return n;
+	}
+
+	// finds whether a statement contains a break out of a given switch or
+	// while
+	private static class BreakFinder extends ASTvisitor {
+
+		private BreakTarget target;
+		private boolean found;
+
+		static boolean breaksOutOf(Statement s, BreakTarget target) {
+			BreakFinder finder = new BreakFinder();
+			finder.target = target;
+			s.accept(finder);
+			return finder.found;
+		}
+
+		@Override
+		public Object visitBreak(Break n) {
+			found |= n.breakLink == target;
+			return null;
+		}
+	}
+}
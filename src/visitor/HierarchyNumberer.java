@@ -0,0 +1,109 @@
+package visitor;
+
+import java.util.*;
+
+import syntaxtree.*;
+
+// The purpose of this class is to number the class hierarchy so that
+// subclass tests take constant time.  Run after Sem3Visitor, it walks
+// the 'subclasses' tree from Object and gives each ClassDecl a pre-order
+// and a post-order number from a single counter; class A is then a
+// (direct or indirect) subclass of B exactly when A's numbers lie within
+// B's.  Classes that are not reached from Object (e.g., because of an
+// inheritance cycle, which Sem2Visitor has already reported) keep their
+// numbers unset, and subclass tests on them fall back to walking the
+// superclass links.
+//
+// As each class is numbered, its inheritance-flattened lookup tables are
+// built (superclasses first, since the walk is pre-order), which also
+// assigns every method its v-table offset.
+public class HierarchyNumberer {
+
+	private int numClasses;
+	private int maxDepth;
+	private long totalDepth;
+
+	public HierarchyNumberer() {
+		numClasses = 0;
+		maxDepth = 0;
+		totalDepth = 0;
+	}
+
+	public void number(Hashtable<String,ClassDecl> globalSymTab) {
+		ClassDecl root = globalSymTab.get("Object");
+		if (root == null) return;
+		int counter = 0;
+		// explicit stack, so that deep hierarchies cannot overflow the
+		// Java stack; childIdx holds the next subclass to visit
+		Vector<ClassDecl> stack = new Vector<ClassDecl>();
+		Vector<Integer> childIdx = new Vector<Integer>();
+		root.preOrderNum = counter++;
+		root.hierarchyDepth = 0;
+		root.buildLookupTables();
+		recordDepth(0);
+		stack.addElement(root);
+		childIdx.addElement(0);
+		while (!stack.isEmpty()) {
+			int top = stack.size()-1;
+			ClassDecl cd = stack.elementAt(top);
+			int idx = childIdx.elementAt(top);
+			if (idx < cd.subclasses.size()) {
+				childIdx.setElementAt(idx+1, top);
+				ClassDecl sub = cd.subclasses.elementAt(idx);
+				if (sub.preOrderNum >= 0) continue; // already numbered
+				sub.preOrderNum = counter++;
+				sub.hierarchyDepth = cd.hierarchyDepth + 1;
+				sub.buildLookupTables();
+				recordDepth(sub.hierarchyDepth);
+				stack.addElement(sub);
+				childIdx.addElement(0);
+			}
+			else {
+				cd.postOrderNum = counter++;
+				stack.removeElementAt(top);
+				childIdx.removeElementAt(top);
+			}
+		}
+	}
+
+	private void recordDepth(int depth) {
+		numClasses++;
+		totalDepth += depth;
+		maxDepth = Math.max(maxDepth, depth);
+	}
+
+	// whether sub is the same class as sup, or a (direct or indirect)
+	// subclass of it
+	public static boolean isSubclass(ClassDecl sub, ClassDecl sup) {
+		if (sub == null || sup == null) {
+			return false;
+		}
+		else if (sub.preOrderNum >= 0 && sup.preOrderNum >= 0) {
+			return sup.preOrderNum <= sub.preOrderNum &&
+					sub.postOrderNum <= sup.postOrderNum;
+		}
+		else {
+			for (ClassDecl cd = sub; cd != null; cd = cd.superLink) {
+				if (cd == sup) return true;
+			}
+			return false;
+		}
+	}
+
+	public int numClasses() {
+		return numClasses;
+	}
+
+	public int maxDepth() {
+		return maxDepth;
+	}
+
+	public double meanDepth() {
+		return numClasses == 0 ? 0.0 : (double)totalDepth/numClasses;
+	}
+
+	public String depthStatistics() {
+		return "class hierarchy: " + numClasses + " classes, max depth " +
+				maxDepth + ", mean depth " + String.format("%.2f", meanDepth());
+	}
+}
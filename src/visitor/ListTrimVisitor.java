@@ -0,0 +1,16 @@
+package visitor;
+
+import syntaxtree.*;
+
+// The purpose of this class is to shrink the storage of every list in
+// the AST to its exact size once parsing is complete, so that lists
+// that grew during parsing do not carry spare capacity through the
+// later phases.
+public class ListTrimVisitor extends ASTvisitor {
+
+	@Override
+	public Object visitAstList(AstList lst) {
+		lst.trimToSize();
+		return super.visitAstList(lst);
+	}
+}
@@ -0,0 +1,72 @@
+package visitor;
+
+import java.util.*;
+
+import syntaxtree.*;
+
+// The purpose of this class is to make all occurrences of a name in the
+// AST share a single String object, once parsing is complete.  The parser
+// creates a new String for every identifier it reads, so a program that
+// uses a name a thousand times holds a thousand copies of it.  After this
+// pass there is one copy per distinct name, whose hash code is computed
+// once, and a lookup in any of the name-keyed symbol tables (the global
+// class table, and each class's instance-variable and method tables)
+// finds its key by identity, as String.equals checks identity first.
+public class NameInternVisitor extends ASTvisitor {
+
+	private HashMap<String,String> names;
+
+	public NameInternVisitor() {
+		names = new HashMap<String,String>();
+	}
+
+	// the shared copy of a name
+	public String intern(String name) {
+		if (name == null) {
+			return null;
+		}
+		String rtnVal = names.putIfAbsent(name, name);
+		return rtnVal == null ? name : rtnVal;
+	}
+
+	// the number of distinct names seen so far
+	public int numNames() {
+		return names.size();
+	}
+
+	@Override
+	public Object visitDecl(Decl n) {
+		n.name = intern(n.name);
+		return super.visitDecl(n);
+	}
+
+	@Override
+	public Object visitClassDecl(ClassDecl n) {
+		n.superName = intern(n.superName);
+		return super.visitClassDecl(n);
+	}
+
+	@Override
+	public Object visitIdentifierExp(IdentifierExp n) {
+		n.name = intern(n.name);
+		return super.visitIdentifierExp(n);
+	}
+
+	@Override
+	public Object visitIdentifierType(IdentifierType n) {
+		n.name = intern(n.name);
+		return super.visitIdentifierType(n);
+	}
+
+	@Override
+	public Object visitCall(Call n) {
+		n.methName = intern(n.methName);
+		return super.visitCall(n);
+	}
+
+	@Override
+	public Object visitInstVarAccess(InstVarAccess n) {
+		n.varName = intern(n.varName);
+		return super.visitInstVarAccess(n);
+	}
+}
@@ -0,0 +1,24 @@
+package visitor;
+
+import syntaxtree.*;
+
+// The purpose of this class is to move every node of a tree by a fixed
+// number of characters, for a tree that was parsed from a piece of a
+// file as if that piece stood alone.  Nodes without a position (pos < 0)
+// are left alone.
+public class PositionShiftVisitor extends ASTvisitor {
+
+	private int offset;
+
+	public PositionShiftVisitor(int anOffset) {
+		offset = anOffset;
+	}
+
+	@Override
+	public Object visitAstNode(AstNode n) {
+		if (n.pos >= 0) {
+			n.pos += offset;
+		}
+		return super.visitAstNode(n);
+	}
+}
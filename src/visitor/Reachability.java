@@ -0,0 +1,132 @@
+package visitor;
+
+import java.util.*;
+
+import syntaxtree.*;
+import errorMsg.*;
+
+// The purpose of this class is to detect unreachable code, according to
+// Java's rules.  It does no traversal of its own: a visitor calls the
+// 'after...' methods in post-order, once a statement's children have
+// been visited, and each statement's ability to complete normally is
+// computed from those of its children.  As javac does, a statement that
+// has been reported as unreachable is then treated as reachable, so that
+// one mistake is reported only once.
+class Reachability {
+
+	private static final String UNREACHABLE_MSG = "Unreachable statement";
+
+	private ErrorMsg errorMsg;
+	private ConstEvaluator constEval;
+	private HashSet<Statement> cannotComplete; // statements that cannot complete normally
+	private HashSet<BreakTarget> brokenOutOf; // whiles/switches that a break exits
+	private boolean deferErrors;
+	private Vector<Integer> pendingPos;
+	private Vector<String> pendingMsg;
+
+	// if deferErrors is set, errors are held until flushErrors is called
+	Reachability(ErrorMsg e, boolean adeferErrors) {
+		errorMsg = e;
+		constEval = new ConstEvaluator();
+		cannotComplete = new HashSet<Statement>();
+		brokenOutOf = new HashSet<BreakTarget>();
+		deferErrors = adeferErrors;
+		pendingPos = new Vector<Integer>();
+		pendingMsg = new Vector<String>();
+	}
+
+	boolean canComplete(Statement s) {
+		return !cannotComplete.contains(s);
+	}
+
+	void afterBreak(Break n) {
+		cannotComplete.add(n);
+		if (n.breakLink != null) {
+			brokenOutOf.add(n.breakLink);
+		}
+	}
+
+	void afterBlock(Block n) {
+		if (!checkSequence(n.stmts, false)) {
+			cannotComplete.add(n);
+		}
+	}
+
+	void afterIf(If n) {
+		if (!canComplete(n.trueStmt) && !canComplete(n.falseStmt)) {
+			cannotComplete.add(n);
+		}
+	}
+
+	void afterWhile(While n) {
+		if (constEval.isFalse(n.exp)) {
+			// the body can never be executed
+			report(n.body.pos, UNREACHABLE_MSG);
+		}
+		else if (constEval.isTrue(n.exp) && !brokenOutOf.contains(n)) {
+			// only a break can get us out of the loop
+			cannotComplete.add(n);
+		}
+	}
+
+	void afterSwitch(Switch n) {
+		boolean lastCompletes = checkSequence(n.stmts, true);
+		boolean hasDefault = false;
+		for (int i = 0; i < n.stmts.size(); i++) {
+			if (n.stmts.elementAt(i) instanceof Default) {
+				hasDefault = true;
+			}
+		}
+		if (!lastCompletes && hasDefault && !brokenOutOf.contains(n)) {
+			cannotComplete.add(n);
+		}
+	}
+
+	void afterMethodDecl(MethodDecl n) {
+		boolean bodyCompletes = checkSequence(n.stmts, false);
+		if (!bodyCompletes && n instanceof MethodDeclNonVoid) {
+			Exp rtnExp = ((MethodDeclNonVoid)n).rtnExp;
+			if (rtnExp != null) {
+				report(rtnExp.pos, "Unreachable return");
+			}
+		}
+	}
+
+	// reports each statement in the sequence that follows one that cannot
+	// complete normally (within a switch, a label makes what follows it
+	// reachable again); returns whether the sequence can complete normally
+	private boolean checkSequence(StatementList stmts, boolean inSwitch) {
+		boolean reachable = true;
+		for (int i = 0; i < stmts.size(); i++) {
+			Statement s = stmts.elementAt(i);
+			if (!reachable && !(inSwitch && s instanceof Label)) {
+				report(s.pos, UNREACHABLE_MSG);
+			}
+			reachable = canComplete(s);
+		}
+		return reachable;
+	}
+
+	private void report(int pos, String msg) {
+		if (deferErrors) {
+			pendingPos.addElement(pos);
+			pendingMsg.addElement(msg);
+		}
+		else {
+			errorMsg.error(pos, msg);
+		}
+	}
+
+	// reports the errors held back so far, in the order they were found
+	void flushErrors() {
+		for (int i = 0; i < pendingPos.size(); i++) {
+			errorMsg.error(pendingPos.elementAt(i), pendingMsg.elementAt(i));
+		}
+		discardErrors();
+	}
+
+	void discardErrors() {
+		pendingPos.clear();
+		pendingMsg.clear();
+	}
+}
@@ -0,0 +1,83 @@
+package visitor;
+
+import java.util.*;
+
+import syntaxtree.*;
+import errorMsg.*;
+
+// The purpose of this class is to do the work of Sem4Visitor (type
+// checking) and Sem5Visitor (unreachable-code detection) in a single
+// post-order traversal of the AST.  The reachability errors are held
+// back until the traversal is done and reported only if type checking
+// found no errors, so the diagnostics are the same as running the two
+// phases one after the other.
+public class Sem45Visitor extends Sem4Visitor {
+
+	Reachability reach;
+
+	public Sem45Visitor(Hashtable<String,ClassDecl> globalSymTb, ErrorMsg e) {
+		super(globalSymTb, e);
+		reach = new Reachability(e, true);
+	}
+
+	@Override
+	public Object visitProgram(Program n) {
+		super.visitProgram(n);
+		if (errorMsg.anyErrors) {
+			reach.discardErrors();
+		}
+		else {
+			reach.flushErrors();
+		}
+		return null;
+	}
+
+	@Override
+	public Object visitBreak(Break n) {
+		super.visitBreak(n);
+		reach.afterBreak(n);
+		return null;
+	}
+
+	@Override
+	public Object visitBlock(Block n) {
+		super.visitBlock(n);
+		reach.afterBlock(n);
+		return null;
+	}
+
+	@Override
+	public Object visitIf(If n) {
+		super.visitIf(n);
+		reach.afterIf(n);
+		return null;
+	}
+
+	@Override
+	public Object visitWhile(While n) {
+		super.visitWhile(n);
+		reach.afterWhile(n);
+		return null;
+	}
+
+	@Override
+	public Object visitSwitch(Switch n) {
+		super.visitSwitch(n);
+		reach.afterSwitch(n);
+		return null;
+	}
+
+	@Override
+	public Object visitMethodDeclVoid(MethodDeclVoid n) {
+		super.visitMethodDeclVoid(n);
+		reach.afterMethodDecl(n);
+		return null;
+	}
+
+	@Override
+	public Object visitMethodDeclNonVoid(MethodDeclNonVoid n) {
+		super.visitMethodDeclNonVoid(n);
+		reach.afterMethodDecl(n);
+		return null;
+	}
+}
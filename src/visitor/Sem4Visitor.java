@@ -47,6 +47,7 @@ public class Sem4Visitor extends ASTvisitor {
 	NullType theNullType;
 	VoidType theVoidType;
 	IdentifierType theStringType;
+	TypeTable types;
 
 	Hashtable<String,ClassDecl> globalSymTab;
 
@@ -61,13 +62,13 @@ public class Sem4Visitor extends ASTvisitor {
 		currentClass = null;
 
 		objectClassDecl = globalSymTab.get("Object");
-		theBoolType = new BooleanType(-1);
-		theIntType = new IntegerType(-1);
-		theNullType = new NullType(-1);
-		theVoidType = new VoidType(-1);
+		types = new TypeTable();
+		theBoolType = types.boolType();
+		theIntType = types.intType();
+		theNullType = types.nullType();
+		theVoidType = types.voidType();
 		if (globalSymTab != null) {
-			theStringType = new IdentifierType(-1, "String");
-			theStringType.link = globalSymTab.get("String");
+			theStringType = types.classType(globalSymTab.get("String"));
 		}
 	}
 	
@@ -75,15 +76,15 @@ public class Sem4Visitor extends ASTvisitor {
 	/*
 	Checks whether two type objects represent exactly the same type 
 	(i.e., tests for strict equivalence). If either Type is null, return false. 
-	Otherwise check them for equality (using .equals, which Type objects understand). 
-	If they are equal, return true, otherwise print an "incompatible types" 
-	error message (unless pos is negative) and return false.
+	Otherwise check them for equality (by comparing their canonical versions,
+	from the type table). If they are equal, return true, otherwise print an
+	"incompatible types" error message (unless pos is negative) and return false.
 	*/
 	public boolean matchTypesExact(Type have, Type need, int pos) {
 		if(have == null || need == null) {
 			return false;
 		}
-		else if (have.equals(need)){
+		else if (types.intern(have) == types.intern(need)){
 			return true;
 		}
 		else {
@@ -99,7 +100,7 @@ public class Sem4Visitor extends ASTvisitor {
 	 * Checks whether src is assignment-compatible with target. If either Type is
 	 * null, return false. Otherwise, if either is a VoidType object, print an
 	 * "incompatible types" error message and return false. Otherwise, if the types
-	 * are equal (using .equals) return true. If src is a NullType object, also
+	 * are equal (as canonical types) return true. If src is a NullType object, also
 	 * return true if target is an IdentifierType or an ArrayType. If src is an
 	 * ArrayType and the target is an IdentifierType with the name Object, return
 	 * true. If src is an IdentifierType object, return true if target is a (direct
@@ -117,8 +118,8 @@ public class Sem4Visitor extends ASTvisitor {
 			}
 			return false;
 		}
-		else if (src.equals(target)) {
-			//if the types are equal (using .equals) return true
+		else if (types.intern(src) == types.intern(target)) {
+			//if the types are equal return true
 			return true;
 		}
 		else if (src instanceof NullType && (target instanceof IdentifierType || target instanceof ArrayType)) {
@@ -145,15 +146,8 @@ public class Sem4Visitor extends ASTvisitor {
 	
 	public boolean findSuperClassMatch(ClassDecl srcDecl, ClassDecl targetDecl) {
 		//If src is an IdentifierType object, return true if target is a (direct or indirect) superclass.
-		if(srcDecl == null) {
-			return false; //we did not find a match going all the way up the super links
-		}
-		else if(srcDecl == targetDecl) {
-			return true;
-		}
-		else {
-			return findSuperClassMatch(srcDecl.superLink, targetDecl);
-		}
+		//Uses the hierarchy numbering when it has been done, otherwise walks the super links
+		return HierarchyNumberer.isSubclass(srcDecl, targetDecl);
 	}
 	
 	/*
@@ -184,10 +178,10 @@ public class Sem4Visitor extends ASTvisitor {
 	
 	/*
 	 * this method returns the InstVarDecl object for the class denoted by classDecl, or
-	 * null if such does not exist. Start by looking up name in the clas's
-	 * instance-variable symbol table. If it's there, return it. If not, look in the
-	 * instance variable symbol table of the superclass, then the super-super-class,
-	 * etc. If it's in none of those, report an error using pos as the file position
+	 * null if such does not exist. The name is looked up in the class's flattened
+	 * instance-variable table (ClassDecl.lookupInstVar), which holds the variables
+	 * declared in the class and in all of its superclasses, so a single lookup
+	 * suffices. If it's not there, report an error using pos as the file position
 	 * and msg as the error message.
 	 */	
 	public InstVarDecl instVarLookup(String name, ClassDecl classDecl, int pos, String msg) {
@@ -198,13 +192,11 @@ public class Sem4Visitor extends ASTvisitor {
 			return null;
 		}
 		else {
-			InstVarDecl decl = classDecl.instVarTable.get(name);
-			if (decl != null) {
-				return decl;
-			}
-			else {
-				return instVarLookup(name, classDecl.superLink, pos, msg);
+			InstVarDecl decl = classDecl.lookupInstVar(name);
+			if (decl == null && pos >= 0) {
+				errorMsg.error(pos, msg);
 			}
+			return decl;
 		}
 		
 	}
@@ -228,10 +220,17 @@ public class Sem4Visitor extends ASTvisitor {
 			return null;
 		}
 		else {
-			return instVarLookup(name, globalSymTab.get(((IdentifierType) t).name), pos, msg); 
+			return instVarLookup(name, classOf((IdentifierType)t), pos, msg);
 		}
 	}
 	
+	/*
+	 * this method returns the MethodDecl object for the class denoted by classDecl, or
+	 * null if such does not exist. The name is looked up in the class's flattened
+	 * method table (ClassDecl.lookupMethod), which holds the methods declared in the
+	 * class and the ones it inherits. If it's not there, report an error using pos
+	 * as the file position and msg as the error message.
+	 */	
 	public MethodDecl methodLookup(String name, ClassDecl classDecl, int pos, String msg) {
 		if (classDecl == null) {
 			if (pos >= 0) {
@@ -240,16 +239,19 @@ public class Sem4Visitor extends ASTvisitor {
 			return null;
 		}
 		else {
-			MethodDecl decl = classDecl.methodTable.get(name);
-			if (decl != null) {
-				return decl;
-			}
-			else {
-				return methodLookup(name, classDecl.superLink, pos, msg);
+			MethodDecl decl = classDecl.lookupMethod(name);
+			if (decl == null && pos >= 0) {
+				errorMsg.error(pos, msg);
 			}
+			return decl;
 		}
 	}
 	
+	/*
+	 * this method returns the MethodDecl object for the name in the class denoted
+	 * by t, or null if such does not exist, in the same way as the instVarLookup
+	 * that takes a type.
+	 */	
 	public MethodDecl methodLookup(String name, Type t, int pos, String msg) {
 		if (t == null) {
 			return null;
@@ -261,11 +263,20 @@ public class Sem4Visitor extends ASTvisitor {
 			return null;
 		}
 		else {
-			return methodLookup(name, globalSymTab.get(((IdentifierType)t).name), pos, msg); 
+			return methodLookup(name, classOf((IdentifierType)t), pos, msg);
 		}
 	}
 	
 	
+	// the class a type refers to, by its link if it has been resolved,
+	// otherwise by name
+	private ClassDecl classOf(IdentifierType t) {
+		if (t.link != null) {
+			return t.link;
+		}
+		return globalSymTab.get(t.name);
+	}
+	
 	@Override
 	public Object visitIntegerLiteral(IntegerLiteral n) {
 		super.visitIntegerLiteral(n);
@@ -283,7 +294,7 @@ public class Sem4Visitor extends ASTvisitor {
 	@Override
 	public Object visitIdentifierExp(IdentifierExp n) {
 		super.visitIdentifierExp(n);
-		n.type = n.link.type;
+		n.type = types.intern(n.link.type);
 		return null;
 	}
 	
@@ -467,7 +478,7 @@ public class Sem4Visitor extends ASTvisitor {
 			}
 		}
 		else if (isMatch){
-		n.type = n.arrExp.type;
+		n.type = types.intern(((ArrayType)n.arrExp.type).baseType);
 		}
 		return null;
 	}
@@ -490,7 +501,7 @@ public class Sem4Visitor extends ASTvisitor {
 		else {
 			n.varDec = instVarLookup(n.varName, n.exp.type, n.pos, "Error: Instance Variable " + n.varName + " is not defined for " + n.exp.type);
 			if (n.varDec != null) {
-				n.type = n.varDec.type;
+				n.type = types.intern(n.varDec.type);
 			}
 			return null;
 		}
@@ -500,7 +511,8 @@ public class Sem4Visitor extends ASTvisitor {
 	@Override
 	public Object visitCast(Cast n) {
 		super.visitCast(n);
-		if (n.castType.equals(theIntType) || n.castType.equals(theBoolType)) {
+		Type castType = types.intern(n.castType);
+		if (castType == theIntType || castType == theBoolType) {
 			if (n.pos >= 0) {
 				errorMsg.error(n.pos, "Error: Cannot cast to " + n.castType.toString() + " type");
 			}
@@ -516,14 +528,15 @@ public class Sem4Visitor extends ASTvisitor {
 			}
 		}
 		
-		n.type = n.castType;
+		n.type = castType;
 		return null;
 	}
 
 	@Override
 	public Object visitInstanceOf(InstanceOf n) {
 		super.visitInstanceOf(n);
-		if (n.checkType.equals(theBoolType) || n.checkType.equals(theIntType)) {
+		Type checkType = types.intern(n.checkType);
+		if (checkType == theBoolType || checkType == theIntType) {
 			if (n.pos >= 0) {
 				errorMsg.error(n.pos, "Cannot check type " + n.checkType.toString());
 			}
@@ -545,7 +558,7 @@ public class Sem4Visitor extends ASTvisitor {
 	@Override
 	public Object visitNewObject(NewObject n) {
 		super.visitNewObject(n);
-		n.type = n.objType;
+		n.type = types.intern(n.objType);
 		return null;
 	}
 
@@ -554,7 +567,7 @@ public class Sem4Visitor extends ASTvisitor {
   		super.visitNewArray(n);
   		
   		matchTypesExact(n.sizeExp.type, theIntType, n.pos);
-  		n.type = new ArrayType(n.pos, n.objType);
+  		n.type = types.arrayOf(types.intern(n.objType));
   		return null;
   	}
 
@@ -586,7 +599,7 @@ public class Sem4Visitor extends ASTvisitor {
   	  			n.type = theVoidType;
   	  		}
   	  		else {
-  	  			n.type = ((MethodDeclNonVoid)n.methodLink).rtnType;
+  	  			n.type = types.intern(((MethodDeclNonVoid)n.methodLink).rtnType);
   	  		}
   	  		
   		}
@@ -770,19 +783,15 @@ public class Sem4Visitor extends ASTvisitor {
 	@Override
 	public Object visitClassDecl(ClassDecl n) {
 		currentClass = n;
-		//set currentClassType to refer to a new IdentifierType object that refers to this class (and set its link field to refer
-		//back to this ClassDecl object)
-		currentClassType = new IdentifierType(n.pos, n.name);
-		currentClassType.link = n;
+		//set currentClassType to refer to the (canonical) IdentifierType object that refers to this class
+		currentClassType = types.classType(n);
 		
 		/*
-		 * set currentSuperclassType to refer to a new IdentifierType object that refers
-		 * to the ClassDecl that is this class' superclass (and set its link field to
-		 * refer back to the superclass' ClassDecl object)
+		 * set currentSuperclassType to refer to the (canonical) IdentifierType object that refers
+		 * to the ClassDecl that is this class' superclass
 		 */
 		if (n.superLink != null) { //don't need to do following statements if there is no super class
-			currentSuperclassType = new IdentifierType(n.superLink.pos, n.superName);
-			currentSuperclassType.link = n.superLink;
+			currentSuperclassType = types.classType(n.superLink);
 		}
 
 		super.visitClassDecl(n);
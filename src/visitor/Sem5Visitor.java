@@ -7,9 +7,8 @@ import errorMsg.*;
 // according to Java's rules.
 public class Sem5Visitor extends ASTvisitor {
 	
-	ConstEvalVisitor conEval;
+	Reachability reach;
 	ErrorMsg errorMsg;
-	boolean sawBreak;
 	
 	public Sem5Visitor(ErrorMsg e) {
 		initInstanceVars(e);
@@ -17,8 +16,55 @@ public class Sem5Visitor extends ASTvisitor {
 	
 	private void initInstanceVars(ErrorMsg e) {
 		errorMsg = e;
-		conEval = new ConstEvalVisitor();
-		sawBreak = false;
+		reach = new Reachability(e, false);
+	}
+
+	@Override
+	public Object visitBreak(Break n) {
+		super.visitBreak(n);
+		reach.afterBreak(n);
+		return null;
+	}
+
+	@Override
+	public Object visitBlock(Block n) {
+		super.visitBlock(n);
+		reach.afterBlock(n);
+		return null;
+	}
+
+	@Override
+	public Object visitIf(If n) {
+		super.visitIf(n);
+		reach.afterIf(n);
+		return null;
+	}
+
+	@Override
+	public Object visitWhile(While n) {
+		super.visitWhile(n);
+		reach.afterWhile(n);
+		return null;
+	}
+
+	@Override
+	public Object visitSwitch(Switch n) {
+		super.visitSwitch(n);
+		reach.afterSwitch(n);
+		return null;
+	}
+
+	@Override
+	public Object visitMethodDeclVoid(MethodDeclVoid n) {
+		super.visitMethodDeclVoid(n);
+		reach.afterMethodDecl(n);
+		return null;
+	}
+
+	@Override
+	public Object visitMethodDeclNonVoid(MethodDeclNonVoid n) {
+		super.visitMethodDeclNonVoid(n);
+		reach.afterMethodDecl(n);
+		return null;
 	}
 }
-	
@@ -0,0 +1,124 @@
+package visitor;
+
+import java.util.*;
+
+import syntaxtree.*;
+
+// The purpose of this class is to give each distinct type a single,
+// canonical Type object, so that types can be compared with '==' and an
+// expression's type need not be a newly allocated node.  There is one
+// object for each primitive type, one IdentifierType per ClassDecl, and
+// one ArrayType per (canonical) element type, so an array type of depth
+// k is built from k array types that are shared with every other array
+// type with the same element type.
+//
+// The types written in the program (e.g., a variable's declared type)
+// stay in the tree, since they carry their own positions; intern maps
+// any of them to its canonical equivalent.  An IdentifierType whose link
+// has not been resolved has no canonical equivalent and is returned as
+// is; since Sem3Visitor reports such types, they are not seen by the
+// phases that use this table.
+//
+// The canonical types are not part of the tree, and have position -1.
+public class TypeTable {
+
+	private IntegerType intType;
+	private BooleanType boolType;
+	private NullType nullType;
+	private VoidType voidType;
+	private IdentityHashMap<ClassDecl,IdentifierType> classTypes;
+	private IdentityHashMap<Type,ArrayType> arrayTypes;
+
+	public TypeTable() {
+		intType = new IntegerType(-1);
+		boolType = new BooleanType(-1);
+		nullType = new NullType(-1);
+		voidType = new VoidType(-1);
+		classTypes = new IdentityHashMap<ClassDecl,IdentifierType>();
+		arrayTypes = new IdentityHashMap<Type,ArrayType>();
+	}
+
+	public IntegerType intType() {
+		return intType;
+	}
+
+	public BooleanType boolType() {
+		return boolType;
+	}
+
+	public NullType nullType() {
+		return nullType;
+	}
+
+	public VoidType voidType() {
+		return voidType;
+	}
+
+	// the type of the objects of the given class, or null if there is no
+	// class
+	public IdentifierType classType(ClassDecl cls) {
+		if (cls == null) {
+			return null;
+		}
+		IdentifierType rtnVal = classTypes.get(cls);
+		if (rtnVal == null) {
+			rtnVal = new IdentifierType(-1, cls.name);
+			rtnVal.link = cls;
+			classTypes.put(cls, rtnVal);
+		}
+		return rtnVal;
+	}
+
+	// the type of an array whose elements have the given (canonical) type
+	public ArrayType arrayOf(Type elemType) {
+		ArrayType rtnVal = arrayTypes.get(elemType);
+		if (rtnVal == null) {
+			rtnVal = new ArrayType(-1, elemType);
+			arrayTypes.put(elemType, rtnVal);
+		}
+		return rtnVal;
+	}
+
+	// the canonical equivalent of a type, or null if t is null
+	public Type intern(Type t) {
+		if (t == null) {
+			return null;
+		}
+		else if (t instanceof IntegerType) {
+			return intType;
+		}
+		else if (t instanceof BooleanType) {
+			return boolType;
+		}
+		else if (t instanceof NullType) {
+			return nullType;
+		}
+		else if (t instanceof VoidType) {
+			return voidType;
+		}
+		else if (t instanceof IdentifierType) {
+			IdentifierType it = (IdentifierType)t;
+			return it.link == null ? it : classType(it.link);
+		}
+		else if (t instanceof ArrayType) {
+			ArrayType at = (ArrayType)t;
+			if (arrayTypes.get(at.baseType) == at) {
+				return at; // already canonical
+			}
+			Type elemType = intern(at.baseType);
+			return isCanonical(elemType) ? arrayOf(elemType) : at;
+		}
+		return t;
+	}
+
+	private boolean isCanonical(Type t) {
+		if (t instanceof IdentifierType) {
+			IdentifierType it = (IdentifierType)t;
+			return it.link != null && classTypes.get(it.link) == it;
+		}
+		else if (t instanceof ArrayType) {
+			return arrayTypes.get(((ArrayType)t).baseType) == t;
+		}
+		return t == intType || t == boolType || t == nullType || t == voidType;
+	}
+}
@@ -0,0 +1,866 @@
+package vm;
+
+import java.util.*;
+
+import syntaxtree.*;
+import visitor.*;
+
+// The purpose of this class is to translate one method of a checked
+// program into VM code (see Opcodes).  Use it as:
+//   new CodeGen(vm, vmMethod).generate();
+// which fills in the method's code, constant pool and register counts.
+//
+// Each local variable gets a register in the file for its type, numbered
+// after the parameters (VarDecl.offset); a block's locals are freed at the
+// end of the block, so that locals in separate blocks share registers.
+// Intermediate values go in temporary registers above the locals, which
+// are freed as soon as the instruction that uses them has been generated.
+//
+// Each expression's visit method returns the register holding its value.
+// If 'dest' is set, the value is put in that register; otherwise it may be
+// left in any register, which for a local variable is the variable's own,
+// so that, e.g., 'x + y' is a single instruction.  Conditions (of if and
+// while, and the operands of && and ||) are translated into jumps.
+class CodeGen extends InhVisitor {
+
+	private VM vm;
+	private VMMethod meth;
+	private ConstEvaluator constEval;
+
+	private int[] code;
+	private int[] positions;
+	private int size;
+	private Vector<Object> pool;
+	private IdentityHashMap<Object,Integer> poolIndices;
+
+	// label numbers are indices into 'labelAddrs'; 'fixups' holds the
+	// indices in the code of the operands that are (as yet) label numbers
+	private int[] labelAddrs;
+	private int numLabels;
+	private Vector<Integer> fixups;
+	private IdentityHashMap<BreakTarget,Integer> breakLabels;
+
+	// registers: the number of locals in scope, the next free temporary,
+	// and the most used, in each file
+	private int localsI;
+	private int localsA;
+	private int nextI;
+	private int nextA;
+	private int maxI;
+	private int maxA;
+
+	// the register the expression being generated should put its value in,
+	// or -1 if any register will do
+	private int dest;
+
+	CodeGen(VM avm, VMMethod ameth) {
+		vm = avm;
+		meth = ameth;
+		constEval = new ConstEvaluator();
+		code = new int[64];
+		positions = new int[64];
+		size = 0;
+		pool = new Vector<Object>();
+		poolIndices = new IdentityHashMap<Object,Integer>();
+		labelAddrs = new int[16];
+		numLabels = 0;
+		fixups = new Vector<Integer>();
+		breakLabels = new IdentityHashMap<BreakTarget,Integer>();
+		dest = -1;
+	}
+
+	void generate() {
+		MethodDecl md = meth.decl;
+		md.thisPtrOffset = 0;
+		localsI = 0;
+		localsA = 1;
+		for (int i = 0; i < md.formals.size(); i++) {
+			VarDecl vd = md.formals.elementAt(i);
+			vd.offset = VM.isData(vd.type) ? localsI++ : localsA++;
+		}
+		maxI = localsI;
+		maxA = localsA;
+		freeTemps();
+		genStmts(md.stmts);
+		if (md instanceof MethodDeclNonVoid) {
+			Exp rtnExp = ((MethodDeclNonVoid)md).rtnExp;
+			int r = gen(rtnExp, -1);
+			op(VM.isData(rtnExp.type) ? Opcodes.RETI : Opcodes.RETA, rtnExp.pos);
+			arg(r);
+		}
+		else {
+			op(Opcodes.RET, md.pos);
+		}
+		for (int idx : fixups) {
+			code[idx] = labelAddrs[code[idx]];
+		}
+		meth.code = Arrays.copyOf(code, size);
+		meth.positions = Arrays.copyOf(positions, size);
+		meth.pool = pool.toArray();
+		meth.numIntRegs = maxI;
+		meth.numRefRegs = maxA;
+	}
+
+	/*************** emitting code ****************/
+
+	private void op(int opcode, int pos) {
+		if (size == code.length) {
+			code = Arrays.copyOf(code, 2*size);
+			positions = Arrays.copyOf(positions, 2*size);
+		}
+		positions[size] = pos;
+		code[size++] = opcode;
+	}
+
+	private void arg(int val) {
+		if (size == code.length) {
+			code = Arrays.copyOf(code, 2*size);
+			positions = Arrays.copyOf(positions, 2*size);
+		}
+		code[size++] = val;
+	}
+
+	private void labelArg(int label) {
+		fixups.addElement(size);
+		arg(label);
+	}
+
+	private void jump(int opcode, int pos, int label) {
+		op(opcode, pos);
+		labelArg(label);
+	}
+
+	private int newLabel() {
+		if (numLabels == labelAddrs.length) {
+			labelAddrs = Arrays.copyOf(labelAddrs, 2*numLabels);
+		}
+		labelAddrs[numLabels] = -1;
+		return numLabels++;
+	}
+
+	private void placeLabel(int label) {
+		labelAddrs[label] = size;
+	}
+
+	private int poolIndex(Object constant) {
+		Integer idx = poolIndices.get(constant);
+		if (idx == null) {
+			idx = pool.size();
+			pool.addElement(constant);
+			poolIndices.put(constant, idx);
+		}
+		return idx;
+	}
+
+	/*************** registers ****************/
+
+	private void freeTemps() {
+		nextI = localsI;
+		nextA = localsA;
+	}
+
+	private int tempI() {
+		int r = nextI++;
+		maxI = Math.max(maxI, nextI);
+		return r;
+	}
+
+	private int tempA() {
+		int r = nextA++;
+		maxA = Math.max(maxA, nextA);
+		return r;
+	}
+
+	// the register for the value of the expression being generated
+	private int target(boolean isData) {
+		if (dest >= 0) {
+			return dest;
+		}
+		return isData ? tempI() : tempA();
+	}
+
+	// generates an expression, putting its value in register 'd' (or in any
+	// register, if 'd' is -1); returns the register holding the value
+	private int gen(Exp e, int d) {
+		int savedDest = dest;
+		dest = d;
+		int rtnVal = (Integer)e.accept(this);
+		dest = savedDest;
+		return rtnVal;
+	}
+
+	/*************** statements ****************/
+
+	private void genStmts(StatementList stmts) {
+		for (int i = 0; i < stmts.size(); i++) {
+			stmts.elementAt(i).accept(this);
+			freeTemps();
+		}
+	}
+
+	@Override
+	public Object visitAstNode(AstNode n) {
+		throw new IllegalStateException("cannot generate code for a " + n.getClass().getSimpleName());
+	}
+
+	@Override
+	public Object visitAstList(AstList n) {
+		throw new IllegalStateException("cannot generate code for a " + n.getClass().getSimpleName());
+	}
+
+	@Override
+	public Object visitBlock(Block n) {
+		int savedI = localsI;
+		int savedA = localsA;
+		genStmts(n.stmts);
+		localsI = savedI;
+		localsA = savedA;
+		freeTemps();
+		return null;
+	}
+
+	@Override
+	public Object visitLocalDeclStatement(LocalDeclStatement n) {
+		LocalVarDecl decl = n.localVarDecl;
+		if (VM.isData(decl.type)) {
+			decl.offset = localsI++;
+			maxI = Math.max(maxI, localsI);
+		}
+		else {
+			decl.offset = localsA++;
+			maxA = Math.max(maxA, localsA);
+		}
+		freeTemps();
+		gen(decl.initExp, decl.offset);
+		return null;
+	}
+
+	@Override
+	public Object visitAssign(Assign n) {
+		Exp lhs = n.lhs;
+		boolean isData = VM.isData(lhs.type);
+		if (lhs instanceof IdentifierExp && !(((IdentifierExp)lhs).link instanceof InstVarDecl)) {
+			gen(n.rhs, ((IdentifierExp)lhs).link.offset);
+		}
+		else if (lhs instanceof IdentifierExp) {
+			int val = gen(n.rhs, -1);
+			op(isData ? Opcodes.PUTFI : Opcodes.PUTFA, lhs.pos);
+			arg(0);
+			arg(((IdentifierExp)lhs).link.offset);
+			arg(val);
+		}
+		else if (lhs instanceof InstVarAccess) {
+			InstVarAccess iva = (InstVarAccess)lhs;
+			int obj = gen(iva.exp, -1);
+			int val = gen(n.rhs, -1);
+			op(isData ? Opcodes.PUTFI : Opcodes.PUTFA, iva.pos);
+			arg(obj);
+			arg(iva.varDec.offset);
+			arg(val);
+		}
+		else {
+			ArrayLookup al = (ArrayLookup)lhs;
+			int arr = gen(al.arrExp, -1);
+			int idx = gen(al.idxExp, -1);
+			int val = gen(n.rhs, -1);
+			op(lhs.type instanceof IntegerType ? Opcodes.ASTOREI
+					: lhs.type instanceof BooleanType ? Opcodes.ASTOREZ : Opcodes.ASTOREA, al.pos);
+			arg(arr);
+			arg(idx);
+			arg(val);
+		}
+		return null;
+	}
+
+	@Override
+	public Object visitCallStatement(CallStatement n) {
+		genCall(n.callExp, Opcodes.RESULT_NONE);
+		return null;
+	}
+
+	@Override
+	public Object visitIf(If n) {
+		int elseLabel = newLabel();
+		genCond(n.exp, false, elseLabel);
+		n.trueStmt.accept(this);
+		freeTemps();
+		if (n.falseStmt == null ||
+				(n.falseStmt instanceof Block && ((Block)n.falseStmt).stmts.size() == 0)) {
+			placeLabel(elseLabel);
+		}
+		else {
+			int endLabel = newLabel();
+			jump(Opcodes.JMP, n.pos, endLabel);
+			placeLabel(elseLabel);
+			n.falseStmt.accept(this);
+			placeLabel(endLabel);
+		}
+		return null;
+	}
+
+	// the test goes after the body, so that each iteration takes one jump
+	@Override
+	public Object visitWhile(While n) {
+		int bodyLabel = newLabel();
+		int testLabel = newLabel();
+		int breakLabel = newLabel();
+		breakLabels.put(n, breakLabel);
+		jump(Opcodes.JMP, n.pos, testLabel);
+		placeLabel(bodyLabel);
+		n.body.accept(this);
+		freeTemps();
+		placeLabel(testLabel);
+		genCond(n.exp, true, bodyLabel);
+		placeLabel(breakLabel);
+		return null;
+	}
+
+	@Override
+	public Object visitSwitch(Switch n) {
+		int breakLabel = newLabel();
+		breakLabels.put(n, breakLabel);
+		StatementList stmts = n.stmts;
+		int[] labels = new int[stmts.size()];
+		int defaultLabel = breakLabel;
+		boolean allConst = true;
+		for (int i = 0; i < stmts.size(); i++) {
+			Statement s = stmts.elementAt(i);
+			if (s instanceof Label) {
+				labels[i] = newLabel();
+				if (s instanceof Default) {
+					if (defaultLabel == breakLabel) defaultLabel = labels[i];
+				}
+				else if (constEval.eval(((Case)s).exp) != ConstEvaluator.INT_CONST) {
+					allConst = false;
+				}
+			}
+		}
+		int val = gen(n.exp, -1);
+		if (allConst) {
+			genSwitchTable(n, val, labels, defaultLabel);
+		}
+		else {
+			// compare with each label in turn, as the labels may have
+			// side effects
+			for (int i = 0; i < stmts.size(); i++) {
+				if (stmts.elementAt(i) instanceof Case) {
+					int mark = nextI;
+					Exp e = ((Case)stmts.elementAt(i)).exp;
+					int caseVal = gen(e, -1);
+					op(Opcodes.JEQ, e.pos);
+					arg(val);
+					arg(caseVal);
+					labelArg(labels[i]);
+					nextI = mark;
+				}
+			}
+			jump(Opcodes.JMP, n.pos, defaultLabel);
+		}
+		freeTemps();
+		int savedI = localsI;
+		int savedA = localsA;
+		for (int i = 0; i < stmts.size(); i++) {
+			if (stmts.elementAt(i) instanceof Label) {
+				placeLabel(labels[i]);
+			}
+			else {
+				stmts.elementAt(i).accept(this);
+				freeTemps();
+			}
+		}
+		localsI = savedI;
+		localsA = savedA;
+		freeTemps();
+		placeLabel(breakLabel);
+		return null;
+	}
+
+	// a TSWITCH if the case values are dense enough, otherwise an LSWITCH;
+	// if a value is repeated, its first case is the one taken
+	private void genSwitchTable(Switch n, int val, int[] labels, int defaultLabel) {
+		TreeMap<Integer,Integer> targets = new TreeMap<Integer,Integer>();
+		for (int i = 0; i < n.stmts.size(); i++) {
+			Statement s = n.stmts.elementAt(i);
+			if (s instanceof Case) {
+				targets.putIfAbsent(((Case)s).exp.constVal, labels[i]);
+			}
+		}
+		if (targets.isEmpty()) {
+			jump(Opcodes.JMP, n.pos, defaultLabel);
+			return;
+		}
+		long lo = targets.firstKey();
+		long hi = targets.lastKey();
+		if (hi - lo < 2L*targets.size() + 4) {
+			op(Opcodes.TSWITCH, n.pos);
+			arg(val);
+			arg((int)lo);
+			arg((int)hi);
+			labelArg(defaultLabel);
+			for (long v = lo; v <= hi; v++) {
+				Integer label = targets.get((int)v);
+				labelArg(label == null ? defaultLabel : label);
+			}
+		}
+		else {
+			op(Opcodes.LSWITCH, n.pos);
+			arg(val);
+			arg(targets.size());
+			labelArg(defaultLabel);
+			for (Map.Entry<Integer,Integer> entry : targets.entrySet()) {
+				arg(entry.getKey());
+				labelArg(entry.getValue());
+			}
+		}
+	}
+
+	@Override
+	public Object visitBreak(Break n) {
+		jump(Opcodes.JMP, n.pos, breakLabels.get(n.breakLink));
+		return null;
+	}
+
+	/*************** conditions ****************/
+
+	// generates code that jumps to 'label' if 'e' is 'jumpIf', and
+	// otherwise falls through
+	private void genCond(Exp e, boolean jumpIf, int label) {
+		int markI = nextI;
+		int markA = nextA;
+		if (e instanceof True || e instanceof False) {
+			if ((e instanceof True) == jumpIf) {
+				jump(Opcodes.JMP, e.pos, label);
+			}
+		}
+		else if (e instanceof Not) {
+			genCond(((Not)e).exp, !jumpIf, label);
+		}
+		else if (e instanceof And || e instanceof Or) {
+			BinExp be = (BinExp)e;
+			// for &&, the left operand decides the result if it is false;
+			// for ||, if it is true
+			boolean decides = e instanceof Or;
+			if (jumpIf == decides) {
+				genCond(be.left, decides, label);
+				genCond(be.right, decides, label);
+			}
+			else {
+				int skip = newLabel();
+				genCond(be.left, decides, skip);
+				genCond(be.right, jumpIf, label);
+				placeLabel(skip);
+			}
+		}
+		else if (e instanceof LessThan) {
+			genCompareJump((BinExp)e, jumpIf ? Opcodes.JLT : Opcodes.JGE,
+					jumpIf ? Opcodes.JLTK : Opcodes.JGEK, label);
+		}
+		else if (e instanceof GreaterThan) {
+			genCompareJump((BinExp)e, jumpIf ? Opcodes.JGT : Opcodes.JLE,
+					jumpIf ? Opcodes.JGTK : Opcodes.JLEK, label);
+		}
+		else if (e instanceof Equals && VM.isData(((Equals)e).left.type)) {
+			genCompareJump((BinExp)e, jumpIf ? Opcodes.JEQ : Opcodes.JNE,
+					jumpIf ? Opcodes.JEQK : Opcodes.JNEK, label);
+		}
+		else if (e instanceof Equals) {
+			BinExp be = (BinExp)e;
+			int left = gen(be.left, -1);
+			int right = gen(be.right, -1);
+			op(jumpIf ? Opcodes.JAEQ : Opcodes.JANE, e.pos);
+			arg(left);
+			arg(right);
+			labelArg(label);
+		}
+		else {
+			int r = gen(e, -1);
+			op(jumpIf ? Opcodes.JT : Opcodes.JF, e.pos);
+			arg(r);
+			labelArg(label);
+		}
+		nextI = markI;
+		nextA = markA;
+	}
+
+	private void genCompareJump(BinExp e, int opcode, int opcodeK, int label) {
+		int left = gen(e.left, -1);
+		if (e.right instanceof IntegerLiteral) {
+			op(opcodeK, e.pos);
+			arg(left);
+			arg(((IntegerLiteral)e.right).val);
+		}
+		else {
+			int right = gen(e.right, -1);
+			op(opcode, e.pos);
+			arg(left);
+			arg(right);
+		}
+		labelArg(label);
+	}
+
+	/*************** expressions ****************/
+
+	@Override
+	public Object visitIntegerLiteral(IntegerLiteral n) {
+		int d = target(true);
+		op(Opcodes.ICONST, n.pos);
+		arg(d);
+		arg(n.val);
+		return d;
+	}
+
+	@Override
+	public Object visitTrue(True n) {
+		int d = target(true);
+		op(Opcodes.ICONST, n.pos);
+		arg(d);
+		arg(1);
+		return d;
+	}
+
+	@Override
+	public Object visitFalse(False n) {
+		int d = target(true);
+		op(Opcodes.ICONST, n.pos);
+		arg(d);
+		arg(0);
+		return d;
+	}
+
+	@Override
+	public Object visitNull(Null n) {
+		int d = target(false);
+		op(Opcodes.ANULL, n.pos);
+		arg(d);
+		return d;
+	}
+
+	@Override
+	public Object visitStringLiteral(StringLiteral n) {
+		int d = target(false);
+		op(Opcodes.ACONST, n.pos);
+		arg(d);
+		// interned, so that equal literals are the same object, as in Java
+		arg(poolIndex(n.str.intern()));
+		return d;
+	}
+
+	@Override
+	public Object visitThis(This n) {
+		return move(n, 0, false);
+	}
+
+	@Override
+	public Object visitSuper(Super n) {
+		return move(n, 0, false);
+	}
+
+	@Override
+	public Object visitIdentifierExp(IdentifierExp n) {
+		VarDecl decl = n.link;
+		boolean isData = VM.isData(decl.type);
+		if (decl instanceof InstVarDecl) {
+			int d = target(isData);
+			op(isData ? Opcodes.GETFI : Opcodes.GETFA, n.pos);
+			arg(d);
+			arg(0);
+			arg(decl.offset);
+			return d;
+		}
+		return move(n, decl.offset, isData);
+	}
+
+	// the value already in register 'src', moved to 'dest' if that is set
+	private int move(Exp n, int src, boolean isData) {
+		if (dest < 0 || dest == src) {
+			return src;
+		}
+		op(isData ? Opcodes.IMOV : Opcodes.AMOV, n.pos);
+		arg(dest);
+		arg(src);
+		return dest;
+	}
+
+	@Override
+	public Object visitInstVarAccess(InstVarAccess n) {
+		int savedA = nextA;
+		int obj = gen(n.exp, -1);
+		nextA = savedA;
+		boolean isData = VM.isData(n.varDec.type);
+		int d = target(isData);
+		op(isData ? Opcodes.GETFI : Opcodes.GETFA, n.pos);
+		arg(d);
+		arg(obj);
+		arg(n.varDec.offset);
+		return d;
+	}
+
+	@Override
+	public Object visitArrayLookup(ArrayLookup n) {
+		int savedI = nextI;
+		int savedA = nextA;
+		int arr = gen(n.arrExp, -1);
+		int idx = gen(n.idxExp, -1);
+		nextI = savedI;
+		nextA = savedA;
+		boolean isData = VM.isData(n.type);
+		int d = target(isData);
+		op(n.type instanceof IntegerType ? Opcodes.ALOADI
+				: n.type instanceof BooleanType ? Opcodes.ALOADZ : Opcodes.ALOADA, n.pos);
+		arg(d);
+		arg(arr);
+		arg(idx);
+		return d;
+	}
+
+	@Override
+	public Object visitArrayLength(ArrayLength n) {
+		int savedA = nextA;
+		int arr = gen(n.exp, -1);
+		nextA = savedA;
+		int d = target(true);
+		op(Opcodes.ALEN, n.pos);
+		arg(d);
+		arg(arr);
+		return d;
+	}
+
+	@Override
+	public Object visitPlus(Plus n) {
+		if (n.right instanceof IntegerLiteral) {
+			return genBinaryConst(n, Opcodes.IADDK, n.left, ((IntegerLiteral)n.right).val);
+		}
+		else if (n.left instanceof IntegerLiteral) {
+			return genBinaryConst(n, Opcodes.IADDK, n.right, ((IntegerLiteral)n.left).val);
+		}
+		return genBinary(n, Opcodes.IADD);
+	}
+
+	@Override
+	public Object visitMinus(Minus n) {
+		if (n.right instanceof IntegerLiteral) {
+			return genBinaryConst(n, Opcodes.IADDK, n.left, -((IntegerLiteral)n.right).val);
+		}
+		return genBinary(n, Opcodes.ISUB);
+	}
+
+	// an instruction with an int result, an operand and an immediate value
+	private int genBinaryConst(Exp n, int opcodeK, Exp operand, int k) {
+		int savedI = nextI;
+		int r = gen(operand, -1);
+		nextI = savedI;
+		int d = target(true);
+		op(opcodeK, n.pos);
+		arg(d);
+		arg(r);
+		arg(k);
+		return d;
+	}
+
+	@Override
+	public Object visitTimes(Times n) {
+		if (n.right instanceof IntegerLiteral) {
+			return genBinaryConst(n, Opcodes.IMULK, n.left, ((IntegerLiteral)n.right).val);
+		}
+		else if (n.left instanceof IntegerLiteral) {
+			return genBinaryConst(n, Opcodes.IMULK, n.right, ((IntegerLiteral)n.left).val);
+		}
+		return genBinary(n, Opcodes.IMUL);
+	}
+
+	@Override
+	public Object visitDivide(Divide n) {
+		if (isNonZeroLiteral(n.right)) {
+			return genBinaryConst(n, Opcodes.IDIVK, n.left, ((IntegerLiteral)n.right).val);
+		}
+		return genBinary(n, Opcodes.IDIV);
+	}
+
+	@Override
+	public Object visitRemainder(Remainder n) {
+		if (isNonZeroLiteral(n.right)) {
+			return genBinaryConst(n, Opcodes.IREMK, n.left, ((IntegerLiteral)n.right).val);
+		}
+		return genBinary(n, Opcodes.IREM);
+	}
+
+	// whether a divisor is a constant that needs no check at run time
+	private static boolean isNonZeroLiteral(Exp e) {
+		return e instanceof IntegerLiteral && ((IntegerLiteral)e).val != 0;
+	}
+
+	@Override
+	public Object visitLessThan(LessThan n) {
+		return genBinary(n, Opcodes.ILT);
+	}
+
+	@Override
+	public Object visitGreaterThan(GreaterThan n) {
+		return genBinary(n, Opcodes.IGT);
+	}
+
+	@Override
+	public Object visitEquals(Equals n) {
+		return genBinary(n, VM.isData(n.left.type) ? Opcodes.IEQ : Opcodes.AEQ);
+	}
+
+	// an instruction with an int result and two operands
+	private int genBinary(BinExp n, int opcode) {
+		int savedI = nextI;
+		int savedA = nextA;
+		int left = gen(n.left, -1);
+		int right = gen(n.right, -1);
+		nextI = savedI;
+		nextA = savedA;
+		int d = target(true);
+		op(opcode, n.pos);
+		arg(d);
+		arg(left);
+		arg(right);
+		return d;
+	}
+
+	@Override
+	public Object visitAnd(And n) {
+		return genCondValue(n);
+	}
+
+	@Override
+	public Object visitOr(Or n) {
+		return genCondValue(n);
+	}
+
+	// the value of a condition, from jumps; the result register is not
+	// written until the condition has been evaluated, as the condition may
+	// use it
+	private int genCondValue(Exp n) {
+		int falseLabel = newLabel();
+		int endLabel = newLabel();
+		genCond(n, false, falseLabel);
+		int d = target(true);
+		op(Opcodes.ICONST, n.pos);
+		arg(d);
+		arg(1);
+		jump(Opcodes.JMP, n.pos, endLabel);
+		placeLabel(falseLabel);
+		op(Opcodes.ICONST, n.pos);
+		arg(d);
+		arg(0);
+		placeLabel(endLabel);
+		return d;
+	}
+
+	@Override
+	public Object visitNot(Not n) {
+		int savedI = nextI;
+		int r = gen(n.exp, -1);
+		nextI = savedI;
+		int d = target(true);
+		op(Opcodes.INOT, n.pos);
+		arg(d);
+		arg(r);
+		return d;
+	}
+
+	@Override
+	public Object visitNewObject(NewObject n) {
+		int d = target(false);
+		op(Opcodes.NEW, n.pos);
+		arg(d);
+		arg(poolIndex(vm.vmClass(n.objType.link)));
+		return d;
+	}
+
+	@Override
+	public Object visitNewArray(NewArray n) {
+		int savedI = nextI;
+		int size = gen(n.sizeExp, -1);
+		nextI = savedI;
+		ArrayType type = (ArrayType)n.type;
+		int d = target(false);
+		if (type.baseType instanceof IntegerType) {
+			op(Opcodes.NEWARRI, n.pos);
+		}
+		else if (type.baseType instanceof BooleanType) {
+			op(Opcodes.NEWARRZ, n.pos);
+		}
+		else {
+			op(Opcodes.NEWARRA, n.pos);
+		}
+		arg(d);
+		arg(size);
+		if (!VM.isData(type.baseType)) {
+			arg(poolIndex(type));
+		}
+		return d;
+	}
+
+	@Override
+	public Object visitCast(Cast n) {
+		int r = gen(n.exp, dest);
+		op(Opcodes.CAST, n.pos);
+		arg(r);
+		arg(poolIndex(vm.typeTest(n.castType)));
+		return r;
+	}
+
+	@Override
+	public Object visitInstanceOf(InstanceOf n) {
+		int savedA = nextA;
+		int r = gen(n.exp, -1);
+		nextA = savedA;
+		int d = target(true);
+		op(Opcodes.INSTOF, n.pos);
+		arg(d);
+		arg(r);
+		arg(poolIndex(vm.typeTest(n.checkType)));
+		return d;
+	}
+
+	@Override
+	public Object visitCall(Call n) {
+		return genCall(n, VM.isData(n.type) ? Opcodes.RESULT_INT : Opcodes.RESULT_REF);
+	}
+
+	private int genCall(Call n, int resultKind) {
+		int savedI = nextI;
+		int savedA = nextA;
+		int recv = gen(n.obj, -1);
+		ExpList parms = n.parms;
+		int[] intArgs = new int[parms.size()];
+		int[] refArgs = new int[parms.size()];
+		int numInt = 0;
+		int numRef = 0;
+		for (int i = 0; i < parms.size(); i++) {
+			Exp parm = parms.elementAt(i);
+			int r = gen(parm, -1);
+			if (VM.isData(n.methodLink.formals.elementAt(i).type)) {
+				intArgs[numInt++] = r;
+			}
+			else {
+				refArgs[numRef++] = r;
+			}
+		}
+		nextI = savedI;
+		nextA = savedA;
+		int d = resultKind == Opcodes.RESULT_NONE ? 0 : target(resultKind == Opcodes.RESULT_INT);
+		if (n.obj instanceof Super) {
+			op(Opcodes.CALLS, n.pos);
+			arg(resultKind);
+			arg(d);
+			arg(poolIndex(vm.vmMethod(n.methodLink)));
+		}
+		else {
+			op(Opcodes.CALL, n.pos);
+			arg(resultKind);
+			arg(d);
+			arg(n.methodLink.vtableOffset);
+		}
+		arg(recv);
+		arg(numInt);
+		arg(numRef);
+		for (int i = 0; i < numInt; i++) arg(intArgs[i]);
+		for (int i = 0; i < numRef; i++) arg(refArgs[i]);
+		return d;
+	}
+}
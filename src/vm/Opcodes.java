@@ -0,0 +1,127 @@
+package vm;
+
+// The instructions of the register VM.  A method's code is an int array;
+// each instruction is its opcode followed by its operands, which are
+// register numbers (relative to the frame), immediate values, constant-
+// pool indices or jump targets (indices into the code).  A frame has two
+// register files, one holding ints and booleans (0 or 1), the other
+// holding references; the letter after 'r' below says which file a
+// register is in.  Register a0 of each frame holds 'this'.
+//
+//   ICONST ri imm           ri = imm
+//   ACONST ra k             ra = pool[k] (a String)
+//   ANULL ra                ra = null
+//   IMOV ri1 ri2            ri1 = ri2
+//   AMOV ra1 ra2            ra1 = ra2
+//   IADD ri1 ri2 ri3        ri1 = ri2 + ri3 (also ISUB, IMUL, IDIV, IREM,
+//                           ILT, IGT, IEQ, which give 0 or 1)
+//   IADDK ri1 ri2 imm       ri1 = ri2 + imm (also IMULK, and IDIVK and
+//                           IREMK, whose imm is not 0)
+//   AEQ ri ra1 ra2          ri = (ra1 == ra2)
+//   INOT ri1 ri2            ri1 = !ri2
+//   JMP t                   go to t
+//   JT ri t, JF ri t        go to t if ri is true (false)
+//   JLT ri1 ri2 t           go to t if ri1 < ri2 (also JGE, JGT, JLE, JEQ,
+//                           JNE)
+//   JLTK ri imm t           go to t if ri < imm (also JGEK, JGTK, JLEK,
+//                           JEQK, JNEK)
+//   JAEQ ra1 ra2 t          go to t if ra1 == ra2 (also JANE)
+//   GETFI ri ra off         ri = ra.data[off] (also GETFA: ra1 = ra2.objs[off])
+//   PUTFI ra off ri         ra.data[off] = ri (also PUTFA)
+//   NEW ra k                ra = a new object of class pool[k]
+//   NEWARRI ra ri           ra = new int[ri] (also NEWARRZ: boolean[])
+//   NEWARRA ra ri k         ra = a new array of type pool[k], of nulls
+//   ALOADI ri1 ra ri2       ri1 = ra[ri2] (also ALOADZ, ALOADA)
+//   ASTOREI ra ri1 ri2      ra[ri1] = ri2 (also ASTOREZ, ASTOREA)
+//   ALEN ri ra              ri = ra.length
+//   INSTOF ri ra k          ri = (ra instanceof pool[k])
+//   CAST ra k               fail unless ra is null or an instance of pool[k]
+//   CALL kind r slot ra n m ri... ra...
+//                           calls v-table entry 'slot' of ra's class with
+//                           ra as 'this', the next n int registers as the
+//                           int arguments and the next m reference
+//                           registers as the reference arguments; the
+//                           result goes to r, an int register if 'kind' is
+//                           RESULT_INT, a reference register if it is
+//                           RESULT_REF, and nowhere if it is RESULT_NONE
+//   CALLS kind r k ra n m ...
+//                           the same, calling method pool[k] (for 'super')
+//   TSWITCH ri lo hi t tlo ... thi
+//                           go to the target for ri if lo <= ri <= hi,
+//                           otherwise to t
+//   LSWITCH ri n t v1 t1 ... vn tn
+//                           go to the ti with vi == ri (the vi are
+//                           ascending), otherwise to t
+//   RET                     return
+//   RETI ri, RETA ra        return ri (ra)
+final class Opcodes {
+
+	static final int ICONST = 0;
+	static final int ACONST = 1;
+	static final int ANULL = 2;
+	static final int IMOV = 3;
+	static final int AMOV = 4;
+	static final int IADD = 5;
+	static final int ISUB = 6;
+	static final int IMUL = 7;
+	static final int IDIV = 8;
+	static final int IREM = 9;
+	static final int IADDK = 10;
+	static final int IMULK = 11;
+	static final int IDIVK = 12;
+	static final int IREMK = 13;
+	static final int ILT = 14;
+	static final int IGT = 15;
+	static final int IEQ = 16;
+	static final int AEQ = 17;
+	static final int INOT = 18;
+	static final int JMP = 19;
+	static final int JT = 20;
+	static final int JF = 21;
+	static final int JLT = 22;
+	static final int JGE = 23;
+	static final int JGT = 24;
+	static final int JLE = 25;
+	static final int JEQ = 26;
+	static final int JNE = 27;
+	static final int JLTK = 28;
+	static final int JGEK = 29;
+	static final int JGTK = 30;
+	static final int JLEK = 31;
+	static final int JEQK = 32;
+	static final int JNEK = 33;
+	static final int JAEQ = 34;
+	static final int JANE = 35;
+	static final int GETFI = 36;
+	static final int GETFA = 37;
+	static final int PUTFI = 38;
+	static final int PUTFA = 39;
+	static final int NEW = 40;
+	static final int NEWARRI = 41;
+	static final int NEWARRZ = 42;
+	static final int NEWARRA = 43;
+	static final int ALOADI = 44;
+	static final int ALOADZ = 45;
+	static final int ALOADA = 46;
+	static final int ASTOREI = 47;
+	static final int ASTOREZ = 48;
+	static final int ASTOREA = 49;
+	static final int ALEN = 50;
+	static final int INSTOF = 51;
+	static final int CAST = 52;
+	static final int CALL = 53;
+	static final int CALLS = 54;
+	static final int TSWITCH = 55;
+	static final int LSWITCH = 56;
+	static final int RET = 57;
+	static final int RETI = 58;
+	static final int RETA = 59;
+
+	// the kinds of result of a CALL or CALLS
+	static final int RESULT_NONE = 0;
+	static final int RESULT_INT = 1;
+	static final int RESULT_REF = 2;
+
+	private Opcodes() {
+	}
+}
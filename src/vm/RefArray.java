@@ -0,0 +1,17 @@
+package vm;
+
+import syntaxtree.*;
+
+// A MiniJava array of references in the VM, with its type, which a cast
+// or instanceof may test.  Arrays of ints and booleans are Java int[] and
+// boolean[] arrays, whose type is known from their Java class.
+final class RefArray {
+
+	final ArrayType type;
+	final Object[] elems;
+
+	RefArray(ArrayType atype, int size) {
+		type = atype;
+		elems = new Object[size];
+	}
+}
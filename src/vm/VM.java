@@ -0,0 +1,751 @@
+package vm;
+
+import java.io.*;
+import java.util.*;
+
+import interp.*;
+import syntaxtree.*;
+import visitor.*;
+
+// The purpose of this class is to run a MiniJava program that has passed
+// every semantic phase, by translating it into the code of a register
+// machine (see Opcodes and CodeGen) and running that code in a dispatch
+// loop.  Use it as:
+//   new VM(programNode, inputStream, printStream).run();
+// It runs the same programs, with the same results, as the tree-walking
+// Interpreter, but does not revisit the tree while the program runs.
+//
+// Before any code is generated, each class's instance variables are laid
+// out, after those of its superclass, in two flat arrays: one for ints and
+// booleans and one for references (InstVarDecl.offset,
+// ClassDecl.numDataInstVars and ClassDecl.numObjInstVars).  Calls go
+// through each class's v-table, at the offsets HierarchyNumberer assigned
+// (MethodDecl.vtableOffset); only calls through 'super' are bound when the
+// code is generated.
+//
+// The frames of the methods being run are stacked on two arrays of
+// registers, 'intRegs' and 'refRegs'; a frame's registers are numbered
+// from its base in each array, and a called method's frame starts just
+// above its caller's.  The register arrays have a fixed size, so that
+// the dispatch loop can keep them in final locals; a program whose frames
+// would not fit stops with a stack overflow.  Values are represented as
+// Java ints (ints, and booleans as 0 or 1), Strings, VMObjects, int[],
+// boolean[] and RefArrays; null is null.
+public class VM {
+
+	// the predefined methods
+	static final int NATIVE_OBJECT_HASHCODE = 0;
+	static final int NATIVE_OBJECT_EQUALS = 1;
+	static final int NATIVE_OBJECT_TOSTRING = 2;
+	static final int NATIVE_STRING_HASHCODE = 3;
+	static final int NATIVE_STRING_EQUALS = 4;
+	static final int NATIVE_STRING_TOSTRING = 5;
+	static final int NATIVE_STRING_CONCAT = 6;
+	static final int NATIVE_STRING_SUBSTRING = 7;
+	static final int NATIVE_STRING_LENGTH = 8;
+	static final int NATIVE_STRING_CHARAT = 9;
+	static final int NATIVE_STRING_COMPARETO = 10;
+	static final int NATIVE_LIB_READLINE = 11;
+	static final int NATIVE_LIB_READINT = 12;
+	static final int NATIVE_LIB_READCHAR = 13;
+	static final int NATIVE_LIB_PRINTSTR = 14;
+	static final int NATIVE_LIB_PRINTBOOL = 15;
+	static final int NATIVE_LIB_PRINTINT = 16;
+	static final int NATIVE_LIB_INTTOSTRING = 17;
+	static final int NATIVE_LIB_INTTOCHAR = 18;
+
+	private static final int NUM_REGS = 1 << 20;
+
+	private Program program;
+	private LibInput in;
+	private PrintStream out;
+
+	private IdentityHashMap<ClassDecl,VMClass> classes;
+	private IdentityHashMap<MethodDecl,VMMethod> methods;
+	private IdentityHashMap<ClassDecl,Boolean> laidOut;
+	private VMClass objectClass;
+	private VMClass stringClass;
+
+	private final int[] intRegs;
+	private final Object[] refRegs;
+
+	// the value returned by the last method called
+	private int intResult;
+	private Object refResult;
+
+	public VM(Program aprogram, InputStream ain, PrintStream aout) {
+		program = aprogram;
+		in = new LibInput(ain, aout);
+		out = aout;
+		classes = new IdentityHashMap<ClassDecl,VMClass>();
+		methods = new IdentityHashMap<MethodDecl,VMMethod>();
+		laidOut = new IdentityHashMap<ClassDecl,Boolean>();
+		for (int i = 0; i < program.dummyNodes.size(); i++) {
+			ClassDecl cd = program.dummyNodes.elementAt(i);
+			for (int j = 0; j < cd.decls.size(); j++) {
+				Decl d = cd.decls.elementAt(j);
+				if (d instanceof MethodDecl) {
+					vmMethod((MethodDecl)d).nativeOp = nativeCode(cd.name, d.name);
+				}
+			}
+			if (cd.name.equals("Object")) objectClass = vmClass(cd);
+			else if (cd.name.equals("String")) stringClass = vmClass(cd);
+		}
+		ClassDeclList decls = program.classDecls;
+		for (int i = 0; i < decls.size(); i++) {
+			vmClass(decls.elementAt(i));
+		}
+		for (int i = 0; i < decls.size(); i++) {
+			ClassDecl cd = decls.elementAt(i);
+			for (int j = 0; j < cd.decls.size(); j++) {
+				Decl d = cd.decls.elementAt(j);
+				if (d instanceof MethodDecl) {
+					new CodeGen(this, vmMethod((MethodDecl)d)).generate();
+				}
+			}
+		}
+		intRegs = new int[NUM_REGS];
+		refRegs = new Object[NUM_REGS];
+	}
+
+	// runs the program
+	public void run() {
+		Call main = ((CallStatement)program.mainStatement).callExp;
+		VMClass mainClass = vmClass(((NewObject)main.obj).objType.link);
+		refRegs[0] = new VMObject(mainClass);
+		try {
+			execute(mainClass.vtable[main.methodLink.vtableOffset], 0, 0);
+		}
+		catch (StackOverflowError sox) {
+			throw new RunError(-1, "stack overflow");
+		}
+		finally {
+			out.flush();
+		}
+	}
+
+	/*************** layout ****************/
+
+	// whether values of a type go in the int registers and data arrays
+	// (rather than the reference ones)
+	static boolean isData(Type t) {
+		return t instanceof IntegerType || t instanceof BooleanType;
+	}
+
+	private static int nativeCode(String className, String methName) {
+		switch (className + "." + methName) {
+		case "Object.hashCode": return NATIVE_OBJECT_HASHCODE;
+		case "Object.equals": return NATIVE_OBJECT_EQUALS;
+		case "Object.toString": return NATIVE_OBJECT_TOSTRING;
+		case "String.hashCode": return NATIVE_STRING_HASHCODE;
+		case "String.equals": return NATIVE_STRING_EQUALS;
+		case "String.toString": return NATIVE_STRING_TOSTRING;
+		case "String.concat": return NATIVE_STRING_CONCAT;
+		case "String.substring": return NATIVE_STRING_SUBSTRING;
+		case "String.length": return NATIVE_STRING_LENGTH;
+		case "String.charAt": return NATIVE_STRING_CHARAT;
+		case "String.compareTo": return NATIVE_STRING_COMPARETO;
+		case "Lib.readLine": return NATIVE_LIB_READLINE;
+		case "Lib.readInt": return NATIVE_LIB_READINT;
+		case "Lib.readChar": return NATIVE_LIB_READCHAR;
+		case "Lib.printStr": return NATIVE_LIB_PRINTSTR;
+		case "Lib.printBool": return NATIVE_LIB_PRINTBOOL;
+		case "Lib.printInt": return NATIVE_LIB_PRINTINT;
+		case "Lib.intToString": return NATIVE_LIB_INTTOSTRING;
+		case "Lib.intToChar": return NATIVE_LIB_INTTOCHAR;
+		default: return -1;
+		}
+	}
+
+	// gives the instance variables of a class the offsets after those of
+	// its superclasses, in the data or object array according to their
+	// types
+	private void layoutFields(ClassDecl cd) {
+		if (laidOut.containsKey(cd)) {
+			return;
+		}
+		laidOut.put(cd, Boolean.TRUE);
+		int numData = 0;
+		int numObj = 0;
+		if (cd.superLink != null) {
+			layoutFields(cd.superLink);
+			numData = cd.superLink.numDataInstVars;
+			numObj = cd.superLink.numObjInstVars;
+		}
+		for (int i = 0; i < cd.decls.size(); i++) {
+			Decl d = cd.decls.elementAt(i);
+			if (d instanceof InstVarDecl) {
+				InstVarDecl ivd = (InstVarDecl)d;
+				ivd.offset = isData(ivd.type) ? numData++ : numObj++;
+			}
+		}
+		cd.numDataInstVars = numData;
+		cd.numObjInstVars = numObj;
+	}
+
+	VMClass vmClass(ClassDecl cd) {
+		VMClass rtnVal = classes.get(cd);
+		if (rtnVal != null) {
+			return rtnVal;
+		}
+		layoutFields(cd);
+		cd.buildLookupTables();
+		rtnVal = new VMClass(cd);
+		classes.put(cd, rtnVal);
+		for (MethodDecl md : cd.allMethods.values()) {
+			int slot = md.vtableOffset;
+			if (slot >= 0 && slot < rtnVal.vtable.length) {
+				rtnVal.vtable[slot] = vmMethod(md);
+			}
+		}
+		return rtnVal;
+	}
+
+	VMMethod vmMethod(MethodDecl md) {
+		VMMethod rtnVal = methods.get(md);
+		if (rtnVal == null) {
+			rtnVal = new VMMethod(md);
+			methods.put(md, rtnVal);
+		}
+		return rtnVal;
+	}
+
+	// what a cast or instanceof tests against: the VMClass for a class
+	// type, or the type itself for an array type
+	Object typeTest(Type t) {
+		if (t instanceof IdentifierType) {
+			return vmClass(((IdentifierType)t).link);
+		}
+		return t;
+	}
+
+	/*************** running ****************/
+
+	private VMClass classOf(Object v) {
+		if (v instanceof VMObject) {
+			return ((VMObject)v).cls;
+		}
+		else if (v instanceof String) {
+			return stringClass;
+		}
+		else {
+			return objectClass;
+		}
+	}
+
+	// whether a (non-null) value passes a type test (see typeTest)
+	private boolean isInstance(Object v, Object test) {
+		if (test instanceof VMClass) {
+			return HierarchyNumberer.isSubclass(classOf(v).decl, ((VMClass)test).decl);
+		}
+		Type baseType = ((ArrayType)test).baseType;
+		if (baseType instanceof IntegerType) {
+			return v instanceof int[];
+		}
+		else if (baseType instanceof BooleanType) {
+			return v instanceof boolean[];
+		}
+		return v instanceof RefArray && ((RefArray)v).type.equals(test);
+	}
+
+	private static String typeName(Object v) {
+		if (v instanceof int[]) {
+			return "int[]";
+		}
+		else if (v instanceof boolean[]) {
+			return "boolean[]";
+		}
+		else if (v instanceof RefArray) {
+			return ((RefArray)v).type.toString();
+		}
+		return null;
+	}
+
+	private static RunError nullPointer(VMMethod m, int pc) {
+		return new RunError(m.positions[pc], "null pointer");
+	}
+
+	private static RunError badIndex(VMMethod m, int pc, int idx, int length) {
+		return new RunError(m.positions[pc], "array index " + idx +
+				" out of bounds for length " + length);
+	}
+
+	private static RunError divideByZero(VMMethod m, int pc) {
+		return new RunError(m.positions[pc], "division by zero");
+	}
+
+	private static RunError badSize(VMMethod m, int pc, int size) {
+		return new RunError(m.positions[pc], "negative array size " + size);
+	}
+
+	private RunError badCast(VMMethod m, int pc, Object v, Object test) {
+		String name = typeName(v);
+		return new RunError(m.positions[pc], "cannot cast " +
+				(name != null ? name : classOf(v).decl.name) + " to " +
+				(test instanceof VMClass ? ((VMClass)test).decl.name : test));
+	}
+
+	private static IllegalStateException badOpcode(VMMethod m, int pc) {
+		return new IllegalStateException("bad opcode " + m.code[pc] + " at " + pc +
+				" in " + m.decl.name);
+	}
+
+	// runs a method whose frame has its int registers from 'fi' and its
+	// reference registers from 'fa', with its parameters already in place;
+	// a result is left in intResult or refResult
+	private void execute(VMMethod m, int fi, int fa) {
+		final int[] code = m.code;
+		final Object[] pool = m.pool;
+		final int[] is = intRegs;
+		final Object[] os = refRegs;
+		int pc = 0;
+		for (;;) {
+			switch (code[pc]) {
+			case Opcodes.ICONST:
+				is[fi+code[pc+1]] = code[pc+2];
+				pc += 3;
+				break;
+			case Opcodes.ACONST:
+				os[fa+code[pc+1]] = pool[code[pc+2]];
+				pc += 3;
+				break;
+			case Opcodes.ANULL:
+				os[fa+code[pc+1]] = null;
+				pc += 2;
+				break;
+			case Opcodes.IMOV:
+				is[fi+code[pc+1]] = is[fi+code[pc+2]];
+				pc += 3;
+				break;
+			case Opcodes.AMOV:
+				os[fa+code[pc+1]] = os[fa+code[pc+2]];
+				pc += 3;
+				break;
+			case Opcodes.IADD:
+				is[fi+code[pc+1]] = is[fi+code[pc+2]] + is[fi+code[pc+3]];
+				pc += 4;
+				break;
+			case Opcodes.ISUB:
+				is[fi+code[pc+1]] = is[fi+code[pc+2]] - is[fi+code[pc+3]];
+				pc += 4;
+				break;
+			case Opcodes.IMUL:
+				is[fi+code[pc+1]] = is[fi+code[pc+2]] * is[fi+code[pc+3]];
+				pc += 4;
+				break;
+			case Opcodes.IDIV: {
+				int divisor = is[fi+code[pc+3]];
+				if (divisor == 0) {
+					throw divideByZero(m, pc);
+				}
+				is[fi+code[pc+1]] = is[fi+code[pc+2]] / divisor;
+				pc += 4;
+				break;
+			}
+			case Opcodes.IREM: {
+				int divisor = is[fi+code[pc+3]];
+				if (divisor == 0) {
+					throw divideByZero(m, pc);
+				}
+				is[fi+code[pc+1]] = is[fi+code[pc+2]] % divisor;
+				pc += 4;
+				break;
+			}
+			case Opcodes.IADDK:
+				is[fi+code[pc+1]] = is[fi+code[pc+2]] + code[pc+3];
+				pc += 4;
+				break;
+			case Opcodes.IMULK:
+				is[fi+code[pc+1]] = is[fi+code[pc+2]] * code[pc+3];
+				pc += 4;
+				break;
+			case Opcodes.IDIVK:
+				is[fi+code[pc+1]] = is[fi+code[pc+2]] / code[pc+3];
+				pc += 4;
+				break;
+			case Opcodes.IREMK:
+				is[fi+code[pc+1]] = is[fi+code[pc+2]] % code[pc+3];
+				pc += 4;
+				break;
+			case Opcodes.ILT:
+				is[fi+code[pc+1]] = is[fi+code[pc+2]] < is[fi+code[pc+3]] ? 1 : 0;
+				pc += 4;
+				break;
+			case Opcodes.IGT:
+				is[fi+code[pc+1]] = is[fi+code[pc+2]] > is[fi+code[pc+3]] ? 1 : 0;
+				pc += 4;
+				break;
+			case Opcodes.IEQ:
+				is[fi+code[pc+1]] = is[fi+code[pc+2]] == is[fi+code[pc+3]] ? 1 : 0;
+				pc += 4;
+				break;
+			case Opcodes.AEQ:
+				is[fi+code[pc+1]] = os[fa+code[pc+2]] == os[fa+code[pc+3]] ? 1 : 0;
+				pc += 4;
+				break;
+			case Opcodes.INOT:
+				is[fi+code[pc+1]] = is[fi+code[pc+2]] ^ 1;
+				pc += 3;
+				break;
+			case Opcodes.JMP:
+				pc = code[pc+1];
+				break;
+			case Opcodes.JT:
+				pc = is[fi+code[pc+1]] != 0 ? code[pc+2] : pc+3;
+				break;
+			case Opcodes.JF:
+				pc = is[fi+code[pc+1]] == 0 ? code[pc+2] : pc+3;
+				break;
+			case Opcodes.JLT:
+				pc = is[fi+code[pc+1]] < is[fi+code[pc+2]] ? code[pc+3] : pc+4;
+				break;
+			case Opcodes.JGE:
+				pc = is[fi+code[pc+1]] >= is[fi+code[pc+2]] ? code[pc+3] : pc+4;
+				break;
+			case Opcodes.JGT:
+				pc = is[fi+code[pc+1]] > is[fi+code[pc+2]] ? code[pc+3] : pc+4;
+				break;
+			case Opcodes.JLE:
+				pc = is[fi+code[pc+1]] <= is[fi+code[pc+2]] ? code[pc+3] : pc+4;
+				break;
+			case Opcodes.JEQ:
+				pc = is[fi+code[pc+1]] == is[fi+code[pc+2]] ? code[pc+3] : pc+4;
+				break;
+			case Opcodes.JNE:
+				pc = is[fi+code[pc+1]] != is[fi+code[pc+2]] ? code[pc+3] : pc+4;
+				break;
+			case Opcodes.JLTK:
+				pc = is[fi+code[pc+1]] < code[pc+2] ? code[pc+3] : pc+4;
+				break;
+			case Opcodes.JGEK:
+				pc = is[fi+code[pc+1]] >= code[pc+2] ? code[pc+3] : pc+4;
+				break;
+			case Opcodes.JGTK:
+				pc = is[fi+code[pc+1]] > code[pc+2] ? code[pc+3] : pc+4;
+				break;
+			case Opcodes.JLEK:
+				pc = is[fi+code[pc+1]] <= code[pc+2] ? code[pc+3] : pc+4;
+				break;
+			case Opcodes.JEQK:
+				pc = is[fi+code[pc+1]] == code[pc+2] ? code[pc+3] : pc+4;
+				break;
+			case Opcodes.JNEK:
+				pc = is[fi+code[pc+1]] != code[pc+2] ? code[pc+3] : pc+4;
+				break;
+			case Opcodes.JAEQ:
+				pc = os[fa+code[pc+1]] == os[fa+code[pc+2]] ? code[pc+3] : pc+4;
+				break;
+			case Opcodes.JANE:
+				pc = os[fa+code[pc+1]] != os[fa+code[pc+2]] ? code[pc+3] : pc+4;
+				break;
+			case Opcodes.GETFI: {
+				Object obj = os[fa+code[pc+2]];
+				if (obj == null) throw nullPointer(m, pc);
+				is[fi+code[pc+1]] = ((VMObject)obj).data[code[pc+3]];
+				pc += 4;
+				break;
+			}
+			case Opcodes.GETFA: {
+				Object obj = os[fa+code[pc+2]];
+				if (obj == null) throw nullPointer(m, pc);
+				os[fa+code[pc+1]] = ((VMObject)obj).objs[code[pc+3]];
+				pc += 4;
+				break;
+			}
+			case Opcodes.PUTFI: {
+				Object obj = os[fa+code[pc+1]];
+				if (obj == null) throw nullPointer(m, pc);
+				((VMObject)obj).data[code[pc+2]] = is[fi+code[pc+3]];
+				pc += 4;
+				break;
+			}
+			case Opcodes.PUTFA: {
+				Object obj = os[fa+code[pc+1]];
+				if (obj == null) throw nullPointer(m, pc);
+				((VMObject)obj).objs[code[pc+2]] = os[fa+code[pc+3]];
+				pc += 4;
+				break;
+			}
+			case Opcodes.NEW: {
+				VMClass cls = (VMClass)pool[code[pc+2]];
+				os[fa+code[pc+1]] = cls == stringClass ? "" : new VMObject(cls);
+				pc += 3;
+				break;
+			}
+			case Opcodes.NEWARRI:
+			case Opcodes.NEWARRZ:
+			case Opcodes.NEWARRA: {
+				int op = code[pc];
+				int len = is[fi+code[pc+2]];
+				if (len < 0) throw badSize(m, pc, len);
+				if (op == Opcodes.NEWARRI) {
+					os[fa+code[pc+1]] = new int[len];
+					pc += 3;
+				}
+				else if (op == Opcodes.NEWARRZ) {
+					os[fa+code[pc+1]] = new boolean[len];
+					pc += 3;
+				}
+				else {
+					os[fa+code[pc+1]] = new RefArray((ArrayType)pool[code[pc+3]], len);
+					pc += 4;
+				}
+				break;
+			}
+			case Opcodes.ALOADI: {
+				int[] arr = (int[])os[fa+code[pc+2]];
+				int idx = is[fi+code[pc+3]];
+				if (arr == null) throw nullPointer(m, pc);
+				if (idx < 0 || idx >= arr.length) throw badIndex(m, pc, idx, arr.length);
+				is[fi+code[pc+1]] = arr[idx];
+				pc += 4;
+				break;
+			}
+			case Opcodes.ALOADZ: {
+				boolean[] arr = (boolean[])os[fa+code[pc+2]];
+				int idx = is[fi+code[pc+3]];
+				if (arr == null) throw nullPointer(m, pc);
+				if (idx < 0 || idx >= arr.length) throw badIndex(m, pc, idx, arr.length);
+				is[fi+code[pc+1]] = arr[idx] ? 1 : 0;
+				pc += 4;
+				break;
+			}
+			case Opcodes.ALOADA: {
+				RefArray arr = (RefArray)os[fa+code[pc+2]];
+				int idx = is[fi+code[pc+3]];
+				if (arr == null) throw nullPointer(m, pc);
+				if (idx < 0 || idx >= arr.elems.length) throw badIndex(m, pc, idx, arr.elems.length);
+				os[fa+code[pc+1]] = arr.elems[idx];
+				pc += 4;
+				break;
+			}
+			case Opcodes.ASTOREI: {
+				int[] arr = (int[])os[fa+code[pc+1]];
+				int idx = is[fi+code[pc+2]];
+				if (arr == null) throw nullPointer(m, pc);
+				if (idx < 0 || idx >= arr.length) throw badIndex(m, pc, idx, arr.length);
+				arr[idx] = is[fi+code[pc+3]];
+				pc += 4;
+				break;
+			}
+			case Opcodes.ASTOREZ: {
+				boolean[] arr = (boolean[])os[fa+code[pc+1]];
+				int idx = is[fi+code[pc+2]];
+				if (arr == null) throw nullPointer(m, pc);
+				if (idx < 0 || idx >= arr.length) throw badIndex(m, pc, idx, arr.length);
+				arr[idx] = is[fi+code[pc+3]] != 0;
+				pc += 4;
+				break;
+			}
+			case Opcodes.ASTOREA: {
+				RefArray arr = (RefArray)os[fa+code[pc+1]];
+				int idx = is[fi+code[pc+2]];
+				if (arr == null) throw nullPointer(m, pc);
+				if (idx < 0 || idx >= arr.elems.length) throw badIndex(m, pc, idx, arr.elems.length);
+				arr.elems[idx] = os[fa+code[pc+3]];
+				pc += 4;
+				break;
+			}
+			case Opcodes.ALEN: {
+				Object arr = os[fa+code[pc+2]];
+				int len;
+				if (arr instanceof int[]) len = ((int[])arr).length;
+				else if (arr instanceof boolean[]) len = ((boolean[])arr).length;
+				else if (arr != null) len = ((RefArray)arr).elems.length;
+				else throw nullPointer(m, pc);
+				is[fi+code[pc+1]] = len;
+				pc += 3;
+				break;
+			}
+			case Opcodes.INSTOF: {
+				Object v = os[fa+code[pc+2]];
+				is[fi+code[pc+1]] = v != null && isInstance(v, pool[code[pc+3]]) ? 1 : 0;
+				pc += 4;
+				break;
+			}
+			case Opcodes.CAST: {
+				Object v = os[fa+code[pc+1]];
+				Object test = pool[code[pc+2]];
+				if (v != null && !isInstance(v, test)) throw badCast(m, pc, v, test);
+				pc += 3;
+				break;
+			}
+			case Opcodes.CALL:
+			case Opcodes.CALLS: {
+				Object recv = os[fa+code[pc+4]];
+				VMMethod callee;
+				if (code[pc] == Opcodes.CALL) {
+					if (recv == null) throw nullPointer(m, pc);
+					callee = classOf(recv).vtable[code[pc+3]];
+				}
+				else {
+					callee = (VMMethod)pool[code[pc+3]];
+				}
+				int cfi = fi + m.numIntRegs;
+				int cfa = fa + m.numRefRegs;
+				if (cfi + callee.numIntRegs > is.length || cfa + callee.numRefRegs > os.length) {
+					throw new RunError(m.positions[pc], "stack overflow");
+				}
+				int numInt = code[pc+5];
+				int numRef = code[pc+6];
+				int p = pc + 7;
+				for (int k = 0; k < numInt; k++) {
+					is[cfi+k] = is[fi+code[p++]];
+				}
+				os[cfa] = recv;
+				for (int k = 1; k <= numRef; k++) {
+					os[cfa+k] = os[fa+code[p++]];
+				}
+				if (callee.nativeOp >= 0) {
+					callNative(callee.nativeOp, cfi, cfa, m.positions[pc]);
+				}
+				else {
+					execute(callee, cfi, cfa);
+				}
+				// the callee's frame is gone; do not let it keep objects alive
+				Arrays.fill(os, cfa, cfa + callee.numRefRegs, null);
+				int resultKind = code[pc+1];
+				if (resultKind == Opcodes.RESULT_INT) {
+					is[fi+code[pc+2]] = intResult;
+				}
+				else if (resultKind == Opcodes.RESULT_REF) {
+					os[fa+code[pc+2]] = refResult;
+					refResult = null;
+				}
+				pc = p;
+				break;
+			}
+			case Opcodes.TSWITCH: {
+				int v = is[fi+code[pc+1]];
+				int lo = code[pc+2];
+				int hi = code[pc+3];
+				pc = v < lo || v > hi ? code[pc+4] : code[pc+5+(v-lo)];
+				break;
+			}
+			case Opcodes.LSWITCH: {
+				int v = is[fi+code[pc+1]];
+				int low = 0;
+				int high = code[pc+2] - 1;
+				int target = code[pc+3];
+				while (low <= high) {
+					int mid = (low + high) >>> 1;
+					int caseVal = code[pc+4+2*mid];
+					if (caseVal < v) low = mid + 1;
+					else if (caseVal > v) high = mid - 1;
+					else {
+						target = code[pc+5+2*mid];
+						break;
+					}
+				}
+				pc = target;
+				break;
+			}
+			case Opcodes.RET:
+				return;
+			case Opcodes.RETI:
+				intResult = is[fi+code[pc+1]];
+				return;
+			case Opcodes.RETA:
+				refResult = os[fa+code[pc+1]];
+				return;
+			default:
+				throw badOpcode(m, pc);
+			}
+		}
+	}
+
+	/*************** the predefined methods ****************/
+
+	// runs a predefined method, whose receiver is in refRegs[fa], int
+	// arguments in intRegs[fi], ..., and reference arguments in
+	// refRegs[fa+1], ...
+	private void callNative(int op, int fi, int fa, int pos) {
+		int[] is = intRegs;
+		Object[] os = refRegs;
+		switch (op) {
+		case NATIVE_OBJECT_HASHCODE:
+			intResult = System.identityHashCode(os[fa]);
+			break;
+		case NATIVE_OBJECT_EQUALS:
+			intResult = os[fa] == os[fa+1] ? 1 : 0;
+			break;
+		case NATIVE_OBJECT_TOSTRING: {
+			String name = typeName(os[fa]);
+			refResult = (name != null ? name : classOf(os[fa]).decl.name) + "@" +
+					Integer.toHexString(System.identityHashCode(os[fa]));
+			break;
+		}
+		case NATIVE_STRING_HASHCODE:
+			intResult = os[fa].hashCode();
+			break;
+		case NATIVE_STRING_EQUALS:
+			intResult = os[fa].equals(os[fa+1]) ? 1 : 0;
+			break;
+		case NATIVE_STRING_TOSTRING:
+			refResult = os[fa];
+			break;
+		case NATIVE_STRING_CONCAT:
+			if (os[fa+1] == null) {
+				throw new RunError(pos, "null pointer");
+			}
+			refResult = ((String)os[fa]).concat((String)os[fa+1]);
+			break;
+		case NATIVE_STRING_SUBSTRING: {
+			String s = (String)os[fa];
+			int from = is[fi];
+			int to = is[fi+1];
+			if (from < 0 || to > s.length() || from > to) {
+				throw new RunError(pos, "substring(" + from + ", " + to +
+						") out of bounds for length " + s.length());
+			}
+			refResult = s.substring(from, to);
+			break;
+		}
+		case NATIVE_STRING_LENGTH:
+			intResult = ((String)os[fa]).length();
+			break;
+		case NATIVE_STRING_CHARAT: {
+			String s = (String)os[fa];
+			int idx = is[fi];
+			if (idx < 0 || idx >= s.length()) {
+				throw new RunError(pos, "string index " + idx + " out of bounds for length " +
+						s.length());
+			}
+			intResult = s.charAt(idx);
+			break;
+		}
+		case NATIVE_STRING_COMPARETO:
+			if (os[fa+1] == null) {
+				throw new RunError(pos, "null pointer");
+			}
+			intResult = ((String)os[fa]).compareTo((String)os[fa+1]);
+			break;
+		case NATIVE_LIB_READLINE:
+			refResult = in.readLine();
+			break;
+		case NATIVE_LIB_READINT:
+			intResult = in.readInt(pos);
+			break;
+		case NATIVE_LIB_READCHAR:
+			intResult = in.readChar();
+			break;
+		case NATIVE_LIB_PRINTSTR:
+			out.print((String)os[fa+1]);
+			break;
+		case NATIVE_LIB_PRINTBOOL:
+			out.print(is[fi] != 0);
+			break;
+		case NATIVE_LIB_PRINTINT:
+			out.print(is[fi]);
+			break;
+		case NATIVE_LIB_INTTOSTRING:
+			refResult = Integer.toString(is[fi]);
+			break;
+		case NATIVE_LIB_INTTOCHAR:
+			refResult = String.valueOf((char)is[fi]);
+			break;
+		default:
+			throw new IllegalStateException("unknown predefined method " + op);
+		}
+	}
+}
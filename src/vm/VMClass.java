@@ -0,0 +1,21 @@
+package vm;
+
+import syntaxtree.*;
+
+// A class in the VM: its v-table, indexed by MethodDecl.vtableOffset, and
+// the sizes of its objects' two arrays of instance variables
+// (ClassDecl.numDataInstVars and ClassDecl.numObjInstVars).
+final class VMClass {
+
+	final ClassDecl decl;
+	final VMMethod[] vtable;
+	final int numData;
+	final int numObj;
+
+	VMClass(ClassDecl adecl) {
+		decl = adecl;
+		vtable = new VMMethod[Math.max(0, adecl.vtableSize)];
+		numData = adecl.numDataInstVars;
+		numObj = adecl.numObjInstVars;
+	}
+}
@@ -0,0 +1,38 @@
+package vm;
+
+import syntaxtree.*;
+
+// A method in the VM.  A method written in MiniJava has code (see
+// Opcodes), a constant pool, and the number of registers its frame needs
+// in each register file; 'positions' gives, for the index at which each
+// instruction starts, the source position to report if it fails.  A
+// predefined method instead has a VM.NATIVE_... code.
+//
+// The parameters are in the first registers of the frame: the int and
+// boolean parameters, in order, in int registers 0, 1, ..., and the
+// reference parameters in reference registers 1, 2, ..., after 'this'.
+final class VMMethod {
+
+	final MethodDecl decl;
+	final int numIntParms;
+	final int numRefParms;
+	int nativeOp;
+	int[] code;
+	int[] positions;
+	Object[] pool;
+	int numIntRegs;
+	int numRefRegs;
+
+	VMMethod(MethodDecl adecl) {
+		decl = adecl;
+		int numInt = 0;
+		for (int i = 0; i < adecl.formals.size(); i++) {
+			if (VM.isData(adecl.formals.elementAt(i).type)) numInt++;
+		}
+		numIntParms = numInt;
+		numRefParms = adecl.formals.size() - numInt;
+		nativeOp = -1;
+		numIntRegs = numIntParms;
+		numRefRegs = 1 + numRefParms;
+	}
+}
@@ -0,0 +1,18 @@
+package vm;
+
+// A MiniJava object in the VM: its class, and its instance variables laid
+// out flat in two arrays, the ints and booleans (as 0 or 1) in 'data' and
+// the references in 'objs', at the offsets in InstVarDecl.offset.  A
+// subclass's variables follow those of its superclass.
+final class VMObject {
+
+	final VMClass cls;
+	final int[] data;
+	final Object[] objs;
+
+	VMObject(VMClass acls) {
+		cls = acls;
+		data = new int[acls.numData];
+		objs = new Object[acls.numObj];
+	}
+}